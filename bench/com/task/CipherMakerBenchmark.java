@@ -0,0 +1,139 @@
+package com.task;
+
+import com.task.exceptions.CipherException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/*
+Key derivation cost (uncached and cached) and raw cipher throughput, without compression or disk I/O.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CipherMakerBenchmark {
+
+    private static final String PASSWORD = "hunter2";
+    private static final int PAYLOAD_SIZE = ArchiveHeader.DEFAULT_SEGMENT_SIZE;
+    private static final int STREAMED_SEGMENTS = 16;
+
+    @State(Scope.Benchmark)
+    public static class KdfState {
+        @Param({"PBKDF2_SHA256", "PBKDF2_SHA512", "SCRYPT"})
+        public Kdf kdf;
+        private KdfParameters parameters;
+
+        @Setup
+        public void setUp() {
+            parameters = KdfParameters.random(kdf, kdf.defaultCost());
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SuiteState {
+        @Param({"AES_256_GCM", "CHACHA20_POLY1305"})
+        public CipherSuite suite;
+        private SegmentCipher segmentCipher;
+        private byte[] sealedSegment;
+
+        @Setup
+        public void setUp(CipherMakerBenchmark benchmark) throws CipherException, IOException {
+            var cipher = new CipherMaker(PASSWORD);
+            cipher.setCipherSuite(suite);
+            segmentCipher = cipher.segmentCipher(cipher.newArchiveHeader());
+            sealedSegment = segmentCipher.encryptSegment(benchmark.plain, benchmark.plain.length, 0, true);
+        }
+    }
+
+    private CipherMaker cipher;
+    private ArchiveHeader header;
+    private SegmentCipher segmentCipher;
+    private byte[] plain;
+    private byte[] legacyCiphertext;
+
+    @Setup
+    public void setUp() throws CipherException, IOException {
+        cipher = new CipherMaker(PASSWORD);
+        header = cipher.newArchiveHeader();
+        segmentCipher = cipher.segmentCipher(header);
+        plain = Dataset.bytes(PAYLOAD_SIZE, Dataset.Content.RANDOM, new Random(1));
+
+        var legacyOut = new ByteArrayOutputStream();
+        try (var cipherOut = cipher.outputStream(legacyOut)) {
+            cipherOut.write(plain);
+        }
+        legacyCiphertext = legacyOut.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] deriveKey(KdfState state) throws GeneralSecurityException {
+        return state.kdf.derive(PASSWORD.toCharArray(), state.parameters, SegmentCipher.KEY_LENGTH);
+    }
+
+    @Benchmark
+    public SegmentCipher cachedKey() throws CipherException, IOException {
+        return cipher.segmentCipher(header);
+    }
+
+    @Benchmark
+    public byte[] encryptSegment(SuiteState state, Throughput throughput) throws CipherException {
+        throughput.add(PAYLOAD_SIZE);
+        return state.segmentCipher.encryptSegment(plain, plain.length, 0, true);
+    }
+
+    @Benchmark
+    public byte[] decryptSegment(SuiteState state, Throughput throughput) throws CipherException {
+        throughput.add(PAYLOAD_SIZE);
+        return state.segmentCipher.decryptSegment(state.sealedSegment, 0, true);
+    }
+
+    @Benchmark
+    public void segmentedOutputStream(Throughput throughput) throws IOException {
+        var parallelism = ForkJoinPool.getCommonPoolParallelism();
+        try (var out = new SegmentedOutputStream(OutputStream.nullOutputStream(), header, segmentCipher,
+                ForkJoinPool.commonPool(), 2 * parallelism)) {
+            for (var i = 0; i < STREAMED_SEGMENTS; i++) {
+                out.write(plain);
+            }
+        }
+        throughput.add((long) STREAMED_SEGMENTS * PAYLOAD_SIZE);
+    }
+
+    @Benchmark
+    public void legacyOutputStream(Throughput throughput) throws CipherException, IOException {
+        try (var out = cipher.outputStream(OutputStream.nullOutputStream())) {
+            out.write(plain);
+        }
+        throughput.add(PAYLOAD_SIZE);
+    }
+
+    @Benchmark
+    public long legacyInputStream(Throughput throughput) throws CipherException, IOException {
+        try (InputStream in = cipher.inputStream(new ByteArrayInputStream(legacyCiphertext))) {
+            var read = in.transferTo(OutputStream.nullOutputStream());
+            throughput.add(read);
+            return read;
+        }
+    }
+}
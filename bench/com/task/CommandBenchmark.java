@@ -0,0 +1,85 @@
+package com.task;
+
+import com.task.exceptions.CipherException;
+import com.task.exceptions.InvalidArgumentException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.task.ArgumentParser.MODE_FLAG;
+import static com.task.ArgumentParser.MODE_VALUE_DECRYPT;
+import static com.task.ArgumentParser.NAME_FLAG;
+import static com.task.ArgumentParser.OUTPUT_DIRECTORY_FLAG;
+import static com.task.ArgumentParser.PASSWORD_FLAG;
+
+/*
+End-to-end cost of a CLI invocation: argument parsing, key derivation, zip/unzip and disk I/O.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class CommandBenchmark {
+
+    private static final String PASSWORD = "hunter2";
+    private static final String ARCHIVE_NAME = "archive";
+
+    @Param({"TINY_FILES", "MEDIUM_FILES", "HUGE_FILES"})
+    public Dataset.Shape shape;
+
+    @Param({"COMPRESSIBLE", "RANDOM"})
+    public Dataset.Content content;
+
+    private Dataset dataset;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, CipherException, InvalidArgumentException {
+        dataset = new Dataset(shape, content);
+        encryptCommand().execute();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        dataset.delete();
+    }
+
+    @Benchmark
+    public void encrypt(Throughput throughput) throws IOException, CipherException, InvalidArgumentException {
+        encryptCommand().execute();
+        throughput.add(dataset.totalBytes());
+    }
+
+    @Benchmark
+    public void decrypt(Throughput throughput) throws IOException, CipherException, InvalidArgumentException {
+        String[] args = {MODE_FLAG.get(0), MODE_VALUE_DECRYPT.get(0), PASSWORD_FLAG.get(0), PASSWORD,
+                OUTPUT_DIRECTORY_FLAG.get(0), new File(dataset.directory(), "decrypted").getPath(),
+                new File(dataset.directory(), ARCHIVE_NAME).getPath()};
+        new ArgumentParser(args).parse().execute();
+        throughput.add(dataset.totalBytes());
+    }
+
+    private Command encryptCommand() throws InvalidArgumentException {
+        List<String> args = new ArrayList<>(List.of(PASSWORD_FLAG.get(0), PASSWORD, NAME_FLAG.get(0), ARCHIVE_NAME,
+                OUTPUT_DIRECTORY_FLAG.get(0), dataset.directory().getPath()));
+        dataset.files().forEach(file -> args.add(file.getPath()));
+        return new ArgumentParser(args.toArray(new String[0])).parse();
+    }
+}
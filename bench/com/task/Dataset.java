@@ -0,0 +1,147 @@
+package com.task;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/*
+Reproducible synthetic source files for the benchmarks, generated into a temporary directory. Files are spread over a
+tree of the given depth, FANOUT subdirectories a level, or all put in the source directory for depth 0.
+ */
+public class Dataset {
+
+    public enum Shape {
+        TINY_FILES(5_000, 512),
+        MEDIUM_FILES(100, 256 * 1024),
+        HUGE_FILES(2, 128 * 1024 * 1024);
+
+        private final int nrOfFiles;
+        private final long fileSize;
+
+        Shape(int nrOfFiles, long fileSize) {
+            this.nrOfFiles = nrOfFiles;
+            this.fileSize = fileSize;
+        }
+    }
+
+    public enum Content {
+        COMPRESSIBLE,
+        RANDOM,
+        /* Compressible or random at random, for every chunk of a file. */
+        MIXED
+    }
+
+    private static final String[] WORDS = {"lorem", "ipsum", "dolor", "sit", "amet", "archive", "cipher", "segment",
+            "{\"id\": ", "\"name\": ", "true", "false", "null", "\n", "    ", "0", "42", "1024"};
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int FANOUT = 16;
+
+    private final File directory;
+    private final List<File> files = new ArrayList<>();
+    private long totalBytes;
+
+    public Dataset(Shape shape, Content content) throws IOException {
+        this(shape.nrOfFiles, shape.fileSize, 0, content, shape.ordinal() * 31L + content.ordinal(), null);
+    }
+
+    /*
+    In a temporary directory in parent, or the default one if null.
+     */
+    public Dataset(int nrOfFiles, long fileSize, int depth, Content content, long seed, File parent) throws IOException {
+        directory = (parent == null ? Files.createTempDirectory("encryptFiles-bench")
+                : Files.createTempDirectory(parent.toPath(), "encryptFiles-bench")).toFile();
+        var random = new Random(seed);
+        var sourceDirectory = source();
+        File previous = null;
+        for (var i = 0; i < nrOfFiles; i++) {
+            var fileDirectory = sourceDirectory;
+            for (int level = 0, rest = i; level < depth; level++, rest /= FANOUT) {
+                fileDirectory = new File(fileDirectory, "d" + rest % FANOUT);
+            }
+            if (!fileDirectory.equals(previous) && !fileDirectory.isDirectory() && !fileDirectory.mkdirs()) {
+                throw new IOException("Failed to create directory " + fileDirectory);
+            }
+            previous = fileDirectory;
+            var file = new File(fileDirectory, "fileNr" + i);
+            writeFile(file, fileSize, content, random);
+            files.add(file);
+            totalBytes += fileSize;
+        }
+    }
+
+    public File directory() {
+        return directory;
+    }
+
+    /*
+    The directory holding all files, directly or in its tree.
+     */
+    public File source() {
+        return new File(directory, "source");
+    }
+
+    public List<File> files() {
+        return files;
+    }
+
+    public long totalBytes() {
+        return totalBytes;
+    }
+
+    public static byte[] bytes(int size, Content content, Random random) {
+        var bytes = new byte[size];
+        if (content == Content.MIXED) {
+            content = random.nextBoolean() ? Content.COMPRESSIBLE : Content.RANDOM;
+        }
+        if (content == Content.RANDOM) {
+            random.nextBytes(bytes);
+            return bytes;
+        }
+        var position = 0;
+        while (position < size) {
+            var word = WORDS[random.nextInt(WORDS.length)].getBytes(StandardCharsets.UTF_8);
+            var count = Math.min(word.length, size - position);
+            System.arraycopy(word, 0, bytes, position, count);
+            position += count;
+        }
+        return bytes;
+    }
+
+    public void delete() throws IOException {
+        delete(directory);
+    }
+
+    /*
+    Deletes file, and everything below it if a directory. Nothing if it does not exist.
+     */
+    public static void delete(File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(file.toPath())) {
+            for (var path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    private static void writeFile(File file, long size, Content content, Random random) throws IOException {
+        try (var out = new BufferedOutputStream(new FileOutputStream(file))) {
+            long written = 0;
+            while (written < size) {
+                var count = (int) Math.min(CHUNK_SIZE, size - written);
+                out.write(bytes(count, content, random));
+                written += count;
+            }
+        }
+    }
+}
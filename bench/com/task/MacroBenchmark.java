@@ -0,0 +1,304 @@
+package com.task;
+
+import com.task.exceptions.CipherException;
+import com.task.exceptions.InvalidArgumentException;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static com.task.ArgumentParser.MODE_FLAG;
+import static com.task.ArgumentParser.MODE_VALUE_DECRYPT;
+import static com.task.ArgumentParser.NAME_FLAG;
+import static com.task.ArgumentParser.OUTPUT_DIRECTORY_FLAG;
+import static com.task.ArgumentParser.PASSWORD_FLAG;
+
+/*
+Macro benchmark of whole CLI runs on datasets at production scale, outside of JMH: each scenario's dataset is
+generated once, then encrypted and decrypted through Command.execute, runs times each. A phase reports the wall time,
+MB/s and files/s of its median run, and the highest peak heap, peak RSS and GC time of its runs.
+Results are written as JSON, which can serve as the baseline of later runs: a phase whose throughput dropped, or
+whose peak heap or RSS grew, by more than the threshold percentage is reported as a regression, and the exit status
+is then 1.
+    java -cp <classes> com.task.MacroBenchmark [-scale S] [-runs N] [-directory DIR] [-out FILE] [-baseline FILE]
+        [-threshold PERCENT] [SCENARIO...]
+Scale multiplies the number of files, or the size of the file of single file scenarios, e.g. 0.01 for a quick check.
+Baselines only compare at the scale they were recorded at. Peak RSS is read from /proc/self/status, and reset through
+/proc/self/clear_refs where that is allowed, else it is the peak of the process so far. Off Linux it is -1 and not
+compared.
+ */
+public class MacroBenchmark {
+
+    public enum Scenario {
+        TINY_FILES(2_000_000, 512, 2, Dataset.Content.COMPRESSIBLE),
+        LARGE_FILE(1, 4L << 30, 0, Dataset.Content.MIXED),
+        MIXED_FILES(10_000, 256 << 10, 1, Dataset.Content.MIXED),
+        DEEP_TREE(100_000, 4 << 10, 12, Dataset.Content.COMPRESSIBLE);
+
+        private final int nrOfFiles;
+        private final long fileSize;
+        private final int depth;
+        private final Dataset.Content content;
+
+        Scenario(int nrOfFiles, long fileSize, int depth, Dataset.Content content) {
+            this.nrOfFiles = nrOfFiles;
+            this.fileSize = fileSize;
+            this.depth = depth;
+            this.content = content;
+        }
+
+        Dataset dataset(double scale, File parent) throws IOException {
+            var count = nrOfFiles == 1 ? 1 : (int) Math.max(1, Math.round(nrOfFiles * scale));
+            var size = nrOfFiles == 1 ? Math.max(1, Math.round(fileSize * scale)) : fileSize;
+            return new Dataset(count, size, depth, content, ordinal(), parent);
+        }
+    }
+
+    record Result(String scenario, String phase, long files, long bytes, double seconds, double gcSeconds,
+                  double peakHeapMegabytes, double peakRssMegabytes) {
+
+        double megabytesPerSecond() {
+            return bytes / 1_000_000.0 / seconds;
+        }
+
+        double filesPerSecond() {
+            return files / seconds;
+        }
+    }
+
+    private record Run(double seconds, double gcSeconds, double peakHeapMegabytes, double peakRssMegabytes) {
+    }
+
+    @FunctionalInterface
+    private interface Phase {
+        void run() throws IOException, CipherException, InvalidArgumentException;
+    }
+
+    private static final String PASSWORD = "hunter2";
+    private static final String ARCHIVE_NAME = "archive";
+    private static final Pattern SCALE = Pattern.compile("\"scale\": ([-0-9.eE+]+)");
+    private static final Pattern RESULT = Pattern.compile("\\{[^{}]*\"scenario\"[^{}]*}");
+    private static final Pattern FIELD = Pattern.compile("\"(\\w+)\": (\"[^\"]*\"|[-0-9.eE+]+)");
+
+    private double scale = 1;
+    private int runs = 3;
+    private File directory;
+    private File out = new File("macro-benchmark.json");
+    private Map<String, Map<String, String>> baseline;
+    private double threshold = 10;
+    private final List<Scenario> scenarios = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        var benchmark = new MacroBenchmark();
+        try {
+            benchmark.parse(args);
+        } catch (IllegalArgumentException ex) {
+            System.out.println(ex.getMessage());
+            System.out.println("Usage: MacroBenchmark [-scale S] [-runs N] [-directory DIR] [-out FILE] [-baseline FILE] [-threshold PERCENT] "
+                    + "[" + String.join("|", Arrays.stream(Scenario.values()).map(Enum::name).toList()) + "]...");
+            System.exit(2);
+        }
+        System.exit(benchmark.run() ? 0 : 1);
+    }
+
+    private void parse(String[] args) throws IOException {
+        File baselineFile = null;
+        for (var i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("-")) {
+                try {
+                    scenarios.add(Scenario.valueOf(args[i]));
+                } catch (IllegalArgumentException ex) {
+                    throw new IllegalArgumentException("Unknown scenario " + args[i] + ".");
+                }
+                continue;
+            }
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Value missing for " + args[i] + ".");
+            }
+            var value = args[++i];
+            try {
+                switch (args[i - 1]) {
+                    case "-scale" -> scale = Double.parseDouble(value);
+                    case "-runs" -> runs = Integer.parseInt(value);
+                    case "-directory" -> directory = new File(value);
+                    case "-out" -> out = new File(value);
+                    case "-baseline" -> baselineFile = new File(value);
+                    case "-threshold" -> threshold = Double.parseDouble(value);
+                    default -> throw new IllegalArgumentException("Unknown option " + args[i - 1] + ".");
+                }
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Invalid number " + value + " for " + args[i - 1] + ".");
+            }
+        }
+        if (scale <= 0 || runs < 1 || threshold < 0) {
+            throw new IllegalArgumentException("Scale and runs must be positive, the threshold not negative.");
+        }
+        if (scenarios.isEmpty()) {
+            scenarios.addAll(List.of(Scenario.values()));
+        }
+        if (baselineFile != null) {
+            baseline = readBaseline(baselineFile);
+        }
+    }
+
+    /*
+    Returns false if a regression against the baseline was found.
+     */
+    private boolean run() throws IOException, CipherException, InvalidArgumentException {
+        var results = new ArrayList<Result>();
+        for (var scenario : scenarios) {
+            System.out.println("Generating " + scenario + " at scale " + scale + "...");
+            var dataset = scenario.dataset(scale, directory);
+            try {
+                var archive = new File(dataset.directory(), ARCHIVE_NAME);
+                var decrypted = new File(dataset.directory(), "decrypted");
+                results.add(measure(scenario, "encrypt", dataset, () -> Files.deleteIfExists(archive.toPath()),
+                        () -> new ArgumentParser(new String[]{PASSWORD_FLAG.get(0), PASSWORD, NAME_FLAG.get(0), ARCHIVE_NAME,
+                                OUTPUT_DIRECTORY_FLAG.get(0), dataset.directory().getPath(), dataset.source().getPath()}).parse().execute()));
+                results.add(measure(scenario, "decrypt", dataset, () -> Dataset.delete(decrypted),
+                        () -> new ArgumentParser(new String[]{MODE_FLAG.get(0), MODE_VALUE_DECRYPT.get(0), PASSWORD_FLAG.get(0), PASSWORD,
+                                OUTPUT_DIRECTORY_FLAG.get(0), decrypted.getPath(), archive.getPath()}).parse().execute()));
+            } finally {
+                dataset.delete();
+            }
+        }
+        Files.writeString(out.toPath(), toJson(results));
+        System.out.println("Results written to " + out);
+        return baseline == null || compare(results, baseline);
+    }
+
+    /*
+    Runs phase runs times, each after a GC and after prepare, which is not timed.
+     */
+    private Result measure(Scenario scenario, String phase, Dataset dataset, Phase prepare, Phase measured)
+            throws IOException, CipherException, InvalidArgumentException {
+        var measuredRuns = new ArrayList<Run>();
+        for (var i = 0; i < runs; i++) {
+            prepare.run();
+            System.gc();
+            var heapPools = ManagementFactory.getMemoryPoolMXBeans().stream().filter(pool -> pool.getType() == MemoryType.HEAP).toList();
+            heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+            resetPeakRss();
+            var gcBefore = gcMillis();
+            var start = System.nanoTime();
+            measured.run();
+            var seconds = (System.nanoTime() - start) / 1e9;
+            var peakHeap = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+            measuredRuns.add(new Run(seconds, (gcMillis() - gcBefore) / 1e3, peakHeap / 1e6, peakRssMegabytes()));
+        }
+        var median = measuredRuns.stream().sorted(Comparator.comparingDouble(Run::seconds)).toList().get(runs / 2);
+        var result = new Result(scenario.name(), phase, dataset.files().size(), dataset.totalBytes(), median.seconds(), median.gcSeconds(),
+                measuredRuns.stream().mapToDouble(Run::peakHeapMegabytes).max().orElse(0),
+                measuredRuns.stream().mapToDouble(Run::peakRssMegabytes).max().orElse(-1));
+        System.out.println(String.format(Locale.ROOT, "%s %s: %.2f s, %.1f MB/s, %.0f files/s, peak heap %.0f MB, peak RSS %.0f MB, GC %.2f s",
+                result.scenario(), phase, result.seconds(), result.megabytesPerSecond(), result.filesPerSecond(),
+                result.peakHeapMegabytes(), result.peakRssMegabytes(), result.gcSeconds()));
+        return result;
+    }
+
+    /*
+    Reports every phase against its baseline, returns false if any regressed beyond the threshold.
+     */
+    private boolean compare(List<Result> results, Map<String, Map<String, String>> baseline) {
+        var passed = true;
+        var limit = threshold / 100;
+        for (var result : results) {
+            var base = baseline.get(result.scenario() + "/" + result.phase());
+            if (base == null) {
+                System.out.println(result.scenario() + " " + result.phase() + ": not in baseline.");
+                continue;
+            }
+            var throughput = change(result.megabytesPerSecond(), Double.parseDouble(base.get("megabytesPerSecond")));
+            var heap = change(result.peakHeapMegabytes(), Double.parseDouble(base.get("peakHeapMegabytes")));
+            var baseRss = Double.parseDouble(base.get("peakRssMegabytes"));
+            var rss = result.peakRssMegabytes() < 0 || baseRss < 0 ? 0 : change(result.peakRssMegabytes(), baseRss);
+            var regressed = throughput < -limit || heap > limit || rss > limit;
+            passed &= !regressed;
+            System.out.println(String.format(Locale.ROOT, "%s %s: throughput %+.1f%%, peak heap %+.1f%%, peak RSS %+.1f%%%s",
+                    result.scenario(), result.phase(), 100 * throughput, 100 * heap, 100 * rss, regressed ? "  REGRESSION" : ""));
+        }
+        return passed;
+    }
+
+    private static double change(double current, double base) {
+        return base <= 0 ? 0 : current / base - 1;
+    }
+
+    /*
+    Results by scenario/phase, each as its fields' JSON values.
+     */
+    private Map<String, Map<String, String>> readBaseline(File file) throws IOException {
+        var json = Files.readString(file.toPath());
+        var recordedScale = SCALE.matcher(json);
+        if (!recordedScale.find() || Double.parseDouble(recordedScale.group(1)) != scale) {
+            throw new IllegalArgumentException("Baseline " + file + " was not recorded at scale " + scale + ".");
+        }
+        var results = new HashMap<String, Map<String, String>>();
+        var result = RESULT.matcher(json);
+        while (result.find()) {
+            var fields = new HashMap<String, String>();
+            var field = FIELD.matcher(result.group());
+            while (field.find()) {
+                fields.put(field.group(1), field.group(2).replace("\"", ""));
+            }
+            results.put(fields.get("scenario") + "/" + fields.get("phase"), fields);
+        }
+        return results;
+    }
+
+    private String toJson(List<Result> results) {
+        var json = new StringBuilder("{\n  \"scale\": ").append(scale)
+                .append(",\n  \"runs\": ").append(runs)
+                .append(",\n  \"java\": \"").append(System.getProperty("java.version"))
+                .append("\",\n  \"processors\": ").append(Runtime.getRuntime().availableProcessors())
+                .append(",\n  \"results\": [");
+        var first = true;
+        for (var result : results) {
+            json.append(first ? "\n" : ",\n").append(String.format(Locale.ROOT, "    {\"scenario\": \"%s\", \"phase\": \"%s\", \"files\": %d, \"bytes\": %d, "
+                            + "\"seconds\": %.3f, \"megabytesPerSecond\": %.3f, \"filesPerSecond\": %.1f, \"peakHeapMegabytes\": %.1f, "
+                            + "\"peakRssMegabytes\": %.1f, \"gcSeconds\": %.3f}",
+                    result.scenario(), result.phase(), result.files(), result.bytes(), result.seconds(), result.megabytesPerSecond(),
+                    result.filesPerSecond(), result.peakHeapMegabytes(), result.peakRssMegabytes(), result.gcSeconds()));
+            first = false;
+        }
+        return json.append(first ? "]\n}\n" : "\n  ]\n}\n").toString();
+    }
+
+    private static long gcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+
+    private static void resetPeakRss() {
+        try {
+            Files.writeString(Path.of("/proc/self/clear_refs"), "5");
+        } catch (IOException ex) {
+            // Not on Linux, or not allowed: the peak then covers the whole process so far.
+        }
+    }
+
+    private static double peakRssMegabytes() {
+        try {
+            for (var line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.replaceAll("\\D", "")) * 1024 / 1e6;
+                }
+            }
+        } catch (IOException ex) {
+            // Not on Linux.
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,73 @@
+package com.task;
+
+import com.task.exceptions.CipherException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/*
+Zipper.zip/unzip throughput over the dataset shapes. MB/s is measured against the uncompressed source size.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ZipperBenchmark {
+
+    private static final String PASSWORD = "hunter2";
+    private static final String ARCHIVE_NAME = "archive";
+    private static final String BENCH_ARCHIVE_NAME = "bench-archive";
+
+    @Param({"TINY_FILES", "MEDIUM_FILES", "HUGE_FILES"})
+    public Dataset.Shape shape;
+
+    @Param({"COMPRESSIBLE", "RANDOM"})
+    public Dataset.Content content;
+
+    private Dataset dataset;
+    private Zipper zipper;
+    private File archive;
+    private File extractDirectory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, CipherException {
+        dataset = new Dataset(shape, content);
+        zipper = new Zipper(PASSWORD);
+        zipper.zip(dataset.files(), ARCHIVE_NAME, dataset.directory());
+        archive = new File(dataset.directory(), ARCHIVE_NAME);
+        extractDirectory = new File(dataset.directory(), "extracted");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        dataset.delete();
+    }
+
+    @Benchmark
+    public void zip(Throughput throughput) throws IOException, CipherException {
+        zipper.zip(dataset.files(), BENCH_ARCHIVE_NAME, dataset.directory());
+        throughput.add(dataset.totalBytes());
+    }
+
+    @Benchmark
+    public void unzip(Throughput throughput) throws IOException, CipherException {
+        zipper.unzip(extractDirectory, archive);
+        throughput.add(dataset.totalBytes());
+    }
+}
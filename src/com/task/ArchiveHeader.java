@@ -0,0 +1,240 @@
+package com.task;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+Plaintext header at the start of a segmented archive:
+    magic (4 bytes) | version (1 byte) | segment size (int) | cipher suite id (1 byte)
+    | key slot count (1 byte) | per key slot:
+        kdf id (1 byte, 0 for a free slot) | salt length (1 byte) | salt, padded to MAX_SALT_LENGTH
+        | cost (int) | block size (int) | parallelism (int) | wrapped data key
+Segments are sealed under a random data key. Each key slot holds it wrapped, sealed like a segment, under the key
+derived from a password with the slot's parameters, so any of the passwords opens the archive. Slots have a fixed
+length, so changing a password rewrites the header in place, see CipherMaker.rekey.
+Version 3 headers have a single kdf in place of the key slots:
+    kdf id (1 byte) | salt length (1 byte) | salt | cost (int) | block size (int) | parallelism (int)
+and seal segments under the key derived from the password itself.
+Version 2 headers have no cipher suite id and use AES-256-GCM.
+Version 1 headers end after the segment size and use AES-256-GCM and CipherMaker.VERSION_1_PARAMETERS.
+Archives without the magic are treated as the legacy single-stream format.
+Every segment record but the final one has the same length, so segment records can be seeked to directly.
+ */
+public record ArchiveHeader(byte version, int segmentSize, CipherSuite suite, KdfParameters kdf, List<KeySlot> keySlots) {
+
+    /*
+    A free slot has neither parameters nor a key.
+     */
+    public record KeySlot(KdfParameters kdf, byte[] wrappedKey) {
+        protected static final KeySlot FREE = new KeySlot(null, null);
+
+        public boolean free() {
+            return kdf == null;
+        }
+    }
+
+    protected static final byte[] MAGIC = {'E', 'F', 'S', 'A'};
+    protected static final byte VERSION = 4;
+    protected static final byte VERSION_3 = 3;
+    protected static final byte VERSION_2 = 2;
+    protected static final byte VERSION_1 = 1;
+    protected static final int DEFAULT_SEGMENT_SIZE = 1 << 20;
+    private static final int MAX_SEGMENT_SIZE = 1 << 26;
+    private static final int MIN_SALT_LENGTH = 8;
+    private static final int MAX_SALT_LENGTH = 32;
+    protected static final int KEY_SLOTS = 4;
+    protected static final int WRAPPED_KEY_LENGTH = SegmentCipher.KEY_LENGTH + SegmentCipher.SEGMENT_OVERHEAD;
+    private static final int KEY_SLOT_LENGTH = 2 + MAX_SALT_LENGTH + 3 * Integer.BYTES + WRAPPED_KEY_LENGTH;
+
+    /*
+    A header of the current version, the kdf being that of the first key slot.
+     */
+    public ArchiveHeader(CipherSuite suite, List<KeySlot> keySlots) {
+        this(VERSION, DEFAULT_SEGMENT_SIZE, suite, keySlots.get(0).kdf(), List.copyOf(keySlots));
+    }
+
+    /*
+    A header of version 3 or before, without key slots.
+     */
+    public ArchiveHeader(byte version, int segmentSize, CipherSuite suite, KdfParameters kdf) {
+        this(version, segmentSize, suite, kdf, List.of());
+    }
+
+    /*
+    Whether segments are sealed under a data key held in key slots, rather than under the password's key.
+     */
+    public boolean wrapsKey() {
+        return version >= VERSION;
+    }
+
+    /*
+    This header with other key slots, of the same count, so it keeps its length.
+     */
+    protected ArchiveHeader withKeySlots(List<KeySlot> slots) {
+        if (slots.size() != keySlots.size()) {
+            throw new IllegalArgumentException(slots.size() + " key slots instead of " + keySlots.size() + ".");
+        }
+        var first = slots.stream().filter(slot -> !slot.free()).findFirst().orElseThrow();
+        return new ArchiveHeader(version, segmentSize, suite, first.kdf(), List.copyOf(slots));
+    }
+
+    protected int length() {
+        var length = MAGIC.length + 1 + Integer.BYTES;
+        if (version == VERSION_1) {
+            return length;
+        }
+        if (wrapsKey()) {
+            return length + 2 + keySlots.size() * KEY_SLOT_LENGTH;
+        }
+        length += 2 + kdf.salt().length + 3 * Integer.BYTES;
+        return version == VERSION_2 ? length : length + 1;
+    }
+
+    protected long segmentOffset(long segmentIndex) {
+        return length() + segmentIndex * (SegmentedOutputStream.RECORD_PREFIX + segmentSize + SegmentCipher.SEGMENT_OVERHEAD);
+    }
+
+    protected void write(OutputStream out) throws IOException {
+        var dataOut = new DataOutputStream(out);
+        dataOut.write(MAGIC);
+        dataOut.writeByte(version);
+        dataOut.writeInt(segmentSize);
+        if (version == VERSION_1) {
+            dataOut.flush();
+            return;
+        }
+        if (version != VERSION_2) {
+            dataOut.writeByte(suite.id());
+        }
+        if (!wrapsKey()) {
+            writeKdf(dataOut, kdf);
+            dataOut.flush();
+            return;
+        }
+        dataOut.writeByte(keySlots.size());
+        for (var slot : keySlots) {
+            if (slot.free()) {
+                dataOut.write(new byte[KEY_SLOT_LENGTH]);
+                continue;
+            }
+            writeKdf(dataOut, slot.kdf());
+            dataOut.write(new byte[MAX_SALT_LENGTH - slot.kdf().salt().length]);
+            dataOut.write(slot.wrappedKey());
+        }
+        dataOut.flush();
+    }
+
+    /*
+    The header as written, e.g. to rewrite it in place.
+     */
+    protected byte[] toBytes() throws IOException {
+        var bytes = new ByteArrayOutputStream(length());
+        write(bytes);
+        return bytes.toByteArray();
+    }
+
+    private static void writeKdf(DataOutputStream dataOut, KdfParameters kdf) throws IOException {
+        dataOut.writeByte(kdf.kdf().id());
+        dataOut.writeByte(kdf.salt().length);
+        dataOut.write(kdf.salt());
+        dataOut.writeInt(kdf.cost());
+        dataOut.writeInt(kdf.blockSize());
+        dataOut.writeInt(kdf.parallelism());
+    }
+
+    /*
+    Expects the magic to have been consumed already, see hasMagic.
+     */
+    protected static ArchiveHeader read(InputStream in) throws IOException {
+        var dataIn = new DataInputStream(in);
+        var version = dataIn.readByte();
+        if (version != VERSION && version != VERSION_3 && version != VERSION_2 && version != VERSION_1) {
+            throw new IOException("Unsupported archive version " + version + ".");
+        }
+        var segmentSize = dataIn.readInt();
+        if (segmentSize <= 0 || segmentSize > MAX_SEGMENT_SIZE) {
+            throw new IOException("Corrupt archive header, segment size " + segmentSize + ".");
+        }
+        if (version == VERSION_1) {
+            return new ArchiveHeader(version, segmentSize, CipherSuite.AES_256_GCM, CipherMaker.VERSION_1_PARAMETERS);
+        }
+        var suite = CipherSuite.AES_256_GCM;
+        if (version != VERSION_2) {
+            var id = dataIn.readByte();
+            suite = CipherSuite.fromId(id);
+            if (suite == null) {
+                throw new IOException("Unsupported cipher suite " + id + ".");
+            }
+        }
+        if (version == VERSION_3 || version == VERSION_2) {
+            return new ArchiveHeader(version, segmentSize, suite, readKdf(dataIn));
+        }
+        var count = dataIn.readUnsignedByte();
+        var slots = new ArrayList<KeySlot>();
+        for (var i = 0; i < count; i++) {
+            slots.add(readKeySlot(dataIn));
+        }
+        var first = slots.stream().filter(slot -> !slot.free()).findFirst();
+        if (first.isEmpty()) {
+            throw new IOException("Corrupt archive header, no key slot in use.");
+        }
+        return new ArchiveHeader(version, segmentSize, suite, first.get().kdf(), List.copyOf(slots));
+    }
+
+    protected static boolean hasMagic(InputStream in) throws IOException {
+        return Arrays.equals(MAGIC, in.readNBytes(MAGIC.length));
+    }
+
+    private static KeySlot readKeySlot(DataInputStream dataIn) throws IOException {
+        var slot = dataIn.readNBytes(KEY_SLOT_LENGTH);
+        if (slot.length < KEY_SLOT_LENGTH) {
+            throw new IOException("Archive header truncated.");
+        }
+        if (slot[0] == 0) {
+            return KeySlot.FREE;
+        }
+        var slotIn = new DataInputStream(new ByteArrayInputStream(slot));
+        var kdf = readKdf(slotIn);
+        if (kdf.salt().length > MAX_SALT_LENGTH) {
+            throw new IOException("Corrupt archive header, salt length " + kdf.salt().length + ".");
+        }
+        slotIn.skipNBytes(MAX_SALT_LENGTH - kdf.salt().length);
+        return new KeySlot(kdf, slotIn.readNBytes(WRAPPED_KEY_LENGTH));
+    }
+
+    /*
+    Parameters are bounded, so a crafted header cannot make key derivation arbitrarily slow or large.
+     */
+    private static KdfParameters readKdf(DataInputStream dataIn) throws IOException {
+        var id = dataIn.readByte();
+        var kdf = Kdf.fromId(id);
+        if (kdf == null) {
+            throw new IOException("Unsupported key derivation function " + id + ".");
+        }
+        var saltLength = dataIn.readUnsignedByte();
+        if (saltLength < MIN_SALT_LENGTH) {
+            throw new IOException("Corrupt archive header, salt length " + saltLength + ".");
+        }
+        var salt = dataIn.readNBytes(saltLength);
+        if (salt.length < saltLength) {
+            throw new IOException("Archive header truncated.");
+        }
+        var parameters = new KdfParameters(kdf, salt, dataIn.readInt(), dataIn.readInt(), dataIn.readInt());
+        var scryptValid = kdf != Kdf.SCRYPT || (Integer.bitCount(parameters.cost()) == 1
+                && parameters.blockSize() >= 1 && parameters.blockSize() <= Kdf.SCRYPT_MAX_BLOCK_SIZE
+                && parameters.parallelism() >= 1 && parameters.parallelism() <= Kdf.SCRYPT_MAX_PARALLELISM);
+        if (parameters.cost() < 1 || parameters.cost() > kdf.maxCost() || !scryptValid) {
+            throw new IOException("Unsupported key derivation parameters " + kdf + " " + parameters.cost() + ", "
+                    + parameters.blockSize() + ", " + parameters.parallelism() + ".");
+        }
+        return parameters;
+    }
+}
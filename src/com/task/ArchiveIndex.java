@@ -0,0 +1,304 @@
+package com.task;
+
+import com.task.exceptions.CipherException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/*
+Encrypted central directory written after the final segment of a segmented archive:
+    sealed length (int) | sealed index
+followed by a plaintext trailer pointing back at it:
+    index offset (long) | trailer magic (4 bytes)
+Offsets are into the decrypted zip stream; encryptedOffset is the file offset of the segment record containing offset.
+The sealed index ends with the archive manifest, if any, and the chunk table of a deduplicated archive, see ChunkStore:
+    chunk count (int) | per chunk: hash | offset (long) | stored length (int) | size (int)
+    | per entry: chunk run count (int, -1 for entries stored whole) | per run: first chunk id (int) | length (int)
+Chunk offsets and stored lengths cover their zip entries, local header included, like those of entries.
+An archive with a preset dictionary, see Dictionary, has an empty chunk table unless deduplicated, followed by
+    dictionary length (int) | dictionary
+ */
+public class ArchiveIndex {
+
+    /*
+    Entries of a deduplicated archive list the ids of their chunks in order, have an offset of -1 and count the
+    chunks they stored first as their stored length.
+     */
+    public record Entry(String name, long size, long offset, long storedLength, long encryptedOffset, int[] chunks) {
+        public Entry(String name, long size, long offset, long storedLength, long encryptedOffset) {
+            this(name, size, offset, storedLength, encryptedOffset, null);
+        }
+
+        public boolean chunked() {
+            return chunks != null;
+        }
+    }
+
+    public record Chunk(byte[] hash, long offset, int storedLength, int size) {
+    }
+
+    protected static final byte[] TRAILER_MAGIC = {'E', 'F', 'S', 'I'};
+    private static final int TRAILER_LENGTH = Long.BYTES + TRAILER_MAGIC.length;
+    private static final long INDEX_SEGMENT = -1;
+
+    private final List<Entry> entries = new ArrayList<>();
+    private ArchiveManifest manifest;
+    /* Chunks are kept in flat arrays, deduplicated archives of large inputs hold millions. */
+    private byte[] chunkHashes = new byte[0];
+    private long[] chunkTable = new long[0];
+    private int chunkCount;
+    private byte[] dictionary;
+
+    public List<Entry> entries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    protected void add(Entry entry) {
+        entries.add(entry);
+    }
+
+    /*
+    Null for archives created before manifests were kept.
+     */
+    public ArchiveManifest manifest() {
+        return manifest;
+    }
+
+    protected void setManifest(ArchiveManifest manifest) {
+        this.manifest = manifest;
+    }
+
+    /*
+    The preset dictionary entries may be deflated with, or null.
+     */
+    public byte[] dictionary() {
+        return dictionary;
+    }
+
+    protected void setDictionary(byte[] dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    public boolean deduplicated() {
+        return chunkCount > 0 || entries.stream().anyMatch(Entry::chunked);
+    }
+
+    public int chunkCount() {
+        return chunkCount;
+    }
+
+    public Chunk chunk(int id) {
+        if (id < 0 || id >= chunkCount) {
+            throw new IndexOutOfBoundsException("Chunk " + id + " of " + chunkCount + ".");
+        }
+        var hash = Arrays.copyOfRange(chunkHashes, id * ChunkIndex.HASH_LENGTH, (id + 1) * ChunkIndex.HASH_LENGTH);
+        var lengths = chunkTable[2 * id + 1];
+        return new Chunk(hash, chunkTable[2 * id], (int) (lengths >>> 32), (int) lengths);
+    }
+
+    /*
+    Returns the new chunk's id.
+     */
+    protected int addChunk(Chunk chunk) {
+        if (chunkCount == chunkTable.length / 2) {
+            var capacity = Math.max(1024, 2 * chunkCount);
+            chunkTable = Arrays.copyOf(chunkTable, 2 * capacity);
+            chunkHashes = Arrays.copyOf(chunkHashes, capacity * ChunkIndex.HASH_LENGTH);
+        }
+        System.arraycopy(chunk.hash(), 0, chunkHashes, chunkCount * ChunkIndex.HASH_LENGTH, ChunkIndex.HASH_LENGTH);
+        chunkTable[2 * chunkCount] = chunk.offset();
+        chunkTable[2 * chunkCount + 1] = (long) chunk.storedLength() << 32 | (chunk.size() & 0xFFFFFFFFL);
+        return chunkCount++;
+    }
+
+    protected void write(OutputStream out, long indexOffset, SegmentCipher cipher) throws IOException, CipherException {
+        var plain = plain();
+        var sealed = cipher.encryptSegment(plain, plain.length, INDEX_SEGMENT, true);
+
+        var dataOut = new DataOutputStream(out);
+        dataOut.writeInt(sealed.length);
+        dataOut.write(sealed);
+        dataOut.writeLong(indexOffset);
+        dataOut.write(TRAILER_MAGIC);
+        dataOut.flush();
+    }
+
+    /*
+    Returns null if the file has no index trailer.
+     */
+    protected static ArchiveIndex read(VolumeSet archive, SegmentCipher cipher) throws IOException {
+        var indexOffset = offset(archive);
+        if (indexOffset < 0) {
+            return null;
+        }
+        var length = archive.length();
+        var sealedLength = ByteBuffer.allocate(Integer.BYTES);
+        archive.read(sealedLength, indexOffset);
+        var sealedBytes = sealedLength.getInt(0);
+        if (sealedBytes < SegmentCipher.SEGMENT_OVERHEAD || sealedBytes > length - indexOffset - Integer.BYTES - TRAILER_LENGTH) {
+            throw new IOException("Corrupt archive, index length " + sealedBytes + ".");
+        }
+        var sealed = new byte[sealedBytes];
+        archive.read(ByteBuffer.wrap(sealed), indexOffset + Integer.BYTES);
+
+        try {
+            return fromPlain(cipher.decryptSegment(sealed, INDEX_SEGMENT, true));
+        } catch (CipherException ex) {
+            throw new IOException("Failed to decrypt archive index. Check password.", ex);
+        }
+    }
+
+    /*
+    Where the index starts, right after the final segment, or -1 if the file has no index trailer.
+     */
+    protected static long offset(VolumeSet archive) throws IOException {
+        var length = archive.length();
+        if (length < TRAILER_LENGTH) {
+            return -1;
+        }
+        var trailer = ByteBuffer.allocate(TRAILER_LENGTH);
+        archive.read(trailer, length - TRAILER_LENGTH);
+        var indexOffset = trailer.getLong(0);
+        if (!Arrays.equals(TRAILER_MAGIC, Arrays.copyOfRange(trailer.array(), Long.BYTES, TRAILER_LENGTH))) {
+            return -1;
+        }
+        if (indexOffset < 0 || indexOffset > length - TRAILER_LENGTH - Integer.BYTES) {
+            throw new IOException("Corrupt archive, index offset " + indexOffset + ".");
+        }
+        return indexOffset;
+    }
+
+    /*
+    The index before sealing, also kept in checkpoint Journals.
+     */
+    protected byte[] plain() throws IOException {
+        var plain = new ByteArrayOutputStream();
+        var plainOut = new DataOutputStream(plain);
+        plainOut.writeInt(entries.size());
+        for (var entry : entries) {
+            plainOut.writeUTF(entry.name());
+            plainOut.writeLong(entry.size());
+            plainOut.writeLong(entry.offset());
+            plainOut.writeLong(entry.storedLength());
+            plainOut.writeLong(entry.encryptedOffset());
+        }
+        if (manifest != null) {
+            manifest.write(plainOut);
+        }
+        if (deduplicated() || dictionary != null) {
+            if (manifest == null) {
+                throw new IllegalStateException("Deduplicated archives and archives with a dictionary have a manifest.");
+            }
+            writeChunks(plainOut);
+        }
+        if (dictionary != null) {
+            plainOut.writeInt(dictionary.length);
+            plainOut.write(dictionary);
+        }
+        return plain.toByteArray();
+    }
+
+    protected static ArchiveIndex fromPlain(byte[] plain) throws IOException {
+        var index = new ArchiveIndex();
+        var dataIn = new DataInputStream(new ByteArrayInputStream(plain));
+        var count = dataIn.readInt();
+        for (var i = 0; i < count; i++) {
+            index.add(new Entry(dataIn.readUTF(), dataIn.readLong(), dataIn.readLong(), dataIn.readLong(), dataIn.readLong()));
+        }
+        if (dataIn.available() > 0) {
+            index.setManifest(ArchiveManifest.read(dataIn));
+        }
+        if (dataIn.available() > 0) {
+            index.readChunks(dataIn);
+        }
+        if (dataIn.available() > 0) {
+            var length = dataIn.readInt();
+            if (length <= 0 || length > Dictionary.MAX_SIZE) {
+                throw new IOException("Corrupt archive index, dictionary length " + length + ".");
+            }
+            index.setDictionary(dataIn.readNBytes(length));
+        }
+        return index;
+    }
+
+    /*
+    Recipes are stored as runs of consecutive ids, which is what the chunks a file stores first are.
+     */
+    private void writeChunks(DataOutputStream out) throws IOException {
+        out.writeInt(chunkCount);
+        for (var id = 0; id < chunkCount; id++) {
+            out.write(chunkHashes, id * ChunkIndex.HASH_LENGTH, ChunkIndex.HASH_LENGTH);
+            out.writeLong(chunkTable[2 * id]);
+            out.writeLong(chunkTable[2 * id + 1]);
+        }
+        var runs = new ArrayList<int[]>();
+        for (var entry : entries) {
+            if (!entry.chunked()) {
+                out.writeInt(-1);
+                continue;
+            }
+            runs.clear();
+            for (var id : entry.chunks()) {
+                var last = runs.isEmpty() ? null : runs.get(runs.size() - 1);
+                if (last != null && last[0] + last[1] == id) {
+                    last[1]++;
+                } else {
+                    runs.add(new int[]{id, 1});
+                }
+            }
+            out.writeInt(runs.size());
+            for (var run : runs) {
+                out.writeInt(run[0]);
+                out.writeInt(run[1]);
+            }
+        }
+    }
+
+    private void readChunks(DataInputStream in) throws IOException {
+        var count = in.readInt();
+        for (var id = 0; id < count; id++) {
+            var hash = in.readNBytes(ChunkIndex.HASH_LENGTH);
+            var offset = in.readLong();
+            addChunk(new Chunk(hash, offset, in.readInt(), in.readInt()));
+        }
+        for (var i = 0; i < entries.size(); i++) {
+            var runCount = in.readInt();
+            if (runCount < 0) {
+                continue;
+            }
+            var runs = new int[2 * runCount];
+            var total = 0L;
+            for (var run = 0; run < runCount; run++) {
+                var first = in.readInt();
+                var length = in.readInt();
+                if (first < 0 || length < 0 || (long) first + length > count) {
+                    throw new IOException("Corrupt archive index, chunk run " + first + "+" + length + ".");
+                }
+                runs[2 * run] = first;
+                runs[2 * run + 1] = length;
+                total += length;
+            }
+            if (total > Integer.MAX_VALUE) {
+                throw new IOException("Corrupt archive index, " + total + " chunks in one entry.");
+            }
+            var chunks = new int[(int) total];
+            var position = 0;
+            for (var run = 0; run < runCount; run++) {
+                for (var id = 0; id < runs[2 * run + 1]; id++) {
+                    chunks[position++] = runs[2 * run] + id;
+                }
+            }
+            var entry = entries.get(i);
+            entries.set(i, new Entry(entry.name(), entry.size(), entry.offset(), entry.storedLength(), entry.encryptedOffset(), chunks));
+        }
+    }
+}
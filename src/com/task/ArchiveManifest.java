@@ -0,0 +1,135 @@
+package com.task;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+State of the source files when an archive was made, stored in its encrypted index.
+A base archive has generation 0, each delta archive names the archive it follows by id and holds only new or changed
+files. Entries record the generation of the archive holding their content, tombstones the files deleted since the
+archive followed, so any archive of a chain describes the complete state at its point in time.
+ */
+public class ArchiveManifest {
+
+    public record Entry(String name, long size, long modified, byte[] hash, int generation) {
+    }
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final long archiveId;
+    private final long parentId;
+    private final int generation;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final List<String> tombstones = new ArrayList<>();
+
+    private ArchiveManifest(long archiveId, long parentId, int generation) {
+        this.archiveId = archiveId;
+        this.parentId = parentId;
+        this.generation = generation;
+    }
+
+    protected static ArchiveManifest base() {
+        return new ArchiveManifest(RANDOM.nextLong(), 0, 0);
+    }
+
+    /*
+    Empty manifest of a delta archive following this one.
+     */
+    protected ArchiveManifest next() {
+        return new ArchiveManifest(RANDOM.nextLong(), archiveId, generation + 1);
+    }
+
+    public long archiveId() {
+        return archiveId;
+    }
+
+    public long parentId() {
+        return parentId;
+    }
+
+    public int generation() {
+        return generation;
+    }
+
+    public Collection<Entry> entries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    public Entry entry(String name) {
+        return entries.get(name);
+    }
+
+    public List<String> tombstones() {
+        return Collections.unmodifiableList(tombstones);
+    }
+
+    protected void add(Entry entry) {
+        entries.put(entry.name(), entry);
+    }
+
+    protected void addTombstone(String name) {
+        tombstones.add(name);
+    }
+
+    protected void write(DataOutputStream out) throws IOException {
+        out.writeLong(archiveId);
+        out.writeLong(parentId);
+        out.writeInt(generation);
+        out.writeInt(entries.size());
+        for (var entry : entries.values()) {
+            out.writeUTF(entry.name());
+            out.writeLong(entry.size());
+            out.writeLong(entry.modified());
+            out.writeByte(entry.hash().length);
+            out.write(entry.hash());
+            out.writeInt(entry.generation());
+        }
+        out.writeInt(tombstones.size());
+        for (var tombstone : tombstones) {
+            out.writeUTF(tombstone);
+        }
+    }
+
+    protected static ArchiveManifest read(DataInputStream in) throws IOException {
+        var manifest = new ArchiveManifest(in.readLong(), in.readLong(), in.readInt());
+        var count = in.readInt();
+        for (var i = 0; i < count; i++) {
+            var name = in.readUTF();
+            var size = in.readLong();
+            var modified = in.readLong();
+            var hash = in.readNBytes(in.readUnsignedByte());
+            manifest.add(new Entry(name, size, modified, hash, in.readInt()));
+        }
+        var tombstones = in.readInt();
+        for (var i = 0; i < tombstones; i++) {
+            manifest.addTombstone(in.readUTF());
+        }
+        return manifest;
+    }
+
+    protected static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    protected static byte[] hash(File file, StageTimings timings) throws IOException {
+        var digest = newDigest();
+        IoBuffers.read(file, timings, StageTimings.Stage.HASH, digest::update);
+        return digest.digest();
+    }
+}
@@ -2,27 +2,79 @@ package com.task;
 
 import com.task.exceptions.InvalidArgumentException;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.List;
 import java.util.UUID;
 
+import static com.task.ArgumentParser.Mode.ADD_KEY;
+import static com.task.ArgumentParser.Mode.APPEND;
+import static com.task.ArgumentParser.Mode.DECRYPT;
 import static com.task.ArgumentParser.Mode.ENCRYPT;
+import static com.task.ArgumentParser.Mode.EXTRACT;
 import static com.task.ArgumentParser.Mode.HELP;
+import static com.task.ArgumentParser.Mode.REKEY;
+import static com.task.ArgumentParser.Mode.VERIFY;
 
-public record ArgumentParser(String[] args) {
+/*
+Relative paths are resolved against workingDirectory, or the process's if null.
+ */
+public record ArgumentParser(String[] args, File workingDirectory) {
     public enum Mode {
         HELP,
         ENCRYPT,
-        DECRYPT
+        DECRYPT,
+        LIST,
+        EXTRACT,
+        RESTORE,
+        VERIFY,
+        REKEY,
+        ADD_KEY,
+        APPEND
     }
 
     protected static final List<String> MODE_FLAG = Arrays.asList("-m", "-mode");
     protected static final List<String> MODE_VALUE_ENCRYPT = Arrays.asList("e", "encrypt");
     protected static final List<String> MODE_VALUE_DECRYPT = Arrays.asList("d", "decrypt");
+    protected static final List<String> MODE_VALUE_LIST = Arrays.asList("l", "list");
+    protected static final List<String> MODE_VALUE_EXTRACT = Arrays.asList("x", "extract");
+    protected static final List<String> MODE_VALUE_RESTORE = Arrays.asList("r", "restore");
+    protected static final List<String> MODE_VALUE_VERIFY = Arrays.asList("v", "verify");
+    protected static final List<String> MODE_VALUE_REKEY = Arrays.asList("k", "rekey");
+    protected static final List<String> MODE_VALUE_ADD_KEY = Arrays.asList("a", "addkey");
+    protected static final List<String> MODE_VALUE_APPEND = Arrays.asList("u", "append");
     protected static final List<String> PASSWORD_FLAG = Arrays.asList("-p", "-password");
+    protected static final List<String> NEW_PASSWORD_FLAG = Arrays.asList("-N", "-newpassword");
     protected static final List<String> HELP_FLAG = Arrays.asList("-h", "-help");
     protected static final List<String> NAME_FLAG = Arrays.asList("-n", "-name");
     protected static final List<String> OUTPUT_DIRECTORY_FLAG = Arrays.asList("-d", "-directory");
+    protected static final List<String> ENTRY_FLAG = Arrays.asList("-e", "-entry");
+    protected static final List<String> JOBS_FLAG = Arrays.asList("-j", "-jobs");
+    protected static final List<String> MEMORY_BUDGET_FLAG = Arrays.asList("-b", "-budget");
+    protected static final List<String> KDF_FLAG = Arrays.asList("-k", "-kdf");
+    protected static final List<String> COST_FLAG = Arrays.asList("-c", "-cost");
+    protected static final List<String> CIPHER_FLAG = Arrays.asList("-a", "-cipher");
+    protected static final List<String> INCREMENTAL_FLAG = Arrays.asList("-i", "-incremental");
+    protected static final List<String> LEVEL_FLAG = Arrays.asList("-l", "-level");
+    protected static final String LEVEL_VALUE_AUTO = "auto";
+    protected static final List<String> INCLUDE_FLAG = Arrays.asList("-g", "-include");
+    protected static final List<String> EXCLUDE_FLAG = Arrays.asList("-x", "-exclude");
+    protected static final String STREAM = "-";
+    protected static final List<String> SUMMARY_FLAG = Arrays.asList("-s", "-summary");
+    protected static final String SUMMARY_VALUE_TEXT = "text";
+    protected static final String SUMMARY_VALUE_JSON = "json";
+    protected static final List<String> PROGRESS_FLAG = Arrays.asList("-t", "-progress");
+    protected static final List<String> CHECKPOINT_FLAG = Arrays.asList("-R", "-checkpoint");
+    protected static final List<String> DEDUP_FLAG = Arrays.asList("-D", "-dedup");
+    protected static final List<String> BLOCK_PARALLEL_FLAG = Arrays.asList("-P", "-parallel");
+    protected static final List<String> DICTIONARY_FLAG = Arrays.asList("-w", "-dictionary");
+    protected static final List<String> VOLUME_FLAG = Arrays.asList("-V", "-volume");
+    protected static final List<String> SERVE_FLAG = Arrays.asList("-S", "-serve");
+    protected static final List<String> CONNECT_FLAG = Arrays.asList("-C", "-connect");
+
+    public ArgumentParser(String[] args) {
+        this(args, null);
+    }
 
     public Command parse() throws InvalidArgumentException {
 
@@ -33,16 +85,31 @@ public record ArgumentParser(String[] args) {
             return new Command(HELP);
         }
 
-        var command = new Command();
+        var command = new Command(workingDirectory);
         int firstFileIndex = parseFlags(args, command);
         if (command.getPassword() == null) {
             throw new InvalidArgumentException("No password set.");
         }
+        if (command.getMode() == APPEND && command.getName() == null) {
+            throw new InvalidArgumentException("No archive name set to append to.");
+        }
         setDefaults(command);
+        if (command.getMode() == EXTRACT && command.getEntries().isEmpty()) {
+            throw new InvalidArgumentException("No entry name set for extraction.");
+        }
+        var rekeys = command.getMode() == REKEY || command.getMode() == ADD_KEY;
+        if (rekeys != (command.getNewPassword() != null)) {
+            throw new InvalidArgumentException(rekeys ? "No new password set." : "A new password is only set in rekey and addkey mode.");
+        }
+        var kdf = command.getKdf();
+        if (command.getCost() > kdf.maxCost() || (kdf == Kdf.SCRYPT && Integer.bitCount(command.getCost()) != 1)) {
+            throw new InvalidArgumentException("Invalid cost for " + kdf.names().get(0) + ": " + command.getCost() + ".");
+        }
 
         for (var i = firstFileIndex; i < args.length; i++) {
             command.addFile(args[i]);
         }
+        checkStreams(command);
 
         return command;
     }
@@ -57,11 +124,43 @@ public record ArgumentParser(String[] args) {
         if (command.getOutputDirectory() == null) {
             command.setDefaultOutputDirectory();
         }
+        if (command.getCost() == 0) {
+            command.setCost(command.getKdf().defaultCost());
+        }
+    }
+
+    /*
+    Standard input can only be the single source of an encrypt, decrypt or verify, standard output only the output of
+    the first two.
+    Neither can be resumed from a checkpoint or split into volumes. Appending continues the volumes an archive has.
+     */
+    private void checkStreams(Command command) throws InvalidArgumentException {
+        var mode = command.getMode();
+        var streamed = mode == ENCRYPT || mode == DECRYPT;
+        if (command.getFiles().stream().anyMatch(Command::isStream) && ((!streamed && mode != VERIFY) || command.getFiles().size() > 1)) {
+            throw new InvalidArgumentException("Standard input (" + STREAM + ") is only supported as the single file to encrypt, decrypt or verify.");
+        }
+        if (Command.isStream(command.getOutputDirectory()) && mode != DECRYPT) {
+            throw new InvalidArgumentException("Standard output (" + STREAM + ") is only supported as output directory when decrypting, use the name when encrypting.");
+        }
+        if (command.writesStandardOutput() && command.getPreviousArchive() != null) {
+            throw new InvalidArgumentException("Incremental archives can not be written to standard output.");
+        }
+        if (command.readsStandardInput() && command.getPreviousArchive() != null) {
+            throw new InvalidArgumentException("Incremental archives can not be created from standard input.");
+        }
+        if (command.writesVolumes() && (mode != ENCRYPT || command.readsStandardInput() || command.writesStandardOutput()
+                || command.getStripeDirectories().stream().anyMatch(Command::isStream))) {
+            throw new InvalidArgumentException("Volumes are only written when encrypting files, and only one output directory can be given otherwise.");
+        }
+        if (command.getCheckpointSeconds() > 0 && ((!streamed && mode != APPEND) || command.readsStandardInput() || command.writesStandardOutput())) {
+            throw new InvalidArgumentException("Checkpoints are only supported when encrypting, appending or decrypting files.");
+        }
     }
 
     private int parseFlags(String[] args, Command command) throws InvalidArgumentException {
         for (var i = 0; i < args.length; i += 2) {
-            if (!args[i].startsWith("-")) {
+            if (!args[i].startsWith("-") || args[i].equals(STREAM)) {
                 return i;
             }
             if (i + 2 > args.length) {
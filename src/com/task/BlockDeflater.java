@@ -0,0 +1,210 @@
+package com.task;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static com.task.SegmentedOutputStream.await;
+
+/*
+Block-parallel raw deflate, as pigz does it. The input is cut into blocks of BLOCK_SIZE bytes, which are deflated
+concurrently on executor, up to maxPending at a time, and written to out in order. Each block's deflater has its
+dictionary primed with the last 32 KiB of the block before, so matches still reach back across block boundaries.
+Every block but the last ends in a sync flush, which ends it on a byte boundary, so the blocks add up to one deflate
+stream that any inflater reads. The CRC-32 of every block is taken on its worker and combined in order.
+ */
+public class BlockDeflater {
+
+    protected static final int BLOCK_SIZE = 256 << 10;
+    private static final int DICTIONARY_SIZE = 32 << 10;
+
+    private record Block(ByteArrayOutputStream deflated, long crc, int length, byte[] input) {
+    }
+
+    private final OutputStream out;
+    private final int level;
+    private final Executor executor;
+    private final int maxPending;
+    private final ArrayDeque<CompletableFuture<Block>> pending = new ArrayDeque<>();
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private final Queue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int filled;
+    private byte[] dictionary;
+    private long crc;
+    private long compressedSize;
+
+    public BlockDeflater(OutputStream out, int level, Executor executor, int maxPending) {
+        this.out = out;
+        this.level = level;
+        this.executor = executor;
+        this.maxPending = Math.max(1, maxPending);
+    }
+
+    public void write(ByteBuffer input) throws IOException {
+        while (input.hasRemaining()) {
+            var count = Math.min(input.remaining(), block.length - filled);
+            input.get(block, filled, count);
+            filled += count;
+            if (filled == block.length) {
+                submit(false);
+            }
+        }
+    }
+
+    /*
+    Deflates the rest and ends the stream, after which crc and compressedSize are final.
+     */
+    public void finish() throws IOException {
+        try {
+            submit(true);
+            while (!pending.isEmpty()) {
+                writeNext();
+            }
+        } finally {
+            end();
+        }
+    }
+
+    public long crc() {
+        return crc;
+    }
+
+    public long compressedSize() {
+        return compressedSize;
+    }
+
+    /*
+    Releases the deflaters. Blocks still being deflated release theirs when garbage collected.
+     */
+    public void end() {
+        Deflater deflater;
+        while ((deflater = deflaters.poll()) != null) {
+            deflater.end();
+        }
+    }
+
+    /*
+    CRC-32 of two byte sequences one after the other, from the CRC-32 of each and the length of the second, as zlib's
+    crc32_combine: crc1 is run through length2 zero bytes, by squaring the operator for one zero bit, and crc2 added.
+     */
+    protected static long combine(long crc1, long crc2, long length2) {
+        if (length2 <= 0) {
+            return crc1;
+        }
+        var even = new long[32];
+        var odd = new long[32];
+        // The operator for one zero bit.
+        odd[0] = 0xedb88320L;
+        var row = 1L;
+        for (var n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        // Two zero bits, then four, the first squaring in the loop makes it one zero byte.
+        square(even, odd);
+        square(odd, even);
+        do {
+            square(even, odd);
+            if ((length2 & 1) != 0) {
+                crc1 = times(even, crc1);
+            }
+            length2 >>= 1;
+            if (length2 == 0) {
+                break;
+            }
+            square(odd, even);
+            if ((length2 & 1) != 0) {
+                crc1 = times(odd, crc1);
+            }
+            length2 >>= 1;
+        } while (length2 != 0);
+        return crc1 ^ crc2;
+    }
+
+    private static long times(long[] matrix, long vector) {
+        var sum = 0L;
+        for (var i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void square(long[] square, long[] matrix) {
+        for (var n = 0; n < 32; n++) {
+            square[n] = times(matrix, matrix[n]);
+        }
+    }
+
+    private void submit(boolean last) throws IOException {
+        while (pending.size() >= maxPending) {
+            writeNext();
+        }
+        var input = block;
+        var length = filled;
+        var primed = dictionary;
+        if (!last) {
+            dictionary = new byte[DICTIONARY_SIZE];
+            System.arraycopy(input, length - DICTIONARY_SIZE, dictionary, 0, DICTIONARY_SIZE);
+            var recycled = buffers.poll();
+            block = recycled == null ? new byte[BLOCK_SIZE] : recycled;
+            filled = 0;
+        }
+        pending.add(CompletableFuture.supplyAsync(() -> deflate(input, length, primed, last), executor));
+    }
+
+    private void writeNext() throws IOException {
+        var next = await(pending.poll());
+        next.deflated().writeTo(out);
+        compressedSize += next.deflated().size();
+        crc = combine(crc, next.crc(), next.length());
+        buffers.offer(next.input());
+    }
+
+    /*
+    Runs on the executor.
+     */
+    private Block deflate(byte[] input, int length, byte[] primed, boolean last) {
+        var checksum = new CRC32();
+        checksum.update(input, 0, length);
+        var deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+        }
+        try {
+            if (primed != null) {
+                deflater.setDictionary(primed);
+            }
+            deflater.setInput(input, 0, length);
+            var deflated = new ByteArrayOutputStream(length / 2 + 64);
+            var buffer = new byte[64 << 10];
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    deflated.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } else {
+                // A full output buffer may hold back more of the flush.
+                int count;
+                do {
+                    count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    deflated.write(buffer, 0, count);
+                } while (count == buffer.length);
+            }
+            return new Block(deflated, checksum.getValue(), length, input);
+        } finally {
+            deflater.reset();
+            deflaters.offer(deflater);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.task;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/*
+Chunk ids by content hash for deduplication, see ChunkStore. An open addressing hash table with linear probing, each
+slot holding a SHA-256 hash and id + 1 (0 marks a free slot), probed from the hash's first 8 bytes.
+Slots are kept in pages of PAGE_SLOTS. While the table fits memoryLimit the pages are on the heap; a table growing
+beyond it is moved to a memory-mapped file in spillDirectory instead, so the operating system pages it to disk as
+needed and very large inputs do not run out of heap. The spill file is deleted on close.
+Safe to use from several threads.
+ */
+public class ChunkIndex implements AutoCloseable {
+
+    protected static final int HASH_LENGTH = 32;
+    private static final int SLOT = HASH_LENGTH + Integer.BYTES;
+    private static final int PAGE_SLOTS = 1 << 20;
+    private static final long INITIAL_SLOTS = 1 << 12;
+
+    private final long memoryLimit;
+    private final File spillDirectory;
+    private ByteBuffer[] pages;
+    private long capacity;
+    private long count;
+    private File spill;
+
+    public ChunkIndex(long memoryLimit, File spillDirectory) throws IOException {
+        this.memoryLimit = memoryLimit;
+        this.spillDirectory = spillDirectory;
+        allocate(INITIAL_SLOTS);
+    }
+
+    /*
+    The id added for hash, or -1.
+     */
+    public synchronized int find(byte[] hash) {
+        var key = ByteBuffer.wrap(hash);
+        var slot = slot(hash);
+        while (true) {
+            var page = pages[(int) (slot / PAGE_SLOTS)];
+            var position = (int) (slot % PAGE_SLOTS) * SLOT;
+            var id = page.getInt(position + HASH_LENGTH);
+            if (id == 0) {
+                return -1;
+            }
+            if (matches(page, position, key)) {
+                return id - 1;
+            }
+            slot = (slot + 1) & (capacity - 1);
+        }
+    }
+
+    /*
+    Adds a hash that is not in the index yet.
+     */
+    public synchronized void add(byte[] hash, int id) throws IOException {
+        if (3 * (count + 1) > 2 * capacity) {
+            grow();
+        }
+        insert(hash, id + 1);
+        count++;
+    }
+
+    public synchronized long size() {
+        return count;
+    }
+
+    public synchronized boolean spilled() {
+        return spill != null;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        pages = null;
+        if (spill != null) {
+            Files.deleteIfExists(spill.toPath());
+            spill = null;
+        }
+    }
+
+    private void insert(byte[] hash, int storedId) {
+        var slot = slot(hash);
+        while (true) {
+            var page = pages[(int) (slot / PAGE_SLOTS)];
+            var position = (int) (slot % PAGE_SLOTS) * SLOT;
+            if (page.getInt(position + HASH_LENGTH) == 0) {
+                page.put(position, hash);
+                page.putInt(position + HASH_LENGTH, storedId);
+                return;
+            }
+            slot = (slot + 1) & (capacity - 1);
+        }
+    }
+
+    private static boolean matches(ByteBuffer page, int position, ByteBuffer key) {
+        for (var i = 0; i < HASH_LENGTH; i += Long.BYTES) {
+            if (page.getLong(position + i) != key.getLong(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long slot(byte[] hash) {
+        return ByteBuffer.wrap(hash).getLong() & (capacity - 1);
+    }
+
+    private void grow() throws IOException {
+        var oldPages = pages;
+        var oldSpill = spill;
+        allocate(2 * capacity);
+        var hash = new byte[HASH_LENGTH];
+        for (var page : oldPages) {
+            for (var position = 0; position < page.capacity(); position += SLOT) {
+                var storedId = page.getInt(position + HASH_LENGTH);
+                if (storedId != 0) {
+                    page.get(position, hash);
+                    insert(hash, storedId);
+                }
+            }
+        }
+        if (oldSpill != null) {
+            Files.deleteIfExists(oldSpill.toPath());
+        }
+    }
+
+    private void allocate(long slots) throws IOException {
+        capacity = slots;
+        var pageSlots = (int) Math.min(slots, PAGE_SLOTS);
+        pages = new ByteBuffer[(int) (slots / pageSlots)];
+        if (slots * SLOT <= memoryLimit) {
+            spill = null;
+            for (var i = 0; i < pages.length; i++) {
+                pages[i] = ByteBuffer.allocate(pageSlots * SLOT);
+            }
+            return;
+        }
+        spill = File.createTempFile(".chunks-", ".tmp", spillDirectory);
+        try (var channel = FileChannel.open(spill.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            for (var i = 0; i < pages.length; i++) {
+                pages[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * pageSlots * SLOT, (long) pageSlots * SLOT);
+            }
+        } catch (IOException ex) {
+            Files.deleteIfExists(spill.toPath());
+            throw ex;
+        }
+    }
+}
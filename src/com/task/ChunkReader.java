@@ -0,0 +1,259 @@
+package com.task;
+
+import com.task.exceptions.CipherException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+import static com.task.SegmentedOutputStream.await;
+
+/*
+Reads the entries of a deduplicated archive (see ChunkStore) from its chunks. The entries to read are known up front,
+and so are the segments holding their chunks: these are read and decrypted ahead on executor, up to maxPending at a
+time, while the caller inflates. Decrypted segments are kept in a least recently used cache of cacheBytes, as
+chunks referred to again are usually close to each other; a segment is only read again once it has been evicted.
+Which reads will hit the cache is worked out up front, by running the same cache over the schedule of reads.
+Entries must be opened in the order they were given, and each read to its end before the next is opened.
+ */
+public class ChunkReader implements AutoCloseable {
+
+    private static final int LOCAL_HEADER_LENGTH = 30;
+
+    private record Segment(long index, byte[] plain, int length) {
+    }
+
+    private static class LeastRecentlyUsed<V> extends LinkedHashMap<Long, V> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+
+        LeastRecentlyUsed(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, V> eldest) {
+            return size() > capacity;
+        }
+    }
+
+    private final VolumeSet archive;
+    private final ArchiveHeader header;
+    private final SegmentCipher cipher;
+    private final ArchiveIndex index;
+    private final Executor executor;
+    private final int maxPending;
+    private final StageTimings timings;
+    private final long[] schedule;
+    private final ArrayDeque<CompletableFuture<Segment>> ahead = new ArrayDeque<>();
+    private final Inflater inflater = new Inflater(true);
+    private final CRC32 crc = new CRC32();
+    private final LeastRecentlyUsed<Segment> cache;
+    private int scheduled;
+
+    public ChunkReader(VolumeSet archive, ArchiveHeader header, SegmentCipher cipher, ArchiveIndex index, List<ArchiveIndex.Entry> entries,
+                       Executor executor, int maxPending, long cacheBytes, StageTimings timings) {
+        this.archive = archive;
+        this.header = header;
+        this.cipher = cipher;
+        this.index = index;
+        this.executor = executor;
+        this.maxPending = Math.max(1, maxPending);
+        this.timings = timings;
+        var cacheSegments = (int) Math.max(1, Math.min(Integer.MAX_VALUE, cacheBytes / header.segmentSize()));
+        this.cache = new LeastRecentlyUsed<>(cacheSegments);
+        this.schedule = schedule(entries, cacheSegments);
+    }
+
+    /*
+    The content of the next entry.
+     */
+    protected InputStream open(ArchiveIndex.Entry entry) {
+        return new InputStream() {
+            private int next;
+            private byte[] chunk = new byte[0];
+            private int position;
+
+            @Override
+            public int read() throws IOException {
+                var single = new byte[1];
+                return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                if (length == 0) {
+                    return 0;
+                }
+                while (position == chunk.length) {
+                    if (next == entry.chunks().length) {
+                        return -1;
+                    }
+                    chunk = readChunk(entry.chunks()[next++]);
+                    position = 0;
+                }
+                var count = Math.min(length, chunk.length - position);
+                System.arraycopy(chunk, position, bytes, offset, count);
+                position += count;
+                return count;
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        inflater.end();
+    }
+
+    /*
+    Segments to read, in the order the chunks of entries need them and the cache misses them.
+     */
+    private long[] schedule(List<ArchiveIndex.Entry> entries, int cacheSegments) {
+        var segmentSize = header.segmentSize();
+        var cached = new LeastRecentlyUsed<Boolean>(cacheSegments);
+        var segments = new long[1024];
+        var count = 0;
+        for (var entry : entries) {
+            for (var id : entry.chunks()) {
+                var chunk = index.chunk(id);
+                var last = (chunk.offset() + chunk.storedLength() - 1) / segmentSize;
+                for (var segment = chunk.offset() / segmentSize; segment <= last; segment++) {
+                    if (cached.get(segment) != null) {
+                        continue;
+                    }
+                    cached.put(segment, true);
+                    if (count == segments.length) {
+                        segments = Arrays.copyOf(segments, 2 * count);
+                    }
+                    segments[count++] = segment;
+                }
+            }
+        }
+        return Arrays.copyOf(segments, count);
+    }
+
+    private byte[] readChunk(int id) throws IOException {
+        var chunk = index.chunk(id);
+        var segmentSize = header.segmentSize();
+        var stored = new byte[chunk.storedLength()];
+        var filled = 0;
+        for (var segmentIndex = chunk.offset() / segmentSize; filled < stored.length; segmentIndex++) {
+            var segment = segment(segmentIndex);
+            var from = (int) (chunk.offset() + filled - segmentIndex * segmentSize);
+            var count = Math.min(stored.length - filled, segment.length() - from);
+            if (count <= 0) {
+                throw new IOException("Corrupt archive, chunk " + id + " runs past segment " + segmentIndex + ".");
+            }
+            System.arraycopy(segment.plain(), from, stored, filled, count);
+            filled += count;
+        }
+        return inflate(id, chunk, stored);
+    }
+
+    private Segment segment(long segmentIndex) throws IOException {
+        var segment = cache.get(segmentIndex);
+        if (segment != null) {
+            return segment;
+        }
+        while (ahead.size() < maxPending && scheduled < schedule.length) {
+            var next = schedule[scheduled++];
+            ahead.add(CompletableFuture.supplyAsync(() -> readSegment(next), executor));
+        }
+        var next = ahead.poll();
+        segment = next == null ? null : await(next);
+        if (segment == null || segment.index() != segmentIndex) {
+            throw new IllegalStateException("Entries read out of order.");
+        }
+        cache.put(segmentIndex, segment);
+        return segment;
+    }
+
+    /*
+    Runs on the executor.
+     */
+    private Segment readSegment(long segmentIndex) {
+        try {
+            var start = System.nanoTime();
+            var position = header.segmentOffset(segmentIndex);
+            var prefix = ByteBuffer.allocate(SegmentedOutputStream.RECORD_PREFIX);
+            archive.read(prefix, position);
+            var length = prefix.getInt(0);
+            var last = prefix.get(Integer.BYTES) != 0;
+            if (length < SegmentCipher.SEGMENT_OVERHEAD || length > header.segmentSize() + SegmentCipher.SEGMENT_OVERHEAD) {
+                throw new IOException("Corrupt archive, segment " + segmentIndex + " has invalid length " + length + ".");
+            }
+            var sealed = new byte[length];
+            archive.read(ByteBuffer.wrap(sealed), position + SegmentedOutputStream.RECORD_PREFIX);
+            timings.busy(StageTimings.Stage.READ, start, SegmentedOutputStream.RECORD_PREFIX + length);
+
+            start = System.nanoTime();
+            var plain = new byte[header.segmentSize()];
+            int plainLength;
+            try {
+                plainLength = cipher.decryptSegment(sealed, length, segmentIndex, last, plain);
+            } catch (CipherException ex) {
+                throw new IOException("Failed to decrypt segment " + segmentIndex + ". Check password.", ex);
+            }
+            timings.busy(StageTimings.Stage.DECRYPT, start, plainLength);
+            return new Segment(segmentIndex, plain, plainLength);
+        } catch (IOException ex) {
+            throw new CompletionException(ex);
+        }
+    }
+
+    /*
+    Chunks are zip entries with known sizes, so their local header says how they are stored.
+     */
+    private byte[] inflate(int id, ArchiveIndex.Chunk chunk, byte[] stored) throws IOException {
+        var local = ByteBuffer.wrap(stored).order(ByteOrder.LITTLE_ENDIAN);
+        if (stored.length < LOCAL_HEADER_LENGTH || local.getInt(0) != ZipStreamWriter.LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("Corrupt archive, chunk " + id + " has no zip header.");
+        }
+        var method = local.getShort(8) & 0xffff;
+        var expectedCrc = local.getInt(14) & 0xffffffffL;
+        var dataOffset = LOCAL_HEADER_LENGTH + (local.getShort(26) & 0xffff) + (local.getShort(28) & 0xffff);
+        var dataLength = stored.length - dataOffset;
+        var plain = new byte[chunk.size()];
+        if (method == ZipEntry.STORED) {
+            if (dataLength != plain.length) {
+                throw new IOException("Corrupt archive, chunk " + id + " has " + dataLength + " of " + plain.length + " bytes.");
+            }
+            System.arraycopy(stored, dataOffset, plain, 0, dataLength);
+        } else {
+            inflater.reset();
+            inflater.setInput(stored, dataOffset, dataLength);
+            try {
+                var length = inflater.inflate(plain);
+                if (length == plain.length && !inflater.finished()) {
+                    // The end of the deflate stream may still be unread once the output is full.
+                    length += inflater.inflate(new byte[1]);
+                }
+                if (length != plain.length || !inflater.finished()) {
+                    throw new IOException("Corrupt archive, chunk " + id + " inflates to " + length + " of " + plain.length + " bytes.");
+                }
+            } catch (DataFormatException ex) {
+                throw new IOException("Corrupt archive, chunk " + id + ": " + ex.getMessage(), ex);
+            }
+        }
+        crc.reset();
+        crc.update(plain);
+        if (crc.getValue() != expectedCrc) {
+            throw new IOException("Corrupt archive, chunk " + id + " fails its CRC.");
+        }
+        return plain;
+    }
+}
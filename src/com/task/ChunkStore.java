@@ -0,0 +1,187 @@
+package com.task;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.task.SegmentedOutputStream.await;
+
+/*
+Writes entries as content-defined chunks (see Chunker) for deduplication: each unique chunk is stored once, as a zip
+entry named CHUNK_PREFIX and the start of its hash, and entries become lists of chunk ids in the ArchiveIndex.
+Identical files and the unchanged parts of similar ones are compressed, encrypted and stored only once.
+The calling thread reads and cuts entries while chunks are hashed and compressed on threads workers, chunks are
+stored in order. A chunk already in the ChunkIndex when it has been hashed is not compressed at all; duplicates close
+together may both be compressed ahead, and all but the first dropped. At most maxPending chunks are in flight.
+Archives being resumed from a checkpoint already hold chunks, those are put back into the ChunkIndex.
+ */
+public class ChunkStore implements AutoCloseable {
+
+    protected static final String CHUNK_PREFIX = "/chunks/";
+    private static final int NAME_HASH_BYTES = 8;
+
+    private record Prepared(byte[] hash, CompressedEntry compressed) {
+    }
+
+    /*
+    A chunk of recipe's entry, or the end of the entry if chunk is null.
+     */
+    private record Pending(Recipe recipe, CompletableFuture<Prepared> chunk) {
+    }
+
+    private static class Recipe {
+        private final String name;
+        private final long modified;
+        private int[] chunks = new int[16];
+        private int count;
+        private long size;
+        private long storedLength;
+        private long compressedSize;
+        private byte[] hash;
+        private Codec codec;
+
+        Recipe(String name, long modified) {
+            this.name = name;
+            this.modified = modified;
+        }
+
+        void add(int id) {
+            if (count == chunks.length) {
+                chunks = Arrays.copyOf(chunks, 2 * count);
+            }
+            chunks[count++] = id;
+        }
+    }
+
+    private final ZipStreamWriter zipOut;
+    private final ArchiveIndex index;
+    private final Codec codec;
+    private final Chunker chunker;
+    private final ChunkIndex chunkIndex;
+    private final ExecutorService workers;
+    private final int maxPending;
+    private final Zipper.Checkpoints checkpoints;
+    private final StageTimings timings;
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+
+    /*
+    Chunks are stored with codec, or one chosen per chunk if null. The ChunkIndex may use a quarter of memoryBudget
+    before it spills to spillDirectory, chunks in flight about half of it.
+     */
+    public ChunkStore(ZipStreamWriter zipOut, ArchiveIndex index, Codec codec, int averageChunkSize, int workers, long memoryBudget,
+                      File spillDirectory, Zipper.Checkpoints checkpoints, StageTimings timings) throws IOException {
+        this.zipOut = zipOut;
+        this.index = index;
+        this.codec = codec;
+        this.chunker = new Chunker(averageChunkSize);
+        this.chunkIndex = new ChunkIndex(memoryBudget / 4, spillDirectory);
+        this.workers = Executors.newFixedThreadPool(workers);
+        this.maxPending = (int) Math.max(1, Math.min(4L * workers, memoryBudget / 4 / chunker.maxSize()));
+        this.checkpoints = checkpoints;
+        this.timings = timings;
+        for (var id = 0; id < index.chunkCount(); id++) {
+            chunkIndex.add(index.chunk(id).hash(), id);
+        }
+    }
+
+    /*
+    Stores the entry read from source. It is added to the index once its last chunk is stored, by finish at the latest.
+     */
+    protected void write(String name, long modified, Zipper.ChunkSource source) throws IOException {
+        var recipe = new Recipe(name, modified);
+        var digest = ArchiveManifest.newDigest();
+        recipe.size = source.read(data -> {
+            digest.update(data.duplicate());
+            chunker.write(data, chunk -> submit(recipe, chunk));
+        });
+        chunker.finish(chunk -> submit(recipe, chunk));
+        recipe.hash = digest.digest();
+        pending.addLast(new Pending(recipe, null));
+        storePending(maxPending);
+    }
+
+    /*
+    Stores everything still in flight.
+     */
+    protected void finish() throws IOException {
+        storePending(0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        workers.shutdownNow();
+        chunkIndex.close();
+    }
+
+    private void submit(Recipe recipe, byte[] chunk) throws IOException {
+        storePending(maxPending - 1);
+        pending.addLast(new Pending(recipe, CompletableFuture.supplyAsync(() -> prepare(recipe.modified, chunk), workers)));
+    }
+
+    private void storePending(int keep) throws IOException {
+        while (pending.size() > keep) {
+            storeNext();
+        }
+    }
+
+    /*
+    Runs on a worker.
+     */
+    private Prepared prepare(long modified, byte[] chunk) {
+        var start = System.nanoTime();
+        var hash = ArchiveManifest.newDigest().digest(chunk);
+        try {
+            CompressedEntry compressed = null;
+            if (chunkIndex.find(hash) < 0) {
+                var name = CHUNK_PREFIX + HexFormat.of().formatHex(hash, 0, NAME_HASH_BYTES);
+                compressed = CompressedEntry.compress(name, modified, ByteBuffer.wrap(chunk), codec);
+            }
+            timings.busy(StageTimings.Stage.COMPRESS, start, chunk.length);
+            return new Prepared(hash, compressed);
+        } catch (IOException ex) {
+            throw new CompletionException(ex);
+        }
+    }
+
+    private void storeNext() throws IOException {
+        var next = pending.removeFirst();
+        var recipe = next.recipe();
+        if (next.chunk() == null) {
+            addEntry(recipe);
+            return;
+        }
+        var chunk = await(next.chunk());
+        var id = chunkIndex.find(chunk.hash());
+        if (id < 0) {
+            // Chunks are only added here, so one missing now was missing when it was prepared, and was compressed.
+            var compressed = chunk.compressed();
+            var offset = zipOut.position();
+            zipOut.write(compressed);
+            var storedLength = zipOut.position() - offset;
+            id = index.addChunk(new ArchiveIndex.Chunk(chunk.hash(), offset, (int) storedLength, (int) compressed.size()));
+            chunkIndex.add(chunk.hash(), id);
+            recipe.storedLength += storedLength;
+            recipe.compressedSize += compressed.compressedSize();
+            if (recipe.codec == null) {
+                recipe.codec = compressed.codec();
+            }
+        }
+        recipe.add(id);
+    }
+
+    private void addEntry(Recipe recipe) throws IOException {
+        index.add(new ArchiveIndex.Entry(recipe.name, recipe.size, -1, recipe.storedLength, -1, Arrays.copyOf(recipe.chunks, recipe.count)));
+        var manifest = index.manifest();
+        manifest.add(new ArchiveManifest.Entry(recipe.name, recipe.size, recipe.modified, recipe.hash, manifest.generation()));
+        var entryCodec = recipe.codec != null ? recipe.codec : codec != null ? codec : Codec.FULL;
+        timings.entry(recipe.name, recipe.size, recipe.compressedSize, entryCodec);
+        checkpoints.entryWritten();
+    }
+}
@@ -0,0 +1,106 @@
+package com.task;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+Content-defined chunking: data is cut where a gear rolling hash of the last 64 bytes matches a mask, so cut points
+move with the content. Inserting or removing bytes only changes the chunks around the edit, and identical content
+yields identical chunks whatever file or offset it is at.
+Cut points follow FastCDC: none before minSize, a harder mask up to the average size and an easier one after it,
+which narrows the spread of chunk sizes, and a forced cut at maxSize. Hashing starts 64 bytes before minSize, the
+hash only depends on the bytes since.
+ */
+public class Chunker {
+
+    @FunctionalInterface
+    public interface ChunkConsumer {
+        void accept(byte[] chunk) throws IOException;
+    }
+
+    private static final int WINDOW = 64;
+    /* Fixed seed: chunks of the same content must match across runs. */
+    private static final long[] GEAR = new Random(0x45465341L).longs(256).toArray();
+
+    private final int minSize;
+    private final int maxSize;
+    private final long smallMask;
+    private final long largeMask;
+    private final int averageSize;
+    private final byte[] buffer;
+    private int length;
+    private int scanned;
+    private long hash;
+
+    /*
+    averageSize must be a power of two of at least 256 bytes, chunks are a quarter to four times that long.
+     */
+    public Chunker(int averageSize) {
+        if (Integer.bitCount(averageSize) != 1 || averageSize < 4 * WINDOW) {
+            throw new IllegalArgumentException("Invalid average chunk size " + averageSize + ".");
+        }
+        var bits = Integer.numberOfTrailingZeros(averageSize);
+        this.averageSize = averageSize;
+        this.minSize = averageSize / 4;
+        this.maxSize = averageSize * 4;
+        // The top bits of the hash depend on the most bytes.
+        this.smallMask = -1L << (Long.SIZE - bits - 1);
+        this.largeMask = -1L << (Long.SIZE - bits + 1);
+        this.buffer = new byte[maxSize];
+        this.scanned = minSize - WINDOW;
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    /*
+    Passes every chunk completed by data to consumer, keeping the rest for the next call. Chunks are copies.
+     */
+    public void write(ByteBuffer data, ChunkConsumer consumer) throws IOException {
+        while (data.hasRemaining()) {
+            var count = Math.min(data.remaining(), maxSize - length);
+            data.get(buffer, length, count);
+            length += count;
+            int cut;
+            while ((cut = findCut()) > 0) {
+                consumer.accept(Arrays.copyOf(buffer, cut));
+                System.arraycopy(buffer, cut, buffer, 0, length - cut);
+                length -= cut;
+                scanned = minSize - WINDOW;
+                hash = 0;
+            }
+        }
+    }
+
+    /*
+    Passes the rest of the data as the last chunk, if any, and starts over.
+     */
+    public void finish(ChunkConsumer consumer) throws IOException {
+        if (length > 0) {
+            consumer.accept(Arrays.copyOf(buffer, length));
+        }
+        length = 0;
+        scanned = minSize - WINDOW;
+        hash = 0;
+    }
+
+    /*
+    The length of the first chunk in the buffer, or 0 if it needs more data.
+     */
+    private int findCut() {
+        var hash = this.hash;
+        for (var i = scanned; i < length; i++) {
+            hash = (hash << 1) + GEAR[buffer[i] & 0xff];
+            var size = i + 1;
+            if (size >= minSize && (hash & (size < averageSize ? smallMask : largeMask)) == 0) {
+                return size;
+            }
+        }
+        this.hash = hash;
+        scanned = Math.max(scanned, length);
+        return length == maxSize ? maxSize : 0;
+    }
+}
@@ -10,12 +10,21 @@ import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.PBEParameterSpec;
-import java.io.FileInputStream;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import static javax.crypto.Cipher.DECRYPT_MODE;
 import static javax.crypto.Cipher.ENCRYPT_MODE;
@@ -26,14 +35,202 @@ public class CipherMaker {
     private static final String KEY_ALGORITHM = "PBEWithMD5AndDES";
     private static final String CIPHER_ALGORITHM = "PBEWithMD5AndDES/CBC/PKCS5Padding";
 
+    /*
+    Key derivation of version 1 segmented archives, which did not store it in the header.
+     */
+    protected static final KdfParameters VERSION_1_PARAMETERS = new KdfParameters(Kdf.PBKDF2_SHA256, SALT, 65536, 0, 0);
+    private static final int KEY_CACHE_SIZE = 64;
+    private static final DerivedKeyCache KEY_CACHE = new DerivedKeyCache(KEY_CACHE_SIZE);
+    /* Authenticated with wrapped data keys, like the index's segment number, -1, and the journal's, -3. */
+    private static final long KEY_SEGMENT = -2;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private record SharedParameters(KdfParameters parameters, long created) {
+    }
+
+    private record Unlocked(int slot, byte[] dataKey) {
+    }
+
+    private static final Map<String, SharedParameters> SHARED_PARAMETERS = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SharedParameters> eldest) {
+            return size() > KEY_CACHE_SIZE;
+        }
+    };
+    private static volatile long sharedParametersMillis;
+
+    private final char[] password;
     private final SecretKey key;
+    private Kdf kdf = Kdf.PBKDF2_SHA256;
+    private int cost = Kdf.PBKDF2_SHA256.defaultCost();
+    private CipherSuite suite = CipherSuite.AES_256_GCM;
+    private KdfParameters archiveParameters;
+    private KdfParameters rekeyParameters;
+    private StageTimings timings = new StageTimings();
 
     public CipherMaker(String password) throws CipherException {
+        this.password = password.toCharArray();
         key = generateKey(password);
     }
 
-    protected CipherInputStream inputStream(FileInputStream fileIn) throws CipherException {
-        return new CipherInputStream(fileIn, cipher(DECRYPT_MODE));
+    /*
+    Where key derivations are recorded, as StageTimings.Stage.KDF.
+     */
+    public void setTimings(StageTimings timings) {
+        this.timings = timings;
+    }
+
+    /*
+    Key derivation for archives created from here on.
+     */
+    public synchronized void setKdf(Kdf kdf, int cost) {
+        this.kdf = kdf;
+        this.cost = cost;
+        archiveParameters = null;
+        rekeyParameters = null;
+    }
+
+    /*
+    Cipher suite for archives created from here on. A salt, and so a key, is never shared between suites.
+     */
+    public synchronized void setCipherSuite(CipherSuite suite) {
+        this.suite = suite;
+        archiveParameters = null;
+    }
+
+    /*
+    Header for a new archive: a fresh random data key, wrapped in the first key slot under the password's key, see
+    newArchiveParameters. The other slots are left free.
+     */
+    protected synchronized ArchiveHeader newArchiveHeader() throws CipherException {
+        var dataKey = new byte[SegmentCipher.KEY_LENGTH];
+        RANDOM.nextBytes(dataKey);
+        try {
+            var slots = new ArrayList<>(Collections.nCopies(ArchiveHeader.KEY_SLOTS, ArchiveHeader.KeySlot.FREE));
+            slots.set(0, wrap(suite, password, newArchiveParameters(), dataKey));
+            return new ArchiveHeader(suite, slots);
+        } finally {
+            Arrays.fill(dataKey, (byte) 0);
+        }
+    }
+
+    /*
+    The header with newPassword in place of the key slot this instance's password opens, or in a free slot if keep,
+    under fresh parameters of this instance's kdf and cost, shared by all archives rekeyed through this instance so a
+    batch derives the new password's key once. The data key, and so every segment, stays as it is.
+     */
+    protected ArchiveHeader rekey(ArchiveHeader header, String newPassword, boolean keep) throws CipherException, IOException {
+        if (!header.wrapsKey()) {
+            throw new IOException("Archive version " + header.version() + " has no key slots, re-encrypt it to change its password.");
+        }
+        var unlocked = unlock(header);
+        var slots = new ArrayList<>(header.keySlots());
+        var target = unlocked.slot();
+        if (keep) {
+            target = -1;
+            for (var i = 0; i < slots.size() && target < 0; i++) {
+                target = slots.get(i).free() ? i : -1;
+            }
+            if (target < 0) {
+                throw new IOException("All " + slots.size() + " key slots are in use.");
+            }
+        }
+        KdfParameters parameters;
+        synchronized (this) {
+            if (rekeyParameters == null) {
+                rekeyParameters = KdfParameters.random(kdf, cost);
+            }
+            parameters = rekeyParameters;
+        }
+        try {
+            slots.set(target, wrap(header.suite(), newPassword.toCharArray(), parameters, unlocked.dataKey()));
+        } finally {
+            Arrays.fill(unlocked.dataKey(), (byte) 0);
+        }
+        return header.withKeySlots(slots);
+    }
+
+    /*
+    Lets new archives share their salt, and so their derived key, across all instances with the same password and key
+    derivation settings for up to maxAgeMillis, e.g. in a long running Server. A fresh salt is drawn after that.
+    Each archive still gets its own data key, sharing only saves deriving the key that wraps it.
+     */
+    protected static void shareArchiveParameters(long maxAgeMillis) {
+        sharedParametersMillis = maxAgeMillis;
+    }
+
+    /*
+    Key derivation parameters for a new archive. The salt is random but shared by all archives created through this
+    instance, so a batch derives its key once.
+     */
+    protected synchronized KdfParameters newArchiveParameters() throws CipherException {
+        if (archiveParameters == null) {
+            archiveParameters = sharedParametersMillis > 0 ? sharedParameters() : KdfParameters.random(kdf, cost);
+        }
+        return archiveParameters;
+    }
+
+    private KdfParameters sharedParameters() throws CipherException {
+        var key = DerivedKeyCache.hash(password) + ":" + suite + ":" + kdf + ":" + cost;
+        var now = System.currentTimeMillis();
+        synchronized (SHARED_PARAMETERS) {
+            var shared = SHARED_PARAMETERS.get(key);
+            if (shared == null || now - shared.created() > sharedParametersMillis) {
+                shared = new SharedParameters(KdfParameters.random(kdf, cost), now);
+                SHARED_PARAMETERS.put(key, shared);
+            }
+            return shared.parameters();
+        }
+    }
+
+    /*
+    Cipher for the segments of an archive, under its data key, or the password's key for archives of version 3 and
+    before. Derived keys are cached, so only the first archive using a salt pays for the derivation.
+     */
+    protected SegmentCipher segmentCipher(ArchiveHeader header) throws CipherException, IOException {
+        if (!header.wrapsKey()) {
+            var parameters = header.kdf();
+            return new SegmentCipher(header.suite(), KEY_CACHE.get(password, parameters, () -> deriveKey(password, parameters)));
+        }
+        var dataKey = unlock(header).dataKey();
+        try {
+            return new SegmentCipher(header.suite(), new SecretKeySpec(dataKey, header.suite().keyAlgorithm()));
+        } finally {
+            Arrays.fill(dataKey, (byte) 0);
+        }
+    }
+
+    /*
+    The data key, from the first key slot the password opens. Only slots of other passwords cost a derivation.
+     */
+    private Unlocked unlock(ArchiveHeader header) throws CipherException, IOException {
+        var slots = header.keySlots();
+        for (var i = 0; i < slots.size(); i++) {
+            var slot = slots.get(i);
+            if (slot.free()) {
+                continue;
+            }
+            var wrappingKey = KEY_CACHE.get(password, slot.kdf(), () -> deriveKey(password, slot.kdf()));
+            try {
+                return new Unlocked(i, new SegmentCipher(header.suite(), wrappingKey).decryptSegment(slot.wrappedKey(), KEY_SEGMENT, true));
+            } catch (CipherException ex) {
+                // The slot of another password.
+            }
+        }
+        throw new IOException("Failed to unlock archive key. Check password.");
+    }
+
+    private ArchiveHeader.KeySlot wrap(CipherSuite suite, char[] password, KdfParameters parameters, byte[] dataKey) throws CipherException {
+        var wrappingKey = KEY_CACHE.get(password, parameters, () -> deriveKey(password, parameters));
+        var wrapped = new SegmentCipher(suite, wrappingKey).encryptSegment(dataKey, dataKey.length, KEY_SEGMENT, true);
+        return new ArchiveHeader.KeySlot(parameters, wrapped);
+    }
+
+    /*
+    Legacy single-stream format: one CBC stream over the whole archive. Only used for reading old archives.
+     */
+    protected CipherInputStream inputStream(InputStream in) throws CipherException {
+        return new CipherInputStream(in, cipher(DECRYPT_MODE));
     }
 
     protected CipherOutputStream outputStream(OutputStream out) throws CipherException {
@@ -60,4 +257,23 @@ public class CipherMaker {
             throw new CipherException(ex);
         }
     }
+
+    private SecretKey deriveKey(char[] password, KdfParameters parameters) throws CipherException {
+        var event = new JfrEvents.KeyDerivationEvent();
+        event.begin();
+        var start = System.nanoTime();
+        try {
+            var derived = parameters.kdf().derive(password, parameters, SegmentCipher.KEY_LENGTH);
+            var segmentKey = new SecretKeySpec(derived, "AES");
+            Arrays.fill(derived, (byte) 0);
+            return segmentKey;
+        } catch (GeneralSecurityException ex) {
+            throw new CipherException(ex);
+        } finally {
+            timings.busy(StageTimings.Stage.KDF, start);
+            event.kdf = parameters.kdf().names().get(0);
+            event.cost = parameters.cost();
+            event.commit();
+        }
+    }
 }
@@ -0,0 +1,80 @@
+package com.task;
+
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+Authenticated ciphers for the segments of an archive, all with a 256 bit key, 96 bit nonce and 128 bit tag, so the
+segment layout does not depend on the suite. The id is stored in the archive header.
+AES-GCM runs on the AES and carry-less multiply instructions of current x86 and ARM CPUs. ChaCha20-Poly1305 is the
+faster choice on CPUs without them.
+ */
+public enum CipherSuite {
+    AES_256_GCM(1, Arrays.asList("aes-gcm", "aes-256-gcm"), "AES/GCM/NoPadding", "AES") {
+        @Override
+        protected AlgorithmParameterSpec parameters(byte[] nonce) {
+            return new GCMParameterSpec(TAG_LENGTH * 8, nonce);
+        }
+    },
+    CHACHA20_POLY1305(2, Arrays.asList("chacha20", "chacha20-poly1305"), "ChaCha20-Poly1305", "ChaCha20") {
+        @Override
+        protected AlgorithmParameterSpec parameters(byte[] nonce) {
+            return new IvParameterSpec(nonce);
+        }
+    };
+
+    protected static final int KEY_LENGTH = 32;
+    protected static final int NONCE_LENGTH = 12;
+    protected static final int TAG_LENGTH = 16;
+
+    private final byte id;
+    private final List<String> names;
+    private final String transformation;
+    private final String keyAlgorithm;
+
+    CipherSuite(int id, List<String> names, String transformation, String keyAlgorithm) {
+        this.id = (byte) id;
+        this.names = names;
+        this.transformation = transformation;
+        this.keyAlgorithm = keyAlgorithm;
+    }
+
+    protected abstract AlgorithmParameterSpec parameters(byte[] nonce);
+
+    public byte id() {
+        return id;
+    }
+
+    public List<String> names() {
+        return names;
+    }
+
+    public String transformation() {
+        return transformation;
+    }
+
+    public String keyAlgorithm() {
+        return keyAlgorithm;
+    }
+
+    public static CipherSuite fromId(byte id) {
+        for (var suite : values()) {
+            if (suite.id == id) {
+                return suite;
+            }
+        }
+        return null;
+    }
+
+    public static CipherSuite fromName(String name) {
+        for (var suite : values()) {
+            if (suite.names.contains(name.toLowerCase())) {
+                return suite;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,59 @@
+package com.task;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/*
+Forwards a command to a Server and relays its output, see Server for the protocol.
+ */
+public final class Client {
+
+    private Client() {
+    }
+
+    /*
+    Runs args on the server listening on socket, with relative paths resolved against workingDirectory.
+    Returns the command's exit status.
+     */
+    public static int run(Path socket, String[] args, File workingDirectory, PrintStream out, PrintStream err) {
+        try (var channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            try {
+                channel.connect(UnixDomainSocketAddress.of(socket));
+            } catch (IOException ex) {
+                err.println("No server listening on " + socket + ": " + ex.getMessage());
+                return 1;
+            }
+            var request = new DataOutputStream(Channels.newOutputStream(channel));
+            request.writeInt(args.length);
+            for (var arg : args) {
+                request.writeUTF(arg);
+            }
+            request.writeUTF(workingDirectory.getAbsolutePath());
+            request.flush();
+
+            var response = new DataInputStream(Channels.newInputStream(channel));
+            while (true) {
+                var kind = response.readByte();
+                if (kind == Server.EXIT) {
+                    return response.readInt();
+                }
+                var output = new byte[response.readInt()];
+                response.readFully(output);
+                var stream = kind == Server.ERR ? err : out;
+                stream.write(output);
+                stream.flush();
+            }
+        } catch (IOException ex) {
+            err.println("Lost connection to server: " + ex.getMessage());
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.task;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/*
+How an entry is stored: zip method and deflate level.
+choose picks one from a sample of the entry's first bytes. Already compressed formats, recognised by their magic
+number, and data with a byte entropy close to random are STORED, medium entropy data gets a fast deflate level and
+everything else the full level.
+ */
+public record Codec(int method, int level) {
+
+    public static final Codec STORED = new Codec(ZipEntry.STORED, Deflater.NO_COMPRESSION);
+    public static final Codec FAST = new Codec(ZipEntry.DEFLATED, Deflater.BEST_SPEED);
+    public static final Codec FULL = new Codec(ZipEntry.DEFLATED, Deflater.DEFAULT_COMPRESSION);
+
+    protected static final int SAMPLE_SIZE = 64 * 1024;
+    private static final int MIN_SAMPLE_SIZE = 512;
+    private static final double STORED_ENTROPY = 7.5;
+    private static final double FAST_ENTROPY = 6.5;
+
+    private static final byte[][] COMPRESSED_MAGIC = {
+            {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF},                     // JPEG
+            {(byte) 0x89, 'P', 'N', 'G'},                                // PNG
+            {'G', 'I', 'F', '8'},                                        // GIF
+            {'P', 'K', 3, 4},                                            // zip, jar, docx, ...
+            {0x1F, (byte) 0x8B},                                         // gzip
+            {'B', 'Z', 'h'},                                             // bzip2
+            {(byte) 0xFD, '7', 'z', 'X', 'Z', 0},                        // xz
+            {'7', 'z', (byte) 0xBC, (byte) 0xAF, 0x27, 0x1C},            // 7z
+            {0x28, (byte) 0xB5, 0x2F, (byte) 0xFD},                      // zstd
+            {'R', 'a', 'r', '!'},                                        // rar
+            {'O', 'g', 'g', 'S'},                                        // ogg
+            {'f', 'L', 'a', 'C'},                                        // flac
+            {'I', 'D', '3'},                                             // mp3
+            {0x1A, 0x45, (byte) 0xDF, (byte) 0xA3},                      // matroska, webm
+            {'E', 'F', 'S', 'A'},                                        // our own archives
+    };
+    private static final byte[] ISO_MEDIA_MAGIC = {'f', 't', 'y', 'p'}; // mp4, mov, heic at offset 4
+
+    /*
+    Level 0 is STORED, 1 to 9 deflate at that level.
+     */
+    public static Codec forLevel(int level) {
+        if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level " + level + ".");
+        }
+        return level == Deflater.NO_COMPRESSION ? STORED : new Codec(ZipEntry.DEFLATED, level);
+    }
+
+    /*
+    Streamed entries need a data descriptor, which ZipInputStream only reads for deflated entries, so they store
+    incompressible data as deflate level 0 (stored deflate blocks) instead.
+     */
+    protected Codec streamable() {
+        return method == ZipEntry.STORED ? new Codec(ZipEntry.DEFLATED, Deflater.NO_COMPRESSION) : this;
+    }
+
+    /*
+    Looks at up to SAMPLE_SIZE bytes from the sample's position, without consuming them.
+     */
+    protected static Codec choose(ByteBuffer sample) {
+        var bytes = sample.duplicate();
+        if (bytes.remaining() > SAMPLE_SIZE) {
+            bytes.limit(bytes.position() + SAMPLE_SIZE);
+        }
+        for (var magic : COMPRESSED_MAGIC) {
+            if (startsWith(bytes, 0, magic)) {
+                return STORED;
+            }
+        }
+        if (startsWith(bytes, 4, ISO_MEDIA_MAGIC)) {
+            return STORED;
+        }
+        if (bytes.remaining() < MIN_SAMPLE_SIZE) {
+            return FULL;
+        }
+        var entropy = entropy(bytes);
+        if (entropy >= STORED_ENTROPY) {
+            return STORED;
+        }
+        return entropy >= FAST_ENTROPY ? FAST : FULL;
+    }
+
+    /*
+    Shannon entropy of the byte values, in bits per byte.
+     */
+    private static double entropy(ByteBuffer bytes) {
+        var counts = new int[256];
+        var total = bytes.remaining();
+        for (var i = bytes.position(); i < bytes.limit(); i++) {
+            counts[bytes.get(i) & 0xff]++;
+        }
+        var entropy = 0.0;
+        for (var count : counts) {
+            if (count > 0) {
+                var p = (double) count / total;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy / Math.log(2);
+    }
+
+    private static boolean startsWith(ByteBuffer bytes, int offset, byte[] magic) {
+        if (bytes.remaining() < offset + magic.length) {
+            return false;
+        }
+        for (var i = 0; i < magic.length; i++) {
+            if (bytes.get(bytes.position() + offset + i) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        if (method == ZipEntry.STORED) {
+            return "stored";
+        }
+        return level == Deflater.DEFAULT_COMPRESSION ? "deflate" : "deflate level " + level;
+    }
+}
@@ -5,30 +5,111 @@ import com.task.exceptions.CipherException;
 import com.task.exceptions.InvalidArgumentException;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.PatternSyntaxException;
 
+import static com.task.ArgumentParser.BLOCK_PARALLEL_FLAG;
+import static com.task.ArgumentParser.CHECKPOINT_FLAG;
+import static com.task.ArgumentParser.CIPHER_FLAG;
+import static com.task.ArgumentParser.COST_FLAG;
+import static com.task.ArgumentParser.DEDUP_FLAG;
+import static com.task.ArgumentParser.DICTIONARY_FLAG;
+import static com.task.ArgumentParser.ENTRY_FLAG;
+import static com.task.ArgumentParser.EXCLUDE_FLAG;
+import static com.task.ArgumentParser.INCLUDE_FLAG;
+import static com.task.ArgumentParser.INCREMENTAL_FLAG;
+import static com.task.ArgumentParser.JOBS_FLAG;
+import static com.task.ArgumentParser.KDF_FLAG;
+import static com.task.ArgumentParser.LEVEL_FLAG;
+import static com.task.ArgumentParser.LEVEL_VALUE_AUTO;
+import static com.task.ArgumentParser.MEMORY_BUDGET_FLAG;
 import static com.task.ArgumentParser.MODE_FLAG;
+import static com.task.ArgumentParser.MODE_VALUE_ADD_KEY;
+import static com.task.ArgumentParser.MODE_VALUE_APPEND;
 import static com.task.ArgumentParser.MODE_VALUE_DECRYPT;
 import static com.task.ArgumentParser.MODE_VALUE_ENCRYPT;
+import static com.task.ArgumentParser.MODE_VALUE_EXTRACT;
+import static com.task.ArgumentParser.MODE_VALUE_LIST;
+import static com.task.ArgumentParser.MODE_VALUE_REKEY;
+import static com.task.ArgumentParser.MODE_VALUE_RESTORE;
+import static com.task.ArgumentParser.MODE_VALUE_VERIFY;
+import static com.task.ArgumentParser.Mode.ADD_KEY;
+import static com.task.ArgumentParser.Mode.APPEND;
 import static com.task.ArgumentParser.Mode.DECRYPT;
 import static com.task.ArgumentParser.Mode.ENCRYPT;
+import static com.task.ArgumentParser.Mode.EXTRACT;
+import static com.task.ArgumentParser.Mode.LIST;
+import static com.task.ArgumentParser.Mode.REKEY;
+import static com.task.ArgumentParser.Mode.RESTORE;
+import static com.task.ArgumentParser.Mode.VERIFY;
 import static com.task.ArgumentParser.NAME_FLAG;
+import static com.task.ArgumentParser.NEW_PASSWORD_FLAG;
 import static com.task.ArgumentParser.OUTPUT_DIRECTORY_FLAG;
 import static com.task.ArgumentParser.PASSWORD_FLAG;
+import static com.task.ArgumentParser.PROGRESS_FLAG;
+import static com.task.ArgumentParser.STREAM;
+import static com.task.ArgumentParser.SUMMARY_FLAG;
+import static com.task.ArgumentParser.SUMMARY_VALUE_JSON;
+import static com.task.ArgumentParser.SUMMARY_VALUE_TEXT;
+import static com.task.ArgumentParser.VOLUME_FLAG;
 
 public class Command {
     private Mode mode;
+    protected static final String STREAM_ENTRY_NAME = "stdin";
+    private static final String STANDARD_OUTPUT = "standard output";
+    protected static final int MAX_AVERAGE_CHUNK_KIB = 1024;
+
     private final List<File> files = new ArrayList<>();
     private String password;
+    private String newPassword;
     private String name;
     private File outputDirectory;
+    private final List<File> stripeDirectories = new ArrayList<>();
+    private long volumeSize;
+    private final List<String> entries = new ArrayList<>();
+    private final List<String> includes = new ArrayList<>();
+    private final List<String> excludes = new ArrayList<>();
+    private int jobs = Runtime.getRuntime().availableProcessors();
+    private long memoryBudget = Zipper.DEFAULT_MEMORY_BUDGET;
+    private Kdf kdf = Kdf.PBKDF2_SHA256;
+    private int cost;
+    private CipherSuite suite = CipherSuite.AES_256_GCM;
+    private File previousArchive;
+    private Codec codec;
+    private final StageTimings timings = new StageTimings();
+    private boolean jsonSummary;
+    private int progressSeconds;
+    private int checkpointSeconds;
+    private int averageChunkKib;
+    private long blockParallelThreshold = Zipper.DEFAULT_BLOCK_PARALLEL_THRESHOLD;
+    private int dictionaryKib;
+    private final File workingDirectory;
+    private PrintStream console = System.out;
 
     protected Command() {
+        this((File) null);
+    }
+
+    /*
+    Relative paths are resolved against workingDirectory, or the process's if null.
+     */
+    protected Command(File workingDirectory) {
+        this.workingDirectory = workingDirectory;
     }
 
     protected Command(Mode mode) {
+        this();
         this.mode = mode;
     }
 
@@ -41,13 +122,149 @@ public class Command {
     }
 
     protected void addFile(String file) {
-        files.add(new File(file));
+        files.add(resolve(file));
+    }
+
+    private File resolve(String path) {
+        var file = new File(path);
+        return workingDirectory == null || file.isAbsolute() || STREAM.equals(path) ? file : new File(workingDirectory, path);
+    }
+
+    /*
+    Where listings are printed.
+     */
+    public void setConsole(PrintStream console) {
+        this.console = console;
+    }
+
+    public List<String> getEntries() {
+        return entries;
+    }
+
+    public List<String> getIncludes() {
+        return includes;
+    }
+
+    public List<String> getExcludes() {
+        return excludes;
+    }
+
+    public int getJobs() {
+        return jobs;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /*
+    Null if chosen per entry.
+     */
+    public Codec getCodec() {
+        return codec;
+    }
+
+    public File getPreviousArchive() {
+        return previousArchive;
+    }
+
+    public Kdf getKdf() {
+        return kdf;
+    }
+
+    public int getCost() {
+        return cost;
+    }
+
+    public void setCost(int cost) {
+        this.cost = cost;
+    }
+
+    public CipherSuite getCipherSuite() {
+        return suite;
+    }
+
+    /*
+    Stage timings and entries of all executions so far, filled in while executing.
+     */
+    public StageTimings getTimings() {
+        return timings;
+    }
+
+    public boolean isJsonSummary() {
+        return jsonSummary;
+    }
+
+    /*
+    Interval of the progress line, 0 for none.
+     */
+    public int getProgressSeconds() {
+        return progressSeconds;
+    }
+
+    public int getCheckpointSeconds() {
+        return checkpointSeconds;
+    }
+
+    public int getAverageChunkKib() {
+        return averageChunkKib;
+    }
+
+    /*
+    Size from which files are deflated in blocks on all jobs, 0 for never.
+     */
+    public long getBlockParallelThreshold() {
+        return blockParallelThreshold;
+    }
+
+    /*
+    Size up to which files are deflated with a preset dictionary, 0 for none.
+     */
+    public int getDictionaryKib() {
+        return dictionaryKib;
+    }
+
+    /*
+    Directories given after the first, which volumes are striped across.
+     */
+    public List<File> getStripeDirectories() {
+        return stripeDirectories;
+    }
+
+    public long getVolumeSize() {
+        return volumeSize;
+    }
+
+    public boolean writesVolumes() {
+        return volumeSize > 0 || !stripeDirectories.isEmpty();
+    }
+
+    /*
+    Standard input or output, given as STREAM in place of a file.
+     */
+    protected static boolean isStream(File file) {
+        return file != null && STREAM.equals(file.getPath());
+    }
+
+    public boolean readsStandardInput() {
+        return files.size() == 1 && isStream(files.get(0));
+    }
+
+    public boolean writesStandardOutput() {
+        return mode == ENCRYPT ? STREAM.equals(name) : mode == DECRYPT && isStream(outputDirectory);
     }
 
     public String getPassword() {
         return password;
     }
 
+    /*
+    The password rekey and addkey mode give the archives.
+     */
+    public String getNewPassword() {
+        return newPassword;
+    }
+
     public void setMode(Mode mode) {
         this.mode = mode;
     }
@@ -59,6 +276,27 @@ public class Command {
         } else if (MODE_VALUE_DECRYPT.contains(mode)) {
             this.mode = DECRYPT;
             return;
+        } else if (MODE_VALUE_LIST.contains(mode)) {
+            this.mode = LIST;
+            return;
+        } else if (MODE_VALUE_EXTRACT.contains(mode)) {
+            this.mode = EXTRACT;
+            return;
+        } else if (MODE_VALUE_RESTORE.contains(mode)) {
+            this.mode = RESTORE;
+            return;
+        } else if (MODE_VALUE_VERIFY.contains(mode)) {
+            this.mode = VERIFY;
+            return;
+        } else if (MODE_VALUE_REKEY.contains(mode)) {
+            this.mode = REKEY;
+            return;
+        } else if (MODE_VALUE_ADD_KEY.contains(mode)) {
+            this.mode = ADD_KEY;
+            return;
+        } else if (MODE_VALUE_APPEND.contains(mode)) {
+            this.mode = APPEND;
+            return;
         }
         throw new InvalidArgumentException("Invalid mode");
     }
@@ -76,34 +314,362 @@ public class Command {
             setMode(propertyValue);
         } else if (PASSWORD_FLAG.contains(propertyFlag)) {
             password = propertyValue;
+        } else if (NEW_PASSWORD_FLAG.contains(propertyFlag)) {
+            newPassword = propertyValue;
         } else if (NAME_FLAG.contains(propertyFlag)) {
             name = propertyValue;
         } else if (OUTPUT_DIRECTORY_FLAG.contains(propertyFlag)) {
-            outputDirectory = new File(propertyValue).getAbsoluteFile();
+            var directory = STREAM.equals(propertyValue) ? new File(STREAM) : resolve(propertyValue).getAbsoluteFile();
+            if (outputDirectory == null) {
+                outputDirectory = directory;
+            } else {
+                stripeDirectories.add(directory);
+            }
+        } else if (ENTRY_FLAG.contains(propertyFlag)) {
+            entries.add(propertyValue);
+        } else if (INCLUDE_FLAG.contains(propertyFlag)) {
+            includes.add(checkGlob(propertyValue));
+        } else if (EXCLUDE_FLAG.contains(propertyFlag)) {
+            excludes.add(checkGlob(propertyValue));
+        } else if (JOBS_FLAG.contains(propertyFlag)) {
+            setJobs(propertyValue);
+        } else if (MEMORY_BUDGET_FLAG.contains(propertyFlag)) {
+            setMemoryBudget(propertyValue);
+        } else if (KDF_FLAG.contains(propertyFlag)) {
+            setKdf(propertyValue);
+        } else if (COST_FLAG.contains(propertyFlag)) {
+            setCost(propertyValue);
+        } else if (CIPHER_FLAG.contains(propertyFlag)) {
+            setCipherSuite(propertyValue);
+        } else if (LEVEL_FLAG.contains(propertyFlag)) {
+            setLevel(propertyValue);
+        } else if (SUMMARY_FLAG.contains(propertyFlag)) {
+            setSummary(propertyValue);
+        } else if (PROGRESS_FLAG.contains(propertyFlag)) {
+            setProgress(propertyValue);
+        } else if (CHECKPOINT_FLAG.contains(propertyFlag)) {
+            setCheckpoint(propertyValue);
+        } else if (DEDUP_FLAG.contains(propertyFlag)) {
+            setDedup(propertyValue);
+        } else if (BLOCK_PARALLEL_FLAG.contains(propertyFlag)) {
+            setBlockParallelThreshold(propertyValue);
+        } else if (DICTIONARY_FLAG.contains(propertyFlag)) {
+            setDictionary(propertyValue);
+        } else if (VOLUME_FLAG.contains(propertyFlag)) {
+            setVolumeSize(propertyValue);
+        } else if (INCREMENTAL_FLAG.contains(propertyFlag)) {
+            previousArchive = resolve(propertyValue);
         } else {
             throw new InvalidArgumentException("Unrecognised argument: " + propertyFlag + ".");
         }
     }
 
+    private void setJobs(String jobs) throws InvalidArgumentException {
+        try {
+            this.jobs = Integer.parseInt(jobs);
+        } catch (NumberFormatException ex) {
+            throw new InvalidArgumentException("Invalid number of jobs: " + jobs + ".");
+        }
+        if (this.jobs < 1) {
+            throw new InvalidArgumentException("Invalid number of jobs: " + jobs + ".");
+        }
+    }
+
+    private void setMemoryBudget(String megabytes) throws InvalidArgumentException {
+        try {
+            memoryBudget = Long.parseLong(megabytes) << 20;
+        } catch (NumberFormatException ex) {
+            throw new InvalidArgumentException("Invalid memory budget: " + megabytes + ".");
+        }
+        if (memoryBudget < 1) {
+            throw new InvalidArgumentException("Invalid memory budget: " + megabytes + ".");
+        }
+    }
+
+    private void setSummary(String summary) throws InvalidArgumentException {
+        if (!SUMMARY_VALUE_TEXT.equals(summary) && !SUMMARY_VALUE_JSON.equals(summary)) {
+            throw new InvalidArgumentException("Invalid summary format: " + summary + ".");
+        }
+        jsonSummary = SUMMARY_VALUE_JSON.equals(summary);
+    }
+
+    private void setProgress(String seconds) throws InvalidArgumentException {
+        try {
+            progressSeconds = Integer.parseInt(seconds);
+        } catch (NumberFormatException ex) {
+            throw new InvalidArgumentException("Invalid progress interval: " + seconds + ".");
+        }
+        if (progressSeconds < 0) {
+            throw new InvalidArgumentException("Invalid progress interval: " + seconds + ".");
+        }
+    }
+
+    private void setCheckpoint(String seconds) throws InvalidArgumentException {
+        try {
+            checkpointSeconds = Integer.parseInt(seconds);
+        } catch (NumberFormatException ex) {
+            throw new InvalidArgumentException("Invalid checkpoint interval: " + seconds + ".");
+        }
+        if (checkpointSeconds < 0) {
+            throw new InvalidArgumentException("Invalid checkpoint interval: " + seconds + ".");
+        }
+    }
+
+    private void setDedup(String kib) throws InvalidArgumentException {
+        try {
+            averageChunkKib = Integer.parseInt(kib);
+        } catch (NumberFormatException ex) {
+            throw new InvalidArgumentException("Invalid average chunk size: " + kib + ".");
+        }
+        if (averageChunkKib < 0 || averageChunkKib > MAX_AVERAGE_CHUNK_KIB || (averageChunkKib > 0 && Integer.bitCount(averageChunkKib) != 1)) {
+            throw new InvalidArgumentException("Invalid average chunk size: " + kib + ".");
+        }
+    }
+
+    private void setBlockParallelThreshold(String megabytes) throws InvalidArgumentException {
+        try {
+            blockParallelThreshold = Long.parseLong(megabytes) << 20;
+        } catch (NumberFormatException ex) {
+            throw new InvalidArgumentException("Invalid block-parallel threshold: " + megabytes + ".");
+        }
+        if (blockParallelThreshold < 0) {
+            throw new InvalidArgumentException("Invalid block-parallel threshold: " + megabytes + ".");
+        }
+    }
+
+    private void setDictionary(String kib) throws InvalidArgumentException {
+        try {
+            dictionaryKib = Integer.parseInt(kib);
+        } catch (NumberFormatException ex) {
+            throw new InvalidArgumentException("Invalid dictionary threshold: " + kib + ".");
+        }
+        if (dictionaryKib < 0) {
+            throw new InvalidArgumentException("Invalid dictionary threshold: " + kib + ".");
+        }
+    }
+
+    private void setVolumeSize(String megabytes) throws InvalidArgumentException {
+        try {
+            volumeSize = Long.parseLong(megabytes) << 20;
+        } catch (NumberFormatException ex) {
+            throw new InvalidArgumentException("Invalid volume size: " + megabytes + ".");
+        }
+        if (volumeSize < 0) {
+            throw new InvalidArgumentException("Invalid volume size: " + megabytes + ".");
+        }
+    }
+
+    private static String checkGlob(String glob) throws InvalidArgumentException {
+        try {
+            FileSystems.getDefault().getPathMatcher("glob:" + glob);
+            return glob;
+        } catch (PatternSyntaxException ex) {
+            throw new InvalidArgumentException("Invalid glob: " + glob + ".");
+        }
+    }
+
+    private void setLevel(String level) throws InvalidArgumentException {
+        if (LEVEL_VALUE_AUTO.equals(level)) {
+            codec = null;
+            return;
+        }
+        try {
+            codec = Codec.forLevel(Integer.parseInt(level));
+        } catch (IllegalArgumentException ex) {
+            throw new InvalidArgumentException("Invalid compression level: " + level + ".");
+        }
+    }
+
+    private void setKdf(String name) throws InvalidArgumentException {
+        kdf = Kdf.fromName(name);
+        if (kdf == null) {
+            throw new InvalidArgumentException("Invalid key derivation function: " + name + ".");
+        }
+    }
+
+    private void setCipherSuite(String name) throws InvalidArgumentException {
+        suite = CipherSuite.fromName(name);
+        if (suite == null) {
+            throw new InvalidArgumentException("Invalid cipher: " + name + ".");
+        }
+    }
+
+    private void setCost(String cost) throws InvalidArgumentException {
+        try {
+            this.cost = Integer.parseInt(cost);
+        } catch (NumberFormatException ex) {
+            throw new InvalidArgumentException("Invalid cost: " + cost + ".");
+        }
+        if (this.cost < 1) {
+            throw new InvalidArgumentException("Invalid cost: " + cost + ".");
+        }
+    }
+
     public void execute() throws CipherException, IOException {
-        var zipper = new Zipper(password);
+        // Sources all go into one archive, only modes handling each archive given on its own run several at once.
+        var readsArchives = mode == DECRYPT || mode == EXTRACT || mode == VERIFY || mode == REKEY || mode == ADD_KEY;
+        var concurrentArchives = readsArchives ? Math.max(1, Math.min(jobs, files.size())) : 1;
+        // Derived keys are cached per salt and shared, segments in flight are split between the archives being read.
+        var zipper = new Zipper(password, Math.max(2, 2 * ForkJoinPool.getCommonPoolParallelism() / concurrentArchives), timings);
+        zipper.setCheckpointInterval(TimeUnit.SECONDS.toMillis(checkpointSeconds));
+        zipper.setMemoryBudget(memoryBudget);
+        zipper.setWarnings(writesStandardOutput() ? System.err::println : console::println);
+        // Archives read concurrently split the jobs between them, for writing extracted files or verifying.
+        zipper.setCompressionThreads(Math.max(1, jobs / concurrentArchives));
 
+        if (mode.equals(APPEND)) {
+            // The archive's own cipher, key derivation and volumes are kept.
+            zipper.setCodec(codec);
+            zipper.setFilters(includes, excludes);
+            zipper.setDeduplication(averageChunkKib << 10);
+            zipper.setBlockParallelThreshold(blockParallelThreshold);
+            zipper.setDictionaryThreshold((long) dictionaryKib << 10);
+            var skipped = zipper.append(files, name, outputDirectory);
+            if (!skipped.isEmpty()) {
+                console.println(name + ": " + skipped.size() + " file(s) already in the archive were skipped:");
+                skipped.forEach(entry -> console.println("\t" + entry));
+            }
+        }
         if (mode.equals(ENCRYPT)) {
-            zipper.zip(files, name, outputDirectory);
+            zipper.setKdf(kdf, cost);
+            zipper.setCipherSuite(suite);
+            zipper.setCodec(codec);
+            zipper.setFilters(includes, excludes);
+            zipper.setDeduplication(averageChunkKib << 10);
+            zipper.setBlockParallelThreshold(blockParallelThreshold);
+            zipper.setDictionaryThreshold((long) dictionaryKib << 10);
+            zipper.setVolumes(volumeSize, stripeDirectories);
+            if (previousArchive != null) {
+                zipper.zipIncremental(files, name, outputDirectory, previousArchive);
+            } else if (readsStandardInput()) {
+                encryptStandardInput(zipper);
+            } else if (writesStandardOutput()) {
+                zipper.zip(files, System.out);
+            } else {
+                zipper.zip(files, name, outputDirectory);
+            }
         }
         if (mode.equals(DECRYPT)) {
+            if (readsStandardInput() || writesStandardOutput()) {
+                decryptStreams(zipper);
+            } else {
+                forEachArchive(concurrentArchives, file -> zipper.unzip(new File(outputDirectory, file.getName()), file));
+            }
+        }
+        if (mode.equals(EXTRACT)) {
+            forEachArchive(concurrentArchives, file -> zipper.extract(new File(outputDirectory, file.getName()), file, entries));
+        }
+        if (mode.equals(RESTORE)) {
+            zipper.restore(new File(outputDirectory, files.get(files.size() - 1).getName()), files);
+        }
+        if (mode.equals(VERIFY)) {
+            if (readsStandardInput()) {
+                reportVerified("standard input", zipper.verify(System.in));
+            } else {
+                forEachArchive(concurrentArchives, file -> reportVerified(file.getName(), zipper.verify(file)));
+            }
+        }
+        if (mode.equals(REKEY) || mode.equals(ADD_KEY)) {
+            // The new password's key is derived once for all the archives.
+            zipper.setKdf(kdf, cost);
+            forEachArchive(concurrentArchives, file -> {
+                zipper.rekey(file, newPassword, mode == ADD_KEY);
+                console.println(file.getName() + ": " + (mode == REKEY ? "password changed" : "password added"));
+            });
+        }
+        if (mode.equals(LIST)) {
+            for (var file : files) {
+                console.println("\n" + file.getName() + ":");
+                for (var entry : zipper.list(file)) {
+                    console.println("\t" + entry.name() + "\t" + entry.size());
+                }
+            }
+        }
+    }
+
+    private void encryptStandardInput(Zipper zipper) throws IOException, CipherException {
+        if (writesStandardOutput()) {
+            zipper.zip(System.in, STREAM_ENTRY_NAME, System.out);
+            return;
+        }
+        try (var fileOut = new FileOutputStream(new File(outputDirectory, name))) {
+            zipper.zip(System.in, STREAM_ENTRY_NAME, fileOut);
+        }
+    }
+
+    /*
+    Archives are decrypted one after the other, so their entries appear on standard output in order.
+     */
+    private void decryptStreams(Zipper zipper) throws IOException, CipherException {
+        if (readsStandardInput()) {
+            if (writesStandardOutput()) {
+                zipper.unzip(System.in, System.out);
+            } else {
+                zipper.unzip(outputDirectory, System.in);
+            }
+            return;
+        }
+        for (var file : files) {
+            zipper.unzip(file, System.out);
+        }
+    }
+
+    /*
+    Prints that the archive is intact, or fails naming its corrupt entries.
+     */
+    private void reportVerified(String archive, List<String> corrupt) throws IOException {
+        if (!corrupt.isEmpty()) {
+            throw new IOException(corrupt.size() + " corrupt entry(s): " + String.join(", ", corrupt));
+        }
+        console.println(archive + ": OK");
+    }
+
+    @FunctionalInterface
+    private interface ArchiveTask {
+        void run(File archive) throws IOException, CipherException;
+    }
+
+    /*
+    Runs the task for every archive on a bounded pool. A failing archive does not stop the others,
+    failures are collected and reported per archive once all are done.
+     */
+    private void forEachArchive(int concurrentArchives, ArchiveTask task) throws IOException {
+        var pool = Executors.newFixedThreadPool(concurrentArchives);
+        try {
+            var results = new LinkedHashMap<File, Future<?>>();
             for (var file : files) {
-                zipper.unzip(new File(outputDirectory, file.getName()), file);
+                results.put(file, pool.submit(() -> {
+                    task.run(file);
+                    return null;
+                }));
+            }
+            var failures = new StringBuilder();
+            var failed = 0;
+            for (var result : results.entrySet()) {
+                try {
+                    result.getValue().get();
+                } catch (ExecutionException ex) {
+                    failed++;
+                    failures.append("\n\t").append(result.getKey().getName()).append(": ").append(ex.getCause().getMessage());
+                }
+            }
+            if (failed > 0) {
+                throw new IOException(failed + " of " + files.size() + " archive(s) failed:" + failures);
             }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted.", ex);
+        } finally {
+            pool.shutdownNow();
         }
     }
 
     public void setDefaultOutputDirectory() {
-        if (mode == ENCRYPT) {
-            outputDirectory = new File("").getAbsoluteFile();
+        if (mode == ENCRYPT || mode == APPEND) {
+            outputDirectory = resolve("").getAbsoluteFile();
         }
-        if (mode == DECRYPT) {
-            outputDirectory = new File("decrypted").getAbsoluteFile();
+        if (mode == DECRYPT || mode == EXTRACT || mode == RESTORE) {
+            outputDirectory = resolve("decrypted").getAbsoluteFile();
         }
     }
 
@@ -119,16 +685,54 @@ public class Command {
         if (password != null) {
             string.append("\nPassword:\n\t").append("*".repeat(password.length()));
         }
-        if (outputDirectory != null) {
-            string.append("\nOutput directory:\n\t").append(outputDirectory);
+        if (newPassword != null) {
+            string.append("\nNew password:\n\t").append("*".repeat(newPassword.length()));
+            string.append("\nKey derivation:\n\t").append(kdf.names().get(0)).append(", cost ").append(cost);
+        }
+        if (outputDirectory != null && mode != LIST && mode != VERIFY) {
+            string.append("\nOutput directory:\n\t").append(isStream(outputDirectory) ? STANDARD_OUTPUT : outputDirectory);
+        }
+        if (name != null && APPEND.equals(mode)) {
+            string.append("\nAppending to:\n\t").append(name);
+            string.append("\nCompression:\n\t").append(codec == null ? LEVEL_VALUE_AUTO : codec);
         }
         if (name != null && ENCRYPT.equals(mode)) {
-            string.append("\nOutput filename:\n\t").append(name);
+            string.append("\nOutput filename:\n\t").append(STREAM.equals(name) ? STANDARD_OUTPUT : name);
+            string.append("\nCompression:\n\t").append(codec == null ? LEVEL_VALUE_AUTO : codec);
+            string.append("\nCipher:\n\t").append(suite.names().get(0));
+            string.append("\nKey derivation:\n\t").append(kdf.names().get(0)).append(", cost ").append(cost);
+            if (averageChunkKib > 0) {
+                string.append("\nDeduplication:\n\tChunks of about ").append(averageChunkKib).append(" KiB");
+            }
+            if (writesVolumes()) {
+                string.append("\nVolumes:\n\t").append(volumeSize > 0 ? (volumeSize >> 20) + " MiB each" : "One per directory");
+                for (var directory : stripeDirectories) {
+                    string.append("\n\tAlso in ").append(directory);
+                }
+            }
+            if (previousArchive != null) {
+                string.append("\nPrevious archive:\n\t").append(previousArchive.getName());
+            }
+        }
+        if (checkpointSeconds > 0) {
+            string.append("\nCheckpoints:\n\tEvery ").append(checkpointSeconds).append(" s, resumed if a checkpoint exists");
+        }
+        if (!includes.isEmpty() && (ENCRYPT.equals(mode) || APPEND.equals(mode))) {
+            string.append("\nInclude:\n\t").append(String.join("\n\t", includes));
+        }
+        if (!excludes.isEmpty() && (ENCRYPT.equals(mode) || APPEND.equals(mode))) {
+            string.append("\nExclude:\n\t").append(String.join("\n\t", excludes));
+        }
+        if (!entries.isEmpty() && EXTRACT.equals(mode)) {
+            string.append("\nEntries:");
+            for (var entry : entries) {
+                string.append("\n\t").append(entry);
+            }
         }
         if (!files.isEmpty()) {
             string.append("\nSource file(s):");
             for (File file : files) {
-                string.append("\n\t").append(file.getName());
+                string.append("\n\t").append(isStream(file) ? "standard input" : file.getName());
             }
         }
 
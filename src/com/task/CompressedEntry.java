@@ -0,0 +1,148 @@
+package com.task;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+/*
+A source file deflated ahead of being written to the archive, held in memory or in a spill file.
+ */
+public class CompressedEntry {
+
+    private final String name;
+    private final Codec codec;
+    private final long modified;
+    private final long crc;
+    private final long size;
+    private final long compressedSize;
+    private final byte[] hash;
+    private final long dictionaryId;
+    private final ByteArrayOutputStream data;
+    private final File spill;
+
+    private CompressedEntry(String name, Codec codec, long modified, long crc, long size, long compressedSize, byte[] hash,
+                            long dictionaryId, ByteArrayOutputStream data, File spill) {
+        this.name = name;
+        this.codec = codec;
+        this.modified = modified;
+        this.crc = crc;
+        this.size = size;
+        this.compressedSize = compressedSize;
+        this.hash = hash;
+        this.dictionaryId = dictionaryId;
+        this.data = data;
+        this.spill = spill;
+    }
+
+    /*
+    Deflates the source into memory, or into a temporary file in spillDirectory if that is not null.
+    Without a codec, one is chosen from the first chunk read, see Codec.choose.
+    The content hash for the archive manifest is taken on the same read.
+    Deflating starts from dictionary, if not null, see Dictionary.
+     */
+    protected static CompressedEntry compress(File source, String name, Codec codec, byte[] dictionary, File spillDirectory,
+                                              StageTimings timings) throws IOException {
+        var spill = spillDirectory == null ? null : File.createTempFile(".spill-", ".tmp", spillDirectory);
+        var modified = source.lastModified();
+        var digest = ArchiveManifest.newDigest();
+        var data = spill == null ? new ByteArrayOutputStream((int) Math.min(source.length() / 2 + 64, IoBuffers.MAX_SIZE)) : null;
+        try (var sink = spill == null ? data : new FileOutputStream(spill);
+             var entryOut = new EntryOutputStream(sink, codec == null ? Codec.FULL : codec, IoBuffers.bufferSize(source.length() / 2, spillDirectory))) {
+            if (codec == null && source.length() == 0) {
+                entryOut.setCodec(Codec.STORED);
+            }
+            if (dictionary != null) {
+                entryOut.setDictionary(dictionary);
+            }
+            IoBuffers.read(source, timings, StageTimings.Stage.COMPRESS, chunk -> {
+                if (codec == null && entryOut.size() == 0) {
+                    entryOut.setCodec(Codec.choose(chunk));
+                }
+                digest.update(chunk.duplicate());
+                entryOut.write(chunk);
+            });
+            entryOut.finish();
+            return new CompressedEntry(name, entryOut.codec(), modified, entryOut.crc(), entryOut.size(), entryOut.compressedSize(),
+                    digest.digest(), entryOut.dictionaryUsed() ? Dictionary.id(dictionary) : -1, data, spill);
+        } catch (IOException ex) {
+            if (spill != null) {
+                Files.deleteIfExists(spill.toPath());
+            }
+            throw ex;
+        }
+    }
+
+    /*
+    Deflates bytes held in memory, e.g. a chunk of a deduplicated file, see ChunkStore. Without a codec, one is chosen
+    from the bytes. Has no content hash.
+     */
+    protected static CompressedEntry compress(String name, long modified, ByteBuffer data, Codec codec) throws IOException {
+        var compressed = new ByteArrayOutputStream(data.remaining() / 2 + 64);
+        try (var entryOut = new EntryOutputStream(compressed, codec == null ? Codec.choose(data) : codec, IoBuffers.MIN_SIZE)) {
+            entryOut.write(data);
+            entryOut.finish();
+            return new CompressedEntry(name, entryOut.codec(), modified, entryOut.crc(), entryOut.size(), entryOut.compressedSize(),
+                    null, -1, compressed, null);
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public Codec codec() {
+        return codec;
+    }
+
+    public int method() {
+        return codec.method();
+    }
+
+    public long modified() {
+        return modified;
+    }
+
+    public long crc() {
+        return crc;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public long compressedSize() {
+        return compressedSize;
+    }
+
+    public byte[] hash() {
+        return hash;
+    }
+
+    /*
+    The id of the preset dictionary the entry was deflated with, or -1 if none.
+     */
+    public long dictionaryId() {
+        return dictionaryId;
+    }
+
+    protected void writeTo(OutputStream out) throws IOException {
+        if (spill == null) {
+            data.writeTo(out);
+            return;
+        }
+        try (var spillIn = new FileInputStream(spill)) {
+            spillIn.transferTo(out);
+        }
+    }
+
+    protected void discard() throws IOException {
+        if (spill != null) {
+            Files.deleteIfExists(spill.toPath());
+        }
+    }
+}
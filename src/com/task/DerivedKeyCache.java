@@ -0,0 +1,86 @@
+package com.task;
+
+import com.task.exceptions.CipherException;
+
+import javax.crypto.SecretKey;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/*
+In-process cache of password derived keys, so archives sharing a salt only pay for the deliberately slow derivation
+once. Keyed by a hash of the password and the KDF parameters, least recently used keys are evicted beyond capacity.
+Concurrent requests for the same key wait for a single derivation.
+ */
+public class DerivedKeyCache {
+
+    @FunctionalInterface
+    protected interface Derivation {
+        SecretKey derive() throws CipherException;
+    }
+
+    private record CacheKey(String passwordHash, KdfParameters parameters) {
+    }
+
+    private final Map<CacheKey, CompletableFuture<SecretKey>> keys;
+
+    public DerivedKeyCache(int capacity) {
+        keys = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, CompletableFuture<SecretKey>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    protected SecretKey get(char[] password, KdfParameters parameters, Derivation derivation) throws CipherException {
+        var cacheKey = new CacheKey(hash(password), parameters);
+        CompletableFuture<SecretKey> key;
+        var derive = false;
+        synchronized (keys) {
+            key = keys.get(cacheKey);
+            if (key == null) {
+                key = new CompletableFuture<>();
+                keys.put(cacheKey, key);
+                derive = true;
+            }
+        }
+        if (derive) {
+            try {
+                key.complete(derivation.derive());
+            } catch (CipherException | RuntimeException ex) {
+                synchronized (keys) {
+                    keys.remove(cacheKey, key);
+                }
+                key.completeExceptionally(ex);
+                throw ex;
+            }
+        }
+        try {
+            return key.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof CipherException cipherException) {
+                throw cipherException;
+            }
+            throw new CipherException(ex);
+        }
+    }
+
+    protected static String hash(char[] password) throws CipherException {
+        try {
+            var bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(password));
+            var digest = MessageDigest.getInstance("SHA-256");
+            digest.update(bytes);
+            Arrays.fill(bytes.array(), (byte) 0);
+            return Arrays.toString(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new CipherException(ex);
+        }
+    }
+}
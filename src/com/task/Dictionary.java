@@ -0,0 +1,167 @@
+package com.task;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.Adler32;
+
+/*
+Preset dictionary for deflating many small, similar files, see Zipper.setDictionaryThreshold. A small file deflated
+on its own has nothing to match against, with a dictionary of what such files have in common its first bytes already
+find matches. The dictionary is trained from samples of the files, much like zstd's cover algorithm: every dmer, a
+run of DMER_LENGTH bytes, is scored by the number of samples it occurs in, the samples are cut into one epoch per
+segment of the dictionary, and each epoch gives the segment whose dmers score highest. Dmers taken no longer score,
+so content common to many epochs is taken once. Deflate codes short distances more cheaply, so the best segments go
+last, closest to the data.
+Entries deflated with the dictionary carry its id in a zip extra field, the Adler-32 of its bytes as zlib has it.
+ */
+public final class Dictionary {
+
+    /* The deflate window, anything further back cannot be matched. */
+    protected static final int MAX_SIZE = 32 << 10;
+    protected static final int EXTRA_ID = 0x4446;
+    private static final int EXTRA_LENGTH = 8;
+    private static final int DMER_LENGTH = 8;
+    private static final int SEGMENT_LENGTH = 256;
+    private static final int TABLE_BITS = 20;
+    private static final int MIN_SAMPLES = 8;
+    private static final int SAMPLE_RATIO = 16;
+
+    private record Segment(int offset, long score) {
+    }
+
+    private Dictionary() {
+    }
+
+    /*
+    Returns null without enough samples to find anything they have in common.
+     */
+    protected static byte[] train(List<byte[]> samples) {
+        var total = samples.stream().mapToLong(sample -> sample.length).sum();
+        if (samples.size() < MIN_SAMPLES || total < 2 * SEGMENT_LENGTH) {
+            return null;
+        }
+        var counts = new int[1 << TABLE_BITS];
+        var seenIn = new int[1 << TABLE_BITS];
+        var all = new byte[(int) Math.min(total, Integer.MAX_VALUE - 8)];
+        var length = 0;
+        for (var i = 0; i < samples.size() && length < all.length; i++) {
+            var sample = samples.get(i);
+            for (var p = 0; p + DMER_LENGTH <= sample.length; p++) {
+                var hash = hash(sample, p);
+                // Counted once per sample it occurs in.
+                if (seenIn[hash] != i + 1) {
+                    seenIn[hash] = i + 1;
+                    counts[hash]++;
+                }
+            }
+            var count = Math.min(sample.length, all.length - length);
+            System.arraycopy(sample, 0, all, length, count);
+            length += count;
+        }
+
+        // Stored once per archive, so kept to a fraction of what it is trained on, SAMPLE_RATIO bytes of samples a byte.
+        var epochs = Math.max(1, Math.min(MAX_SIZE, length / SAMPLE_RATIO) / SEGMENT_LENGTH);
+        var epochLength = length / epochs;
+        var segments = new ArrayList<Segment>();
+        for (var epoch = 0; epoch < epochs; epoch++) {
+            var from = epoch * epochLength;
+            var to = epoch == epochs - 1 ? length : from + epochLength;
+            var best = best(all, from, to, counts);
+            if (best != null) {
+                segments.add(best);
+                for (var p = best.offset(); p < best.offset() + SEGMENT_LENGTH - DMER_LENGTH + 1; p++) {
+                    counts[hash(all, p)] = 0;
+                }
+            }
+        }
+        if (segments.isEmpty()) {
+            return null;
+        }
+        segments.sort(Comparator.comparingLong(Segment::score));
+        var dictionary = new byte[segments.size() * SEGMENT_LENGTH];
+        for (var i = 0; i < segments.size(); i++) {
+            System.arraycopy(all, segments.get(i).offset(), dictionary, i * SEGMENT_LENGTH, SEGMENT_LENGTH);
+        }
+        return dictionary;
+    }
+
+    /*
+    The id zlib gives dictionary.
+     */
+    protected static long id(byte[] dictionary) {
+        var adler = new Adler32();
+        adler.update(dictionary);
+        return adler.getValue();
+    }
+
+    /*
+    The zip extra field marking an entry deflated with the dictionary of the given id.
+     */
+    protected static byte[] extra(long id) {
+        return ByteBuffer.allocate(EXTRA_LENGTH).order(ByteOrder.LITTLE_ENDIAN)
+                .putShort((short) EXTRA_ID)
+                .putShort((short) Integer.BYTES)
+                .putInt((int) id)
+                .array();
+    }
+
+    /*
+    The dictionary id in a zip extra field, or -1 if the entry was deflated without one.
+     */
+    protected static long id(byte[] extra, int offset, int length) {
+        var fields = ByteBuffer.wrap(extra, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+        while (fields.remaining() >= 4) {
+            var id = Short.toUnsignedInt(fields.getShort());
+            var size = Short.toUnsignedInt(fields.getShort());
+            if (size > fields.remaining()) {
+                return -1;
+            }
+            if (id == EXTRA_ID && size == Integer.BYTES) {
+                return Integer.toUnsignedLong(fields.getInt());
+            }
+            fields.position(fields.position() + size);
+        }
+        return -1;
+    }
+
+    /*
+    The SEGMENT_LENGTH segment of all within [from, to) whose dmers score highest, by a sliding window, or null if
+    none scores. Dmers occurring in a single sample do not score.
+     */
+    private static Segment best(byte[] all, int from, int to, int[] counts) {
+        var dmers = SEGMENT_LENGTH - DMER_LENGTH + 1;
+        if (to - from < SEGMENT_LENGTH) {
+            return null;
+        }
+        var score = 0L;
+        for (var p = from; p < from + dmers; p++) {
+            score += score(all, p, counts);
+        }
+        var best = score;
+        var bestOffset = from;
+        for (var start = from + 1; start + SEGMENT_LENGTH <= to; start++) {
+            score += score(all, start + dmers - 1, counts) - score(all, start - 1, counts);
+            if (score > best) {
+                best = score;
+                bestOffset = start;
+            }
+        }
+        return best > 0 ? new Segment(bestOffset, best) : null;
+    }
+
+    private static int score(byte[] bytes, int position, int[] counts) {
+        var count = counts[hash(bytes, position)];
+        return count > 1 ? count : 0;
+    }
+
+    private static int hash(byte[] bytes, int position) {
+        var dmer = 0L;
+        for (var i = 0; i < DMER_LENGTH; i++) {
+            dmer = dmer << 8 | (bytes[position + i] & 0xFF);
+        }
+        return (int) (dmer * 0x9E3779B97F4A7C15L >>> (Long.SIZE - TABLE_BITS));
+    }
+}
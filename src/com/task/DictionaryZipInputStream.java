@@ -0,0 +1,45 @@
+package com.task;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/*
+ZipInputStream that also reads entries deflated with the archive's preset dictionary, see Dictionary. The dictionary
+is set on the inflater as soon as the local header of such an entry has been read, before any of its data is.
+Without a dictionary, e.g. reading a stream, which has the index holding it at its end, such entries fail.
+ */
+public class DictionaryZipInputStream extends ZipInputStream {
+
+    private final byte[] dictionary;
+    private final long dictionaryId;
+
+    public DictionaryZipInputStream(InputStream in, byte[] dictionary) {
+        super(in);
+        this.dictionary = dictionary;
+        this.dictionaryId = dictionary == null ? -1 : Dictionary.id(dictionary);
+    }
+
+    @Override
+    public ZipEntry getNextEntry() throws IOException {
+        var zipEntry = super.getNextEntry();
+        var extra = zipEntry == null ? null : zipEntry.getExtra();
+        if (extra == null || zipEntry.getMethod() != ZipEntry.DEFLATED) {
+            return zipEntry;
+        }
+        var id = Dictionary.id(extra, 0, extra.length);
+        if (id < 0) {
+            return zipEntry;
+        }
+        if (dictionary == null) {
+            throw new IOException("Entry " + zipEntry.getName() + " is deflated with the archive's preset dictionary, "
+                    + "it can only be read from a file.");
+        }
+        if (id != dictionaryId) {
+            throw new IOException("Corrupt archive, entry " + zipEntry.getName() + " needs another dictionary.");
+        }
+        inf.setDictionary(dictionary);
+        return zipEntry;
+    }
+}
@@ -0,0 +1,199 @@
+package com.task;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/*
+Raw deflate (as stored in zip entries) of everything written, keeping the CRC-32 and sizes the zip records need.
+With the STORED codec bytes are passed through unchanged instead. With setBlockParallel, deflate levels above 0 are
+deflated in blocks on several threads, see BlockDeflater. With setDictionary, deflating starts from a preset
+dictionary, see Dictionary.
+Also takes ByteBuffers, so direct and memory-mapped buffers are deflated without copying them onto the heap.
+Closing finishes the entry but leaves the underlying stream open.
+ */
+public class EntryOutputStream extends OutputStream {
+
+    private static final byte[] NO_INPUT = new byte[0];
+
+    private final OutputStream out;
+    private final Deflater deflater;
+    private Codec codec;
+    private final CRC32 crc = new CRC32();
+    private final byte[] buffer;
+    private long size;
+    private long compressedSize;
+    private boolean closed;
+    private Executor blockExecutor;
+    private int blockThreads;
+    private BlockDeflater blocks;
+    private byte[] dictionary;
+    private boolean dictionaryUsed;
+
+    public EntryOutputStream(OutputStream out, Codec codec, int bufferSize) {
+        this.out = out;
+        this.codec = codec;
+        this.deflater = new Deflater(codec.level(), true);
+        this.buffer = new byte[bufferSize];
+    }
+
+    public Codec codec() {
+        return codec;
+    }
+
+    /*
+    Changes the codec, which is only possible before anything has been written.
+     */
+    public void setCodec(Codec codec) {
+        if (size > 0) {
+            throw new IllegalStateException("Entry already started.");
+        }
+        this.codec = codec;
+        deflater.setLevel(codec.level());
+    }
+
+    /*
+    Deflates blocks of the entry concurrently on executor, which should run threads tasks at a time. Only possible
+    before anything has been written.
+     */
+    public void setBlockParallel(Executor executor, int threads) {
+        if (size > 0) {
+            throw new IllegalStateException("Entry already started.");
+        }
+        this.blockExecutor = executor;
+        this.blockThreads = threads;
+    }
+
+    /*
+    Deflates the entry with a preset dictionary, unless it is stored or deflated in blocks. Only possible before
+    anything has been written.
+     */
+    public void setDictionary(byte[] dictionary) {
+        if (size > 0) {
+            throw new IllegalStateException("Entry already started.");
+        }
+        this.dictionary = dictionary;
+    }
+
+    /*
+    Whether the entry was deflated with the preset dictionary, which its reader then needs.
+     */
+    public boolean dictionaryUsed() {
+        return dictionaryUsed;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        write(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    public void write(ByteBuffer input) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (codec.method() == ZipEntry.STORED) {
+            size += input.remaining();
+            crc.update(input.duplicate());
+            writeStored(input);
+            return;
+        }
+        if (blocks == null && size == 0 && blockExecutor != null && codec.level() != Deflater.NO_COMPRESSION) {
+            // Twice the threads keeps them busy while the finished blocks are written out.
+            blocks = new BlockDeflater(out, codec.level(), blockExecutor, 2 * blockThreads);
+        }
+        if (blocks == null && dictionary != null && !dictionaryUsed) {
+            deflater.setDictionary(dictionary);
+            dictionaryUsed = true;
+        }
+        size += input.remaining();
+        if (blocks != null) {
+            blocks.write(input);
+            return;
+        }
+        crc.update(input.duplicate());
+        deflater.setInput(input);
+        while (!deflater.needsInput()) {
+            deflate();
+        }
+        // The deflater keeps a reference to its input, which callers may reuse for the next chunk.
+        deflater.setInput(NO_INPUT);
+    }
+
+    /*
+    Ends the deflate stream, after which crc and sizes are final.
+     */
+    public void finish() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (codec.method() == ZipEntry.STORED) {
+                return;
+            }
+            if (blocks != null) {
+                blocks.finish();
+                compressedSize = blocks.compressedSize();
+                return;
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate();
+            }
+        } finally {
+            deflater.end();
+            if (blocks != null) {
+                blocks.end();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+
+    public long crc() {
+        return blocks != null ? blocks.crc() : crc.getValue();
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public long compressedSize() {
+        return compressedSize;
+    }
+
+    private void writeStored(ByteBuffer input) throws IOException {
+        if (input.hasArray()) {
+            out.write(input.array(), input.arrayOffset() + input.position(), input.remaining());
+            compressedSize += input.remaining();
+            input.position(input.limit());
+            return;
+        }
+        while (input.hasRemaining()) {
+            var count = Math.min(buffer.length, input.remaining());
+            input.get(buffer, 0, count);
+            out.write(buffer, 0, count);
+            compressedSize += count;
+        }
+    }
+
+    private void deflate() throws IOException {
+        var count = deflater.deflate(buffer);
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            compressedSize += count;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.task;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/*
+Writer stage of extraction: inflated chunks are handed to a pool of writer threads that create their files and write
+them, so inflating the next chunk overlaps with writing the previous ones and the filesystem works on several files
+at once. Files are dealt out to the writers in turn, all chunks of a file going to the same writer. Chunk buffers are
+recycled.
+Entry names are resolved against the directory by normalising the path, without touching the filesystem, and names
+resolving outside of it are rejected. Directories are remembered once created, so each is created only once.
+written is told the entry name of each file once it is complete, on the thread of its writer.
+ */
+public class ExtractionWriter implements AutoCloseable {
+
+    private static final int QUEUED_CHUNKS = 4;
+
+    private record Chunk(Path file, String name, byte[] bytes, int length, boolean last) {
+    }
+
+    /*
+    Writes its files one after the other, on its stage.
+     */
+    private class Writer {
+        private final PipelineStage<Chunk> stage;
+        private FileChannel current;
+
+        Writer() {
+            this.stage = new PipelineStage<>(StageTimings.Stage.WRITE, timings, QUEUED_CHUNKS, this::writeChunk);
+        }
+
+        private void writeChunk(Chunk chunk) throws IOException {
+            var start = System.nanoTime();
+            if (current == null) {
+                createDirectory(chunk.file().getParent());
+                current = FileChannel.open(chunk.file(), CREATE, WRITE, TRUNCATE_EXISTING);
+            }
+            var bytes = ByteBuffer.wrap(chunk.bytes(), 0, chunk.length());
+            while (bytes.hasRemaining()) {
+                current.write(bytes);
+            }
+            buffers.offer(chunk.bytes());
+            if (chunk.last()) {
+                current.close();
+                current = null;
+            }
+            timings.busy(StageTimings.Stage.WRITE, start, chunk.length());
+            if (chunk.last()) {
+                written.accept(chunk.name());
+            }
+        }
+
+        void close() throws IOException {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+        }
+    }
+
+    private final Path root;
+    private final StageTimings timings;
+    private final Consumer<String> written;
+    private final int bufferSize;
+    private final List<Writer> writers = new ArrayList<>();
+    private final Queue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+    private final Set<Path> directories = ConcurrentHashMap.newKeySet();
+    private int next;
+
+    public ExtractionWriter(File directory, int writerThreads, StageTimings timings) {
+        this(directory, writerThreads, timings, name -> {
+        });
+    }
+
+    public ExtractionWriter(File directory, int writerThreads, StageTimings timings, Consumer<String> written) {
+        this.root = directory.toPath().toAbsolutePath().normalize();
+        this.timings = timings;
+        this.written = written;
+        this.bufferSize = IoBuffers.bufferSize(-1, directory);
+        for (var i = 0; i < Math.max(1, writerThreads); i++) {
+            writers.add(new Writer());
+        }
+    }
+
+    /*
+    The path of the entry named name in root, which it must be inside of.
+     */
+    protected static Path resolve(Path root, String name) throws IOException {
+        var path = root.resolve(name).normalize();
+        if (!path.startsWith(root) || path.equals(root)) {
+            throw new IOException("Entry is outside of the target dir: " + name);
+        }
+        return path;
+    }
+
+    /*
+    Reads in to its end and queues the bytes for writing to the entry named name. Reading counts as inflate time.
+     */
+    protected void write(String name, InputStream in) throws IOException {
+        var file = resolve(root, name);
+        var writer = writers.get(next);
+        next = (next + 1) % writers.size();
+        while (true) {
+            var start = System.nanoTime();
+            var buffer = buffers.poll();
+            buffer = buffer == null ? new byte[bufferSize] : buffer;
+            var length = in.readNBytes(buffer, 0, buffer.length);
+            timings.busy(StageTimings.Stage.INFLATE, start, length);
+            var last = length < buffer.length;
+            writer.stage.put(new Chunk(file, name, buffer, length, last));
+            if (last) {
+                return;
+            }
+        }
+    }
+
+    /*
+    Creates the directory entry named name.
+     */
+    protected void directory(String name) throws IOException {
+        createDirectory(resolve(root, name));
+    }
+
+    /*
+    Waits until everything queued has been written and rethrows the first write failure.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (var writer : writers) {
+            try {
+                writer.stage.finish();
+            } catch (IOException ex) {
+                failure = failure == null ? ex : failure;
+            } finally {
+                writer.close();
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /*
+    Creates directory and its parents unless done before. Called concurrently by the writers.
+     */
+    private void createDirectory(Path directory) throws IOException {
+        if (directories.contains(directory)) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException ex) {
+            throw new IOException("Failed to create directory " + directory, ex);
+        }
+        for (var created = directory; created != null && created.startsWith(root) && directories.add(created); ) {
+            created = created.getParent();
+        }
+    }
+}
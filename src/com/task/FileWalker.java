@@ -0,0 +1,192 @@
+package com.task;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+/*
+Finds the files to archive below the given roots. Directories are listed concurrently on a work-stealing pool, one task
+per directory, and files are handed over through a bounded queue as they are found, so archiving starts right away
+and the walk runs at most QUEUED_FILES ahead of it.
+Entry names are relative to a root's parent, i.e. start with the root's name, and use '/' as separator.
+Symbolic links to directories are not followed, which rules out cycles. Files are found in no particular order.
+
+Globs are matched against both the file name and the whole entry name, so "*.log" matches at any depth and
+"src/**.java" anywhere below src. A file is taken if it matches any include (or there are none) and no exclude.
+Excluded directories are not walked at all.
+ */
+public class FileWalker implements AutoCloseable {
+
+    public record Source(File file, String name) {
+    }
+
+    private record Failure(IOException exception) {
+    }
+
+    private static final Object END = new Object();
+    private static final int QUEUED_FILES = 4096;
+    private static final long CLOSE_CHECK_MILLIS = 10;
+    // Listing directories mostly waits on the filesystem.
+    private static final int THREADS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+    private final List<PathMatcher> includes;
+    private final List<PathMatcher> excludes;
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUED_FILES);
+    private final ForkJoinPool pool;
+    private volatile boolean closed;
+    private boolean ended;
+
+    public FileWalker(List<File> roots, List<String> includes, List<String> excludes) {
+        this.includes = matchers(includes);
+        this.excludes = matchers(excludes);
+        this.pool = new ForkJoinPool(THREADS);
+        pool.execute(() -> walk(roots));
+    }
+
+    /*
+    Returns the next file found, or null once the walk is complete.
+     */
+    protected Source next() throws IOException {
+        if (ended) {
+            return null;
+        }
+        Object item;
+        try {
+            item = queue.take();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted.", ex);
+        }
+        if (item == END) {
+            ended = true;
+            return null;
+        }
+        if (item instanceof Failure failure) {
+            ended = true;
+            throw failure.exception();
+        }
+        return (Source) item;
+    }
+
+    /*
+    Stops the walk if it is still running.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        queue.clear();
+        pool.shutdownNow();
+    }
+
+    private void walk(List<File> roots) {
+        try {
+            var tasks = new ArrayList<RecursiveAction>();
+            for (var root : roots) {
+                var path = root.toPath();
+                // Named like the directory itself, also when given as e.g. "." or "dir/..".
+                var fileName = path.toAbsolutePath().normalize().getFileName();
+                var name = fileName == null ? root.getName() : fileName.toString();
+                if (Files.readAttributes(path, BasicFileAttributes.class).isDirectory()) {
+                    if (!matchesAny(excludes, name)) {
+                        tasks.add(new DirectoryTask(path, name));
+                    }
+                } else {
+                    offer(root, name);
+                }
+            }
+            RecursiveAction.invokeAll(tasks);
+            put(END);
+        } catch (IOException ex) {
+            put(new Failure(ex));
+        } catch (WalkException ex) {
+            put(new Failure((IOException) ex.getCause()));
+        } catch (RuntimeException ex) {
+            put(new Failure(new IOException(ex.getMessage(), ex)));
+        }
+    }
+
+    private class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Path directory;
+        private final String name;
+
+        DirectoryTask(Path directory, String name) {
+            this.directory = directory;
+            this.name = name;
+        }
+
+        @Override
+        protected void compute() {
+            var subdirectories = new ArrayList<DirectoryTask>();
+            try (var children = Files.newDirectoryStream(directory)) {
+                for (var child : children) {
+                    if (closed) {
+                        return;
+                    }
+                    var childName = name + "/" + child.getFileName();
+                    var attributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (attributes.isDirectory()) {
+                        if (!matchesAny(excludes, childName)) {
+                            subdirectories.add(new DirectoryTask(child, childName));
+                        }
+                    } else if (attributes.isRegularFile() || (attributes.isSymbolicLink() && Files.isRegularFile(child))) {
+                        offer(child.toFile(), childName);
+                    }
+                }
+            } catch (IOException ex) {
+                throw new WalkException(new IOException("Failed to list " + directory + ": " + ex.getMessage(), ex));
+            }
+            invokeAll(subdirectories);
+        }
+    }
+
+    /*
+    Carries a listing failure out of the fork/join tasks.
+     */
+    private static class WalkException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        WalkException(IOException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
+    private void offer(File file, String name) {
+        if ((includes.isEmpty() || matchesAny(includes, name)) && !matchesAny(excludes, name)) {
+            put(new Source(file, name));
+        }
+    }
+
+    private static boolean matchesAny(List<PathMatcher> globs, String name) {
+        var path = Path.of(name);
+        var fileName = path.getFileName();
+        return globs.stream().anyMatch(glob -> glob.matches(fileName) || glob.matches(path));
+    }
+
+    private void put(Object item) {
+        try {
+            while (!closed && !queue.offer(item, CLOSE_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+                // The consumer may close the walker instead of taking, see close.
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static List<PathMatcher> matchers(List<String> globs) {
+        var fileSystem = FileSystems.getDefault();
+        return globs.stream().map(glob -> fileSystem.getPathMatcher("glob:" + glob)).toList();
+    }
+}
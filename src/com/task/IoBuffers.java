@@ -0,0 +1,183 @@
+package com.task;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+Buffer sizing and the FileChannel read path shared by compression and extraction.
+Buffers are sized to the file, rounded up to a power of two of at least one filesystem block and clamped to
+[MIN_SIZE, MAX_SIZE], which keeps the number of pooled sizes small.
+Direct buffers are pooled per size so that reads do not allocate, files from MAP_THRESHOLD up are memory-mapped.
+Files spanning several buffers are read ahead on a reader stage, so the disk and the consumer work at the same time.
+ */
+public final class IoBuffers {
+
+    @FunctionalInterface
+    public interface ChunkConsumer {
+        void accept(ByteBuffer chunk) throws IOException;
+    }
+
+    protected static final int MIN_SIZE = 8 * 1024;
+    protected static final int MAX_SIZE = 1 << 20;
+    private static final int DEFAULT_BLOCK_SIZE = 4096;
+    protected static final long MAP_THRESHOLD = 64L << 20;
+    protected static final long MAP_WINDOW = 256L << 20;
+    private static final int POOLED_PER_SIZE = 2 * Runtime.getRuntime().availableProcessors();
+    private static final int READ_AHEAD = 2;
+
+    private static final Map<Path, Integer> BLOCK_SIZES = new ConcurrentHashMap<>();
+    private static final Map<Integer, Queue<ByteBuffer>> POOL = new ConcurrentHashMap<>();
+    private static final Map<Integer, AtomicInteger> POOLED = new ConcurrentHashMap<>();
+
+    private IoBuffers() {
+    }
+
+    /*
+    Buffer size for reading or writing a file of the given size (negative if unknown) in the given directory.
+     */
+    protected static int bufferSize(long fileSize, File directory) {
+        var blockSize = blockSize(directory);
+        if (fileSize < 0 || fileSize >= MAX_SIZE) {
+            return MAX_SIZE;
+        }
+        var size = Math.max(MIN_SIZE, Math.max(blockSize, (int) fileSize));
+        return Math.min(MAX_SIZE, Integer.highestOneBit(size - 1) << 1);
+    }
+
+    /*
+    Reads the whole file in order, passing each chunk to the consumer. Chunks are only valid during the call.
+    Reading counts as busy time of StageTimings.Stage.READ, consuming as busy time of consumerStage.
+    Returns the number of bytes read.
+     */
+    protected static long read(File file, StageTimings timings, StageTimings.Stage consumerStage, ChunkConsumer consumer) throws IOException {
+        try (var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            var size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                for (long position = 0; position < size; position += MAP_WINDOW) {
+                    var start = System.nanoTime();
+                    var window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_WINDOW, size - position));
+                    timings.busy(StageTimings.Stage.READ, start, window.remaining());
+                    consume(window, timings, consumerStage, consumer);
+                }
+                return size;
+            }
+            var bufferSize = bufferSize(size, file.getAbsoluteFile().getParentFile());
+            if (size > bufferSize) {
+                return readAhead(channel, bufferSize, timings, consumerStage, consumer);
+            }
+            var buffer = acquire(bufferSize);
+            try {
+                long total = 0;
+                var start = System.nanoTime();
+                int count;
+                while ((count = channel.read(buffer.clear())) > 0) {
+                    timings.busy(StageTimings.Stage.READ, start, count);
+                    total += buffer.flip().remaining();
+                    consume(buffer, timings, consumerStage, consumer);
+                    start = System.nanoTime();
+                }
+                return total;
+            } finally {
+                release(buffer);
+            }
+        }
+    }
+
+    /*
+    Reads the stream to its end like read(File, ...), in chunks of up to MAX_SIZE. Pipes return whatever is available,
+    so chunks are filled before being passed on. Does not close the stream.
+     */
+    protected static long read(InputStream in, StageTimings timings, StageTimings.Stage consumerStage, ChunkConsumer consumer) throws IOException {
+        var buffer = new byte[MAX_SIZE];
+        long total = 0;
+        while (true) {
+            var start = System.nanoTime();
+            var length = in.readNBytes(buffer, 0, buffer.length);
+            timings.busy(StageTimings.Stage.READ, start, length);
+            if (length == 0) {
+                return total;
+            }
+            total += length;
+            consume(ByteBuffer.wrap(buffer, 0, length), timings, consumerStage, consumer);
+        }
+    }
+
+    private static long readAhead(FileChannel channel, int bufferSize, StageTimings timings, StageTimings.Stage consumerStage,
+                                  ChunkConsumer consumer) throws IOException {
+        var free = new ConcurrentLinkedQueue<ByteBuffer>();
+        long total = 0;
+        try (var reader = new ReadAheadStage<ByteBuffer>(consumerStage, timings, READ_AHEAD, () -> {
+            var start = System.nanoTime();
+            var buffer = free.poll();
+            buffer = buffer == null ? acquire(bufferSize) : buffer.clear();
+            var count = channel.read(buffer);
+            if (count <= 0) {
+                free.offer(buffer);
+                return null;
+            }
+            timings.busy(StageTimings.Stage.READ, start, count);
+            return buffer.flip();
+        })) {
+            ByteBuffer chunk;
+            while ((chunk = reader.take()) != null) {
+                total += chunk.remaining();
+                consume(chunk, timings, consumerStage, consumer);
+                free.offer(chunk);
+            }
+        } finally {
+            free.forEach(IoBuffers::release);
+        }
+        return total;
+    }
+
+    private static void consume(ByteBuffer chunk, StageTimings timings, StageTimings.Stage consumerStage, ChunkConsumer consumer) throws IOException {
+        var start = System.nanoTime();
+        var length = chunk.remaining();
+        consumer.accept(chunk);
+        timings.busy(consumerStage, start, length);
+    }
+
+    protected static ByteBuffer acquire(int size) {
+        var pooled = POOL.computeIfAbsent(size, key -> new ConcurrentLinkedQueue<>()).poll();
+        if (pooled == null) {
+            return ByteBuffer.allocateDirect(size);
+        }
+        POOLED.get(size).decrementAndGet();
+        return pooled.clear();
+    }
+
+    protected static void release(ByteBuffer buffer) {
+        var size = buffer.capacity();
+        var count = POOLED.computeIfAbsent(size, key -> new AtomicInteger());
+        if (count.incrementAndGet() <= POOLED_PER_SIZE) {
+            POOL.computeIfAbsent(size, key -> new ConcurrentLinkedQueue<>()).offer(buffer);
+        } else {
+            count.decrementAndGet();
+        }
+    }
+
+    private static int blockSize(File directory) {
+        if (directory == null) {
+            return DEFAULT_BLOCK_SIZE;
+        }
+        return BLOCK_SIZES.computeIfAbsent(directory.toPath(), path -> {
+            try {
+                var blockSize = Files.getFileStore(path).getBlockSize();
+                return blockSize > 0 && blockSize <= MAX_SIZE ? (int) blockSize : DEFAULT_BLOCK_SIZE;
+            } catch (IOException | UnsupportedOperationException ex) {
+                return DEFAULT_BLOCK_SIZE;
+            }
+        });
+    }
+}
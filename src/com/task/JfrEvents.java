@@ -0,0 +1,95 @@
+package com.task;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/*
+Custom Flight Recorder events, recorded with e.g. java -XX:StartFlightRecording=filename=run.jfr and shown under
+"Encrypted Archive" in JDK Mission Control. Events are only allocated and committed while a recording has them enabled.
+ */
+public final class JfrEvents {
+
+    private JfrEvents() {
+    }
+
+    @Name("com.task.Stage")
+    @Label("Pipeline Stage")
+    @Description("Work done by, or time spent blocked on, a pipeline stage")
+    @Category("Encrypted Archive")
+    @StackTrace(false)
+    static class StageEvent extends Event {
+        @Label("Stage")
+        String stage;
+
+        @Label("Backpressure")
+        @Description("Time other stages were blocked on this stage's full queue, rather than time working")
+        boolean backpressure;
+
+        @Label("Time")
+        @Timespan
+        long nanos;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("com.task.Entry")
+    @Label("Archive Entry")
+    @Category("Encrypted Archive")
+    @StackTrace(false)
+    static class EntryEvent extends Event {
+        @Label("Name")
+        String name;
+
+        @Label("Size")
+        @DataAmount
+        long size;
+
+        @Label("Compressed Size")
+        @DataAmount
+        long compressedSize;
+
+        @Label("Method")
+        String method;
+    }
+
+    @Name("com.task.KeyDerivation")
+    @Label("Key Derivation")
+    @Category("Encrypted Archive")
+    static class KeyDerivationEvent extends Event {
+        @Label("Function")
+        String kdf;
+
+        @Label("Cost")
+        int cost;
+    }
+
+    static void stage(StageTimings.Stage stage, boolean backpressure, long nanos, long bytes) {
+        var event = new StageEvent();
+        if (event.isEnabled()) {
+            event.stage = stage.name().toLowerCase();
+            event.backpressure = backpressure;
+            event.nanos = nanos;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    static void entry(StageTimings.EntryStats entry) {
+        var event = new EntryEvent();
+        if (event.isEnabled()) {
+            event.name = entry.name();
+            event.size = entry.size();
+            event.compressedSize = entry.compressedSize();
+            event.method = entry.codec().toString();
+            event.commit();
+        }
+    }
+}
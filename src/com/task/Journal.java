@@ -0,0 +1,138 @@
+package com.task;
+
+import com.task.exceptions.CipherException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/*
+Checkpoint journal of a resumable job, kept next to its output as <output>.journal and removed once the job is done.
+Creating an archive checkpoints the segments written, the plaintext not yet sealed and the entries written so far;
+extracting one checkpoints the entries extracted. Rerunning the job picks up from there.
+The journal is sealed with the archive's key like a segment, it names the entries, and is replaced atomically, so a
+crash while checkpointing leaves the previous checkpoint. Checkpoints survive the process being killed, not a power
+loss: nothing is forced to disk.
+ */
+public class Journal {
+
+    /*
+    State of an archive being created, see Zipper.
+     */
+    public record Creation(SegmentedOutputStream.Checkpoint segments, byte[] zipState, ArchiveIndex index) {
+    }
+
+    protected static final String SUFFIX = ".journal";
+    /* Reserved segment numbers keep sealed objects apart: -1 the index, -2 wrapped data keys, see CipherMaker. */
+    private static final long JOURNAL_SEGMENT = -3;
+    private static final byte CREATION = 1;
+    private static final byte EXTRACTION = 2;
+
+    private final File file;
+    private final SegmentCipher cipher;
+
+    /*
+    The journal of output, an archive being created or a directory being extracted to.
+     */
+    public Journal(File output, SegmentCipher cipher) {
+        this.file = new File(output.getPath() + SUFFIX);
+        this.cipher = cipher;
+    }
+
+    protected static boolean exists(File output) {
+        return new File(output.getPath() + SUFFIX).isFile();
+    }
+
+    protected void writeCreation(SegmentedOutputStream.Checkpoint segments, ZipStreamWriter zipOut, ArchiveIndex index) throws IOException {
+        var plain = new ByteArrayOutputStream();
+        var plainOut = new DataOutputStream(plain);
+        plainOut.writeByte(CREATION);
+        plainOut.writeLong(segments.segments());
+        writeBytes(plainOut, segments.tail());
+        var zipState = new ByteArrayOutputStream();
+        zipOut.writeState(new DataOutputStream(zipState));
+        writeBytes(plainOut, zipState.toByteArray());
+        writeBytes(plainOut, index.plain());
+        write(plain.toByteArray());
+    }
+
+    protected Creation readCreation() throws IOException {
+        var in = read(CREATION);
+        var segments = new SegmentedOutputStream.Checkpoint(in.readLong(), readBytes(in));
+        return new Creation(segments, readBytes(in), ArchiveIndex.fromPlain(readBytes(in)));
+    }
+
+    protected void writeExtraction(Collection<String> extracted) throws IOException {
+        var plain = new ByteArrayOutputStream();
+        var plainOut = new DataOutputStream(plain);
+        plainOut.writeByte(EXTRACTION);
+        plainOut.writeInt(extracted.size());
+        for (var name : extracted) {
+            plainOut.writeUTF(name);
+        }
+        write(plain.toByteArray());
+    }
+
+    /*
+    Entries extracted so far, none if there is no journal yet.
+     */
+    protected Set<String> readExtraction() throws IOException {
+        var extracted = new HashSet<String>();
+        if (!file.isFile()) {
+            return extracted;
+        }
+        var in = read(EXTRACTION);
+        var count = in.readInt();
+        for (var i = 0; i < count; i++) {
+            extracted.add(in.readUTF());
+        }
+        return extracted;
+    }
+
+    protected void delete() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    private void write(byte[] plain) throws IOException {
+        byte[] sealed;
+        try {
+            sealed = cipher.encryptSegment(plain, plain.length, JOURNAL_SEGMENT, true);
+        } catch (CipherException ex) {
+            throw new IOException("Failed to seal checkpoint.", ex);
+        }
+        var temporary = new File(file.getPath() + ".tmp");
+        Files.write(temporary.toPath(), sealed);
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private DataInputStream read(byte kind) throws IOException {
+        byte[] plain;
+        try {
+            plain = cipher.decryptSegment(Files.readAllBytes(file.toPath()), JOURNAL_SEGMENT, true);
+        } catch (CipherException ex) {
+            throw new IOException("Checkpoint " + file.getName() + " does not belong to this archive or password, delete it to start over.", ex);
+        }
+        var in = new DataInputStream(new ByteArrayInputStream(plain));
+        if (in.readByte() != kind) {
+            throw new IOException("Checkpoint " + file.getName() + " is of another kind of job, delete it to start over.");
+        }
+        return in;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        return in.readNBytes(in.readInt());
+    }
+}
@@ -0,0 +1,92 @@
+package com.task;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+Password key derivation functions for segmented archives. The id is stored in the archive header.
+cost is the iteration count for PBKDF2 and N for scrypt, blockSize and parallelism are only used by scrypt.
+ */
+public enum Kdf {
+    PBKDF2_SHA256(1, Arrays.asList("pbkdf2", "pbkdf2-sha256"), 600_000, 100_000_000) {
+        @Override
+        protected byte[] derive(char[] password, KdfParameters parameters, int length) throws GeneralSecurityException {
+            return pbkdf2("PBKDF2WithHmacSHA256", password, parameters, length);
+        }
+    },
+    PBKDF2_SHA512(2, Arrays.asList("pbkdf2-sha512"), 210_000, 100_000_000) {
+        @Override
+        protected byte[] derive(char[] password, KdfParameters parameters, int length) throws GeneralSecurityException {
+            return pbkdf2("PBKDF2WithHmacSHA512", password, parameters, length);
+        }
+    },
+    SCRYPT(3, Arrays.asList("scrypt"), 1 << 15, 1 << 20) {
+        @Override
+        protected byte[] derive(char[] password, KdfParameters parameters, int length) throws GeneralSecurityException {
+            return Scrypt.derive(password, parameters.salt(), parameters.cost(), parameters.blockSize(), parameters.parallelism(), length);
+        }
+    };
+
+    protected static final int SCRYPT_BLOCK_SIZE = 8;
+    protected static final int SCRYPT_MAX_BLOCK_SIZE = 32;
+    protected static final int SCRYPT_MAX_PARALLELISM = 16;
+
+    private final byte id;
+    private final List<String> names;
+    private final int defaultCost;
+    private final int maxCost;
+
+    Kdf(int id, List<String> names, int defaultCost, int maxCost) {
+        this.id = (byte) id;
+        this.names = names;
+        this.defaultCost = defaultCost;
+        this.maxCost = maxCost;
+    }
+
+    protected abstract byte[] derive(char[] password, KdfParameters parameters, int length) throws GeneralSecurityException;
+
+    public byte id() {
+        return id;
+    }
+
+    public List<String> names() {
+        return names;
+    }
+
+    public int defaultCost() {
+        return defaultCost;
+    }
+
+    /*
+    Upper bound accepted when reading a header, so a crafted archive cannot make derivation arbitrarily slow or large.
+     */
+    public int maxCost() {
+        return maxCost;
+    }
+
+    public static Kdf fromId(byte id) {
+        for (var kdf : values()) {
+            if (kdf.id == id) {
+                return kdf;
+            }
+        }
+        return null;
+    }
+
+    public static Kdf fromName(String name) {
+        for (var kdf : values()) {
+            if (kdf.names.contains(name.toLowerCase())) {
+                return kdf;
+            }
+        }
+        return null;
+    }
+
+    private static byte[] pbkdf2(String algorithm, char[] password, KdfParameters parameters, int length) throws GeneralSecurityException {
+        var factory = SecretKeyFactory.getInstance(algorithm);
+        return factory.generateSecret(new PBEKeySpec(password, parameters.salt(), parameters.cost(), length * 8)).getEncoded();
+    }
+}
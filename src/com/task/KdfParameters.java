@@ -0,0 +1,41 @@
+package com.task;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+public record KdfParameters(Kdf kdf, byte[] salt, int cost, int blockSize, int parallelism) {
+
+    protected static final int SALT_LENGTH = 16;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /*
+    Fresh random salt, scrypt block size and parallelism at their defaults.
+     */
+    public static KdfParameters random(Kdf kdf, int cost) {
+        var salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        return kdf == Kdf.SCRYPT
+                ? new KdfParameters(kdf, salt, cost, Kdf.SCRYPT_BLOCK_SIZE, 1)
+                : new KdfParameters(kdf, salt, cost, 0, 0);
+    }
+
+    /*
+    Arrays compare by identity in records, this compares the salt by content.
+     */
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof KdfParameters that && kdf == that.kdf && Arrays.equals(salt, that.salt)
+                && cost == that.cost && blockSize == that.blockSize && parallelism == that.parallelism;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(salt) + kdf.hashCode() + cost;
+    }
+
+    @Override
+    public String toString() {
+        return kdf + ":" + Base64.getEncoder().encodeToString(salt) + ":" + cost + ":" + blockSize + ":" + parallelism;
+    }
+}
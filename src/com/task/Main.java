@@ -3,58 +3,240 @@ package com.task;
 import com.task.exceptions.CipherException;
 import com.task.exceptions.InvalidArgumentException;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+import static com.task.ArgumentParser.BLOCK_PARALLEL_FLAG;
+import static com.task.ArgumentParser.CHECKPOINT_FLAG;
+import static com.task.ArgumentParser.CIPHER_FLAG;
+import static com.task.ArgumentParser.CONNECT_FLAG;
+import static com.task.ArgumentParser.COST_FLAG;
+import static com.task.ArgumentParser.DEDUP_FLAG;
+import static com.task.ArgumentParser.DICTIONARY_FLAG;
+import static com.task.ArgumentParser.ENTRY_FLAG;
+import static com.task.ArgumentParser.EXCLUDE_FLAG;
+import static com.task.ArgumentParser.INCLUDE_FLAG;
 import static com.task.ArgumentParser.HELP_FLAG;
+import static com.task.ArgumentParser.INCREMENTAL_FLAG;
+import static com.task.ArgumentParser.JOBS_FLAG;
+import static com.task.ArgumentParser.KDF_FLAG;
+import static com.task.ArgumentParser.LEVEL_FLAG;
+import static com.task.ArgumentParser.LEVEL_VALUE_AUTO;
+import static com.task.ArgumentParser.MEMORY_BUDGET_FLAG;
 import static com.task.ArgumentParser.MODE_FLAG;
+import static com.task.ArgumentParser.MODE_VALUE_ADD_KEY;
+import static com.task.ArgumentParser.MODE_VALUE_APPEND;
 import static com.task.ArgumentParser.MODE_VALUE_DECRYPT;
 import static com.task.ArgumentParser.MODE_VALUE_ENCRYPT;
+import static com.task.ArgumentParser.MODE_VALUE_EXTRACT;
+import static com.task.ArgumentParser.MODE_VALUE_LIST;
+import static com.task.ArgumentParser.MODE_VALUE_REKEY;
+import static com.task.ArgumentParser.MODE_VALUE_RESTORE;
+import static com.task.ArgumentParser.MODE_VALUE_VERIFY;
 import static com.task.ArgumentParser.Mode.HELP;
 import static com.task.ArgumentParser.NAME_FLAG;
+import static com.task.ArgumentParser.NEW_PASSWORD_FLAG;
 import static com.task.ArgumentParser.OUTPUT_DIRECTORY_FLAG;
 import static com.task.ArgumentParser.PASSWORD_FLAG;
+import static com.task.ArgumentParser.PROGRESS_FLAG;
+import static com.task.ArgumentParser.SERVE_FLAG;
+import static com.task.ArgumentParser.STREAM;
+import static com.task.ArgumentParser.SUMMARY_FLAG;
+import static com.task.ArgumentParser.SUMMARY_VALUE_JSON;
+import static com.task.ArgumentParser.SUMMARY_VALUE_TEXT;
+import static com.task.ArgumentParser.VOLUME_FLAG;
 
 public class Main {
 
     public static void main(String[] args) {
-        var argumentParser = new ArgumentParser(args);
+        if (args.length > 0 && SERVE_FLAG.contains(args[0])) {
+            System.exit(serve(args));
+        }
+        if (args.length > 0 && CONNECT_FLAG.contains(args[0])) {
+            if (args.length < 2) {
+                System.out.println(helpText());
+                System.exit(2);
+            }
+            System.exit(Client.run(Path.of(args[1]), Arrays.copyOfRange(args, 2, args.length), new File("").getAbsoluteFile(),
+                    System.out, System.err));
+        }
 
-        Command command;
+        var command = parse(args, null, System.out);
+        var status = command == null ? 2 : run(command, System.out, System.err);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /*
+    Returns null, having printed why and the help text, if args are invalid.
+     */
+    protected static Command parse(String[] args, File workingDirectory, PrintStream out) {
         try {
-            command = argumentParser.parse();
+            return new ArgumentParser(args, workingDirectory).parse();
         } catch (InvalidArgumentException ex) {
-            System.out.println(ex.getMessage());
-            System.out.println(helpText());
-            return;
+            out.println(ex.getMessage());
+            out.println(helpText());
+            return null;
         }
+    }
 
+    /*
+    Executes the command, printing to out and err instead of the process's streams. Returns the exit status.
+     */
+    protected static int run(Command command, PrintStream out, PrintStream err) {
         if (command.getMode().equals(HELP)) {
-            System.out.println(helpText());
-            return;
+            out.println(helpText());
+            return 0;
         }
-        System.out.println(command);
+        // Standard output may carry the archive or its contents, messages then go to standard error.
+        var console = command.writesStandardOutput() ? err : out;
+        command.setConsole(console);
+        if (!command.isJsonSummary()) {
+            console.println(command);
+        }
+        var start = System.nanoTime();
+        String failure = null;
+        var progress = command.getProgressSeconds() == 0 ? null
+                : new Progress(command.getTimings(), err, TimeUnit.SECONDS.toMillis(command.getProgressSeconds()));
         try {
             command.execute();
         } catch (CipherException | IOException ex) {
-            System.out.println("\nEncryption failed.\n" + ex.getMessage());
+            failure = ex.getMessage();
+        } finally {
+            if (progress != null) {
+                progress.close();
+            }
+        }
+        if (command.isJsonSummary()) {
+            console.println(command.getTimings().toJson(System.nanoTime() - start, failure));
+        } else if (failure != null) {
+            console.println("\nEncryption failed.\n" + failure);
+        } else {
+            var timings = command.getTimings().toString();
+            if (!timings.isEmpty()) {
+                console.println("\nStage timings:" + timings);
+            }
+        }
+        return failure == null ? 0 : 1;
+    }
+
+    private static int serve(String[] args) {
+        if (args.length != 2) {
+            System.out.println(helpText());
+            return 2;
+        }
+        Server server;
+        try {
+            server = new Server(Path.of(args[1]));
+        } catch (IOException ex) {
+            System.err.println("Failed to start server.\n" + ex.getMessage());
+            return 1;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException ex) {
+                System.err.println("Failed to stop server cleanly.\n" + ex.getMessage());
+            }
+        }));
+        System.out.println("Listening on " + args[1] + ".");
+        try {
+            server.serve();
+        } catch (IOException ex) {
+            System.err.println("Server failed.\n" + ex.getMessage());
+            return 1;
         }
+        return 0;
     }
 
     private static String helpText() {
-        return "Usage: encryptedArchive " + MODE_FLAG + " " + NAME_FLAG + " " + OUTPUT_DIRECTORY_FLAG + " <" + formatOptions(PASSWORD_FLAG) + "> FILEPATH...\n\n"
+        return "Usage: encryptedArchive " + MODE_FLAG + " " + NAME_FLAG + " " + OUTPUT_DIRECTORY_FLAG + " " + ENTRY_FLAG + " " + INCLUDE_FLAG + " " + EXCLUDE_FLAG + " " + JOBS_FLAG + " " + MEMORY_BUDGET_FLAG + " " + CIPHER_FLAG + " " + KDF_FLAG + " " + COST_FLAG + " " + LEVEL_FLAG + " " + BLOCK_PARALLEL_FLAG + " " + DICTIONARY_FLAG + " " + DEDUP_FLAG + " " + VOLUME_FLAG + " " + INCREMENTAL_FLAG + " " + CHECKPOINT_FLAG + " " + SUMMARY_FLAG + " " + PROGRESS_FLAG + " " + NEW_PASSWORD_FLAG + " <" + formatOptions(PASSWORD_FLAG) + "> FILEPATH...\n\n"
                 + "Options:\n"
                 + "\t" + formatOptions(PASSWORD_FLAG) + " (Required)\n\t\t Password for encryption/decryption.\n"
                 + "\t" + formatOptions(MODE_FLAG) + " (Optional)\n"
-                + "\t\t" + formatOptions(MODE_VALUE_ENCRYPT) + " (default): For packing files specified by FILEPATH into archive.\n"
+                + "\t\t" + formatOptions(MODE_VALUE_ENCRYPT) + " (default): For packing files specified by FILEPATH into archive. Directories are packed recursively, with paths relative to their parent.\n"
+                + "\t\t" + formatOptions(MODE_VALUE_APPEND) + ": For adding files specified by FILEPATH to the archive named by " + formatOptions(NAME_FLAG) + " in " + formatOptions(OUTPUT_DIRECTORY_FLAG) + ", without rewriting what it holds. Files whose entry the archive already has are skipped and listed.\n"
                 + "\t\t" + formatOptions(MODE_VALUE_DECRYPT) + ": For unpacking archives specified by FILEPATH.\n"
-                + "\t" + formatOptions(NAME_FLAG) + " (Optional)\n\t\t Name of output archive.\n"
+                + "\t\t" + formatOptions(MODE_VALUE_LIST) + ": For listing the contents of archives specified by FILEPATH.\n"
+                + "\t\t" + formatOptions(MODE_VALUE_EXTRACT) + ": For unpacking only the entries named by " + formatOptions(ENTRY_FLAG) + " from archives specified by FILEPATH.\n"
+                + "\t\t" + formatOptions(MODE_VALUE_RESTORE) + ": For rebuilding the files as of the last archive of a chain specified by FILEPATH, a base archive followed by its incremental archives in order.\n"
+                + "\t\t" + formatOptions(MODE_VALUE_VERIFY) + ": For checking archives specified by FILEPATH, or " + STREAM + " for standard input, without writing their contents: every segment is authenticated and every entry's CRC checked. Corrupt entries are reported by name, a corrupt central directory as such.\n"
+                + "\t\t" + formatOptions(MODE_VALUE_REKEY) + ": For changing the password of archives specified by FILEPATH to the one given by " + formatOptions(NEW_PASSWORD_FLAG) + ". Only the archive header is rewritten, the contents are not re-encrypted.\n"
+                + "\t\t" + formatOptions(MODE_VALUE_ADD_KEY) + ": For adding the password given by " + formatOptions(NEW_PASSWORD_FLAG) + " to archives specified by FILEPATH, which then open with either password, up to " + ArchiveHeader.KEY_SLOTS + " in all.\n"
+                + "\t" + formatOptions(NAME_FLAG) + " (Optional)\n\t\t Name of output archive, " + STREAM + " for standard output.\n"
                 + "\t\t\tDefault encrypt mode: Autogenerated UUID.\n"
+                + "\t\t\tRequired in append mode, the archive to append to.\n"
                 + "\t\t\tDefault decrypt mode: ignored, source filenames are used.\n"
-                + "\t" + formatOptions(OUTPUT_DIRECTORY_FLAG) + " (Optional)\n\t\t The directory to place output in.\n"
-                + "\t\t\tDefault encrypt mode: Present working directory.\n"
-                + "\t\t\tDefault decrypt mode: `decrypted/[input file name]` child directory to present working directory.\n"
-                + "\t" + formatOptions(HELP_FLAG) + "\n\t\tDisplay this message.";
+                + "\t" + formatOptions(OUTPUT_DIRECTORY_FLAG) + " (Optional)\n\t\t The directory to place output in. In decrypt mode " + STREAM + " writes the contents of all entries to standard output instead.\n"
+                + "\t\t\tEncrypt mode: may be repeated, the archive's volumes are then striped across all directories given and written to them concurrently, see " + formatOptions(VOLUME_FLAG) + ".\n"
+                + "\t\t\tDefault encrypt and append mode: Present working directory.\n"
+                + "\t\t\tDefault decrypt mode: `decrypted/[input file name]` child directory to present working directory (last input file name for restore).\n"
+                + "\t" + formatOptions(ENTRY_FLAG) + " (Required for extract mode)\n\t\t Name of an archive entry to extract. May be repeated.\n"
+                + "\t" + formatOptions(NEW_PASSWORD_FLAG) + " (Required for rekey and addkey mode)\n\t\t New password of the archives. Its key is derived with " + formatOptions(KDF_FLAG) + " and " + formatOptions(COST_FLAG) + ".\n"
+                + "\t" + formatOptions(INCLUDE_FLAG) + " (Optional)\n\t\t Glob for files to take from directories, matched against file name and path, e.g. *.java. May be repeated.\n"
+                + "\t\t\tDefault: all files.\n"
+                + "\t" + formatOptions(EXCLUDE_FLAG) + " (Optional)\n\t\t Glob for files and directories to leave out, e.g. target. May be repeated.\n"
+                + "\t" + formatOptions(JOBS_FLAG) + " (Optional)\n\t\t Maximum number of entries compressed (encrypt mode), or of archives read concurrently. The archives read share this many threads for writing their files or verifying their entries.\n"
+                + "\t\t\tDefault: number of available processors.\n"
+                + "\t" + formatOptions(MEMORY_BUDGET_FLAG) + " (Optional)\n\t\t Memory in MiB for entries compressed ahead of being written, larger entries spill to disk.\n"
+                + "\t\t\tWith " + formatOptions(DEDUP_FLAG) + " a quarter of it holds the chunk index, which spills beyond that, and decrypting caches a quarter of it in segments.\n"
+                + "\t\t\tDefault: " + (Zipper.DEFAULT_MEMORY_BUDGET >> 20) + ".\n"
+                + "\t" + formatOptions(LEVEL_FLAG) + " (Optional)\n\t\t Compression level for every entry, 0 (stored) to 9, or " + LEVEL_VALUE_AUTO + ".\n"
+                + "\t\t\tDefault: " + LEVEL_VALUE_AUTO + ", chosen per entry from a sample: already compressed formats and random looking data are stored, the rest deflated at a fast or the default level.\n"
+                + "\t" + formatOptions(BLOCK_PARALLEL_FLAG) + " (Optional)\n\t\t Encrypt mode: files of at least the given MiB, and " + STREAM + ", are deflated in blocks of " + (BlockDeflater.BLOCK_SIZE >> 10) + " KiB on all " + formatOptions(JOBS_FLAG) + " threads, one file at a time, still as a single deflate stream. 0 turns this off.\n"
+                + "\t\t\tDefault: " + (Zipper.DEFAULT_BLOCK_PARALLEL_THRESHOLD >> 20) + ".\n"
+                + "\t" + formatOptions(DICTIONARY_FLAG) + " (Optional)\n\t\t Encrypt mode: files of at most the given KiB are deflated with a preset dictionary of up to " + (Dictionary.MAX_SIZE >> 10) + " KiB, trained from a sample of them\n"
+                + "\t\t\tand stored once in the archive index, e.g. 64 for many small JSON or configuration files. Such archives are decrypted from files, not " + STREAM + ". Not with " + formatOptions(DEDUP_FLAG) + ".\n"
+                + "\t\t\tDefault: 0, off.\n"
+                + "\t" + formatOptions(DEDUP_FLAG) + " (Optional)\n\t\t Encrypt mode: deduplicate, cutting files into content-defined chunks of about the given KiB (a power of two up to " + Command.MAX_AVERAGE_CHUNK_KIB + ")\n"
+                + "\t\t\tand storing every unique chunk once, e.g. 64 for VM images or copies of the same files. Such archives are decrypted from files, not " + STREAM + ".\n"
+                + "\t\t\tDefault: 0, off.\n"
+                + "\t" + formatOptions(VOLUME_FLAG) + " (Optional)\n\t\t Encrypt mode: split the archive into volumes of the given MiB, named NAME.001, NAME.002, ..., dealt out in " + (VolumeSet.STRIPE_SIZE >> 20) + " MiB stripes\n"
+                + "\t\t\tto the output directories in turn. Decrypt, list and extract take any one volume as FILEPATH and find the others next to it or in the directories\n"
+                + "\t\t\tthey were written to, reading all of them concurrently.\n"
+                + "\t\t\tDefault: 0, a single file, or one volume per directory if several are given.\n"
+                + "\t" + formatOptions(CIPHER_FLAG) + " (Optional)\n\t\t Cipher for new archives, stored in the archive header. Decryption picks the archive's cipher itself.\n"
+                + "\t\t\tOne of: " + cipherNames() + ". Default: " + CipherSuite.AES_256_GCM.names().get(0) + ", fastest on CPUs with AES instructions, " + CipherSuite.CHACHA20_POLY1305.names().get(0) + " is faster without.\n"
+                + "\t" + formatOptions(KDF_FLAG) + " (Optional)\n\t\t Password key derivation function for new archives, stored in the archive header.\n"
+                + "\t\t\tOne of: " + kdfNames() + ". Default: " + Kdf.PBKDF2_SHA256.names().get(0) + ".\n"
+                + "\t" + formatOptions(COST_FLAG) + " (Optional)\n\t\t Key derivation cost: iterations for pbkdf2, N (a power of two) for scrypt.\n"
+                + "\t\t\tDefault: " + defaultCosts() + ".\n"
+                + "\t" + formatOptions(INCREMENTAL_FLAG) + " (Optional)\n\t\t Previous archive (base or latest incremental) of a chain. Encrypt mode then only stores files new or changed since, and marks deleted ones.\n"
+                + "\t" + formatOptions(CHECKPOINT_FLAG) + " (Optional)\n\t\t Encrypt, append and decrypt mode: checkpoint progress every given number of seconds (at the end of an entry) to OUTPUT.journal.\n"
+                + "\t\t\tRunning the same command again after a crash continues from the last checkpoint. Not for " + STREAM + ".\n"
+                + "\t\t\tAn append is always checkpointed where it starts, so it can be run again after a crash.\n"
+                + "\t\t\tDefault: 0, off.\n"
+                + "\t" + formatOptions(SUMMARY_FLAG) + " (Optional)\n\t\t Summary printed when done: time and bytes per stage (key derivation, read, compress, encrypt, write, ...) and entry sizes.\n"
+                + "\t\t" + SUMMARY_VALUE_TEXT + " (default): Human readable, after the command.\n"
+                + "\t\t" + SUMMARY_VALUE_JSON + ": A single JSON object instead, including the largest entries and their compression ratios.\n"
+                + "\t" + formatOptions(PROGRESS_FLAG) + " (Optional)\n\t\t Print bytes read and written and throughput to standard error every given number of seconds.\n"
+                + "\t\t\tDefault: 0, off.\n"
+                + "\t" + formatOptions(HELP_FLAG) + "\n\t\tDisplay this message.\n\n"
+                + "FILEPATH " + STREAM + " reads a single file to encrypt (stored as entry `" + Command.STREAM_ENTRY_NAME + "`) or archive to decrypt from standard input.\n"
+                + "\tE.g. pg_dump db | encryptedArchive -p secret -n - - | upload\n\n"
+                + "Server mode, for many short jobs: encryptedArchive " + formatOptions(SERVE_FLAG) + " SOCKET keeps running and executes the commands\n"
+                + "\tsent with encryptedArchive " + formatOptions(CONNECT_FLAG) + " SOCKET [command options and FILEPATHs], without JVM startup, and\n"
+                + "\twithout key derivation for archives created within 10 minutes with the same password and settings. Not for " + STREAM + ".\n\n"
+                + "Stages, entries and key derivations are also recorded as Flight Recorder events (com.task.*), e.g. with java -XX:StartFlightRecording=filename=run.jfr.";
+    }
+
+    private static String cipherNames() {
+        return Arrays.stream(CipherSuite.values()).map(suite -> formatOptions(suite.names())).collect(Collectors.joining(", "));
+    }
+
+    private static String kdfNames() {
+        return Arrays.stream(Kdf.values()).map(kdf -> formatOptions(kdf.names())).collect(Collectors.joining(", "));
+    }
+
+    private static String defaultCosts() {
+        return Arrays.stream(Kdf.values()).map(kdf -> kdf.names().get(0) + " " + kdf.defaultCost()).collect(Collectors.joining(", "));
     }
 
     private static String formatOptions(List<String> options) {
@@ -68,9 +250,7 @@ public class Main {
         - Warn/reject/auto-rename in case of overwriting existing files?
             - Flag and/or prompt to override?
         - Roll back / delete output in case of failure.
-        - Zip directories.
         - Make password optional, zip without encrypting?
-        - Choice of algorithm?
         - More tests (always...)
      */
 }
@@ -0,0 +1,113 @@
+package com.task;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+A pipeline stage with a dedicated thread taking items from a bounded queue and handling them in order.
+put blocks while the queue is full, which holds back the stages feeding it. After a failure the remaining items are
+dropped and the failure is rethrown to the producer on its next put or on finish.
+ */
+public class PipelineStage<T> {
+
+    @FunctionalInterface
+    public interface Handler<T> {
+        void handle(T item) throws IOException;
+    }
+
+    protected static final ExecutorService THREADS = Executors.newCachedThreadPool(runnable -> {
+        var thread = new Thread(runnable, "pipeline-stage");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Object END = new Object();
+
+    private record Barrier(CompletableFuture<Void> reached) {
+    }
+
+    private final StageTimings.Stage stage;
+    private final StageTimings timings;
+    private final BlockingQueue<Object> queue;
+    private final CompletableFuture<Void> done;
+    private volatile IOException failure;
+    private boolean finished;
+
+    public PipelineStage(StageTimings.Stage stage, StageTimings timings, int capacity, Handler<T> handler) {
+        this.stage = stage;
+        this.timings = timings;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.done = CompletableFuture.runAsync(() -> run(handler), THREADS);
+    }
+
+    protected void put(T item) throws IOException {
+        checkFailure();
+        if (!queue.offer(item)) {
+            var start = System.nanoTime();
+            enqueue(item);
+            timings.backpressure(stage, start);
+        }
+    }
+
+    /*
+    Waits for all queued items to be handled. Also ends the stage thread after a failure of the producer.
+     */
+    protected void finish() throws IOException {
+        if (!finished) {
+            finished = true;
+            enqueue(END);
+            SegmentedOutputStream.await(done);
+        }
+        checkFailure();
+    }
+
+    /*
+    Waits for the items queued so far to be handled, the stage keeps running.
+     */
+    protected void drain() throws IOException {
+        var barrier = new Barrier(new CompletableFuture<>());
+        enqueue(barrier);
+        SegmentedOutputStream.await(barrier.reached());
+        checkFailure();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void run(Handler<T> handler) {
+        try {
+            Object item;
+            while ((item = queue.take()) != END) {
+                if (item instanceof Barrier barrier) {
+                    barrier.reached().complete(null);
+                } else if (failure == null) {
+                    try {
+                        handler.handle((T) item);
+                    } catch (IOException ex) {
+                        failure = ex;
+                    } catch (RuntimeException ex) {
+                        failure = new IOException(ex.getMessage(), ex);
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void enqueue(Object item) throws IOException {
+        try {
+            queue.put(item);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted.", ex);
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
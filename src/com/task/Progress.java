@@ -0,0 +1,75 @@
+package com.task;
+
+import java.io.PrintStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+Live progress of a long job: every interval, prints the bytes read and written so far, their rate over the last
+interval, and the entries done. On a terminal the line is rewritten in place, otherwise one line is printed per interval.
+ */
+public class Progress implements AutoCloseable {
+
+    private final StageTimings timings;
+    private final PrintStream out;
+    private final boolean inPlace;
+    private final ScheduledExecutorService scheduler;
+    private final long start = System.nanoTime();
+    private long lastNanos = start;
+    private long lastRead;
+    private long lastWritten;
+    private boolean printed;
+
+    public Progress(StageTimings timings, PrintStream out, long intervalMillis) {
+        this.timings = timings;
+        this.out = out;
+        this.inPlace = System.console() != null;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::print, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+    Stops printing, ending the line if one was printed in place.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (printed && inPlace) {
+                out.println();
+            }
+        }
+    }
+
+    private synchronized void print() {
+        var now = System.nanoTime();
+        var read = timings.bytes(StageTimings.Stage.READ);
+        var written = timings.bytes(StageTimings.Stage.WRITE);
+        var interval = now - lastNanos;
+        var line = String.format("%6.1f s  read %s MiB (%s MiB/s)  written %s MiB (%s MiB/s)  %d entries",
+                (now - start) / 1e9,
+                StageTimings.mebibytes(read), StageTimings.mebibytes(StageTimings.perSecond(read - lastRead, interval)),
+                StageTimings.mebibytes(written), StageTimings.mebibytes(StageTimings.perSecond(written - lastWritten, interval)),
+                timings.entries());
+        if (inPlace) {
+            out.print("\r" + line);
+            out.flush();
+        } else {
+            out.println(line);
+        }
+        printed = true;
+        lastNanos = now;
+        lastRead = read;
+        lastWritten = written;
+    }
+}
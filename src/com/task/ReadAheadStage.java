@@ -0,0 +1,130 @@
+package com.task;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/*
+A pipeline stage with a dedicated thread producing items ahead of the consumer into a bounded queue.
+The producer blocks while the queue is full, so it runs at most capacity items ahead. Its failures are rethrown to the
+consumer in order, after the items produced before them.
+ */
+public class ReadAheadStage<T> implements AutoCloseable {
+
+    @FunctionalInterface
+    public interface Producer<T> {
+        /*
+        Returns the next item, or null at the end.
+         */
+        T next() throws IOException;
+    }
+
+    private record Failure(IOException exception) {
+    }
+
+    private static final Object END = new Object();
+    private static final long CLOSE_CHECK_MILLIS = 10;
+
+    private final StageTimings.Stage downstream;
+    private final StageTimings timings;
+    private final BlockingQueue<Object> queue;
+    private final CompletableFuture<Void> done;
+    private final boolean waitsOnClose;
+    private volatile boolean closed;
+    private boolean ended;
+
+    /*
+    Time the producer spends blocked on a full queue counts as backpressure of the downstream stage.
+     */
+    public ReadAheadStage(StageTimings.Stage downstream, StageTimings timings, int capacity, Producer<T> producer) {
+        this(downstream, timings, capacity, producer, true);
+    }
+
+    /*
+    Unless waitsOnClose, close does not wait for the producer, which then must not touch anything the consumer frees
+    after closing. A producer blocked reading, e.g. from a pipe, then cannot hang the consumer; it stops after its
+    current item.
+     */
+    public ReadAheadStage(StageTimings.Stage downstream, StageTimings timings, int capacity, Producer<T> producer, boolean waitsOnClose) {
+        this.downstream = downstream;
+        this.timings = timings;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.waitsOnClose = waitsOnClose;
+        this.done = CompletableFuture.runAsync(() -> run(producer), PipelineStage.THREADS);
+    }
+
+    /*
+    Returns the next item, or null at the end.
+     */
+    @SuppressWarnings("unchecked")
+    protected T take() throws IOException {
+        if (ended) {
+            return null;
+        }
+        Object item;
+        try {
+            // Taking from a stage closed meanwhile, e.g. by the abandoned producer of a stage reading from it, fails.
+            while ((item = queue.poll(CLOSE_CHECK_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                if (closed) {
+                    throw new IOException("Stage closed.");
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted.", ex);
+        }
+        if (item == END) {
+            ended = true;
+            return null;
+        }
+        if (item instanceof Failure failure) {
+            ended = true;
+            throw failure.exception();
+        }
+        return (T) item;
+    }
+
+    /*
+    Stops the producer and waits for it, so whatever it reads from can be closed safely, see waitsOnClose. Unconsumed
+    items are dropped.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        queue.clear();
+        if (waitsOnClose) {
+            done.join();
+        }
+        queue.clear();
+    }
+
+    private void run(Producer<T> producer) {
+        try {
+            T item;
+            while (!closed && (item = producer.next()) != null) {
+                put(item);
+            }
+            put(END);
+        } catch (IOException ex) {
+            put(new Failure(ex));
+        } catch (RuntimeException ex) {
+            put(new Failure(new IOException(ex.getMessage(), ex)));
+        }
+    }
+
+    private void put(Object item) {
+        try {
+            if (!queue.offer(item)) {
+                var start = System.nanoTime();
+                while (!closed && !queue.offer(item, CLOSE_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+                    // The consumer may close the stage instead of taking, see close.
+                }
+                timings.backpressure(downstream, start);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.task;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+
+/*
+scrypt as specified in RFC 7914, which the JDK does not provide. Memory use is 128 * cost * blockSize bytes.
+ */
+public final class Scrypt {
+
+    private static final long MAX_MEMORY = 1L << 30;
+
+    private Scrypt() {
+    }
+
+    protected static byte[] derive(char[] password, byte[] salt, int cost, int blockSize, int parallelism, int length) throws GeneralSecurityException {
+        if (cost < 2 || Integer.bitCount(cost) != 1) {
+            throw new GeneralSecurityException("scrypt cost must be a power of two, was " + cost + ".");
+        }
+        if (blockSize < 1 || parallelism < 1 || 128L * cost * blockSize > MAX_MEMORY) {
+            throw new GeneralSecurityException("Unsupported scrypt parameters " + cost + ", " + blockSize + ", " + parallelism + ".");
+        }
+        var blockInts = 32 * blockSize;
+        var mixed = pbkdf2(password, salt, parallelism * 4 * blockInts);
+        var x = new int[blockInts];
+        var y = new int[blockInts];
+        var v = new int[blockInts * cost];
+        for (var i = 0; i < parallelism; i++) {
+            var offset = i * 4 * blockInts;
+            for (var k = 0; k < blockInts; k++) {
+                x[k] = readInt(mixed, offset + 4 * k);
+            }
+            roMix(x, y, v, cost, blockSize);
+            for (var k = 0; k < blockInts; k++) {
+                writeInt(mixed, offset + 4 * k, x[k]);
+            }
+        }
+        return pbkdf2(password, mixed, length);
+    }
+
+    private static void roMix(int[] x, int[] y, int[] v, int cost, int blockSize) {
+        var blockInts = x.length;
+        for (var i = 0; i < cost; i++) {
+            System.arraycopy(x, 0, v, i * blockInts, blockInts);
+            blockMix(x, y, blockSize);
+        }
+        for (var i = 0; i < cost; i++) {
+            var j = x[(2 * blockSize - 1) * 16] & (cost - 1);
+            for (var k = 0; k < blockInts; k++) {
+                x[k] ^= v[j * blockInts + k];
+            }
+            blockMix(x, y, blockSize);
+        }
+    }
+
+    private static void blockMix(int[] b, int[] y, int blockSize) {
+        var state = new int[16];
+        System.arraycopy(b, (2 * blockSize - 1) * 16, state, 0, 16);
+        for (var i = 0; i < 2 * blockSize; i++) {
+            for (var k = 0; k < 16; k++) {
+                state[k] ^= b[i * 16 + k];
+            }
+            salsa20_8(state);
+            // Even blocks go to the first half of the output, odd blocks to the second.
+            System.arraycopy(state, 0, y, ((i & 1) * blockSize + i / 2) * 16, 16);
+        }
+        System.arraycopy(y, 0, b, 0, b.length);
+    }
+
+    private static void salsa20_8(int[] block) {
+        var x = block.clone();
+        for (var i = 0; i < 8; i += 2) {
+            x[4] ^= Integer.rotateLeft(x[0] + x[12], 7);
+            x[8] ^= Integer.rotateLeft(x[4] + x[0], 9);
+            x[12] ^= Integer.rotateLeft(x[8] + x[4], 13);
+            x[0] ^= Integer.rotateLeft(x[12] + x[8], 18);
+            x[9] ^= Integer.rotateLeft(x[5] + x[1], 7);
+            x[13] ^= Integer.rotateLeft(x[9] + x[5], 9);
+            x[1] ^= Integer.rotateLeft(x[13] + x[9], 13);
+            x[5] ^= Integer.rotateLeft(x[1] + x[13], 18);
+            x[14] ^= Integer.rotateLeft(x[10] + x[6], 7);
+            x[2] ^= Integer.rotateLeft(x[14] + x[10], 9);
+            x[6] ^= Integer.rotateLeft(x[2] + x[14], 13);
+            x[10] ^= Integer.rotateLeft(x[6] + x[2], 18);
+            x[3] ^= Integer.rotateLeft(x[15] + x[11], 7);
+            x[7] ^= Integer.rotateLeft(x[3] + x[15], 9);
+            x[11] ^= Integer.rotateLeft(x[7] + x[3], 13);
+            x[15] ^= Integer.rotateLeft(x[11] + x[7], 18);
+            x[1] ^= Integer.rotateLeft(x[0] + x[3], 7);
+            x[2] ^= Integer.rotateLeft(x[1] + x[0], 9);
+            x[3] ^= Integer.rotateLeft(x[2] + x[1], 13);
+            x[0] ^= Integer.rotateLeft(x[3] + x[2], 18);
+            x[6] ^= Integer.rotateLeft(x[5] + x[4], 7);
+            x[7] ^= Integer.rotateLeft(x[6] + x[5], 9);
+            x[4] ^= Integer.rotateLeft(x[7] + x[6], 13);
+            x[5] ^= Integer.rotateLeft(x[4] + x[7], 18);
+            x[11] ^= Integer.rotateLeft(x[10] + x[9], 7);
+            x[8] ^= Integer.rotateLeft(x[11] + x[10], 9);
+            x[9] ^= Integer.rotateLeft(x[8] + x[11], 13);
+            x[10] ^= Integer.rotateLeft(x[9] + x[8], 18);
+            x[12] ^= Integer.rotateLeft(x[15] + x[14], 7);
+            x[13] ^= Integer.rotateLeft(x[12] + x[15], 9);
+            x[14] ^= Integer.rotateLeft(x[13] + x[12], 13);
+            x[15] ^= Integer.rotateLeft(x[14] + x[13], 18);
+        }
+        for (var i = 0; i < 16; i++) {
+            block[i] += x[i];
+        }
+    }
+
+    private static byte[] pbkdf2(char[] password, byte[] salt, int length) throws GeneralSecurityException {
+        var factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+        return factory.generateSecret(new PBEKeySpec(password, salt, 1, length * 8)).getEncoded();
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8 | (bytes[offset + 2] & 0xff) << 16 | (bytes[offset + 3] & 0xff) << 24;
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >>> 8);
+        bytes[offset + 2] = (byte) (value >>> 16);
+        bytes[offset + 3] = (byte) (value >>> 24);
+    }
+}
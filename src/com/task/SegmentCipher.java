@@ -0,0 +1,89 @@
+package com.task;
+
+import com.task.exceptions.CipherException;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+import static javax.crypto.Cipher.DECRYPT_MODE;
+import static javax.crypto.Cipher.ENCRYPT_MODE;
+
+/*
+Seals and opens the segments of one archive under the key derived for it, with the archive's CipherSuite. Each
+segment is sealed on its own with a fresh nonce. The segment index and final flag are authenticated so segments cannot be reordered, dropped or
+truncated unnoticed. Thread safe.
+ */
+public class SegmentCipher {
+
+    protected static final int KEY_LENGTH = CipherSuite.KEY_LENGTH;
+    private static final int NONCE_LENGTH = CipherSuite.NONCE_LENGTH;
+    protected static final int SEGMENT_OVERHEAD = NONCE_LENGTH + CipherSuite.TAG_LENGTH;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final CipherSuite suite;
+    private final SecretKey key;
+
+    public SegmentCipher(CipherSuite suite, SecretKey key) {
+        this.suite = suite;
+        this.key = key.getAlgorithm().equals(suite.keyAlgorithm()) ? key : new SecretKeySpec(key.getEncoded(), suite.keyAlgorithm());
+    }
+
+    /*
+    Returns nonce followed by ciphertext and tag.
+     */
+    protected byte[] encryptSegment(byte[] plain, int length, long index, boolean last) throws CipherException {
+        var sealed = new byte[length + SEGMENT_OVERHEAD];
+        encryptSegment(plain, length, index, last, sealed);
+        return sealed;
+    }
+
+    /*
+    Seals into the given buffer, which must hold length + SEGMENT_OVERHEAD bytes, and returns the sealed length.
+     */
+    protected int encryptSegment(byte[] plain, int length, long index, boolean last, byte[] sealed) throws CipherException {
+        var nonce = new byte[NONCE_LENGTH];
+        RANDOM.nextBytes(nonce);
+        System.arraycopy(nonce, 0, sealed, 0, NONCE_LENGTH);
+        try {
+            var cipher = cipher(ENCRYPT_MODE, nonce, index, last);
+            return NONCE_LENGTH + cipher.doFinal(plain, 0, length, sealed, NONCE_LENGTH);
+        } catch (GeneralSecurityException ex) {
+            throw new CipherException(ex);
+        }
+    }
+
+    protected byte[] decryptSegment(byte[] sealed, long index, boolean last) throws CipherException {
+        var plain = new byte[Math.max(0, sealed.length - SEGMENT_OVERHEAD)];
+        decryptSegment(sealed, sealed.length, index, last, plain);
+        return plain;
+    }
+
+    /*
+    Opens the first length bytes of sealed into the given buffer, which must hold length - SEGMENT_OVERHEAD bytes,
+    and returns the plain length.
+     */
+    protected int decryptSegment(byte[] sealed, int length, long index, boolean last, byte[] plain) throws CipherException {
+        if (length < SEGMENT_OVERHEAD) {
+            throw new CipherException(new IllegalArgumentException("Segment " + index + " too short."));
+        }
+        var nonce = Arrays.copyOf(sealed, NONCE_LENGTH);
+        try {
+            var cipher = cipher(DECRYPT_MODE, nonce, index, last);
+            return cipher.doFinal(sealed, NONCE_LENGTH, length - NONCE_LENGTH, plain, 0);
+        } catch (GeneralSecurityException ex) {
+            throw new CipherException(ex);
+        }
+    }
+
+    private Cipher cipher(int mode, byte[] nonce, long index, boolean last) throws GeneralSecurityException {
+        var cipher = Cipher.getInstance(suite.transformation());
+        cipher.init(mode, key, suite.parameters(nonce));
+        cipher.updateAAD(ByteBuffer.allocate(Long.BYTES + 1).putLong(index).put((byte) (last ? 1 : 0)).array());
+        return cipher;
+    }
+}
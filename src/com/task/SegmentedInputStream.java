@@ -0,0 +1,155 @@
+package com.task;
+
+import com.task.exceptions.CipherException;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+import static com.task.SegmentedOutputStream.await;
+
+/*
+Reads segment records written by SegmentedOutputStream. A dedicated reader stage reads up to maxPending records
+ahead and has them decrypted concurrently, so reading from disk overlaps with decryption and with the consumer.
+Segment buffers are recycled.
+Ends after the segment flagged as final; running out of input before that is reported as a truncated archive.
+A range of segments can be read by positioning the input at the first segment's record, see ArchiveHeader.segmentOffset.
+ */
+public class SegmentedInputStream extends InputStream {
+
+    private static final Plain NO_SEGMENT = new Plain(new byte[0], 0);
+
+    private final DataInputStream in;
+    private final SegmentCipher cipher;
+    private final Executor executor;
+    private final StageTimings timings;
+    private final int segmentSize;
+    private final long endSegment;
+    private final ReadAheadStage<CompletableFuture<Plain>> reader;
+    private final Queue<byte[]> sealedBuffers = new ConcurrentLinkedQueue<>();
+    private final Queue<byte[]> plainBuffers = new ConcurrentLinkedQueue<>();
+    private Plain current = NO_SEGMENT;
+    private int position;
+    private long segmentIndex;
+    private boolean lastRead;
+
+    public SegmentedInputStream(InputStream in, ArchiveHeader header, SegmentCipher cipher, Executor executor, int maxPending) {
+        this(in, header, cipher, executor, maxPending, 0, Long.MAX_VALUE, new StageTimings());
+    }
+
+    /*
+    Reads segments firstSegment (inclusive) to endSegment (exclusive), or up to the final segment if that comes first.
+     */
+    public SegmentedInputStream(InputStream in, ArchiveHeader header, SegmentCipher cipher, Executor executor, int maxPending,
+                                long firstSegment, long endSegment, StageTimings timings) {
+        this.in = new DataInputStream(in);
+        this.cipher = cipher;
+        this.executor = executor;
+        this.timings = timings;
+        this.segmentSize = header.segmentSize();
+        this.segmentIndex = firstSegment;
+        this.endSegment = endSegment;
+        // The reader only uses the input and this stream's own buffers, so closing does not wait for it: input from a
+        // pipe may block reading indefinitely.
+        this.reader = new ReadAheadStage<>(StageTimings.Stage.INFLATE, timings, Math.max(1, maxPending), this::readNext, false);
+    }
+
+    @Override
+    public int read() throws IOException {
+        var single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (position == current.length()) {
+            if (!nextSegment()) {
+                return -1;
+            }
+        }
+        var count = Math.min(length, current.length() - position);
+        System.arraycopy(current.bytes(), position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+        in.close();
+    }
+
+    private boolean nextSegment() throws IOException {
+        var next = reader.take();
+        if (next == null) {
+            return false;
+        }
+        if (current != NO_SEGMENT) {
+            plainBuffers.offer(current.bytes());
+        }
+        current = await(next);
+        position = 0;
+        return true;
+    }
+
+    /*
+    Runs on the reader stage.
+     */
+    private CompletableFuture<Plain> readNext() throws IOException {
+        if (lastRead || segmentIndex >= endSegment) {
+            return null;
+        }
+        var start = System.nanoTime();
+        var sealed = recycled(sealedBuffers, segmentSize + SegmentCipher.SEGMENT_OVERHEAD);
+        var length = readRecord(sealed);
+        timings.busy(StageTimings.Stage.READ, start, SegmentedOutputStream.RECORD_PREFIX + length);
+        var index = segmentIndex++;
+        var last = lastRead;
+        return CompletableFuture.supplyAsync(() -> decrypt(sealed, length, index, last), executor);
+    }
+
+    private int readRecord(byte[] sealed) throws IOException {
+        try {
+            var length = in.readInt();
+            lastRead = in.readBoolean();
+            var fullLength = segmentSize + SegmentCipher.SEGMENT_OVERHEAD;
+            if (length < SegmentCipher.SEGMENT_OVERHEAD || length > fullLength || (!lastRead && length != fullLength)) {
+                throw new IOException("Corrupt archive, segment " + segmentIndex + " has invalid length " + length + ".");
+            }
+            in.readFully(sealed, 0, length);
+            return length;
+        } catch (EOFException ex) {
+            throw new IOException("Archive truncated after segment " + segmentIndex + ".", ex);
+        }
+    }
+
+    private Plain decrypt(byte[] sealed, int length, long index, boolean last) {
+        var start = System.nanoTime();
+        var plain = recycled(plainBuffers, segmentSize);
+        try {
+            var plainLength = cipher.decryptSegment(sealed, length, index, last, plain);
+            sealedBuffers.offer(sealed);
+            timings.busy(StageTimings.Stage.DECRYPT, start, plainLength);
+            return new Plain(plain, plainLength);
+        } catch (CipherException ex) {
+            throw new CompletionException(new IOException("Failed to decrypt segment " + index + ". Check password.", ex));
+        }
+    }
+
+    private static byte[] recycled(Queue<byte[]> buffers, int size) {
+        var buffer = buffers.poll();
+        return buffer == null ? new byte[size] : buffer;
+    }
+
+    private record Plain(byte[] bytes, int length) {
+    }
+}
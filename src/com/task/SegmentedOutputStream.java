@@ -0,0 +1,190 @@
+package com.task;
+
+import com.task.exceptions.CipherException;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/*
+Splits the written bytes into fixed-size segments and encrypts them concurrently on the given executor.
+A dedicated writer stage writes sealed segments in order as records of:
+    sealed length (int) | final flag (1 byte) | nonce, ciphertext and tag
+so writing to disk overlaps with filling and encrypting the next segments. Segment buffers are recycled.
+Closing (or finishing) the stream seals the final segment, which may be empty.
+ */
+public class SegmentedOutputStream extends OutputStream {
+
+    protected static final int RECORD_PREFIX = Integer.BYTES + 1;
+
+    private final DataOutputStream out;
+    private final SegmentCipher cipher;
+    private final Executor executor;
+    private final StageTimings timings;
+    private final PipelineStage<CompletableFuture<Sealed>> writer;
+    private final Queue<byte[]> plainBuffers = new ConcurrentLinkedQueue<>();
+    private final Queue<byte[]> sealedBuffers = new ConcurrentLinkedQueue<>();
+    private final int segmentSize;
+    private byte[] segment;
+    private int position;
+    private long segmentIndex;
+    private boolean closed;
+
+    public SegmentedOutputStream(OutputStream out, ArchiveHeader header, SegmentCipher cipher, Executor executor, int maxPending) throws IOException {
+        this(out, header, cipher, executor, maxPending, new StageTimings());
+    }
+
+    public SegmentedOutputStream(OutputStream out, ArchiveHeader header, SegmentCipher cipher, Executor executor, int maxPending,
+                                 StageTimings timings) throws IOException {
+        this(out, header, cipher, executor, maxPending, timings, new Checkpoint(0, new byte[0]));
+        header.write(this.out);
+    }
+
+    /*
+    Continues from a checkpoint, out being positioned after its segments, i.e. at header.segmentOffset(segments).
+     */
+    public SegmentedOutputStream(OutputStream out, ArchiveHeader header, SegmentCipher cipher, Executor executor, int maxPending,
+                                 StageTimings timings, Checkpoint checkpoint) {
+        this.out = new DataOutputStream(out);
+        this.cipher = cipher;
+        this.executor = executor;
+        this.timings = timings;
+        this.segmentSize = header.segmentSize();
+        this.segment = Arrays.copyOf(checkpoint.tail(), segmentSize);
+        this.position = checkpoint.tail().length;
+        this.segmentIndex = checkpoint.segments();
+        this.writer = new PipelineStage<>(StageTimings.Stage.WRITE, timings, maxPending, this::writeRecord);
+    }
+
+    /*
+    Segments sealed and written, and the plaintext written since, which is not sealed yet.
+     */
+    public record Checkpoint(long segments, byte[] tail) {
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while (length > 0) {
+            // A full segment is only sealed once more data arrives, as it may turn out to be the final one.
+            if (position == segmentSize) {
+                seal(false);
+            }
+            var count = Math.min(length, segmentSize - position);
+            System.arraycopy(bytes, offset, segment, position, count);
+            position += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /*
+    Number of plaintext bytes written so far.
+     */
+    protected long position() {
+        return segmentIndex * segmentSize + position;
+    }
+
+    /*
+    Waits until all sealed segments are written and flushed. Everything up to header.segmentOffset(segments) of the
+    underlying stream is then final.
+     */
+    protected Checkpoint checkpoint() throws IOException {
+        writer.drain();
+        out.flush();
+        return new Checkpoint(segmentIndex, Arrays.copyOf(segment, position));
+    }
+
+    /*
+    Seals and writes the final segment without closing the underlying stream, so trailing records can follow.
+     */
+    protected void finish() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            seal(true);
+        } finally {
+            writer.finish();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void seal(boolean last) throws IOException {
+        var plain = segment;
+        var length = position;
+        var index = segmentIndex++;
+        var sealed = CompletableFuture.supplyAsync(() -> encrypt(plain, length, index, last), executor);
+        segment = recycled(plainBuffers, segmentSize);
+        position = 0;
+        writer.put(sealed);
+    }
+
+    private Sealed encrypt(byte[] plain, int length, long index, boolean last) {
+        var start = System.nanoTime();
+        var sealed = recycled(sealedBuffers, segmentSize + SegmentCipher.SEGMENT_OVERHEAD);
+        try {
+            var sealedLength = cipher.encryptSegment(plain, length, index, last, sealed);
+            plainBuffers.offer(plain);
+            timings.busy(StageTimings.Stage.ENCRYPT, start, length);
+            return new Sealed(sealed, sealedLength, last);
+        } catch (CipherException ex) {
+            throw new CompletionException(ex);
+        }
+    }
+
+    private void writeRecord(CompletableFuture<Sealed> pending) throws IOException {
+        var sealed = await(pending);
+        var start = System.nanoTime();
+        out.writeInt(sealed.length());
+        out.writeBoolean(sealed.last());
+        out.write(sealed.bytes(), 0, sealed.length());
+        timings.busy(StageTimings.Stage.WRITE, start, RECORD_PREFIX + sealed.length());
+        sealedBuffers.offer(sealed.bytes());
+    }
+
+    /*
+    Buffers only circulate between the bounded stages, so the pools stay small.
+     */
+    private static byte[] recycled(Queue<byte[]> buffers, int size) {
+        var buffer = buffers.poll();
+        return buffer == null ? new byte[size] : buffer;
+    }
+
+    private record Sealed(byte[] bytes, int length, boolean last) {
+    }
+
+    static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IOException(ex.getCause().getMessage(), ex.getCause());
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package com.task;
+
+import jdk.net.ExtendedSocketOptions;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/*
+Runs commands sent by Clients over a local Unix domain socket, so a job pays neither JVM startup and warm-up nor,
+within SHARED_PARAMETERS_MILLIS, key derivation: new archives share their salt, so archives created and read with the
+same password and settings find their key in CipherMaker's cache.
+Jobs run on WORKERS threads, at most JOB_QUEUE more wait, further jobs are turned away as busy.
+
+Protocol, all in DataOutputStream encoding: the client sends the argument count, at most MAX_ARGUMENTS, the arguments
+and its working directory. The server answers with frames of a kind byte, OUT or ERR followed by a length and that many bytes of
+output, until an EXIT frame carrying the exit status.
+The socket file is readable and writable by its owner only, as commands carry passwords, and jobs of other users are
+refused where the platform reports the client's user.
+ */
+public class Server implements AutoCloseable {
+
+    protected static final byte OUT = 1;
+    protected static final byte ERR = 2;
+    protected static final byte EXIT = 3;
+    protected static final int MAX_ARGUMENTS = 1 << 16;
+
+    private static final int WORKERS = Runtime.getRuntime().availableProcessors();
+    private static final int JOB_QUEUE = 64;
+    private static final long SHARED_PARAMETERS_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private final Path socket;
+    private final ServerSocketChannel channel;
+    private final UserPrincipal owner;
+    private final ThreadPoolExecutor workers;
+
+    public Server(Path socket) throws IOException {
+        this.socket = socket;
+        var address = UnixDomainSocketAddress.of(socket);
+        if (Files.exists(socket)) {
+            if (answers(address)) {
+                throw new IOException("A server is already listening on " + socket + ".");
+            }
+            // Left behind by a server that did not shut down.
+            Files.delete(socket);
+        }
+        channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            bind(channel, socket);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        owner = Files.getOwner(socket);
+        workers = new ThreadPoolExecutor(WORKERS, WORKERS, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(JOB_QUEUE),
+                new ThreadPoolExecutor.AbortPolicy());
+        CipherMaker.shareArchiveParameters(SHARED_PARAMETERS_MILLIS);
+    }
+
+    /*
+    Accepts jobs until closed.
+     */
+    public void serve() throws IOException {
+        while (channel.isOpen()) {
+            SocketChannel client;
+            try {
+                client = channel.accept();
+            } catch (AsynchronousCloseException ex) {
+                return;
+            }
+            try {
+                workers.execute(() -> run(client));
+            } catch (RejectedExecutionException ex) {
+                try (client; var response = new Response(client)) {
+                    response.err.println("Server busy, " + JOB_QUEUE + " jobs waiting. Try again later.");
+                    response.exit(1);
+                } catch (IOException closed) {
+                    // The client gave up.
+                }
+            }
+        }
+    }
+
+    /*
+    Stops accepting jobs, lets the running and waiting ones finish and removes the socket file.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        workers.shutdown();
+        try {
+            workers.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        CipherMaker.shareArchiveParameters(0);
+        Files.deleteIfExists(socket);
+    }
+
+    /*
+    Binds in a fresh directory only the owner can enter, restricts the socket file and only then moves it into place,
+    so no one else can connect in between.
+     */
+    private static void bind(ServerSocketChannel channel, Path socket) throws IOException {
+        Path directory;
+        try {
+            directory = Files.createTempDirectory(socket.toAbsolutePath().getParent(), ".server",
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } catch (UnsupportedOperationException ex) {
+            // Not a POSIX file system, the directory's permissions apply.
+            channel.bind(UnixDomainSocketAddress.of(socket));
+            return;
+        }
+        var bound = directory.resolve("socket");
+        try {
+            channel.bind(UnixDomainSocketAddress.of(bound));
+            Files.setPosixFilePermissions(bound, PosixFilePermissions.fromString("rw-------"));
+            Files.move(bound, socket, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(bound);
+            Files.delete(directory);
+        }
+    }
+
+    /*
+    Whether the client runs as the server's user, where the platform tells.
+     */
+    private boolean trusted(SocketChannel client) throws IOException {
+        if (!client.supportedOptions().contains(ExtendedSocketOptions.SO_PEERCRED)) {
+            return true;
+        }
+        return owner.equals(client.getOption(ExtendedSocketOptions.SO_PEERCRED).user());
+    }
+
+    private static boolean answers(UnixDomainSocketAddress address) {
+        try {
+            SocketChannel.open(address).close();
+            return true;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    private void run(SocketChannel client) {
+        try (client; var response = new Response(client)) {
+            if (!trusted(client)) {
+                response.err.println("Refused, the server only runs jobs of its own user.");
+                response.exit(1);
+                return;
+            }
+            var in = new DataInputStream(Channels.newInputStream(client));
+            var count = in.readInt();
+            if (count < 0 || count > MAX_ARGUMENTS) {
+                response.err.println("Invalid argument count " + count + ", at most " + MAX_ARGUMENTS + ".");
+                response.exit(2);
+                return;
+            }
+            var args = new String[count];
+            for (var i = 0; i < args.length; i++) {
+                args[i] = in.readUTF();
+            }
+            var workingDirectory = new File(in.readUTF());
+            int status;
+            try {
+                status = run(args, workingDirectory, response.out, response.err);
+            } catch (RuntimeException ex) {
+                response.err.println("\nJob failed.\n" + ex);
+                status = 1;
+            }
+            response.exit(status);
+        } catch (IOException ex) {
+            // The client gave up, its job is done or failed either way.
+        }
+    }
+
+    private static int run(String[] args, File workingDirectory, PrintStream out, PrintStream err) {
+        var command = Main.parse(args, workingDirectory, out);
+        if (command == null) {
+            return 2;
+        }
+        if (command.readsStandardInput() || command.writesStandardOutput()) {
+            err.println("Standard input and output are not forwarded to the server, run without " + ArgumentParser.CONNECT_FLAG.get(0) + ".");
+            return 2;
+        }
+        return Main.run(command, out, err);
+    }
+
+    /*
+    Frames everything printed to out and err. Progress prints from its own thread, so frames are written whole.
+     */
+    private static class Response implements AutoCloseable {
+        private final DataOutputStream frames;
+        private final PrintStream out;
+        private final PrintStream err;
+
+        Response(SocketChannel client) {
+            frames = new DataOutputStream(Channels.newOutputStream(client));
+            out = new PrintStream(new FrameOutputStream(OUT), true, StandardCharsets.UTF_8);
+            err = new PrintStream(new FrameOutputStream(ERR), true, StandardCharsets.UTF_8);
+        }
+
+        void exit(int status) throws IOException {
+            out.flush();
+            err.flush();
+            synchronized (frames) {
+                frames.writeByte(EXIT);
+                frames.writeInt(status);
+                frames.flush();
+            }
+        }
+
+        @Override
+        public void close() {
+            out.close();
+            err.close();
+        }
+
+        private class FrameOutputStream extends OutputStream {
+            private final byte kind;
+
+            FrameOutputStream(byte kind) {
+                this.kind = kind;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return;
+                }
+                synchronized (frames) {
+                    frames.writeByte(kind);
+                    frames.writeInt(len);
+                    frames.write(b, off, len);
+                    frames.flush();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.task;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+Time and bytes per pipeline stage, summed over all threads and archives using the same Zipper, plus the entries
+written. Everything recorded here is also emitted as JfrEvents.
+Busy is time spent doing the stage's own work, backpressure is time other stages spent blocked because the stage's
+input queue was full. A stage with high backpressure is the one holding the pipeline back.
+HASH is change detection for incremental archives and content-defined chunking for deduplicated ones, hashing
+entries while compressing them counts as compression.
+KDF only counts actual derivations, keys taken from the cache are free.
+Bytes count what a stage processed: READ and WRITE as the bytes are on disk, the other stages their plaintext.
+ */
+public class StageTimings {
+
+    public enum Stage {
+        KDF,
+        READ,
+        HASH,
+        COMPRESS,
+        ENCRYPT,
+        DECRYPT,
+        INFLATE,
+        WRITE
+    }
+
+    public record EntryStats(String name, long size, long compressedSize, Codec codec) {
+        public double ratio() {
+            return size == 0 ? 1 : (double) compressedSize / size;
+        }
+    }
+
+    /*
+    Only the largest entries are kept individually, archives may hold millions.
+     */
+    protected static final int LARGEST_ENTRIES = 20;
+
+    private final LongAdder[] busy = adders(Stage.values().length);
+    private final LongAdder[] backpressure = adders(Stage.values().length);
+    private final LongAdder[] bytes = adders(Stage.values().length);
+    private final LongAdder entries = new LongAdder();
+    private final LongAdder entryBytes = new LongAdder();
+    private final LongAdder entryCompressedBytes = new LongAdder();
+    private final PriorityQueue<EntryStats> largest = new PriorityQueue<>(Comparator.comparingLong(EntryStats::size));
+
+    protected void busy(Stage stage, long startNanos) {
+        busy(stage, startNanos, 0);
+    }
+
+    protected void busy(Stage stage, long startNanos, long byteCount) {
+        var nanos = System.nanoTime() - startNanos;
+        busy[stage.ordinal()].add(nanos);
+        bytes[stage.ordinal()].add(byteCount);
+        JfrEvents.stage(stage, false, nanos, byteCount);
+    }
+
+    protected void backpressure(Stage stage, long startNanos) {
+        var nanos = System.nanoTime() - startNanos;
+        backpressure[stage.ordinal()].add(nanos);
+        JfrEvents.stage(stage, true, nanos, 0);
+    }
+
+    protected void entry(String name, long size, long compressedSize, Codec codec) {
+        var entry = new EntryStats(name, size, compressedSize, codec);
+        entries.increment();
+        entryBytes.add(size);
+        entryCompressedBytes.add(compressedSize);
+        synchronized (largest) {
+            largest.add(entry);
+            if (largest.size() > LARGEST_ENTRIES) {
+                largest.poll();
+            }
+        }
+        JfrEvents.entry(entry);
+    }
+
+    public long busyNanos(Stage stage) {
+        return busy[stage.ordinal()].sum();
+    }
+
+    public long backpressureNanos(Stage stage) {
+        return backpressure[stage.ordinal()].sum();
+    }
+
+    public long bytes(Stage stage) {
+        return bytes[stage.ordinal()].sum();
+    }
+
+    public long entries() {
+        return entries.sum();
+    }
+
+    public long entryBytes() {
+        return entryBytes.sum();
+    }
+
+    public long entryCompressedBytes() {
+        return entryCompressedBytes.sum();
+    }
+
+    /*
+    The largest entries written, largest first.
+     */
+    public List<EntryStats> largestEntries() {
+        List<EntryStats> sorted;
+        synchronized (largest) {
+            sorted = new ArrayList<>(largest);
+        }
+        sorted.sort(Comparator.comparingLong(EntryStats::size).reversed());
+        return sorted;
+    }
+
+    @Override
+    public String toString() {
+        var string = new StringBuilder();
+        for (var stage : Stage.values()) {
+            var busyNanos = busyNanos(stage);
+            var backpressureNanos = backpressureNanos(stage);
+            if (busyNanos == 0 && backpressureNanos == 0) {
+                continue;
+            }
+            string.append("\n\t").append(stage.name().toLowerCase()).append(": ").append(millis(busyNanos)).append(" ms busy");
+            if (backpressureNanos > 0) {
+                string.append(", ").append(millis(backpressureNanos)).append(" ms backpressure");
+            }
+            var stageBytes = bytes(stage);
+            if (stageBytes > 0) {
+                string.append(", ").append(mebibytes(stageBytes)).append(" MiB");
+                if (busyNanos > 0) {
+                    string.append(" at ").append(mebibytes(perSecond(stageBytes, busyNanos))).append(" MiB/s");
+                }
+            }
+        }
+        if (entries() > 0) {
+            string.append("\n\tentries: ").append(entries()).append(", ").append(mebibytes(entryBytes())).append(" MiB stored as ")
+                    .append(mebibytes(entryCompressedBytes())).append(" MiB (").append(format(ratio())).append(")");
+        }
+        return string.toString();
+    }
+
+    /*
+    Everything recorded as one JSON object, for scripts. Times are in milliseconds, throughput in bytes per second of
+    busy time. error is included unless null.
+     */
+    public String toJson(long elapsedNanos, String error) {
+        var json = new StringBuilder("{\n  \"elapsedMs\": ").append(millis(elapsedNanos)).append(",\n");
+        if (error != null) {
+            json.append("  \"error\": ").append(quote(error)).append(",\n");
+        }
+        json.append("  \"stages\": {");
+        var first = true;
+        for (var stage : Stage.values()) {
+            var busyNanos = busyNanos(stage);
+            if (busyNanos == 0 && backpressureNanos(stage) == 0) {
+                continue;
+            }
+            json.append(first ? "\n" : ",\n").append("    \"").append(stage.name().toLowerCase()).append("\": {")
+                    .append("\"busyMs\": ").append(millis(busyNanos))
+                    .append(", \"backpressureMs\": ").append(millis(backpressureNanos(stage)))
+                    .append(", \"bytes\": ").append(bytes(stage))
+                    .append(", \"bytesPerSecond\": ").append(busyNanos == 0 ? 0 : perSecond(bytes(stage), busyNanos))
+                    .append("}");
+            first = false;
+        }
+        json.append(first ? "},\n" : "\n  },\n");
+        json.append("  \"entries\": {\"count\": ").append(entries())
+                .append(", \"size\": ").append(entryBytes())
+                .append(", \"compressedSize\": ").append(entryCompressedBytes())
+                .append(", \"ratio\": ").append(format(ratio()))
+                .append(", \"largest\": [");
+        first = true;
+        for (var entry : largestEntries()) {
+            json.append(first ? "\n" : ",\n").append("    {\"name\": ").append(quote(entry.name()))
+                    .append(", \"size\": ").append(entry.size())
+                    .append(", \"compressedSize\": ").append(entry.compressedSize())
+                    .append(", \"ratio\": ").append(format(entry.ratio()))
+                    .append(", \"method\": ").append(quote(entry.codec().toString()))
+                    .append("}");
+            first = false;
+        }
+        json.append(first ? "]}\n}" : "\n  ]}\n}");
+        return json.toString();
+    }
+
+    private double ratio() {
+        var size = entryBytes();
+        return size == 0 ? 1 : (double) entryCompressedBytes() / size;
+    }
+
+    private static String quote(String value) {
+        var quoted = new StringBuilder("\"");
+        for (var c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                case '\r' -> quoted.append("\\r");
+                case '\t' -> quoted.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static String format(double ratio) {
+        return String.format(Locale.ROOT, "%.3f", ratio);
+    }
+
+    protected static long perSecond(long bytes, long nanos) {
+        return nanos <= 0 ? 0 : (long) (bytes * 1e9 / nanos);
+    }
+
+    protected static String mebibytes(long bytes) {
+        return String.format(Locale.ROOT, "%.1f", bytes / (double) (1 << 20));
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static LongAdder[] adders(int count) {
+        var adders = new LongAdder[count];
+        for (var i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
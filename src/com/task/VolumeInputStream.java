@@ -0,0 +1,120 @@
+package com.task;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/*
+Reads a striped VolumeSet from a position on. Every target has a reader stage of its own, reading its stripes up to
+maxPending ahead, so all targets are read concurrently while the archive is consumed in order. Stripe buffers are
+recycled.
+ */
+public class VolumeInputStream extends InputStream {
+
+    private record Piece(byte[] bytes, int length) {
+    }
+
+    private static final Piece NO_PIECE = new Piece(new byte[0], 0);
+
+    private final VolumeSet volumes;
+    private final long end;
+    private final List<ReadAheadStage<Piece>> readers;
+    private final Queue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+    private Piece current = NO_PIECE;
+    private int position;
+    private long next;
+
+    public VolumeInputStream(VolumeSet volumes, long position, int maxPending, StageTimings timings) {
+        this.volumes = volumes;
+        this.end = volumes.length();
+        this.next = position;
+        var stripeSize = volumes.stripeSize();
+        var width = volumes.width();
+        var targets = new ArrayList<ReadAheadStage<Piece>>(Collections.nCopies(width, null));
+        for (var i = 0; i < width; i++) {
+            // The target of the stripe holding position reads from there, the others from the start of their next stripe.
+            var stripe = position / stripeSize + i;
+            var from = i == 0 ? position : stripe * stripeSize;
+            var reader = new StripeReader(from, timings);
+            targets.set((int) (stripe % width), new ReadAheadStage<>(StageTimings.Stage.READ, timings, maxPending, reader));
+        }
+        this.readers = targets;
+    }
+
+    @Override
+    public int read() throws IOException {
+        var single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (position == current.length()) {
+            if (next >= end) {
+                return -1;
+            }
+            if (current != NO_PIECE) {
+                buffers.offer(current.bytes());
+            }
+            var stripe = next / volumes.stripeSize();
+            var piece = readers.get((int) (stripe % readers.size())).take();
+            if (piece == null) {
+                throw new IOException("Archive truncated at " + next + ".");
+            }
+            current = piece;
+            position = 0;
+            next += piece.length();
+        }
+        var count = Math.min(length, current.length() - position);
+        System.arraycopy(current.bytes(), position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close() {
+        for (var reader : readers) {
+            reader.close();
+        }
+    }
+
+    /*
+    Produces the stripes of one target in order, from position from on. Runs on the target's reader stage.
+     */
+    private class StripeReader implements ReadAheadStage.Producer<Piece> {
+        private final StageTimings timings;
+        private long from;
+
+        StripeReader(long from, StageTimings timings) {
+            this.from = from;
+            this.timings = timings;
+        }
+
+        @Override
+        public Piece next() throws IOException {
+            if (from >= end) {
+                return null;
+            }
+            var start = System.nanoTime();
+            var length = (int) Math.min(volumes.locate(from).room(), end - from);
+            var bytes = buffers.poll();
+            if (bytes == null) {
+                bytes = new byte[(int) volumes.stripeSize()];
+            }
+            volumes.read(ByteBuffer.wrap(bytes, 0, length), from);
+            // The next stripe of this target, width stripes on.
+            from = (from / volumes.stripeSize() + volumes.width()) * volumes.stripeSize();
+            // The bytes are counted once, as the segment reader takes them.
+            timings.busy(StageTimings.Stage.READ, start);
+            return new Piece(bytes, length);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.task;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/*
+Writes an archive to a VolumeSet. Every target has a writer stage of its own, taking up to maxPending stripes, so
+all targets are written concurrently while the archive is produced in order. Stripe buffers are recycled.
+Flushing waits until everything written so far is in the volumes. complete marks the archive complete once it has
+been written, closing without it leaves an incomplete set, e.g. one to be continued from a checkpoint.
+ */
+public class VolumeOutputStream extends OutputStream {
+
+    private record Piece(int volume, long fileOffset, byte[] bytes, int length) {
+    }
+
+    /*
+    Writes a target's volumes one after the other, on the target's stage.
+     */
+    private class TargetWriter {
+        private FileChannel channel;
+        private int volume = -1;
+
+        void write(Piece piece) throws IOException {
+            var start = System.nanoTime();
+            if (piece.volume() != volume) {
+                close();
+                channel = volumes.create(piece.volume());
+                volume = piece.volume();
+            }
+            var buffer = ByteBuffer.wrap(piece.bytes(), 0, piece.length());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, piece.fileOffset() + buffer.position());
+            }
+            buffers.offer(piece.bytes());
+            // The bytes are counted once, as they leave the segment writer.
+            timings.busy(StageTimings.Stage.WRITE, start);
+        }
+
+        void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+    private final VolumeSet volumes;
+    private final StageTimings timings;
+    private final List<TargetWriter> writers = new ArrayList<>();
+    private final List<PipelineStage<Piece>> stages = new ArrayList<>();
+    private final Queue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+    private final int stripeSize;
+    private byte[] buffer;
+    private long start;
+    private int filled;
+    private boolean closed;
+
+    /*
+    Continues the archive at position, everything before it being in the volumes already.
+     */
+    public VolumeOutputStream(VolumeSet volumes, long position, int maxPending, StageTimings timings) {
+        this.volumes = volumes;
+        this.timings = timings;
+        this.stripeSize = (int) volumes.stripeSize();
+        this.buffer = new byte[stripeSize];
+        this.start = position;
+        for (var target = 0; target < volumes.width(); target++) {
+            var writer = new TargetWriter();
+            writers.add(writer);
+            stages.add(new PipelineStage<>(StageTimings.Stage.WRITE, timings, maxPending, writer::write));
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while (length > 0) {
+            var room = volumes.locate(start + filled).room();
+            var count = (int) Math.min(length, room);
+            System.arraycopy(bytes, offset, buffer, filled, count);
+            filled += count;
+            offset += count;
+            length -= count;
+            if (count == room) {
+                handOff();
+            }
+        }
+    }
+
+    /*
+    Position in the archive of the next byte written.
+     */
+    protected long position() {
+        return start + filled;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        handOff();
+        for (var stage : stages) {
+            stage.drain();
+        }
+    }
+
+    /*
+    Writes everything and records the volume count, the archive is then complete.
+     */
+    protected void complete() throws IOException {
+        var length = position();
+        close();
+        volumes.complete(length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        IOException failure = null;
+        try {
+            handOff();
+        } catch (IOException ex) {
+            failure = ex;
+        }
+        for (var target = 0; target < stages.size(); target++) {
+            try {
+                stages.get(target).finish();
+            } catch (IOException ex) {
+                failure = failure == null ? ex : failure;
+            }
+            writers.get(target).close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /*
+    Passes the bytes buffered, which all belong to one stripe, to the writer of its target.
+     */
+    private void handOff() throws IOException {
+        if (filled == 0) {
+            return;
+        }
+        var location = volumes.locate(start);
+        stages.get(location.volume() % volumes.width()).put(new Piece(location.volume(), location.fileOffset(), buffer, filled));
+        start += filled;
+        filled = 0;
+        var recycled = buffers.poll();
+        buffer = recycled == null ? new byte[stripeSize] : recycled;
+    }
+}
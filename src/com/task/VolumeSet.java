@@ -0,0 +1,453 @@
+package com.task;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/*
+An archive split into volumes, or a plain archive file, which is read as a set of one volume without a header.
+The archive's bytes are dealt out in stripes of stripeSize, round-robin to width target directories, e.g. on separate
+disks or mounts, so writing and reading the archive keeps all of them busy. Each target's stripes fill volumes of
+volumeSize bytes in turn: volume v is the (v / width)th volume of target v % width, named <name>.<v + 1> with at least
+three digits, and starts with a plaintext volume header:
+    magic (4 bytes) | version (1 byte) | set id (16 bytes) | volume number (int) | volume count (int)
+    | width (int) | stripe size (long) | volume size (long) | target count (short) | per target: path (UTF)
+The volume count is 0 until the archive is complete. Volumes are looked for next to the one named when opening and in
+the targets recorded, so they can also be gathered in one directory.
+Positions are into the archive as if it were one file, e.g. ArchiveHeader.segmentOffset and the index's offsets.
+ */
+public class VolumeSet implements AutoCloseable {
+
+    protected static final byte[] MAGIC = {'E', 'F', 'S', 'V'};
+    protected static final int STRIPE_SIZE = 1 << 20;
+    private static final int MAX_STRIPE_SIZE = 1 << 26;
+    private static final byte VERSION = 1;
+    private static final int SET_ID_LENGTH = 16;
+    private static final int COUNT_OFFSET = MAGIC.length + 1 + SET_ID_LENGTH + Integer.BYTES;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    /*
+    Where a position is stored: the volume, the offset in its file, and how many bytes follow in the same file.
+     */
+    protected record Location(int volume, long fileOffset, long room) {
+    }
+
+    private record Header(byte[] setId, int number, int count, int width, long stripeSize, long volumeSize, List<File> targets) {
+    }
+
+    private final String name;
+    private final byte[] setId;
+    private final int width;
+    private final long stripeSize;
+    private final long volumeSize;
+    private final List<File> targets;
+    private final int headerLength;
+    private final List<File> volumes;
+    private final List<FileChannel> channels = new ArrayList<>();
+    private long length;
+
+    private VolumeSet(String name, byte[] setId, int width, long stripeSize, long volumeSize, List<File> targets, List<File> volumes)
+            throws IOException {
+        this.name = name;
+        this.setId = setId;
+        this.width = width;
+        this.stripeSize = stripeSize;
+        this.volumeSize = volumeSize;
+        this.targets = targets;
+        this.volumes = volumes;
+        this.headerLength = setId == null ? 0 : header(0, 0).length;
+        for (var volume : volumes) {
+            length += volume.length() - headerLength;
+        }
+    }
+
+    /*
+    A new set of volumes named name in targets, none written yet. volumeSize is rounded up to whole stripes, 0 means
+    one volume per target.
+     */
+    public static VolumeSet create(String name, List<File> targets, long volumeSize) throws IOException {
+        return create(name, targets, volumeSize, STRIPE_SIZE);
+    }
+
+    static VolumeSet create(String name, List<File> targets, long volumeSize, long stripeSize) throws IOException {
+        if (targets.isEmpty() || targets.size() > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid number of volume directories " + targets.size() + ".");
+        }
+        var stripes = volumeSize <= 0 ? Long.MAX_VALUE / stripeSize : Math.max(1, (volumeSize + stripeSize - 1) / stripeSize);
+        var setId = new byte[SET_ID_LENGTH];
+        RANDOM.nextBytes(setId);
+        var absolute = targets.stream().map(File::getAbsoluteFile).toList();
+        return new VolumeSet(name, setId, absolute.size(), stripeSize, stripes * stripeSize, absolute, List.of());
+    }
+
+    /*
+    The archive file, or the volume set file is one of. All volumes of a complete set must be found.
+     */
+    public static VolumeSet open(File file) throws IOException {
+        return open(file, true);
+    }
+
+    /*
+    An incomplete set, one being written, is made of the volumes found from the first on.
+     */
+    protected static VolumeSet open(File file, boolean complete) throws IOException {
+        var header = readHeader(file);
+        if (header == null) {
+            return new VolumeSet(file.getName(), null, 1, Long.MAX_VALUE, Long.MAX_VALUE, List.of(), List.of(file));
+        }
+        if (complete && header.count() == 0) {
+            throw new IOException(file.getName() + " is a volume of an archive that was not completed.");
+        }
+        var fileName = file.getName();
+        var dot = fileName.lastIndexOf('.');
+        var name = dot < 0 ? fileName : fileName.substring(0, dot);
+        var directories = new LinkedHashSet<File>();
+        directories.add(file.getAbsoluteFile().getParentFile());
+        directories.addAll(header.targets());
+
+        var volumes = new ArrayList<File>();
+        for (var number = 0; header.count() == 0 || number < header.count(); number++) {
+            var volume = find(directories, name, number, header.setId());
+            if (volume == null && header.count() == 0) {
+                break;
+            }
+            if (volume == null) {
+                throw new IOException("Volume " + volumeName(name, number) + " missing, looked in: " + directories + ".");
+            }
+            volumes.add(volume);
+        }
+        var set = new VolumeSet(name, header.setId(), header.width(), header.stripeSize(), header.volumeSize(), header.targets(), volumes);
+        if (complete) {
+            set.checkLengths();
+        }
+        return set;
+    }
+
+    /*
+    The file of volume number in directory.
+     */
+    public static File volumeFile(File directory, String name, int number) {
+        return new File(directory, volumeName(name, number));
+    }
+
+    private static String volumeName(String name, int number) {
+        return name + "." + String.format("%03d", number + 1);
+    }
+
+    protected boolean plain() {
+        return setId == null;
+    }
+
+    protected int width() {
+        return width;
+    }
+
+    protected long stripeSize() {
+        return stripeSize;
+    }
+
+    /*
+    Length of the archive, as if it were one file.
+     */
+    protected long length() {
+        return length;
+    }
+
+    protected Location locate(long position) {
+        var stripe = position / stripeSize;
+        var inStripe = position % stripeSize;
+        var inTarget = stripe / width * stripeSize + inStripe;
+        var volume = inTarget / volumeSize * width + stripe % width;
+        if (volume > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many volumes.");
+        }
+        return new Location((int) volume, headerLength + inTarget % volumeSize, stripeSize - inStripe);
+    }
+
+    /*
+    Bytes volume number holds of an archive of length bytes, without its header.
+     */
+    protected long dataLength(int number, long length) {
+        var target = number % width;
+        var stripes = length / stripeSize;
+        var last = stripes % width;
+        var inTarget = (stripes / width + (target < last ? 1 : 0)) * stripeSize + (target == last ? length % stripeSize : 0);
+        return Math.max(0, Math.min(volumeSize, inTarget - (long) (number / width) * volumeSize));
+    }
+
+    /*
+    Reads buffer's remaining bytes starting at position. Safe to call from several threads.
+     */
+    protected void read(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            var location = locate(position);
+            var count = (int) Math.min(buffer.remaining(), location.room());
+            var limit = buffer.limit();
+            buffer.limit(buffer.position() + count);
+            var channel = channel(location.volume());
+            for (var read = 0; read < count; ) {
+                var bytes = channel.read(buffer, location.fileOffset() + read);
+                if (bytes < 0) {
+                    throw new IOException("Archive truncated at " + (position + read) + ".");
+                }
+                read += bytes;
+            }
+            buffer.limit(limit);
+            position += count;
+        }
+    }
+
+    /*
+    Overwrites the archive with buffer's remaining bytes from position on, e.g. to rewrite the archive header in place,
+    and forces them to disk. The archive does not grow.
+     */
+    protected void write(ByteBuffer buffer, long position) throws IOException {
+        if (position + buffer.remaining() > length) {
+            throw new IOException("Writing past the end of " + name + ".");
+        }
+        while (buffer.hasRemaining()) {
+            var location = locate(position);
+            var count = (int) Math.min(buffer.remaining(), location.room());
+            var limit = buffer.limit();
+            buffer.limit(buffer.position() + count);
+            try (var channel = FileChannel.open(volume(location.volume()).toPath(), StandardOpenOption.WRITE)) {
+                for (var written = 0; written < count; ) {
+                    written += channel.write(buffer, location.fileOffset() + written);
+                }
+                channel.force(false);
+            }
+            buffer.limit(limit);
+            position += count;
+        }
+    }
+
+    /*
+    Reads the archive from position on, a volume at a time.
+     */
+    protected InputStream open(long position) {
+        return new InputStream() {
+            private long next = position;
+
+            @Override
+            public int read() throws IOException {
+                var single = new byte[1];
+                return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int count) throws IOException {
+                if (count == 0) {
+                    return 0;
+                }
+                if (next >= length) {
+                    return -1;
+                }
+                var buffer = ByteBuffer.wrap(bytes, offset, (int) Math.min(count, Math.min(length - next, locate(next).room())));
+                var read = buffer.remaining();
+                VolumeSet.this.read(buffer, next);
+                next += read;
+                return read;
+            }
+        };
+    }
+
+    /*
+    Reads the archive from position on, from all targets at once when striped, see VolumeInputStream.
+     */
+    protected InputStream readAhead(long position, int maxPending, StageTimings timings) {
+        return width == 1 ? open(position) : new VolumeInputStream(this, position, maxPending, timings);
+    }
+
+    /*
+    Cuts the archive off at length, e.g. to continue it from a checkpoint. Volumes beyond it are deleted, the ones
+    left are no longer complete until the archive is completed again.
+     */
+    protected void truncate(long length) throws IOException {
+        if (plain()) {
+            try (var file = new RandomAccessFile(volumes.get(0), "rw")) {
+                if (file.length() < length) {
+                    throw new IOException(name + " is shorter than its checkpoint.");
+                }
+                file.setLength(length);
+            }
+            return;
+        }
+        for (var number = 0; number < volumes.size(); number++) {
+            var dataLength = dataLength(number, length);
+            var volume = volumes.get(number);
+            if (dataLength == 0) {
+                Files.delete(volume.toPath());
+                continue;
+            }
+            try (var file = new RandomAccessFile(volume, "rw")) {
+                if (file.length() < headerLength + dataLength) {
+                    throw new IOException(volume.getName() + " is shorter than its checkpoint.");
+                }
+                file.setLength(headerLength + dataLength);
+                file.seek(COUNT_OFFSET);
+                file.writeInt(0);
+            }
+        }
+        if (dataLength(volumes.size(), length) > 0) {
+            throw new IOException("Volume " + volumeName(name, volumes.size()) + " missing, it is needed for the checkpoint.");
+        }
+    }
+
+    /*
+    Opens volume number for writing. Volumes this set was opened with are continued, others are created at their target
+    with their header, replacing whatever file was there.
+     */
+    protected FileChannel create(int number) throws IOException {
+        var file = volume(number);
+        if (number < volumes.size() && file.isFile()) {
+            return FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        }
+        var channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            var header = ByteBuffer.wrap(header(number, 0));
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            return channel;
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /*
+    Marks the volumes of an archive of length bytes complete, recording their count in each.
+     */
+    protected void complete(long length) throws IOException {
+        var count = 0;
+        while (dataLength(count, length) > 0) {
+            count++;
+        }
+        var countBytes = ByteBuffer.allocate(Integer.BYTES).putInt(0, count);
+        for (var number = 0; number < count; number++) {
+            try (var channel = FileChannel.open(volume(number).toPath(), StandardOpenOption.WRITE)) {
+                channel.write(countBytes.clear(), COUNT_OFFSET);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (var channel : channels) {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+        channels.clear();
+    }
+
+    private synchronized FileChannel channel(int number) throws IOException {
+        if (number >= volumes.size()) {
+            throw new IOException("Archive truncated, volume " + volumeName(name, number) + " missing.");
+        }
+        while (channels.size() <= number) {
+            channels.add(null);
+        }
+        var channel = channels.get(number);
+        if (channel == null) {
+            channel = FileChannel.open(volumes.get(number).toPath(), StandardOpenOption.READ);
+            channels.set(number, channel);
+        }
+        return channel;
+    }
+
+    private File volume(int number) {
+        return number < volumes.size() ? volumes.get(number) : volumeFile(targets.get(number % width), name, number);
+    }
+
+    private void checkLengths() throws IOException {
+        for (var number = 0; number < volumes.size(); number++) {
+            var volume = volumes.get(number);
+            if (volume.length() - headerLength != dataLength(number, length)) {
+                throw new IOException("Volume " + volume.getName() + " has " + (volume.length() - headerLength) + " bytes instead of "
+                        + dataLength(number, length) + ", it is truncated or another volume is.");
+            }
+        }
+        if (dataLength(volumes.size(), length) > 0) {
+            throw new IOException("Volume " + volumeName(name, volumes.size()) + " missing.");
+        }
+    }
+
+    private byte[] header(int number, int count) throws IOException {
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        out.write(setId);
+        out.writeInt(number);
+        out.writeInt(count);
+        out.writeInt(width);
+        out.writeLong(stripeSize);
+        out.writeLong(volumeSize);
+        out.writeShort(targets.size());
+        for (var target : targets) {
+            out.writeUTF(target.getPath());
+        }
+        return bytes.toByteArray();
+    }
+
+    /*
+    Returns null for files that are not volumes.
+     */
+    private static Header readHeader(File file) throws IOException {
+        try (var in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (!Arrays.equals(MAGIC, in.readNBytes(MAGIC.length))) {
+                return null;
+            }
+            var version = in.readByte();
+            if (version != VERSION) {
+                throw new IOException("Unsupported volume version " + version + ".");
+            }
+            var setId = in.readNBytes(SET_ID_LENGTH);
+            var number = in.readInt();
+            var count = in.readInt();
+            var width = in.readInt();
+            var stripeSize = in.readLong();
+            var volumeSize = in.readLong();
+            var targetCount = in.readShort();
+            if (number < 0 || count < 0 || width < 1 || width != targetCount || stripeSize < 1 || stripeSize > MAX_STRIPE_SIZE || volumeSize < stripeSize
+                    || volumeSize % stripeSize != 0) {
+                throw new IOException("Corrupt volume header in " + file.getName() + ".");
+            }
+            var targets = new ArrayList<File>();
+            for (var i = 0; i < targetCount; i++) {
+                targets.add(new File(in.readUTF()));
+            }
+            return new Header(setId, number, count, width, stripeSize, volumeSize, targets);
+        }
+    }
+
+    private static File find(Iterable<File> directories, String name, int number, byte[] setId) throws IOException {
+        for (var directory : directories) {
+            var file = volumeFile(directory, name, number);
+            if (!file.isFile()) {
+                continue;
+            }
+            var header = readHeader(file);
+            if (header != null && header.number() == number && Arrays.equals(setId, header.setId())) {
+                return file;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,422 @@
+package com.task;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+
+/*
+Minimal zip writer for entries compressed elsewhere (e.g. concurrently), which ZipOutputStream cannot take.
+Writes local headers with known sizes, or a data descriptor for streamed entries, and the central directory on finish.
+Entries deflated with a preset dictionary are marked in their local header, see Dictionary.
+Zip64 records are only written when sizes, offsets or entry counts need them, like ZipOutputStream.
+A finished stream can be reopened to append entries, from its central directory, see reopen.
+ */
+public class ZipStreamWriter {
+
+    protected static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+    private static final int VERSION = 20;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int FLAG_DATA_DESCRIPTOR = 0x08;
+    private static final int FLAG_UTF8 = 0x800;
+    private static final int CENTRAL_HEADER_LENGTH = 46;
+    private static final int ZIP64_END_LENGTH = 56;
+    private static final int ZIP64_LOCATOR_LENGTH = 20;
+    private static final int END_LENGTH = 22;
+    /* The end records finish writes, which are all that follow the central directory. */
+    protected static final int MAX_END_LENGTH = ZIP64_END_LENGTH + ZIP64_LOCATOR_LENGTH + END_LENGTH;
+
+    private record End(long count, long centralOffset) {
+    }
+
+    private record CentralEntry(byte[] name, int method, int flags, long time, long crc, long size, long compressedSize,
+                                long offset) {
+    }
+
+    private final OutputStream out;
+    private final List<CentralEntry> centralEntries = new ArrayList<>();
+    private long position;
+    private boolean streaming;
+
+    public ZipStreamWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    protected long position() {
+        return position;
+    }
+
+    /*
+    Writes an entry whose data has already been compressed with the given method.
+     */
+    protected void write(CompressedEntry entry) throws IOException {
+        checkNotStreaming();
+        var name = entry.name().getBytes(StandardCharsets.UTF_8);
+        var offset = position;
+        var zip64 = entry.size() >= ZIP64_MAGIC || entry.compressedSize() >= ZIP64_MAGIC;
+        var extra = zip64 ? zip64Extra(entry.size(), entry.compressedSize()) : new byte[0];
+        if (entry.dictionaryId() >= 0) {
+            var dictionaryExtra = Dictionary.extra(entry.dictionaryId());
+            extra = Arrays.copyOf(extra, extra.length + dictionaryExtra.length);
+            System.arraycopy(dictionaryExtra, 0, extra, extra.length - dictionaryExtra.length, dictionaryExtra.length);
+        }
+
+        var header = littleEndian(30 + name.length + extra.length);
+        header.putInt(LOCAL_HEADER_SIGNATURE)
+                .putShort((short) (zip64 ? VERSION_ZIP64 : VERSION))
+                .putShort((short) FLAG_UTF8)
+                .putShort((short) entry.method())
+                .putInt((int) dosTime(entry.modified()))
+                .putInt((int) entry.crc())
+                .putInt((int) (zip64 ? ZIP64_MAGIC : entry.compressedSize()))
+                .putInt((int) (zip64 ? ZIP64_MAGIC : entry.size()))
+                .putShort((short) name.length)
+                .putShort((short) extra.length)
+                .put(name)
+                .put(extra);
+        write(header);
+        entry.writeTo(out);
+        position += entry.compressedSize();
+
+        centralEntries.add(new CentralEntry(name, entry.method(), FLAG_UTF8, entry.modified(), entry.crc(), entry.size(),
+                entry.compressedSize(), offset));
+    }
+
+    /*
+    Starts a deflated entry of unknown size. Closing the returned stream ends the entry, the underlying stream stays open.
+    The codec may still be changed before the first write, see Codec.streamable.
+     */
+    protected EntryOutputStream stream(String entryName, long modified, Codec codec) throws IOException {
+        checkNotStreaming();
+        var name = entryName.getBytes(StandardCharsets.UTF_8);
+        var offset = position;
+        var flags = FLAG_UTF8 | FLAG_DATA_DESCRIPTOR;
+
+        var header = littleEndian(30 + name.length);
+        header.putInt(LOCAL_HEADER_SIGNATURE)
+                .putShort((short) VERSION)
+                .putShort((short) flags)
+                .putShort((short) ZipEntry.DEFLATED)
+                .putInt((int) dosTime(modified))
+                .putInt(0)
+                .putInt(0)
+                .putInt(0)
+                .putShort((short) name.length)
+                .putShort((short) 0)
+                .put(name);
+        write(header);
+        streaming = true;
+
+        var counted = new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                position++;
+            }
+
+            @Override
+            public void write(byte[] bytes, int off, int len) throws IOException {
+                out.write(bytes, off, len);
+                position += len;
+            }
+        };
+        return new EntryOutputStream(counted, codec.streamable(), IoBuffers.MAX_SIZE) {
+            private boolean ended;
+
+            @Override
+            public void setCodec(Codec codec) {
+                super.setCodec(codec.streamable());
+            }
+
+            @Override
+            public void close() throws IOException {
+                super.close();
+                if (!ended) {
+                    ended = true;
+                    streaming = false;
+                    endStreamedEntry(name, flags, modified, crc(), size(), compressedSize(), offset);
+                }
+            }
+        };
+    }
+
+    /*
+    Saves what finish needs of the entries written so far, for a checkpoint Journal. Not while streaming an entry.
+     */
+    protected void writeState(DataOutputStream state) throws IOException {
+        checkNotStreaming();
+        state.writeLong(position);
+        state.writeInt(centralEntries.size());
+        for (var entry : centralEntries) {
+            state.writeShort(entry.name().length);
+            state.write(entry.name());
+            state.writeShort(entry.method());
+            state.writeShort(entry.flags());
+            state.writeLong(entry.time());
+            state.writeLong(entry.crc());
+            state.writeLong(entry.size());
+            state.writeLong(entry.compressedSize());
+            state.writeLong(entry.offset());
+        }
+    }
+
+    /*
+    Continues after the entries saved by writeState, out continuing the stream they were written to.
+     */
+    protected static ZipStreamWriter resume(OutputStream out, DataInputStream state) throws IOException {
+        var writer = new ZipStreamWriter(out);
+        writer.position = state.readLong();
+        var count = state.readInt();
+        for (var i = 0; i < count; i++) {
+            var name = state.readNBytes(state.readUnsignedShort());
+            writer.centralEntries.add(new CentralEntry(name, state.readUnsignedShort(), state.readUnsignedShort(), state.readLong(),
+                    state.readLong(), state.readLong(), state.readLong(), state.readLong()));
+        }
+        return writer;
+    }
+
+    /*
+    Where the central directory of a stream finished by this writer starts, from the last MAX_END_LENGTH bytes of the
+    stream or more.
+     */
+    protected static long centralOffset(byte[] end) throws IOException {
+        return end(end).centralOffset();
+    }
+
+    /*
+    Continues a stream finished by this writer after its last entry, i.e. at its central directory, which is read back
+    from stream, holding the finished stream from streamOffset on. out continues the stream from centralOffset.
+     */
+    protected static ZipStreamWriter reopen(OutputStream out, byte[] stream, long streamOffset) throws IOException {
+        var end = end(stream);
+        if (end.centralOffset() < streamOffset) {
+            throw new IllegalArgumentException("Central directory at " + end.centralOffset() + " is before " + streamOffset + ".");
+        }
+        var writer = new ZipStreamWriter(out);
+        writer.position = end.centralOffset();
+        var central = ByteBuffer.wrap(stream).order(ByteOrder.LITTLE_ENDIAN);
+        central.position((int) (end.centralOffset() - streamOffset));
+        for (var i = 0L; i < end.count(); i++) {
+            writer.centralEntries.add(readCentralHeader(central));
+        }
+        return writer;
+    }
+
+    /*
+    Writes the central directory. Does not close the underlying stream.
+     */
+    protected void finish() throws IOException {
+        checkNotStreaming();
+        var centralOffset = position;
+        for (var entry : centralEntries) {
+            writeCentralHeader(entry);
+        }
+        var centralSize = position - centralOffset;
+        var count = centralEntries.size();
+
+        if (count >= ZIP64_MAGIC_COUNT || centralOffset >= ZIP64_MAGIC || centralSize >= ZIP64_MAGIC) {
+            var zip64EndOffset = position;
+            var zip64End = littleEndian(56);
+            zip64End.putInt(ZIP64_END_SIGNATURE)
+                    .putLong(44)
+                    .putShort((short) VERSION_ZIP64)
+                    .putShort((short) VERSION_ZIP64)
+                    .putInt(0)
+                    .putInt(0)
+                    .putLong(count)
+                    .putLong(count)
+                    .putLong(centralSize)
+                    .putLong(centralOffset);
+            write(zip64End);
+            var locator = littleEndian(20);
+            locator.putInt(ZIP64_LOCATOR_SIGNATURE)
+                    .putInt(0)
+                    .putLong(zip64EndOffset)
+                    .putInt(1);
+            write(locator);
+        }
+        var end = littleEndian(22);
+        end.putInt(END_SIGNATURE)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) Math.min(count, ZIP64_MAGIC_COUNT))
+                .putShort((short) Math.min(count, ZIP64_MAGIC_COUNT))
+                .putInt((int) Math.min(centralSize, ZIP64_MAGIC))
+                .putInt((int) Math.min(centralOffset, ZIP64_MAGIC))
+                .putShort((short) 0);
+        write(end);
+        out.flush();
+    }
+
+    private void endStreamedEntry(byte[] name, int flags, long modified, long crc, long size, long compressedSize, long offset) throws IOException {
+        // ZipInputStream expects 8 byte sizes only once a size exceeds the 32 bit magic value.
+        var zip64 = size > ZIP64_MAGIC || compressedSize > ZIP64_MAGIC;
+        var descriptor = littleEndian(zip64 ? 24 : 16);
+        descriptor.putInt(DATA_DESCRIPTOR_SIGNATURE).putInt((int) crc);
+        if (zip64) {
+            descriptor.putLong(compressedSize).putLong(size);
+        } else {
+            descriptor.putInt((int) compressedSize).putInt((int) size);
+        }
+        write(descriptor);
+        centralEntries.add(new CentralEntry(name, ZipEntry.DEFLATED, flags, modified, crc, size, compressedSize, offset));
+    }
+
+    private void writeCentralHeader(CentralEntry entry) throws IOException {
+        var extraValues = new ArrayList<Long>();
+        if (entry.size() >= ZIP64_MAGIC) {
+            extraValues.add(entry.size());
+        }
+        if (entry.compressedSize() >= ZIP64_MAGIC) {
+            extraValues.add(entry.compressedSize());
+        }
+        if (entry.offset() >= ZIP64_MAGIC) {
+            extraValues.add(entry.offset());
+        }
+        var extraLength = extraValues.isEmpty() ? 0 : 4 + 8 * extraValues.size();
+        var version = extraValues.isEmpty() ? VERSION : VERSION_ZIP64;
+
+        var header = littleEndian(46 + entry.name().length + extraLength);
+        header.putInt(CENTRAL_HEADER_SIGNATURE)
+                .putShort((short) version)
+                .putShort((short) version)
+                .putShort((short) entry.flags())
+                .putShort((short) entry.method())
+                .putInt((int) dosTime(entry.time()))
+                .putInt((int) entry.crc())
+                .putInt((int) Math.min(entry.compressedSize(), ZIP64_MAGIC))
+                .putInt((int) Math.min(entry.size(), ZIP64_MAGIC))
+                .putShort((short) entry.name().length)
+                .putShort((short) extraLength)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putInt(0)
+                .putInt((int) Math.min(entry.offset(), ZIP64_MAGIC))
+                .put(entry.name());
+        if (!extraValues.isEmpty()) {
+            header.putShort((short) ZIP64_EXTRA_ID).putShort((short) (8 * extraValues.size()));
+            extraValues.forEach(header::putLong);
+        }
+        write(header);
+    }
+
+    private static End end(byte[] stream) throws IOException {
+        var bytes = ByteBuffer.wrap(stream).order(ByteOrder.LITTLE_ENDIAN);
+        var end = stream.length - END_LENGTH;
+        if (end < 0 || bytes.getInt(end) != END_SIGNATURE) {
+            throw new IOException("Corrupt archive, no zip end record.");
+        }
+        long count = Short.toUnsignedInt(bytes.getShort(end + 10));
+        var centralSize = Integer.toUnsignedLong(bytes.getInt(end + 12));
+        var centralOffset = Integer.toUnsignedLong(bytes.getInt(end + 16));
+        if (count == ZIP64_MAGIC_COUNT || centralSize == ZIP64_MAGIC || centralOffset == ZIP64_MAGIC) {
+            var zip64End = end - ZIP64_LOCATOR_LENGTH - ZIP64_END_LENGTH;
+            if (zip64End < 0 || bytes.getInt(end - ZIP64_LOCATOR_LENGTH) != ZIP64_LOCATOR_SIGNATURE
+                    || bytes.getInt(zip64End) != ZIP64_END_SIGNATURE) {
+                throw new IOException("Corrupt archive, no zip64 end record.");
+            }
+            count = bytes.getLong(zip64End + 32);
+            centralOffset = bytes.getLong(zip64End + 48);
+        }
+        return new End(count, centralOffset);
+    }
+
+    private static CentralEntry readCentralHeader(ByteBuffer central) throws IOException {
+        var start = central.position();
+        if (central.remaining() < CENTRAL_HEADER_LENGTH || central.getInt(start) != CENTRAL_HEADER_SIGNATURE) {
+            throw new IOException("Corrupt archive, no central directory header at " + start + ".");
+        }
+        var flags = Short.toUnsignedInt(central.getShort(start + 8));
+        var method = Short.toUnsignedInt(central.getShort(start + 10));
+        var time = javaTime(Integer.toUnsignedLong(central.getInt(start + 12)));
+        var crc = Integer.toUnsignedLong(central.getInt(start + 16));
+        var compressedSize = Integer.toUnsignedLong(central.getInt(start + 20));
+        var size = Integer.toUnsignedLong(central.getInt(start + 24));
+        var nameLength = Short.toUnsignedInt(central.getShort(start + 28));
+        var extraLength = Short.toUnsignedInt(central.getShort(start + 30));
+        var commentLength = Short.toUnsignedInt(central.getShort(start + 32));
+        var offset = Integer.toUnsignedLong(central.getInt(start + 42));
+        if (central.remaining() < CENTRAL_HEADER_LENGTH + nameLength + extraLength + commentLength) {
+            throw new IOException("Corrupt archive, central directory header at " + start + " is cut off.");
+        }
+        var name = new byte[nameLength];
+        central.position(start + CENTRAL_HEADER_LENGTH);
+        central.get(name);
+        // Zip64 values are in this order, for the fields holding the magic value only.
+        var extraEnd = central.position() + extraLength;
+        while (central.position() + 4 <= extraEnd) {
+            var id = Short.toUnsignedInt(central.getShort());
+            var fieldEnd = central.position() + Short.toUnsignedInt(central.getShort());
+            if (id == ZIP64_EXTRA_ID) {
+                size = size == ZIP64_MAGIC ? central.getLong() : size;
+                compressedSize = compressedSize == ZIP64_MAGIC ? central.getLong() : compressedSize;
+                offset = offset == ZIP64_MAGIC ? central.getLong() : offset;
+            }
+            central.position(fieldEnd);
+        }
+        central.position(extraEnd + commentLength);
+        return new CentralEntry(name, method, flags, time, crc, size, compressedSize, offset);
+    }
+
+    private static byte[] zip64Extra(long size, long compressedSize) {
+        return littleEndian(20)
+                .putShort((short) ZIP64_EXTRA_ID)
+                .putShort((short) 16)
+                .putLong(size)
+                .putLong(compressedSize)
+                .array();
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        out.write(buffer.array(), 0, buffer.position());
+        position += buffer.position();
+    }
+
+    private void checkNotStreaming() throws IOException {
+        if (streaming) {
+            throw new IOException("Streamed entry not closed.");
+        }
+    }
+
+    private static ByteBuffer littleEndian(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /*
+    The local time dosTime was taken from, to the two seconds it keeps.
+     */
+    private static long javaTime(long dosTime) {
+        var time = LocalDateTime.of((int) (dosTime >> 25 & 0x7f) + 1980, (int) (dosTime >> 21 & 0x0f), (int) (dosTime >> 16 & 0x1f),
+                (int) (dosTime >> 11 & 0x1f), (int) (dosTime >> 5 & 0x3f), (int) (dosTime << 1 & 0x3e));
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static long dosTime(long millis) {
+        var time = Instant.ofEpochMilli(millis).atZone(ZoneId.systemDefault()).toLocalDateTime();
+        if (time.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (long) (time.getYear() - 1980) << 25 | (long) time.getMonthValue() << 21 | (long) time.getDayOfMonth() << 16
+                | (long) time.getHour() << 11 | (long) time.getMinute() << 5 | time.getSecond() >> 1;
+    }
+}
@@ -2,108 +2,1320 @@ package com.task;
 
 import com.task.exceptions.CipherException;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
+
+import static com.task.SegmentedOutputStream.await;
 
 public class Zipper {
 
-    private static final int BUFFER_SIZE = 1024;
+    protected static final long DEFAULT_MEMORY_BUDGET = 256L << 20;
+    protected static final long DEFAULT_BLOCK_PARALLEL_THRESHOLD = 64L << 20;
+    /* Reported by verify when the segments after the last entry fail. */
+    protected static final String CENTRAL_DIRECTORY = "central directory";
+    private static final long DICTIONARY_SAMPLE_BYTES = 4L << 20;
+    private static final int MAX_DICTIONARY_SAMPLE = 64 << 10;
 
     private final CipherMaker cipher;
+    private final Executor executor;
+    private final int pendingSegments;
+    private final StageTimings timings;
+    private int compressionThreads = Runtime.getRuntime().availableProcessors();
+    private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+    private long blockParallelThreshold = DEFAULT_BLOCK_PARALLEL_THRESHOLD;
+    private long dictionaryThreshold;
+    private Codec codec;
+    private List<String> includes = List.of();
+    private List<String> excludes = List.of();
+    private long checkpointMillis;
+    private int averageChunkSize;
+    private long volumeSize;
+    private List<File> stripeDirectories = List.of();
+    private Consumer<String> warnings = message -> {
+    };
 
     /*
     Using method described here: https://www.baeldung.com/java-compress-and-uncompress
-    but wrap File[Input/Output]Stream in Cipher[Input/Output]Stream.
+    but wrap File[Input/Output]Stream in a stream of independently encrypted segments,
+    so segments can be encrypted/decrypted on all cores.
      */
     public Zipper(String password) throws CipherException {
+        this(password, 2 * ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /*
+    pendingSegments bounds the segments in flight per archive, i.e. memory use is about pendingSegments * segment size
+    for each archive being read or written concurrently.
+     */
+    public Zipper(String password, int pendingSegments) throws CipherException {
+        this(password, pendingSegments, new StageTimings());
+    }
+
+    /*
+    Records into timings, e.g. to watch progress while running.
+     */
+    public Zipper(String password, int pendingSegments, StageTimings timings) throws CipherException {
+        this.timings = timings;
         this.cipher = new CipherMaker(password);
+        cipher.setTimings(timings);
+        this.executor = ForkJoinPool.commonPool();
+        this.pendingSegments = pendingSegments;
+    }
+
+    /*
+    Threads compressing entries when zipping, writing extracted files when unzipping, and verifying runs of entries.
+     */
+    public void setCompressionThreads(int compressionThreads) {
+        this.compressionThreads = compressionThreads;
+    }
+
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /*
+    Files of at least threshold bytes are deflated in blocks on all compression threads, see BlockDeflater, rather
+    than on one thread each. They are written to the archive as they are deflated, one at a time. 0 turns this off.
+     */
+    public void setBlockParallelThreshold(long threshold) {
+        this.blockParallelThreshold = threshold;
+    }
+
+    /*
+    Deflates files of at most threshold bytes with a preset dictionary, trained from a sample of them when an archive
+    is created and kept in its index, see Dictionary. Archives of many small, similar files, e.g. configuration, then
+    compress much better, as each file finds matches in what the others have in common. Entries deflated with the
+    dictionary are read from files, not streams. Not with deduplication. 0, the default, turns this off.
+     */
+    public void setDictionaryThreshold(long threshold) {
+        this.dictionaryThreshold = threshold;
+    }
+
+    /*
+    Stores every entry with the given codec, or chooses one per entry from its content if null (the default).
+     */
+    public void setCodec(Codec codec) {
+        this.codec = codec;
+    }
+
+    /*
+    Globs selecting the files taken from directories, see FileWalker.
+     */
+    public void setFilters(List<String> includes, List<String> excludes) {
+        this.includes = List.copyOf(includes);
+        this.excludes = List.copyOf(excludes);
+    }
+
+    /*
+    Makes creating an archive file and unzipping one to a directory resumable: a Journal of the progress is written
+    at most every checkpointMillis, at the end of an entry, and a job finding its journal continues from there.
+    0, the default, turns checkpoints off.
+     */
+    public void setCheckpointInterval(long checkpointMillis) {
+        this.checkpointMillis = checkpointMillis;
+    }
+
+    /*
+    Deduplicates archives: files are cut into content-defined chunks of about averageChunkSize bytes, a power of two,
+    and every unique chunk is stored once, see ChunkStore. Deduplicated archives are read from files, not streams.
+    0, the default, stores every file whole.
+     */
+    public void setDeduplication(int averageChunkSize) {
+        this.averageChunkSize = averageChunkSize;
+    }
+
+    /*
+    Writes archive files as volumes of volumeSize bytes, rounded up to whole stripes, striped across the archive's
+    directory followed by stripeDirectories, see VolumeSet. All directories are written concurrently, and read
+    concurrently when the archive is decrypted. A volumeSize of 0 with stripe directories makes one volume per
+    directory. 0 and none, the default, write a single file.
+     */
+    public void setVolumes(long volumeSize, List<File> stripeDirectories) {
+        this.volumeSize = volumeSize;
+        this.stripeDirectories = List.copyOf(stripeDirectories);
+    }
+
+    /*
+    Told about files left out of an archive that are not already in it, e.g. a second file with the same entry name.
+     */
+    public void setWarnings(Consumer<String> warnings) {
+        this.warnings = warnings;
     }
 
+    public void setKdf(Kdf kdf, int cost) {
+        cipher.setKdf(kdf, cost);
+    }
+
+    public void setCipherSuite(CipherSuite suite) {
+        cipher.setCipherSuite(suite);
+    }
+
+    /*
+    Stage timings of everything this Zipper has done so far.
+     */
+    public StageTimings getTimings() {
+        return timings;
+    }
+
+    /*
+    Archives the given files, and the files below the given directories under their path relative to the directory's
+    parent, see FileWalker.
+     */
     public void zip(List<File> sourceFiles, String outputFileName, File directory) throws IOException, CipherException {
-        var outputFile = new File(directory, outputFileName);
-        try (var fileOut = new FileOutputStream(outputFile);
-             var cipherOut = cipher.outputStream(fileOut);
-             var cipheredZipOut = new ZipOutputStream(cipherOut)) {
-            for (File file : sourceFiles) {
-                zipFile(file, cipheredZipOut);
+        zip(outputFileName, directory, ArchiveManifest.base(), (zipOut, header, index, checkpoints) ->
+                zipFiles(sourceFiles, directory, source -> true, zipOut, header, index, checkpoints));
+    }
+
+    /*
+    Creates a delta archive following previousArchive, the base or latest delta of a chain. Only files that are new or
+    changed since are stored, files no longer among sourceFiles get tombstones. A file counts as unchanged if its size
+    and modification time match the manifest, or, for a matching size only, if its content hash does.
+     */
+    public void zipIncremental(List<File> sourceFiles, String outputFileName, File directory, File previousArchive) throws IOException, CipherException {
+        var previous = readManifest(previousArchive);
+        zip(outputFileName, directory, previous.next(), (zipOut, header, index, checkpoints) -> {
+            // The index's manifest, which a resumed archive restores from its checkpoint.
+            var manifest = index.manifest();
+            var names = new HashSet<String>();
+            SourceFilter changed = source -> {
+                names.add(source.name());
+                var entry = previous.entry(source.name());
+                if (entry != null && unchanged(source.file(), entry)) {
+                    manifest.add(new ArchiveManifest.Entry(entry.name(), entry.size(), source.file().lastModified(), entry.hash(), entry.generation()));
+                    return false;
+                }
+                return true;
+            };
+            zipFiles(sourceFiles, directory, changed, zipOut, header, index, checkpoints);
+            for (var entry : previous.entries()) {
+                if (!names.contains(entry.name())) {
+                    manifest.addTombstone(entry.name());
+                }
             }
+        });
+    }
+
+    /*
+    Adds the given files to the archive, or volume set, named archiveName in directory, as zip does. Existing entries
+    are neither read nor encrypted again: the archive is continued from the end of its last entry, so only the segment
+    that ends in, the central directory and the index are read, and only that segment is sealed again. Files whose
+    entry name the archive already holds are skipped, so appending the same files again adds nothing; their names are
+    returned. Deduplicated archives store only chunks they do not hold yet, and the preset dictionary is kept.
+    The end of the entries is first checkpointed in the archive's journal, an interrupted append continues from the
+    latest checkpoint when run again, see setCheckpointInterval.
+     */
+    public List<String> append(List<File> sourceFiles, String archiveName, File directory) throws IOException, CipherException {
+        var archive = new File(directory, archiveName);
+        if (!archive.isFile() && VolumeSet.volumeFile(directory, archiveName, 0).isFile()) {
+            archive = VolumeSet.volumeFile(directory, archiveName, 0);
         }
+        if (!archive.isFile()) {
+            throw new IOException("Archive " + archiveName + " not found in " + directory + ".");
+        }
+        if (!Journal.exists(archive)) {
+            checkpointEnd(archive);
+        }
+        var skipped = new ArrayList<String>();
+        resumeArchive(archive, (zipOut, header, index, checkpoints) -> {
+            var held = new HashSet<String>();
+            index.entries().forEach(entry -> held.add(entry.name()));
+            zipFiles(sourceFiles, directory, source -> {
+                if (held.contains(source.name())) {
+                    skipped.add(source.name());
+                    return false;
+                }
+                return true;
+            }, zipOut, header, index, checkpoints);
+        });
+        return skipped;
+    }
+
+    private boolean unchanged(File file, ArchiveManifest.Entry entry) throws IOException {
+        if (file.length() != entry.size()) {
+            return false;
+        }
+        return file.lastModified() == entry.modified() || Arrays.equals(entry.hash(), ArchiveManifest.hash(file, timings));
     }
 
+    /*
+    The journal of an archive split into volumes is kept next to its first volume.
+     */
+    private void zip(String outputFileName, File directory, ArchiveManifest manifest, EntryWriter entries) throws IOException, CipherException {
+        var splits = volumeSize > 0 || !stripeDirectories.isEmpty();
+        var archive = splits ? VolumeSet.volumeFile(directory, outputFileName, 0) : new File(directory, outputFileName);
+        if (checkpointMillis > 0 && Journal.exists(archive)) {
+            resumeArchive(archive, entries);
+            return;
+        }
+        var journalled = checkpointMillis > 0 ? archive : null;
+        if (splits) {
+            var targets = new ArrayList<File>();
+            targets.add(directory);
+            targets.addAll(stripeDirectories);
+            var volumes = VolumeSet.create(outputFileName, targets, volumeSize);
+            try (var volumesOut = new VolumeOutputStream(volumes, 0, pendingSegments, timings)) {
+                writeArchive(volumesOut, manifest, entries, journalled);
+                volumesOut.complete();
+            }
+            return;
+        }
+        try (var fileOut = new FileOutputStream(archive)) {
+            writeArchive(fileOut, manifest, entries, journalled);
+        }
+    }
+
+    /*
+    Writes the archive of sourceFiles to out, which is left open. Entries too large for memory spill to the temporary
+    directory.
+     */
+    public void zip(List<File> sourceFiles, OutputStream out) throws IOException, CipherException {
+        var spillDirectory = new File(System.getProperty("java.io.tmpdir"));
+        writeArchive(out, ArchiveManifest.base(), (zipOut, header, index, checkpoints) ->
+                zipFiles(sourceFiles, spillDirectory, source -> true, zipOut, header, index, checkpoints), null);
+    }
+
+    /*
+    Archives everything read from in as a single entry and writes the archive to out, e.g. from stdin to stdout.
+    Memory use does not depend on the length of the input. Neither stream is closed.
+     */
+    public void zip(InputStream in, String entryName, OutputStream out) throws IOException, CipherException {
+        if (averageChunkSize > 0) {
+            var spillDirectory = new File(System.getProperty("java.io.tmpdir"));
+            writeArchive(out, ArchiveManifest.base(), (zipOut, header, index, checkpoints) -> {
+                try (var store = newChunkStore(zipOut, index, spillDirectory, checkpoints)) {
+                    store.write(entryName, System.currentTimeMillis(), consumer -> IoBuffers.read(in, timings, StageTimings.Stage.HASH, consumer));
+                    store.finish();
+                }
+            }, null);
+            return;
+        }
+        // The length of a stream is not known up front, it is deflated in blocks whenever that is turned on.
+        var pool = compressionThreads > 1 && blockParallelThreshold > 0 ? Executors.newFixedThreadPool(compressionThreads) : null;
+        try {
+            writeArchive(out, ArchiveManifest.base(), (zipOut, header, index, checkpoints) -> zipStreamed(entryName, System.currentTimeMillis(),
+                    consumer -> IoBuffers.read(in, timings, StageTimings.Stage.COMPRESS, consumer), zipOut, header, index, pool), null);
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface EntryWriter {
+        void write(ZipStreamWriter zipOut, ArchiveHeader header, ArchiveIndex index, Checkpoints checkpoints) throws IOException;
+    }
+
+    /*
+    Told about every entry written, see setCheckpointInterval.
+     */
+    @FunctionalInterface
+    interface Checkpoints {
+        void entryWritten() throws IOException;
+    }
+
+    private static final Checkpoints NO_CHECKPOINTS = () -> {
+    };
+
+    /*
+    Decides whether a file found is stored, see zipIncremental.
+     */
+    @FunctionalInterface
+    private interface SourceFilter {
+        boolean store(FileWalker.Source source) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface ChunkSource {
+        long read(IoBuffers.ChunkConsumer consumer) throws IOException;
+    }
+
+    /*
+    Header, segments and index of a new archive. out is flushed but not closed.
+    Checkpoints are kept in the journal of archive, unless null.
+     */
+    private void writeArchive(OutputStream out, ArchiveManifest manifest, EntryWriter entries, File archive) throws IOException, CipherException {
+        var header = cipher.newArchiveHeader();
+        var segmentCipher = cipher.segmentCipher(header);
+        var index = new ArchiveIndex();
+        index.setManifest(manifest);
+        var countingOut = new CountingOutputStream(new BufferedOutputStream(out), 0);
+        try (var cipherOut = new SegmentedOutputStream(countingOut, header, segmentCipher, executor, pendingSegments, timings)) {
+            var journal = archive == null ? null : new Journal(archive, segmentCipher);
+            writeEntries(countingOut, cipherOut, new ZipStreamWriter(cipherOut), segmentCipher, header, index, entries, journal);
+        }
+    }
+
+    /*
+    Continues an archive from its last checkpoint. Segments written after it are cut off, entries written before it
+    are skipped, see zipFiles.
+     */
+    private void resumeArchive(File archive, EntryWriter entries) throws IOException, CipherException {
+        try (var volumes = VolumeSet.open(archive, false)) {
+            var header = readHeader(volumes);
+            if (header == null) {
+                throw new IOException(archive.getName() + " is not a segmented archive, delete its checkpoint to start over.");
+            }
+            var segmentCipher = cipher.segmentCipher(header);
+            var journal = new Journal(archive, segmentCipher);
+            var state = journal.readCreation();
+            var length = header.segmentOffset(state.segments().segments());
+            volumes.truncate(length);
+            if (volumes.plain()) {
+                try (var fileOut = new FileOutputStream(archive, true)) {
+                    continueArchive(fileOut, length, header, segmentCipher, state, entries, journal);
+                }
+                return;
+            }
+            try (var volumesOut = new VolumeOutputStream(volumes, length, pendingSegments, timings)) {
+                continueArchive(volumesOut, length, header, segmentCipher, state, entries, journal);
+                volumesOut.complete();
+            }
+        }
+    }
+
+    /*
+    Checkpoints a complete archive at the end of its last entry, for append: the segment holding it is cut back to it,
+    the zip writer continues from the central directory and the index keeps its entries. Only the segments from the
+    one the central directory starts in are read, usually the last one or two.
+     */
+    private void checkpointEnd(File archive) throws IOException, CipherException {
+        try (var volumes = VolumeSet.open(archive)) {
+            var header = readHeader(volumes);
+            if (header == null) {
+                throw new IOException(archive.getName() + " is not a segmented archive, re-encrypt it to append to it.");
+            }
+            var segmentCipher = cipher.segmentCipher(header);
+            var index = ArchiveIndex.read(volumes, segmentCipher);
+            if (index == null) {
+                throw new IOException(archive.getName() + " has no index, re-encrypt it to append to it.");
+            }
+            var segmentSize = header.segmentSize();
+            var recordLength = header.segmentOffset(1) - header.segmentOffset(0);
+            var lastSegment = (ArchiveIndex.offset(volumes) - header.length() - 1) / recordLength;
+            // The end records are in the last segment, or run into it from the one before.
+            var from = Math.max(0, lastSegment - 1);
+            var plain = readSegments(volumes, header, segmentCipher, from);
+            var centralOffset = ZipStreamWriter.centralOffset(plain);
+            if (centralOffset < from * segmentSize) {
+                from = centralOffset / segmentSize;
+                plain = readSegments(volumes, header, segmentCipher, from);
+            }
+            var zipOut = ZipStreamWriter.reopen(OutputStream.nullOutputStream(), plain, from * segmentSize);
+            var first = centralOffset / segmentSize;
+            var tail = Arrays.copyOfRange(plain, (int) ((first - from) * segmentSize), (int) (centralOffset - from * segmentSize));
+            new Journal(archive, segmentCipher).writeCreation(new SegmentedOutputStream.Checkpoint(first, tail), zipOut, index);
+        }
+    }
+
+    /*
+    The plaintext of the segments from firstSegment to the final one.
+     */
+    private byte[] readSegments(VolumeSet archive, ArchiveHeader header, SegmentCipher segmentCipher, long firstSegment) throws IOException {
+        var archiveIn = archive.readAhead(header.segmentOffset(firstSegment), pendingSegments, timings);
+        try (var cipherIn = new SegmentedInputStream(new BufferedInputStream(archiveIn), header, segmentCipher, executor,
+                pendingSegments, firstSegment, Long.MAX_VALUE, timings)) {
+            return cipherIn.readAllBytes();
+        }
+    }
+
+    private void continueArchive(OutputStream out, long length, ArchiveHeader header, SegmentCipher segmentCipher, Journal.Creation state,
+                                 EntryWriter entries, Journal journal) throws IOException, CipherException {
+        var countingOut = new CountingOutputStream(new BufferedOutputStream(out), length);
+        try (var cipherOut = new SegmentedOutputStream(countingOut, header, segmentCipher, executor, pendingSegments, timings, state.segments())) {
+            var zipOut = ZipStreamWriter.resume(cipherOut, new DataInputStream(new ByteArrayInputStream(state.zipState())));
+            writeEntries(countingOut, cipherOut, zipOut, segmentCipher, header, state.index(), entries, journal);
+        }
+    }
+
+    private void writeEntries(CountingOutputStream countingOut, SegmentedOutputStream cipherOut, ZipStreamWriter zipOut,
+                              SegmentCipher segmentCipher, ArchiveHeader header, ArchiveIndex index, EntryWriter entries,
+                              Journal journal) throws IOException, CipherException {
+        var checkpoints = journal == null || checkpointMillis == 0 ? NO_CHECKPOINTS : new IntervalCheckpoints(journal, cipherOut, zipOut, index);
+        entries.write(zipOut, header, index, checkpoints);
+        zipOut.finish();
+        cipherOut.finish();
+        index.write(countingOut, countingOut.count(), segmentCipher);
+        if (journal != null) {
+            journal.delete();
+        }
+    }
+
+    private class IntervalCheckpoints implements Checkpoints {
+        private final Journal journal;
+        private final SegmentedOutputStream cipherOut;
+        private final ZipStreamWriter zipOut;
+        private final ArchiveIndex index;
+        private long last = System.nanoTime();
+
+        IntervalCheckpoints(Journal journal, SegmentedOutputStream cipherOut, ZipStreamWriter zipOut, ArchiveIndex index) {
+            this.journal = journal;
+            this.cipherOut = cipherOut;
+            this.zipOut = zipOut;
+            this.index = index;
+        }
+
+        @Override
+        public void entryWritten() throws IOException {
+            if (System.nanoTime() - last >= TimeUnit.MILLISECONDS.toNanos(checkpointMillis)) {
+                journal.writeCreation(cipherOut.checkpoint(), zipOut, index);
+                last = System.nanoTime();
+            }
+        }
+    }
+
+    private record PendingEntry(CompletableFuture<CompressedEntry> entry, long reservation) {
+    }
+
+    /*
+    Entries are deflated concurrently and written in order. Entries that fit a thread's share of the memory budget are
+    compressed into memory, larger ones into spill files next to the archive. Compression runs ahead of writing only
+    as far as the memory budget allows.
+    With a single compression thread large entries are deflated straight into the archive instead of spilling.
+    Files already in the index were written before the checkpoint a resumed archive continues from, which also keeps
+    the dictionary trained for small files.
+     */
+    private void zipFiles(List<File> sourceFiles, File spillDirectory, SourceFilter filter, ZipStreamWriter zipOut, ArchiveHeader header,
+                          ArchiveIndex index, Checkpoints checkpoints) throws IOException {
+        var written = new HashSet<String>();
+        index.entries().forEach(entry -> written.add(entry.name()));
+        if (averageChunkSize > 0) {
+            zipChunked(sourceFiles, spillDirectory, filter, zipOut, index, checkpoints, written);
+            return;
+        }
+        if (dictionaryThreshold > 0 && index.entries().isEmpty()) {
+            index.setDictionary(trainDictionary(sourceFiles));
+        }
+        var dictionary = index.dictionary();
+        var pool = Executors.newFixedThreadPool(compressionThreads);
+        var pending = new ArrayDeque<PendingEntry>();
+        var maxPendingEntries = 4 * compressionThreads;
+        var reserved = 0L;
+        var queued = new HashSet<String>();
+        try (var walker = new FileWalker(sourceFiles, includes, excludes)) {
+            FileWalker.Source source;
+            while ((source = walker.next()) != null) {
+                if (!stores(source, filter, written, queued)) {
+                    continue;
+                }
+                var file = source.file();
+                var inMemory = file.length() <= memoryBudget / compressionThreads;
+                var blockParallel = compressionThreads > 1 && blockParallelThreshold > 0 && file.length() >= blockParallelThreshold;
+                if ((!inMemory && compressionThreads == 1) || blockParallel) {
+                    while (!pending.isEmpty()) {
+                        reserved -= writeNext(pending, zipOut, header, index, checkpoints);
+                    }
+                    zipStreamed(source, zipOut, header, index, blockParallel ? pool : null);
+                    checkpoints.entryWritten();
+                    continue;
+                }
+                var reservation = inMemory ? file.length() : 0;
+                while (!pending.isEmpty() && (reserved + reservation > memoryBudget || pending.size() >= maxPendingEntries)) {
+                    reserved -= writeNext(pending, zipOut, header, index, checkpoints);
+                }
+                reserved += reservation;
+                var spill = inMemory ? null : spillDirectory;
+                var next = source;
+                var preset = file.length() <= dictionaryThreshold ? dictionary : null;
+                pending.addLast(new PendingEntry(CompletableFuture.supplyAsync(() -> compress(next, preset, spill), pool), reservation));
+            }
+            while (!pending.isEmpty()) {
+                writeNext(pending, zipOut, header, index, checkpoints);
+            }
+        } finally {
+            pool.shutdownNow();
+            for (var entry : pending) {
+                entry.entry().thenAccept(Zipper::discardQuietly);
+            }
+        }
+    }
+
+    /*
+    Whether source is stored: the filter takes it and it was not written before the checkpoint a resumed archive
+    continues from. A source whose entry name an earlier one of this run took is left out with a warning.
+     */
+    private boolean stores(FileWalker.Source source, SourceFilter filter, Set<String> written, Set<String> queued) throws IOException {
+        if (!queued.add(source.name())) {
+            warnings.accept("Skipped " + source.file() + ": entry " + source.name() + " is taken by another file.");
+            return false;
+        }
+        return filter.store(source) && !written.contains(source.name());
+    }
+
+    /*
+    Samples the first files found of at most dictionaryThreshold bytes, up to DICTIONARY_SAMPLE_BYTES, the filter
+    aside, and trains a dictionary on them. Reading the samples and training counts as compression. Returns null if
+    they have too little in common.
+     */
+    private byte[] trainDictionary(List<File> sourceFiles) throws IOException {
+        var start = System.nanoTime();
+        var samples = new ArrayList<byte[]>();
+        var sampled = 0L;
+        try (var walker = new FileWalker(sourceFiles, includes, excludes)) {
+            FileWalker.Source source;
+            while (sampled < DICTIONARY_SAMPLE_BYTES && (source = walker.next()) != null) {
+                var length = source.file().length();
+                if (length == 0 || length > dictionaryThreshold) {
+                    continue;
+                }
+                try (var fileIn = new FileInputStream(source.file())) {
+                    var sample = fileIn.readNBytes((int) Math.min(length, MAX_DICTIONARY_SAMPLE));
+                    samples.add(sample);
+                    sampled += sample.length;
+                }
+            }
+        }
+        var dictionary = Dictionary.train(samples);
+        timings.busy(StageTimings.Stage.COMPRESS, start);
+        return dictionary;
+    }
+
+    /*
+    Deduplicating zipFiles: cutting files into chunks counts as hashing, hashing and compressing the chunks as
+    compression. The chunk index spills next to the archive.
+     */
+    private void zipChunked(List<File> sourceFiles, File spillDirectory, SourceFilter filter, ZipStreamWriter zipOut, ArchiveIndex index,
+                            Checkpoints checkpoints, Set<String> written) throws IOException {
+        var queued = new HashSet<String>();
+        try (var store = newChunkStore(zipOut, index, spillDirectory, checkpoints);
+             var walker = new FileWalker(sourceFiles, includes, excludes)) {
+            FileWalker.Source source;
+            while ((source = walker.next()) != null) {
+                if (!stores(source, filter, written, queued)) {
+                    continue;
+                }
+                var file = source.file();
+                store.write(source.name(), file.lastModified(), consumer -> IoBuffers.read(file, timings, StageTimings.Stage.HASH, consumer));
+            }
+            store.finish();
+        }
+    }
+
+    private ChunkStore newChunkStore(ZipStreamWriter zipOut, ArchiveIndex index, File spillDirectory, Checkpoints checkpoints) throws IOException {
+        return new ChunkStore(zipOut, index, codec, averageChunkSize, compressionThreads, memoryBudget, spillDirectory, checkpoints, timings);
+    }
+
+    private long writeNext(ArrayDeque<PendingEntry> pending, ZipStreamWriter zipOut, ArchiveHeader header, ArchiveIndex index,
+                           Checkpoints checkpoints) throws IOException {
+        var next = pending.removeFirst();
+        var entry = await(next.entry());
+        try {
+            var offset = zipOut.position();
+            zipOut.write(entry);
+            timings.entry(entry.name(), entry.size(), entry.compressedSize(), entry.codec());
+            addToIndex(index, header, entry.name(), entry.size(), entry.modified(), entry.hash(), offset, zipOut.position());
+        } finally {
+            entry.discard();
+        }
+        checkpoints.entryWritten();
+        return next.reservation();
+    }
+
+    /*
+    Deflates in blocks on blockExecutor, with all compression threads, if not null.
+     */
+    private void zipStreamed(FileWalker.Source source, ZipStreamWriter zipOut, ArchiveHeader header, ArchiveIndex index,
+                             Executor blockExecutor) throws IOException {
+        var file = source.file();
+        zipStreamed(source.name(), file.lastModified(), consumer -> IoBuffers.read(file, timings, StageTimings.Stage.COMPRESS, consumer),
+                zipOut, header, index, blockExecutor);
+    }
+
+    private void zipStreamed(String name, long modified, ChunkSource source, ZipStreamWriter zipOut, ArchiveHeader header,
+                             ArchiveIndex index, Executor blockExecutor) throws IOException {
+        var offset = zipOut.position();
+        var digest = ArchiveManifest.newDigest();
+        long size;
+        try (var entryOut = zipOut.stream(name, modified, codec == null ? Codec.FULL : codec)) {
+            if (blockExecutor != null) {
+                entryOut.setBlockParallel(blockExecutor, compressionThreads);
+            }
+            size = source.read(chunk -> {
+                if (codec == null && entryOut.size() == 0) {
+                    entryOut.setCodec(Codec.choose(chunk));
+                }
+                digest.update(chunk.duplicate());
+                entryOut.write(chunk);
+            });
+            entryOut.finish();
+            timings.entry(name, size, entryOut.compressedSize(), entryOut.codec());
+        }
+        addToIndex(index, header, name, size, modified, digest.digest(), offset, zipOut.position());
+    }
+
+    private static void addToIndex(ArchiveIndex index, ArchiveHeader header, String name, long size, long modified, byte[] hash,
+                                   long offset, long end) {
+        index.add(new ArchiveIndex.Entry(name, size, offset, end - offset, header.segmentOffset(offset / header.segmentSize())));
+        var manifest = index.manifest();
+        manifest.add(new ArchiveManifest.Entry(name, size, modified, hash, manifest.generation()));
+    }
+
+    private CompressedEntry compress(FileWalker.Source source, byte[] dictionary, File spillDirectory) {
+        try {
+            return CompressedEntry.compress(source.file(), source.name(), codec, dictionary, spillDirectory, timings);
+        } catch (IOException ex) {
+            throw new CompletionException(ex);
+        }
+    }
+
+    private static void discardQuietly(CompressedEntry entry) {
+        try {
+            entry.discard();
+        } catch (IOException ignored) {
+            // Best effort clean up after a failure that is already being reported.
+        }
+    }
+
+    /*
+    Archives are read in one pass, unless deduplicated or resumable, see setCheckpointInterval. Then entries are
+    extracted through the index, without the ones a previous run got to. Archives without an index are always read
+    in one pass.
+     */
     public void unzip(File directory, File zippedFile) throws IOException, CipherException {
-        try (var fileIn = new FileInputStream(zippedFile);
-             var cipherIn = cipher.inputStream(fileIn);
-             var cipheredZipIn = new ZipInputStream(cipherIn)) {
+        try (var volumes = VolumeSet.open(zippedFile)) {
+            var header = readHeader(volumes);
+            var segmentCipher = header == null ? null : cipher.segmentCipher(header);
+            var index = header == null ? null : ArchiveIndex.read(volumes, segmentCipher);
+            if (index == null || (checkpointMillis == 0 && !index.deduplicated())) {
+                try (var fileIn = new BufferedInputStream(volumes.readAhead(0, pendingSegments, timings));
+                     var cipherIn = decryptingStream(fileIn);
+                     var cipheredZipIn = new DictionaryZipInputStream(cipherIn, index == null ? null : index.dictionary())) {
+                    unzip(directory, cipheredZipIn);
+                }
+                return;
+            }
+            if (checkpointMillis == 0) {
+                var all = new HashSet<String>();
+                index.entries().forEach(entry -> all.add(entry.name()));
+                extract(directory, volumes, header, segmentCipher, index, all, name -> {
+                });
+                return;
+            }
+            var journal = new Journal(directory, segmentCipher);
+            var extracted = journal.readExtraction();
+            var remaining = new LinkedHashSet<String>();
+            for (var entry : index.entries()) {
+                if (!extracted.contains(entry.name())) {
+                    remaining.add(entry.name());
+                }
+            }
+            if (!remaining.isEmpty()) {
+                extract(directory, volumes, header, segmentCipher, index, remaining, new ExtractionCheckpoints(journal, extracted));
+            }
+            journal.delete();
+        }
+    }
+
+    /*
+    Told about every file extracted, on the extraction writer's thread.
+     */
+    private class ExtractionCheckpoints implements Consumer<String> {
+        private final Journal journal;
+        private final Set<String> extracted;
+        private long last = System.nanoTime();
+
+        ExtractionCheckpoints(Journal journal, Set<String> extracted) {
+            this.journal = journal;
+            this.extracted = extracted;
+        }
+
+        /*
+        Synchronized, as every writer thread reports its files.
+         */
+        @Override
+        public synchronized void accept(String name) {
+            extracted.add(name);
+            if (System.nanoTime() - last >= TimeUnit.MILLISECONDS.toNanos(checkpointMillis)) {
+                try {
+                    journal.writeExtraction(extracted);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                last = System.nanoTime();
+            }
+        }
+    }
+
+    /*
+    Unzips the archive read from in, which is left open.
+     */
+    public void unzip(File directory, InputStream in) throws IOException, CipherException {
+        try (var cipherIn = decryptingStream(new BufferedInputStream(new UnclosedInputStream(in)));
+             var cipheredZipIn = new DictionaryZipInputStream(cipherIn, null)) {
             unzip(directory, cipheredZipIn);
         }
     }
 
-    void unzip(File directory, ZipInputStream zipIn) throws IOException {
-        var zipEntry = zipIn.getNextEntry();
+    /*
+    Writes the contents of all entries of the archive read from in to out, one after the other, e.g. from stdin to
+    stdout. Memory use does not depend on the length of the archive. Neither stream is closed.
+     */
+    public void unzip(InputStream in, OutputStream out) throws IOException, CipherException {
+        unzip(in, out, null);
+    }
 
-        if (zipEntry == null) {
+    private void unzip(InputStream in, OutputStream out, byte[] dictionary) throws IOException, CipherException {
+        try (var cipherIn = decryptingStream(new BufferedInputStream(new UnclosedInputStream(in)));
+             var cipheredZipIn = new DictionaryZipInputStream(cipherIn, dictionary)) {
+            var zipEntry = cipheredZipIn.getNextEntry();
+            if (zipEntry == null) {
+                throw new IOException("File empty and/or failed to decrypt. Check password.");
+            }
+            while (zipEntry != null) {
+                checkNotChunk(zipEntry);
+                cipheredZipIn.transferTo(out);
+                zipEntry = cipheredZipIn.getNextEntry();
+            }
+            // Reading up to the final segment detects a truncated archive, whose entries may still have been complete.
+            cipherIn.transferTo(OutputStream.nullOutputStream());
+            out.flush();
+        }
+    }
+
+    /*
+    Writes the contents of all entries of the archive file, or volume set, to out, which is left open.
+     */
+    public void unzip(File zippedFile, OutputStream out) throws IOException, CipherException {
+        try (var volumes = VolumeSet.open(zippedFile)) {
+            var header = readHeader(volumes);
+            var index = header == null ? null : ArchiveIndex.read(volumes, cipher.segmentCipher(header));
+            try (var volumesIn = volumes.readAhead(0, pendingSegments, timings)) {
+                unzip(volumesIn, out, index == null ? null : index.dictionary());
+            }
+        }
+    }
+
+    /*
+    Lists entries from the archive index. Legacy archives have no index and need a full pass.
+     */
+    public List<ArchiveIndex.Entry> list(File zippedFile) throws IOException, CipherException {
+        var index = readIndex(zippedFile);
+        if (index != null) {
+            return index.entries();
+        }
+        var entries = new ArrayList<ArchiveIndex.Entry>();
+        try (var fileIn = new BufferedInputStream(new FileInputStream(zippedFile));
+             var cipherIn = decryptingStream(fileIn);
+             var cipheredZipIn = new ZipInputStream(cipherIn)) {
+            ZipEntry zipEntry;
+            while ((zipEntry = cipheredZipIn.getNextEntry()) != null) {
+                var size = cipheredZipIn.transferTo(OutputStream.nullOutputStream());
+                entries.add(new ArchiveIndex.Entry(zipEntry.getName(), size, -1, -1, -1));
+            }
+        }
+        if (entries.isEmpty()) {
             throw new IOException("File empty and/or failed to decrypt. Check password.");
         }
-        var buffer = new byte[BUFFER_SIZE];
-        while (zipEntry != null) {
-            unzipFile(directory, zipEntry, zipIn, buffer);
-            zipEntry = zipIn.getNextEntry();
+        return entries;
+    }
+
+    /*
+    Extracts only the named entries, decrypting just the segments that hold them.
+    Entries close enough together to share a segment are read in one pass.
+     */
+    public void extract(File directory, File zippedFile, Collection<String> names) throws IOException, CipherException {
+        var wanted = new HashSet<>(names);
+        try (var volumes = VolumeSet.open(zippedFile)) {
+            var header = readHeader(volumes);
+            var segmentCipher = header == null ? null : cipher.segmentCipher(header);
+            var index = header == null ? null : ArchiveIndex.read(volumes, segmentCipher);
+            if (index == null) {
+                try (var fileIn = new BufferedInputStream(volumes.readAhead(0, pendingSegments, timings));
+                     var cipherIn = decryptingStream(fileIn);
+                     var cipheredZipIn = new ZipInputStream(cipherIn)) {
+                    unzip(directory, cipheredZipIn, wanted);
+                }
+                return;
+            }
+            extract(directory, volumes, header, segmentCipher, index, wanted, name -> {
+            });
         }
-        zipIn.closeEntry();
     }
 
-    private void zipFile(File fileToZip, ZipOutputStream zipOut) throws IOException {
-        try (var fileIn = new FileInputStream(fileToZip)) {
-            var zipEntry = new ZipEntry(fileToZip.getName());
-            zipOut.putNextEntry(zipEntry);
+    private void extract(File directory, VolumeSet archive, ArchiveHeader header, SegmentCipher segmentCipher, ArchiveIndex index,
+                         Set<String> wanted, Consumer<String> written) throws IOException {
+        var entries = index.entries().stream()
+                .filter(entry -> wanted.contains(entry.name()))
+                .sorted(Comparator.comparingLong(ArchiveIndex.Entry::offset))
+                .toList();
+        var missing = new HashSet<>(wanted);
+        entries.forEach(entry -> missing.remove(entry.name()));
+        if (!missing.isEmpty()) {
+            throw new IOException("Not found in archive: " + String.join(", ", missing));
+        }
+        try (var writer = newExtractionWriter(directory, written)) {
+            if (index.deduplicated()) {
+                extractChunked(archive, header, segmentCipher, index, entries, writer);
+                return;
+            }
 
-            writeToFile(fileIn, zipOut, new byte[BUFFER_SIZE]);
+            var run = new ArrayList<ArchiveIndex.Entry>();
+            for (var entry : entries) {
+                if (!run.isEmpty() && entry.offset() - end(run.get(run.size() - 1)) >= header.segmentSize()) {
+                    extractRun(archive, header, segmentCipher, index.dictionary(), run, wanted, writer);
+                    run.clear();
+                }
+                run.add(entry);
+            }
+            if (!run.isEmpty()) {
+                extractRun(archive, header, segmentCipher, index.dictionary(), run, wanted, writer);
+            }
         }
     }
 
-    private void unzipFile(File destinationDir, ZipEntry zipEntry, ZipInputStream zipIn, byte[] buffer) throws IOException {
-        var newFile = newFile(destinationDir, zipEntry);
-        if (zipEntry.isDirectory()) {
-            if (!newFile.isDirectory() && !newFile.mkdirs()) {
-                throw new IOException("Failed to create directory " + newFile);
+    /*
+    Checks the archive file, or volume set, without writing anything: every segment is authenticated and every entry
+    inflated into a null sink, which checks its CRC. Returns the names of the entries that fail, in archive order, so
+    none if the archive is intact. Archives with an index are split into compressionThreads runs of entries, which
+    are verified concurrently and each pick up again after an entry that fails, while the segments after the last
+    entry are authenticated up to the final one; those failing are reported as CENTRAL_DIRECTORY, last. Archives
+    without one are read in a single pass, which ends at the first failure.
+     */
+    public List<String> verify(File zippedFile) throws IOException, CipherException {
+        try (var volumes = VolumeSet.open(zippedFile)) {
+            var header = readHeader(volumes);
+            var segmentCipher = header == null ? null : cipher.segmentCipher(header);
+            var index = header == null ? null : ArchiveIndex.read(volumes, segmentCipher);
+            if (index == null) {
+                try (var volumesIn = volumes.readAhead(0, pendingSegments, timings)) {
+                    return verify(volumesIn);
+                }
             }
-        } else {
-            // fix for Windows-created archives
-            var parent = newFile.getParentFile();
-            if (!parent.isDirectory() && !parent.mkdirs()) {
-                throw new IOException("Failed to create directory " + parent);
+            var entries = index.deduplicated() ? index.entries() : index.entries().stream()
+                    .sorted(Comparator.comparingLong(ArchiveIndex.Entry::offset))
+                    .toList();
+            var runs = split(entries, compressionThreads);
+            var maxPending = Math.max(1, pendingSegments / Math.max(1, runs.size()));
+            var pool = Executors.newFixedThreadPool(Math.max(1, runs.size()));
+            try {
+                var results = new ArrayList<CompletableFuture<List<String>>>();
+                for (var run : runs) {
+                    results.add(CompletableFuture.supplyAsync(() -> {
+                        var corrupt = new ArrayList<String>();
+                        for (var next = 0; next < run.size(); ) {
+                            var failed = index.deduplicated()
+                                    ? verifyChunked(volumes, header, segmentCipher, index, run, next, maxPending, memoryBudget / 4 / runs.size())
+                                    : verifyRun(volumes, header, segmentCipher, index.dictionary(), run, next, maxPending);
+                            if (failed < run.size()) {
+                                corrupt.add(run.get(failed).name());
+                            }
+                            next = failed + 1;
+                        }
+                        return corrupt;
+                    }, pool));
+                }
+                var tailIntact = verifyTail(volumes, header, segmentCipher, index, maxPending);
+                var corrupt = new ArrayList<String>();
+                for (var result : results) {
+                    corrupt.addAll(await(result));
+                }
+                if (!tailIntact) {
+                    corrupt.add(CENTRAL_DIRECTORY);
+                }
+                return corrupt;
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /*
+    Checks the archive read from in, which is left open, in a single pass, see verify(File). Deduplicated archives
+    have their chunks checked. Entries deflated with a preset dictionary cannot be checked, its index comes last.
+     */
+    public List<String> verify(InputStream in) throws IOException, CipherException {
+        String name = null;
+        try (var cipherIn = decryptingStream(new BufferedInputStream(new UnclosedInputStream(in)));
+             var cipheredZipIn = new DictionaryZipInputStream(cipherIn, null)) {
+            var zipEntry = cipheredZipIn.getNextEntry();
+            if (zipEntry == null) {
+                throw new IOException("File empty and/or failed to decrypt. Check password.");
+            }
+            while (zipEntry != null) {
+                name = zipEntry.getName();
+                cipheredZipIn.transferTo(OutputStream.nullOutputStream());
+                name = null;
+                zipEntry = cipheredZipIn.getNextEntry();
+            }
+            // Reading up to the final segment detects a truncated archive, whose entries may still have been complete.
+            cipherIn.transferTo(OutputStream.nullOutputStream());
+            return List.of();
+        } catch (IOException ex) {
+            if (name == null) {
+                throw ex;
+            }
+            return List.of(name);
+        }
+    }
+
+    /*
+    Splits entries into at most count runs of consecutive entries, of about the same stored length.
+     */
+    private static List<List<ArchiveIndex.Entry>> split(List<ArchiveIndex.Entry> entries, int count) {
+        var total = entries.stream().mapToLong(ArchiveIndex.Entry::storedLength).sum();
+        var runLength = Math.max(1, total / Math.max(1, count));
+        var runs = new ArrayList<List<ArchiveIndex.Entry>>();
+        var start = 0;
+        var length = 0L;
+        for (var i = 0; i < entries.size(); i++) {
+            length += entries.get(i).storedLength();
+            if (length >= runLength || i == entries.size() - 1) {
+                runs.add(entries.subList(start, i + 1));
+                start = i + 1;
+                length = 0;
+            }
+        }
+        return runs;
+    }
+
+    /*
+    Verifies run from entry first on, returning the index of the first entry failing, or the run's size if none does.
+     */
+    private int verifyRun(VolumeSet archive, ArchiveHeader header, SegmentCipher segmentCipher, byte[] dictionary,
+                          List<ArchiveIndex.Entry> run, int first, int maxPending) {
+        var segmentSize = header.segmentSize();
+        var start = run.get(first).offset();
+        var firstSegment = start / segmentSize;
+        var endSegment = (end(run.get(run.size() - 1)) - 1) / segmentSize + 1;
+        var current = first;
+        var archiveIn = archive.readAhead(header.segmentOffset(firstSegment), maxPending, timings);
+        try (var cipherIn = new SegmentedInputStream(new BufferedInputStream(archiveIn), header, segmentCipher, executor,
+                maxPending, firstSegment, endSegment, timings);
+             var cipheredZipIn = new DictionaryZipInputStream(cipherIn, dictionary)) {
+            cipherIn.skipNBytes(start - firstSegment * segmentSize);
+            for (; current < run.size(); current++) {
+                var entry = run.get(current);
+                var zipEntry = cipheredZipIn.getNextEntry();
+                if (zipEntry == null || !zipEntry.getName().equals(entry.name())
+                        || cipheredZipIn.transferTo(OutputStream.nullOutputStream()) != entry.size()) {
+                    return current;
+                }
+            }
+        } catch (IOException ex) {
+            return current;
+        }
+        return current;
+    }
+
+    /*
+    Authenticates the segments after the one the last entry, or chunk, ends in up to the final segment, which hold
+    the rest of the central directory. Runs authenticate the segments up to that one. Returns false if any fails or
+    the final one is missing.
+     */
+    private boolean verifyTail(VolumeSet archive, ArchiveHeader header, SegmentCipher segmentCipher, ArchiveIndex index, int maxPending) {
+        var dataEnd = 0L;
+        for (var entry : index.entries()) {
+            if (!entry.chunked()) {
+                dataEnd = Math.max(dataEnd, end(entry));
+            }
+        }
+        for (var id = 0; id < index.chunkCount(); id++) {
+            var chunk = index.chunk(id);
+            dataEnd = Math.max(dataEnd, chunk.offset() + chunk.storedLength());
+        }
+        var segmentSize = header.segmentSize();
+        var firstSegment = (dataEnd + segmentSize - 1) / segmentSize;
+        try {
+            if (dataEnd > 0 && header.segmentOffset(firstSegment) >= ArchiveIndex.offset(archive)) {
+                return true;
+            }
+            var archiveIn = archive.readAhead(header.segmentOffset(firstSegment), maxPending, timings);
+            try (var cipherIn = new SegmentedInputStream(new BufferedInputStream(archiveIn), header, segmentCipher, executor,
+                    maxPending, firstSegment, Long.MAX_VALUE, timings)) {
+                cipherIn.transferTo(OutputStream.nullOutputStream());
+            }
+            return true;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /*
+    verifyRun for deduplicated archives, whose chunks are checked as they are read.
+     */
+    private int verifyChunked(VolumeSet archive, ArchiveHeader header, SegmentCipher segmentCipher, ArchiveIndex index,
+                              List<ArchiveIndex.Entry> run, int first, int maxPending, long cacheBytes) {
+        var rest = run.subList(first, run.size());
+        var current = first;
+        try (var reader = new ChunkReader(archive, header, segmentCipher, index, rest, executor, maxPending, cacheBytes, timings)) {
+            for (var entry : rest) {
+                if (reader.open(entry).transferTo(OutputStream.nullOutputStream()) != entry.size()) {
+                    return current;
+                }
+                current++;
+            }
+        } catch (IOException ex) {
+            return current;
+        }
+        return current;
+    }
+
+    /*
+    Gives the archive file, or volume set, newPassword in place of the password of this Zipper, or in addition to it
+    if keepPassword. Only the key slots in the header are rewritten, in place: segments stay sealed under the same
+    data key, so this takes the same time for any size of archive. The new password's key is derived as set with
+    setKdf. Archives from before key slots need to be re-encrypted instead.
+     */
+    public void rekey(File zippedFile, String newPassword, boolean keepPassword) throws IOException, CipherException {
+        try (var volumes = VolumeSet.open(zippedFile)) {
+            var header = readHeader(volumes);
+            if (header == null) {
+                throw new IOException(zippedFile.getName() + " is not a segmented archive, re-encrypt it to change its password.");
+            }
+            var rekeyed = cipher.rekey(header, newPassword, keepPassword).toBytes();
+            if (rekeyed.length != header.length()) {
+                throw new IllegalStateException("Header length changed from " + header.length() + " to " + rekeyed.length + ".");
             }
+            volumes.write(ByteBuffer.wrap(rekeyed), 0);
+        }
+    }
 
-            try (var fileOut = new FileOutputStream(newFile)) {
-                writeToFile(zipIn, fileOut, buffer);
+    /*
+    Rebuilds the state recorded by the last archive of chain, which lists a base archive followed by its deltas in order.
+    Each file is extracted once, from the archive holding its latest content. Files deleted along the chain are
+    removed from directory, in case it holds an earlier restore.
+     */
+    public void restore(File directory, List<File> chain) throws IOException, CipherException {
+        var manifests = new ArrayList<ArchiveManifest>();
+        for (var archive : chain) {
+            var manifest = readManifest(archive);
+            var previous = manifests.isEmpty() ? null : manifests.get(manifests.size() - 1);
+            if (manifest.generation() != manifests.size() || (previous != null && manifest.parentId() != previous.archiveId())) {
+                throw new IOException(archive.getName() + (previous == null ? " is not a base archive."
+                        : " does not follow " + chain.get(manifests.size() - 1).getName() + "."));
+            }
+            manifests.add(manifest);
+        }
+        var state = manifests.get(manifests.size() - 1);
+        for (var generation = 0; generation < chain.size(); generation++) {
+            var current = generation;
+            var names = state.entries().stream()
+                    .filter(entry -> entry.generation() == current)
+                    .map(ArchiveManifest.Entry::name)
+                    .toList();
+            if (!names.isEmpty()) {
+                extract(directory, chain.get(generation), names);
             }
         }
+        for (var manifest : manifests) {
+            for (var tombstone : manifest.tombstones()) {
+                if (state.entry(tombstone) == null) {
+                    Files.deleteIfExists(newFile(directory, new ZipEntry(tombstone)).toPath());
+                }
+            }
+        }
+    }
+
+    private ArchiveManifest readManifest(File archive) throws IOException, CipherException {
+        var index = readIndex(archive);
+        if (index == null || index.manifest() == null) {
+            throw new IOException(archive.getName() + " has no manifest, it was not created by this version.");
+        }
+        return index.manifest();
     }
 
-    private void writeToFile(InputStream in, OutputStream out, byte[] buffer) throws IOException {
-        int readBytes;
-        while ((readBytes = in.read(buffer)) > 0) {
-            out.write(buffer, 0, readBytes);
+    private void extractRun(VolumeSet archive, ArchiveHeader header, SegmentCipher segmentCipher, byte[] dictionary,
+                            List<ArchiveIndex.Entry> run, Set<String> wanted, ExtractionWriter writer) throws IOException {
+        var segmentSize = header.segmentSize();
+        var start = run.get(0).offset();
+        var firstSegment = start / segmentSize;
+        var endSegment = (end(run.get(run.size() - 1)) - 1) / segmentSize + 1;
+        var archiveIn = archive.readAhead(header.segmentOffset(firstSegment), pendingSegments, timings);
+        try (var cipherIn = new SegmentedInputStream(new BufferedInputStream(archiveIn), header, segmentCipher, executor,
+                pendingSegments, firstSegment, endSegment, timings);
+             var cipheredZipIn = new DictionaryZipInputStream(cipherIn, dictionary)) {
+            cipherIn.skipNBytes(start - firstSegment * segmentSize);
+            extract(cipheredZipIn, wanted, run.size(), writer);
+        }
+    }
+
+    /*
+    Entries of a deduplicated archive are read in the order they were written, which keeps reading their chunks
+    mostly sequential. Decrypted segments are cached in a quarter of the memory budget.
+     */
+    private void extractChunked(VolumeSet archive, ArchiveHeader header, SegmentCipher segmentCipher, ArchiveIndex index,
+                                List<ArchiveIndex.Entry> entries, ExtractionWriter writer) throws IOException {
+        try (var reader = new ChunkReader(archive, header, segmentCipher, index, entries, executor, pendingSegments,
+                memoryBudget / 4, timings)) {
+            for (var entry : entries) {
+                writer.write(entry.name(), reader.open(entry));
+            }
+        }
+    }
+
+    private void extract(ZipInputStream zipIn, Set<String> wanted, int count, ExtractionWriter writer) throws IOException {
+        var extracted = 0;
+        while (extracted < count) {
+            var zipEntry = zipIn.getNextEntry();
+            if (zipEntry == null) {
+                throw new IOException("Archive contents do not match its index.");
+            }
+            if (wanted.contains(zipEntry.getName())) {
+                unzipFile(zipEntry, zipIn, writer);
+                extracted++;
+            }
+        }
+    }
+
+    /*
+    Extracted files are created and written on compressionThreads writer threads.
+     */
+    private ExtractionWriter newExtractionWriter(File directory, Consumer<String> written) {
+        return new ExtractionWriter(directory, compressionThreads, timings, written);
+    }
+
+    private static long end(ArchiveIndex.Entry entry) {
+        return entry.offset() + entry.storedLength();
+    }
+
+    private ArchiveIndex readIndex(File zippedFile) throws IOException, CipherException {
+        try (var volumes = VolumeSet.open(zippedFile)) {
+            var header = readHeader(volumes);
+            return header == null ? null : ArchiveIndex.read(volumes, cipher.segmentCipher(header));
+        }
+    }
+
+    private static ArchiveHeader readHeader(VolumeSet archive) throws IOException {
+        var in = archive.open(0);
+        return ArchiveHeader.hasMagic(in) ? ArchiveHeader.read(in) : null;
+    }
+
+    /*
+    Segmented archives start with a plaintext header, anything else is read as the legacy single CBC stream.
+     */
+    private InputStream decryptingStream(BufferedInputStream fileIn) throws IOException, CipherException {
+        fileIn.mark(ArchiveHeader.MAGIC.length);
+        if (ArchiveHeader.hasMagic(fileIn)) {
+            var header = ArchiveHeader.read(fileIn);
+            return new SegmentedInputStream(fileIn, header, cipher.segmentCipher(header), executor, pendingSegments,
+                    0, Long.MAX_VALUE, timings);
+        }
+        fileIn.reset();
+        return cipher.inputStream(fileIn);
+    }
+
+    /*
+    The chunks of deduplicated archives come before the index saying what they belong to.
+     */
+    private static void checkNotChunk(ZipEntry zipEntry) throws IOException {
+        if (zipEntry.getName().startsWith(ChunkStore.CHUNK_PREFIX)) {
+            throw new IOException("Deduplicated archive, it can only be read from a file into a directory.");
+        }
+    }
+
+    void unzip(File directory, ZipInputStream zipIn) throws IOException {
+        unzip(directory, zipIn, null);
+    }
+
+    /*
+    Unzips the entries named in wanted, or all entries if wanted is null.
+     */
+    private void unzip(File directory, ZipInputStream zipIn, Set<String> wanted) throws IOException {
+        var zipEntry = zipIn.getNextEntry();
+
+        if (zipEntry == null) {
+            throw new IOException("File empty and/or failed to decrypt. Check password.");
+        }
+        try (var writer = newExtractionWriter(directory, name -> {
+        })) {
+            while (zipEntry != null) {
+                checkNotChunk(zipEntry);
+                if (wanted == null || wanted.contains(zipEntry.getName())) {
+                    unzipFile(zipEntry, zipIn, writer);
+                }
+                zipEntry = zipIn.getNextEntry();
+            }
+        }
+        zipIn.closeEntry();
+    }
+
+    /*
+    Parent directories are created by the writer, as archives need not have entries for them.
+     */
+    private static void unzipFile(ZipEntry zipEntry, InputStream zipIn, ExtractionWriter writer) throws IOException {
+        if (zipEntry.isDirectory()) {
+            writer.directory(zipEntry.getName());
+        } else {
+            writer.write(zipEntry.getName(), zipIn);
         }
     }
 
     public static File newFile(File destinationDir, ZipEntry zipEntry) throws IOException {
-        var destFile = new File(destinationDir, zipEntry.getName());
+        return ExtractionWriter.resolve(destinationDir.toPath().toAbsolutePath().normalize(), zipEntry.getName()).toFile();
+    }
+
+    /*
+    Counts bytes written, starting at count, so the index offset is known without seeking. Closing only flushes, the
+    underlying stream is the caller's.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
 
-        String destDirPath = destinationDir.getCanonicalPath();
-        String destFilePath = destFile.getCanonicalPath();
+        CountingOutputStream(OutputStream out, long count) {
+            super(out);
+            this.count = count;
+        }
+
+        long count() {
+            return count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            count += length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    private static class UnclosedInputStream extends FilterInputStream {
+        UnclosedInputStream(InputStream in) {
+            super(in);
+        }
 
-        if (!destFilePath.startsWith(destDirPath + File.separator)) {
-            throw new IOException("Entry is outside of the target dir: " + zipEntry.getName());
+        @Override
+        public void close() {
         }
-        return destFile;
     }
-}
\ No newline at end of file
+}
@@ -9,25 +9,64 @@ import java.io.File;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 
+import static com.task.ArgumentParser.BLOCK_PARALLEL_FLAG;
+import static com.task.ArgumentParser.CHECKPOINT_FLAG;
+import static com.task.ArgumentParser.CIPHER_FLAG;
+import static com.task.ArgumentParser.COST_FLAG;
+import static com.task.ArgumentParser.DEDUP_FLAG;
+import static com.task.ArgumentParser.DICTIONARY_FLAG;
+import static com.task.ArgumentParser.ENTRY_FLAG;
+import static com.task.ArgumentParser.EXCLUDE_FLAG;
 import static com.task.ArgumentParser.HELP_FLAG;
+import static com.task.ArgumentParser.INCLUDE_FLAG;
+import static com.task.ArgumentParser.INCREMENTAL_FLAG;
+import static com.task.ArgumentParser.JOBS_FLAG;
+import static com.task.ArgumentParser.KDF_FLAG;
+import static com.task.ArgumentParser.LEVEL_FLAG;
 import static com.task.ArgumentParser.MODE_FLAG;
+import static com.task.ArgumentParser.MODE_VALUE_ADD_KEY;
+import static com.task.ArgumentParser.MODE_VALUE_APPEND;
 import static com.task.ArgumentParser.MODE_VALUE_DECRYPT;
+import static com.task.ArgumentParser.MODE_VALUE_EXTRACT;
+import static com.task.ArgumentParser.MODE_VALUE_LIST;
+import static com.task.ArgumentParser.MODE_VALUE_REKEY;
+import static com.task.ArgumentParser.MODE_VALUE_RESTORE;
+import static com.task.ArgumentParser.MODE_VALUE_VERIFY;
 import static com.task.ArgumentParser.Mode.DECRYPT;
 import static com.task.ArgumentParser.Mode.ENCRYPT;
+import static com.task.ArgumentParser.Mode.EXTRACT;
+import static com.task.ArgumentParser.Mode.ADD_KEY;
+import static com.task.ArgumentParser.Mode.APPEND;
 import static com.task.ArgumentParser.Mode.HELP;
+import static com.task.ArgumentParser.Mode.REKEY;
+import static com.task.ArgumentParser.Mode.RESTORE;
+import static com.task.ArgumentParser.Mode.VERIFY;
 import static com.task.ArgumentParser.NAME_FLAG;
+import static com.task.ArgumentParser.NEW_PASSWORD_FLAG;
 import static com.task.ArgumentParser.OUTPUT_DIRECTORY_FLAG;
 import static com.task.ArgumentParser.PASSWORD_FLAG;
+import static com.task.ArgumentParser.PROGRESS_FLAG;
+import static com.task.ArgumentParser.STREAM;
+import static com.task.ArgumentParser.SUMMARY_FLAG;
+import static com.task.ArgumentParser.VOLUME_FLAG;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ArgumentParserTest {
 
     private static final String MODE_FLAG_TERSE = MODE_FLAG.get(0);
     private static final String PASSWORD_FLAG_TERSE = PASSWORD_FLAG.get(0);
     private static final String DECRYPT_MODE_TERSE = MODE_VALUE_DECRYPT.get(0);
+    private static final String EXTRACT_MODE_TERSE = MODE_VALUE_EXTRACT.get(0);
+    private static final String ENTRY_FLAG_TERSE = ENTRY_FLAG.get(0);
+    private static final String JOBS_FLAG_TERSE = JOBS_FLAG.get(0);
+    private static final String KDF_FLAG_TERSE = KDF_FLAG.get(0);
+    private static final String COST_FLAG_TERSE = COST_FLAG.get(0);
     private static final String NAME_FLAG_TERSE = NAME_FLAG.get(0);
     private static final String HELP_FLAG_TERSE = HELP_FLAG.get(0);
     private static final String DIRECTORY_FLAG_TERSE = OUTPUT_DIRECTORY_FLAG.get(0);
@@ -82,6 +121,206 @@ class ArgumentParserTest {
         assertEquals(Collections.singletonList(new File(DUMMY_FILE_PATH)), command.getFiles());
     }
 
+    @Test
+    void setsExtractEntries() throws InvalidArgumentException {
+        String[] args = {MODE_FLAG_TERSE, EXTRACT_MODE_TERSE, ENTRY_FLAG_TERSE, NAME, ENTRY_FLAG_TERSE, DUMMY_FILE_PATH, PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+
+        var command = new ArgumentParser(args).parse();
+        assertEquals(EXTRACT, command.getMode());
+        assertEquals(List.of(NAME, DUMMY_FILE_PATH), command.getEntries());
+        assertEquals(Collections.singletonList(new File(DUMMY_FILE_PATH)), command.getFiles());
+    }
+
+    @Test
+    void setsJobs() throws InvalidArgumentException {
+        String[] args = {MODE_FLAG_TERSE, DECRYPT_MODE_TERSE, JOBS_FLAG_TERSE, "3", PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+
+        var command = new ArgumentParser(args).parse();
+        assertEquals(3, command.getJobs());
+    }
+
+    @Test
+    void setsKdf() throws InvalidArgumentException {
+        String[] args = {KDF_FLAG_TERSE, "scrypt", COST_FLAG_TERSE, "1024", PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+
+        var command = new ArgumentParser(args).parse();
+        assertEquals(Kdf.SCRYPT, command.getKdf());
+        assertEquals(1024, command.getCost());
+    }
+
+    @Test
+    void setsCipherSuite() throws InvalidArgumentException {
+        String[] args = {CIPHER_FLAG.get(0), "chacha20", PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+        assertEquals(CipherSuite.CHACHA20_POLY1305, new ArgumentParser(args).parse().getCipherSuite());
+
+        String[] defaultArgs = {PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+        assertEquals(CipherSuite.AES_256_GCM, new ArgumentParser(defaultArgs).parse().getCipherSuite());
+    }
+
+    @Test
+    void defaultsToKdfCost() throws InvalidArgumentException {
+        String[] args = {KDF_FLAG_TERSE, "pbkdf2-sha512", PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+
+        var command = new ArgumentParser(args).parse();
+        assertEquals(Kdf.PBKDF2_SHA512, command.getKdf());
+        assertEquals(Kdf.PBKDF2_SHA512.defaultCost(), command.getCost());
+    }
+
+    @Test
+    void setsRestoreChain() throws InvalidArgumentException {
+        String[] args = {MODE_FLAG_TERSE, MODE_VALUE_RESTORE.get(0), PASSWORD_FLAG_TERSE, PASSWORD, NAME, DUMMY_FILE_PATH};
+
+        var command = new ArgumentParser(args).parse();
+        assertEquals(RESTORE, command.getMode());
+        assertEquals(List.of(new File(NAME), new File(DUMMY_FILE_PATH)), command.getFiles());
+        assertEquals(new File("decrypted").getAbsoluteFile(), command.getOutputDirectory());
+    }
+
+    @Test
+    void setsVerifyFromStandardInput() throws InvalidArgumentException {
+        String[] args = {MODE_FLAG_TERSE, MODE_VALUE_VERIFY.get(0), PASSWORD_FLAG_TERSE, PASSWORD, STREAM};
+
+        var command = new ArgumentParser(args).parse();
+        assertEquals(VERIFY, command.getMode());
+        assertTrue(command.readsStandardInput());
+        assertNull(command.getOutputDirectory());
+    }
+
+    @Test
+    void setsIncremental() throws InvalidArgumentException {
+        String[] args = {INCREMENTAL_FLAG.get(0), NAME, PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+
+        var command = new ArgumentParser(args).parse();
+        assertEquals(ENCRYPT, command.getMode());
+        assertEquals(new File(NAME), command.getPreviousArchive());
+    }
+
+    @Test
+    void setsLevel() throws InvalidArgumentException {
+        String[] args = {LEVEL_FLAG.get(0), "0", PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+
+        var command = new ArgumentParser(args).parse();
+        assertEquals(Codec.STORED, command.getCodec());
+    }
+
+    @Test
+    void setsDeduplication() throws InvalidArgumentException {
+        String[] args = {DEDUP_FLAG.get(0), "64", PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+
+        var command = new ArgumentParser(args).parse();
+        assertEquals(64, command.getAverageChunkKib());
+    }
+
+    @Test
+    void setsBlockParallelThreshold() throws InvalidArgumentException {
+        String[] args = {BLOCK_PARALLEL_FLAG.get(0), "0", PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+
+        var command = new ArgumentParser(args).parse();
+        assertEquals(0, command.getBlockParallelThreshold());
+        String[] defaultArgs = {PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+        assertEquals(Zipper.DEFAULT_BLOCK_PARALLEL_THRESHOLD, new ArgumentParser(defaultArgs).parse().getBlockParallelThreshold());
+    }
+
+    @Test
+    void setsDictionaryThreshold() throws InvalidArgumentException {
+        String[] args = {DICTIONARY_FLAG.get(1), "64", PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+
+        var command = new ArgumentParser(args).parse();
+        assertEquals(64, command.getDictionaryKib());
+        String[] invalidArgs = {DICTIONARY_FLAG.get(0), "-1", PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+        assertThrows(InvalidArgumentException.class, () -> new ArgumentParser(invalidArgs).parse());
+    }
+
+    @Test
+    void setsRekey() throws InvalidArgumentException {
+        String[] args = {MODE_FLAG.get(0), MODE_VALUE_REKEY.get(1), NEW_PASSWORD_FLAG.get(0), "NewPassword",
+                PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+
+        var command = new ArgumentParser(args).parse();
+        assertEquals(REKEY, command.getMode());
+        assertEquals("NewPassword", command.getNewPassword());
+        String[] addArgs = {MODE_FLAG.get(0), MODE_VALUE_ADD_KEY.get(0), NEW_PASSWORD_FLAG.get(1), "NewPassword",
+                PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+        assertEquals(ADD_KEY, new ArgumentParser(addArgs).parse().getMode());
+    }
+
+    @Test
+    void setsAppend() throws InvalidArgumentException {
+        String[] args = {MODE_FLAG.get(1), MODE_VALUE_APPEND.get(1), NAME_FLAG.get(0), "logs.efa", CHECKPOINT_FLAG.get(0), "30",
+                PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+
+        var command = new ArgumentParser(args).parse();
+        assertEquals(APPEND, command.getMode());
+        assertEquals("logs.efa", command.getName());
+        String[] unnamed = {MODE_FLAG.get(0), MODE_VALUE_APPEND.get(0), PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+        assertThrows(InvalidArgumentException.class, () -> new ArgumentParser(unnamed).parse());
+    }
+
+    @Test
+    void newPasswordOnlyWhenRekeying() {
+        String[] missing = {MODE_FLAG.get(0), MODE_VALUE_REKEY.get(0), PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+        assertThrows(InvalidArgumentException.class, () -> new ArgumentParser(missing).parse());
+        String[] unused = {NEW_PASSWORD_FLAG.get(0), "NewPassword", PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+        assertThrows(InvalidArgumentException.class, () -> new ArgumentParser(unused).parse());
+    }
+
+    @Test
+    void setsVolumesAcrossDirectories() throws InvalidArgumentException {
+        String[] args = {DIRECTORY_FLAG_TERSE, "first", DIRECTORY_FLAG_TERSE, "second", VOLUME_FLAG.get(0), "512",
+                PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+
+        var command = new ArgumentParser(args).parse();
+        assertEquals(new File("first").getAbsoluteFile(), command.getOutputDirectory());
+        assertEquals(List.of(new File("second").getAbsoluteFile()), command.getStripeDirectories());
+        assertEquals(512L << 20, command.getVolumeSize());
+    }
+
+    @Test
+    void defaultsToAdaptiveLevel() throws InvalidArgumentException {
+        String[] args = {PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+
+        var command = new ArgumentParser(args).parse();
+        assertNull(command.getCodec());
+    }
+
+    @Test
+    void setsStandardStreams() throws InvalidArgumentException {
+        String[] args = {NAME_FLAG_TERSE, STREAM, PASSWORD_FLAG_TERSE, PASSWORD, STREAM};
+
+        var command = new ArgumentParser(args).parse();
+        assertEquals(ENCRYPT, command.getMode());
+        assertTrue(command.readsStandardInput());
+        assertTrue(command.writesStandardOutput());
+    }
+
+    @Test
+    void setsDecryptToStandardOutput() throws InvalidArgumentException {
+        String[] args = {MODE_FLAG_TERSE, DECRYPT_MODE_TERSE, DIRECTORY_FLAG_TERSE, STREAM, PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+
+        var command = new ArgumentParser(args).parse();
+        assertFalse(command.readsStandardInput());
+        assertTrue(command.writesStandardOutput());
+    }
+
+    @Test
+    void setsFilters() throws InvalidArgumentException {
+        String[] args = {INCLUDE_FLAG.get(0), "*.java", EXCLUDE_FLAG.get(0), "target", EXCLUDE_FLAG.get(1), "*.class",
+                PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+
+        var command = new ArgumentParser(args).parse();
+        assertEquals(List.of("*.java"), command.getIncludes());
+        assertEquals(List.of("target", "*.class"), command.getExcludes());
+    }
+
+    @Test
+    void setsSummaryAndProgress() throws InvalidArgumentException {
+        String[] args = {SUMMARY_FLAG.get(0), "json", PROGRESS_FLAG.get(1), "5", PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+
+        var command = new ArgumentParser(args).parse();
+        assertTrue(command.isJsonSummary());
+        assertEquals(5, command.getProgressSeconds());
+    }
+
     @Test
     void setsHelp() throws InvalidArgumentException {
         String[] args = {HELP_FLAG_TERSE};
@@ -124,6 +363,90 @@ class ArgumentParserTest {
         assertThrows(InvalidArgumentException.class, () -> new ArgumentParser(args).parse());
     }
 
+    @Test
+    void missingExtractEntry() {
+        String[] args = {MODE_FLAG_TERSE, EXTRACT_MODE_TERSE, PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+        assertThrows(InvalidArgumentException.class, () -> new ArgumentParser(args).parse());
+    }
+
+    @Test
+    void invalidJobs() {
+        String[] args = {JOBS_FLAG_TERSE, "0", PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+        assertThrows(InvalidArgumentException.class, () -> new ArgumentParser(args).parse());
+    }
+
+    @Test
+    void invalidKdf() {
+        String[] args = {KDF_FLAG_TERSE, "md5", PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+        assertThrows(InvalidArgumentException.class, () -> new ArgumentParser(args).parse());
+    }
+
+    @Test
+    void checkpointsOnlyFiles() throws InvalidArgumentException {
+        String[] args = {CHECKPOINT_FLAG.get(0), "60", PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+        assertEquals(60, new ArgumentParser(args).parse().getCheckpointSeconds());
+
+        String[] streamArgs = {CHECKPOINT_FLAG.get(0), "60", NAME_FLAG_TERSE, STREAM, PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+        assertThrows(InvalidArgumentException.class, () -> new ArgumentParser(streamArgs).parse());
+        String[] listArgs = {CHECKPOINT_FLAG.get(0), "60", MODE_FLAG_TERSE, MODE_VALUE_LIST.get(0), PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+        assertThrows(InvalidArgumentException.class, () -> new ArgumentParser(listArgs).parse());
+    }
+
+    @Test
+    void invalidCipherSuite() {
+        String[] args = {CIPHER_FLAG.get(0), "des", PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+        assertThrows(InvalidArgumentException.class, () -> new ArgumentParser(args).parse());
+    }
+
+    @Test
+    void invalidLevel() {
+        String[] args = {LEVEL_FLAG.get(0), "fast", PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+        assertThrows(InvalidArgumentException.class, () -> new ArgumentParser(args).parse());
+    }
+
+    @Test
+    void invalidAverageChunkSize() {
+        String[] args = {DEDUP_FLAG.get(1), "48", PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+        assertThrows(InvalidArgumentException.class, () -> new ArgumentParser(args).parse());
+    }
+
+    @Test
+    void volumesOnlyWhenEncrypting() {
+        String[] args = {MODE_FLAG_TERSE, DECRYPT_MODE_TERSE, DIRECTORY_FLAG_TERSE, "first", DIRECTORY_FLAG_TERSE, "second",
+                PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+        assertThrows(InvalidArgumentException.class, () -> new ArgumentParser(args).parse());
+    }
+
+    @Test
+    void standardInputNotSingleFile() {
+        String[] args = {PASSWORD_FLAG_TERSE, PASSWORD, STREAM, DUMMY_FILE_PATH};
+        assertThrows(InvalidArgumentException.class, () -> new ArgumentParser(args).parse());
+    }
+
+    @Test
+    void standardInputForExtract() {
+        String[] args = {MODE_FLAG_TERSE, EXTRACT_MODE_TERSE, ENTRY_FLAG_TERSE, NAME, PASSWORD_FLAG_TERSE, PASSWORD, STREAM};
+        assertThrows(InvalidArgumentException.class, () -> new ArgumentParser(args).parse());
+    }
+
+    @Test
+    void invalidGlob() {
+        String[] args = {INCLUDE_FLAG.get(0), "{unclosed", PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+        assertThrows(InvalidArgumentException.class, () -> new ArgumentParser(args).parse());
+    }
+
+    @Test
+    void invalidSummary() {
+        String[] args = {SUMMARY_FLAG.get(0), "xml", PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+        assertThrows(InvalidArgumentException.class, () -> new ArgumentParser(args).parse());
+    }
+
+    @Test
+    void invalidScryptCost() {
+        String[] args = {KDF_FLAG_TERSE, "scrypt", COST_FLAG_TERSE, "1000", PASSWORD_FLAG_TERSE, PASSWORD, DUMMY_FILE_PATH};
+        assertThrows(InvalidArgumentException.class, () -> new ArgumentParser(args).parse());
+    }
+
     @Test
     void missingArgumentValue() {
         String[] args = {PASSWORD_FLAG_TERSE, PASSWORD, MODE_FLAG_TERSE};
@@ -0,0 +1,107 @@
+package com.task;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BlockDeflaterTest {
+
+    @Test
+    void combinesCrcs() {
+        var bytes = new byte[100_000];
+        new Random(1).nextBytes(bytes);
+        for (var split : new int[]{0, 1, 4096, 77_777, bytes.length}) {
+            assertEquals(crc(bytes, 0, bytes.length),
+                    BlockDeflater.combine(crc(bytes, 0, split), crc(bytes, split, bytes.length), bytes.length - split));
+        }
+    }
+
+    @Test
+    void blocksMakeOneDeflateStream() throws IOException, DataFormatException {
+        var pool = Executors.newFixedThreadPool(3);
+        try {
+            for (var length : new int[]{0, 1000, BlockDeflater.BLOCK_SIZE, 5 * BlockDeflater.BLOCK_SIZE + 12_345}) {
+                var input = text(length);
+                var deflated = new ByteArrayOutputStream();
+                var deflater = new BlockDeflater(deflated, Deflater.DEFAULT_COMPRESSION, pool, 2);
+                // Writes that do not line up with the blocks.
+                for (var offset = 0; offset < length; offset += 100_000) {
+                    deflater.write(ByteBuffer.wrap(input, offset, Math.min(100_000, length - offset)));
+                }
+                deflater.finish();
+
+                assertEquals(crc(input, 0, length), deflater.crc());
+                assertEquals(deflated.size(), deflater.compressedSize());
+                assertArrayEquals(input, inflate(deflated.toByteArray(), length));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void primedBlocksCompressLikeOneDeflater() throws IOException {
+        var input = text(8 * BlockDeflater.BLOCK_SIZE);
+        var pool = Executors.newFixedThreadPool(2);
+        try {
+            var blocks = new ByteArrayOutputStream();
+            var deflater = new BlockDeflater(blocks, Deflater.DEFAULT_COMPRESSION, pool, 4);
+            deflater.write(ByteBuffer.wrap(input));
+            deflater.finish();
+
+            var serial = new ByteArrayOutputStream();
+            try (var entryOut = new EntryOutputStream(serial, Codec.FULL, IoBuffers.MIN_SIZE)) {
+                entryOut.write(input);
+            }
+            assertTrue(blocks.size() < serial.size() * 1.01 + 64);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static byte[] text(int length) {
+        var random = new Random(length);
+        var words = new String[]{"segment", "archive", "cipher", "deflate", "block", "entry", "volume", "index"};
+        var text = new StringBuilder(length + 16);
+        while (text.length() < length) {
+            text.append(words[random.nextInt(words.length)]).append(random.nextInt(1000)).append(' ');
+        }
+        return Arrays.copyOf(text.toString().getBytes(), length);
+    }
+
+    private static long crc(byte[] bytes, int from, int to) {
+        var crc = new CRC32();
+        crc.update(bytes, from, to - from);
+        return crc.getValue();
+    }
+
+    private static byte[] inflate(byte[] deflated, int length) throws DataFormatException {
+        var inflater = new Inflater(true);
+        inflater.setInput(deflated);
+        var output = new byte[length];
+        var inflated = 0;
+        while (!inflater.finished()) {
+            inflated += inflater.inflate(output, inflated, output.length - inflated);
+            if (inflater.needsInput() && !inflater.finished()) {
+                // Raw inflate may want a dummy byte to see the end of the stream.
+                inflater.setInput(new byte[1]);
+            }
+        }
+        assertEquals(length, inflated);
+        inflater.end();
+        return output;
+    }
+}
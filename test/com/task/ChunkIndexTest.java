@@ -0,0 +1,53 @@
+package com.task;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkIndexTest {
+
+    @Test
+    void findsAddedHashes(@TempDir File spillDirectory) throws IOException, NoSuchAlgorithmException {
+        try (var index = new ChunkIndex(1 << 20, spillDirectory)) {
+            for (var id = 0; id < 10_000; id++) {
+                index.add(hash(id), id);
+            }
+            assertFalse(index.spilled());
+            for (var id = 0; id < 10_000; id++) {
+                assertEquals(id, index.find(hash(id)));
+            }
+            assertEquals(-1, index.find(hash(10_000)));
+        }
+    }
+
+    @Test
+    void spillsBeyondMemoryLimit(@TempDir File spillDirectory) throws IOException, NoSuchAlgorithmException {
+        var index = new ChunkIndex(16 << 10, spillDirectory);
+        for (var id = 0; id < 50_000; id++) {
+            index.add(hash(id), id);
+        }
+        assertTrue(index.spilled());
+        assertEquals(1, spillDirectory.list().length);
+        assertEquals(50_000, index.size());
+        for (var id = 0; id < 50_000; id += 7) {
+            assertEquals(id, index.find(hash(id)));
+        }
+        assertEquals(-1, index.find(hash(-1)));
+
+        index.close();
+        assertEquals(0, spillDirectory.list().length);
+    }
+
+    private static byte[] hash(int value) throws NoSuchAlgorithmException {
+        return MessageDigest.getInstance("SHA-256").digest(ByteBuffer.allocate(Integer.BYTES).putInt(value).array());
+    }
+}
@@ -0,0 +1,80 @@
+package com.task;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkerTest {
+
+    private static final int AVERAGE = 4096;
+
+    @Test
+    void chunksStayWithinBoundsAndJoinUp() throws IOException {
+        var data = new byte[1 << 20];
+        new Random(1).nextBytes(data);
+        var chunks = chunk(data, 1000);
+
+        var joined = ByteBuffer.allocate(data.length);
+        for (var i = 0; i < chunks.size(); i++) {
+            var length = chunks.get(i).length;
+            assertTrue(length <= 4 * AVERAGE);
+            assertTrue(length >= AVERAGE / 4 || i == chunks.size() - 1);
+            joined.put(chunks.get(i));
+        }
+        assertArrayEquals(data, joined.array());
+        // Random data averages close to the requested size.
+        assertTrue(chunks.size() > data.length / (2 * AVERAGE) && chunks.size() < data.length / (AVERAGE / 2));
+    }
+
+    @Test
+    void insertOnlyChangesNearbyChunks() throws IOException {
+        var data = new byte[1 << 20];
+        new Random(2).nextBytes(data);
+        var edited = new byte[data.length + 10];
+        System.arraycopy(data, 0, edited, 0, 500_000);
+        System.arraycopy(data, 500_000, edited, 500_010, data.length - 500_000);
+
+        var original = hashes(chunk(data, 65536));
+        var changed = chunk(edited, 777);
+        var shared = changed.stream().filter(chunk -> original.contains(ByteBuffer.wrap(chunk))).count();
+        assertTrue(shared >= changed.size() - 3, shared + " of " + changed.size() + " chunks shared");
+    }
+
+    @Test
+    void rejectsInvalidAverageSize() {
+        assertThrows(IllegalArgumentException.class, () -> new Chunker(3000));
+        assertThrows(IllegalArgumentException.class, () -> new Chunker(128));
+        assertEquals(4 * AVERAGE, new Chunker(AVERAGE).maxSize());
+    }
+
+    /*
+    Chunks data written in pieces of step bytes.
+     */
+    private static List<byte[]> chunk(byte[] data, int step) throws IOException {
+        var chunker = new Chunker(AVERAGE);
+        var chunks = new ArrayList<byte[]>();
+        for (var offset = 0; offset < data.length; offset += step) {
+            chunker.write(ByteBuffer.wrap(data, offset, Math.min(step, data.length - offset)), chunks::add);
+        }
+        chunker.finish(chunks::add);
+        return chunks;
+    }
+
+    private static HashSet<ByteBuffer> hashes(List<byte[]> chunks) {
+        var set = new HashSet<ByteBuffer>();
+        for (var chunk : chunks) {
+            set.add(ByteBuffer.wrap(chunk));
+        }
+        return set;
+    }
+}
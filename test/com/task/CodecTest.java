@@ -0,0 +1,64 @@
+package com.task;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CodecTest {
+
+    @Test
+    void storesKnownCompressedFormats() {
+        var jpeg = new byte[4096];
+        jpeg[0] = (byte) 0xFF;
+        jpeg[1] = (byte) 0xD8;
+        jpeg[2] = (byte) 0xFF;
+        assertEquals(Codec.STORED, Codec.choose(ByteBuffer.wrap(jpeg)));
+
+        var mp4 = new byte[4096];
+        System.arraycopy("ftypisom".getBytes(StandardCharsets.US_ASCII), 0, mp4, 4, 8);
+        assertEquals(Codec.STORED, Codec.choose(ByteBuffer.wrap(mp4)));
+    }
+
+    @Test
+    void storesRandomData() {
+        var bytes = new byte[Codec.SAMPLE_SIZE];
+        new Random(1).nextBytes(bytes);
+        assertEquals(Codec.STORED, Codec.choose(ByteBuffer.wrap(bytes)));
+    }
+
+    @Test
+    void deflatesText() {
+        var text = "the quick brown fox jumps over the lazy dog\n".repeat(200).getBytes(StandardCharsets.US_ASCII);
+        assertEquals(Codec.FULL, Codec.choose(ByteBuffer.wrap(text)));
+    }
+
+    @Test
+    void deflatesMediumEntropyFast() {
+        var random = new Random(1);
+        var bytes = new byte[Codec.SAMPLE_SIZE];
+        for (var i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) random.nextInt(128);
+        }
+        assertEquals(Codec.FAST, Codec.choose(ByteBuffer.wrap(bytes)));
+    }
+
+    @Test
+    void choosesWithoutConsumingSample() {
+        var sample = ByteBuffer.wrap(new byte[100]);
+        Codec.choose(sample);
+        assertEquals(100, sample.remaining());
+    }
+
+    @Test
+    void forcesLevel() {
+        assertEquals(Codec.STORED, Codec.forLevel(0));
+        assertEquals(new Codec(ZipEntry.DEFLATED, 9), Codec.forLevel(9));
+        assertThrows(IllegalArgumentException.class, () -> Codec.forLevel(10));
+    }
+}
@@ -0,0 +1,57 @@
+package com.task;
+
+import com.task.exceptions.CipherException;
+import com.task.exceptions.InvalidArgumentException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static com.task.ArgumentParser.JOBS_FLAG;
+import static com.task.ArgumentParser.MODE_FLAG;
+import static com.task.ArgumentParser.MODE_VALUE_DECRYPT;
+import static com.task.ArgumentParser.OUTPUT_DIRECTORY_FLAG;
+import static com.task.ArgumentParser.PASSWORD_FLAG;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CommandTest {
+
+    private static final String PASSWORD = "hunter2";
+    private File tmpDir;
+
+    @BeforeEach
+    void setUp(@TempDir Path path) {
+        tmpDir = path.toAbsolutePath().toFile();
+    }
+
+    @Test
+    void decryptsRemainingArchivesWhenOneFails() throws IOException, CipherException, InvalidArgumentException {
+        var source = new File(tmpDir, "source.txt");
+        Files.writeString(source.toPath(), "secret");
+        var zipper = new Zipper(PASSWORD);
+        for (var name : List.of("first", "third")) {
+            zipper.zip(List.of(source), name, tmpDir);
+        }
+        Files.writeString(new File(tmpDir, "second").toPath(), "not an archive");
+
+        var output = new File(tmpDir, "decrypted");
+        String[] args = {MODE_FLAG.get(0), MODE_VALUE_DECRYPT.get(0), JOBS_FLAG.get(0), "2", OUTPUT_DIRECTORY_FLAG.get(0), output.getPath(),
+                PASSWORD_FLAG.get(0), PASSWORD, new File(tmpDir, "first").getPath(), new File(tmpDir, "second").getPath(), new File(tmpDir, "third").getPath()};
+        var command = new ArgumentParser(args).parse();
+
+        var exception = assertThrows(IOException.class, command::execute);
+        assertTrue(exception.getMessage().contains("second"));
+        assertFalse(exception.getMessage().contains("first"));
+        for (var name : List.of("first", "third")) {
+            assertArrayEquals(Files.readAllBytes(source.toPath()), Files.readAllBytes(new File(new File(output, name), source.getName()).toPath()));
+        }
+    }
+}
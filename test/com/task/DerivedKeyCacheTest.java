@@ -0,0 +1,54 @@
+package com.task;
+
+import com.task.exceptions.CipherException;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class DerivedKeyCacheTest {
+
+    private static final char[] PASSWORD = "hunter2".toCharArray();
+
+    @Test
+    void derivesOncePerPasswordAndSalt() throws CipherException {
+        var cache = new DerivedKeyCache(4);
+        var derivations = new AtomicInteger();
+        var parameters = KdfParameters.random(Kdf.PBKDF2_SHA256, 1);
+
+        var key = cache.get(PASSWORD, parameters, () -> derive(derivations));
+        assertSame(key, cache.get(PASSWORD, copy(parameters), () -> derive(derivations)));
+        cache.get("Password123".toCharArray(), parameters, () -> derive(derivations));
+        cache.get(PASSWORD, KdfParameters.random(Kdf.PBKDF2_SHA256, 1), () -> derive(derivations));
+        assertEquals(3, derivations.get());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() throws CipherException {
+        var cache = new DerivedKeyCache(2);
+        var derivations = new AtomicInteger();
+        var first = KdfParameters.random(Kdf.PBKDF2_SHA256, 1);
+        var second = KdfParameters.random(Kdf.PBKDF2_SHA256, 1);
+
+        cache.get(PASSWORD, first, () -> derive(derivations));
+        cache.get(PASSWORD, second, () -> derive(derivations));
+        cache.get(PASSWORD, first, () -> derive(derivations));
+        cache.get(PASSWORD, KdfParameters.random(Kdf.PBKDF2_SHA256, 1), () -> derive(derivations));
+        cache.get(PASSWORD, first, () -> derive(derivations));
+        assertEquals(3, derivations.get());
+        cache.get(PASSWORD, second, () -> derive(derivations));
+        assertEquals(4, derivations.get());
+    }
+
+    private static SecretKeySpec derive(AtomicInteger derivations) {
+        derivations.incrementAndGet();
+        return new SecretKeySpec(new byte[SegmentCipher.KEY_LENGTH], "AES");
+    }
+
+    private static KdfParameters copy(KdfParameters parameters) {
+        return new KdfParameters(parameters.kdf(), parameters.salt().clone(), parameters.cost(), parameters.blockSize(), parameters.parallelism());
+    }
+}
@@ -0,0 +1,92 @@
+package com.task;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DictionaryTest {
+
+    private static final String COMMON = "\"healthcheck\": {\"path\": \"/healthz\", \"interval\": \"10s\"}";
+
+    @Test
+    void trainsOnWhatSamplesShare() {
+        var dictionary = Dictionary.train(samples(200, new Random(1)));
+
+        assertNotNull(dictionary);
+        assertTrue(dictionary.length <= Dictionary.MAX_SIZE);
+        assertTrue(new String(dictionary, StandardCharsets.ISO_8859_1).contains(COMMON));
+        assertNull(Dictionary.train(samples(3, new Random(1))));
+    }
+
+    @Test
+    void dictionaryShrinksEntriesAndReadsBack(@TempDir File directory) throws IOException {
+        var random = new Random(2);
+        var dictionary = Dictionary.train(samples(200, random));
+        var content = samples(1, random).get(0);
+        var source = new File(directory, "sample.json");
+        Files.write(source.toPath(), content);
+
+        var plain = compress(source, null);
+        var preset = compress(source, dictionary);
+        assertTrue(preset.compressedSize() < plain.compressedSize() / 2);
+        assertEquals(Dictionary.id(dictionary), preset.dictionaryId());
+        assertEquals(-1, plain.dictionaryId());
+
+        var zip = new ByteArrayOutputStream();
+        var zipOut = new ZipStreamWriter(zip);
+        zipOut.write(preset);
+        zipOut.write(plain);
+        zipOut.finish();
+        try (var zipIn = new DictionaryZipInputStream(new ByteArrayInputStream(zip.toByteArray()), dictionary)) {
+            for (var i = 0; i < 2; i++) {
+                zipIn.getNextEntry();
+                assertArrayEquals(content, zipIn.readAllBytes());
+            }
+        }
+        try (var zipIn = new DictionaryZipInputStream(new ByteArrayInputStream(zip.toByteArray()), null)) {
+            assertThrows(IOException.class, zipIn::getNextEntry);
+        }
+    }
+
+    @Test
+    void extraFieldCarriesId() {
+        var extra = Dictionary.extra(0xFEDCBA98L);
+        var fields = new byte[4 + extra.length];
+        // Another field of no length first.
+        fields[0] = 0x55;
+        System.arraycopy(extra, 0, fields, 4, extra.length);
+
+        assertEquals(0xFEDCBA98L, Dictionary.id(fields, 0, fields.length));
+        assertEquals(-1, Dictionary.id(fields, 0, 4));
+    }
+
+    private static CompressedEntry compress(File source, byte[] dictionary) throws IOException {
+        return CompressedEntry.compress(source, source.getName(), Codec.FULL, dictionary, null, new StageTimings());
+    }
+
+    private static List<byte[]> samples(int count, Random random) {
+        var samples = new ArrayList<byte[]>();
+        for (var i = 0; i < count; i++) {
+            var sample = "{\"service\": \"api-" + random.nextInt(1000) + "\", \"replicas\": " + random.nextInt(10) + ", "
+                    + COMMON + ", \"timeout\": " + random.nextInt(60_000) + "}\n";
+            samples.add(sample.getBytes(StandardCharsets.UTF_8));
+        }
+        return samples;
+    }
+}
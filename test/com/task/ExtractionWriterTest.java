@@ -0,0 +1,59 @@
+package com.task;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExtractionWriterTest {
+
+    @Test
+    void writesFilesOnSeveralWriters(@TempDir File directory) throws IOException {
+        var written = ConcurrentHashMap.<String>newKeySet();
+        try (var writer = new ExtractionWriter(directory, 4, new StageTimings(), written::add)) {
+            writer.directory("empty/");
+            for (var i = 0; i < 100; i++) {
+                writer.write(name(i), new ByteArrayInputStream(content(i)));
+            }
+            // Spans several chunks.
+            writer.write("large", new ByteArrayInputStream(new byte[3 * IoBuffers.MAX_SIZE + 1]));
+        }
+        assertEquals(101, written.size());
+        for (var i = 0; i < 100; i++) {
+            assertArrayEquals(content(i), Files.readAllBytes(new File(directory, name(i)).toPath()));
+        }
+        assertEquals(3 * IoBuffers.MAX_SIZE + 1, new File(directory, "large").length());
+        assertTrue(new File(directory, "empty").isDirectory());
+    }
+
+    @Test
+    void rejectsEntriesOutsideDirectory(@TempDir File directory) throws IOException {
+        var target = new File(directory, "target");
+        try (var writer = new ExtractionWriter(target, 2, new StageTimings())) {
+            for (var name : Set.of("../evil", "a/../../evil", "/evil", "a/..")) {
+                assertThrows(IOException.class, () -> writer.write(name, new ByteArrayInputStream(new byte[1])));
+            }
+            writer.write("a/../fine", new ByteArrayInputStream(new byte[1]));
+        }
+        assertEquals(1, directory.list().length);
+        assertTrue(new File(target, "fine").isFile());
+    }
+
+    private static String name(int i) {
+        return "d" + i % 7 + "/e" + i % 3 + "/file" + i;
+    }
+
+    private static byte[] content(int i) {
+        return ("content of " + i).getBytes();
+    }
+}
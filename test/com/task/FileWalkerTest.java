@@ -0,0 +1,97 @@
+package com.task;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FileWalkerTest {
+
+    private File tmpDir;
+    private File root;
+
+    @BeforeEach
+    void setUp(@TempDir Path path) throws IOException {
+        tmpDir = path.toAbsolutePath().toFile();
+        root = new File(tmpDir, "root");
+        for (var name : List.of("a.txt", "b.log", "src/Main.java", "src/util/Util.java", "src/util/notes.txt",
+                "build/Main.class", "build/deep/Util.class")) {
+            var file = new File(root, name);
+            Files.createDirectories(file.getParentFile().toPath());
+            Files.writeString(file.toPath(), name);
+        }
+        Files.createDirectories(new File(root, "empty").toPath());
+    }
+
+    @Test
+    void findsAllFilesWithRelativeNames() throws IOException {
+        assertEquals(Set.of("root/a.txt", "root/b.log", "root/src/Main.java", "root/src/util/Util.java", "root/src/util/notes.txt",
+                "root/build/Main.class", "root/build/deep/Util.class"), walk(List.of(), List.of()));
+    }
+
+    @Test
+    void takesPlainFilesByName() throws IOException {
+        try (var walker = new FileWalker(List.of(new File(root, "src/Main.java")), List.of(), List.of())) {
+            var source = walker.next();
+            assertEquals("Main.java", source.name());
+            assertEquals(new File(root, "src/Main.java"), source.file());
+        }
+    }
+
+    @Test
+    void includesMatchFileNameAtAnyDepth() throws IOException {
+        assertEquals(Set.of("root/src/Main.java", "root/src/util/Util.java"), walk(List.of("*.java"), List.of()));
+    }
+
+    @Test
+    void includesMatchPath() throws IOException {
+        assertEquals(Set.of("root/src/util/Util.java", "root/src/util/notes.txt"), walk(List.of("root/src/util/*"), List.of()));
+    }
+
+    @Test
+    void excludesFilesAndDirectories() throws IOException {
+        assertEquals(Set.of("root/a.txt", "root/src/Main.java", "root/src/util/Util.java", "root/src/util/notes.txt"),
+                walk(List.of(), List.of("build", "*.log")));
+        assertEquals(Set.of("root/src/Main.java"), walk(List.of("*.java"), List.of("util")));
+    }
+
+    @Test
+    void failsForMissingRoot() {
+        assertThrows(IOException.class, () -> {
+            try (var walker = new FileWalker(List.of(new File(tmpDir, "missing")), List.of(), List.of())) {
+                walker.next();
+            }
+        });
+    }
+
+    @Test
+    void stopsWhenClosedEarly() throws IOException {
+        for (var i = 0; i < 10_000; i++) {
+            Files.writeString(new File(root, "many" + i).toPath(), "");
+        }
+        try (var walker = new FileWalker(List.of(root), List.of(), List.of())) {
+            walker.next();
+        }
+    }
+
+    private Set<String> walk(List<String> includes, List<String> excludes) throws IOException {
+        var names = new TreeSet<String>();
+        try (var walker = new FileWalker(List.of(root), includes, excludes)) {
+            FileWalker.Source source;
+            while ((source = walker.next()) != null) {
+                names.add(source.name());
+            }
+        }
+        return names;
+    }
+}
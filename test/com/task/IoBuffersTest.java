@@ -0,0 +1,107 @@
+package com.task;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IoBuffersTest {
+
+    @Test
+    void sizesBuffersToFile() {
+        assertEquals(IoBuffers.MIN_SIZE, IoBuffers.bufferSize(0, null));
+        assertEquals(IoBuffers.MIN_SIZE, IoBuffers.bufferSize(100, null));
+        assertEquals(64 << 10, IoBuffers.bufferSize(64 << 10, null));
+        assertEquals(128 << 10, IoBuffers.bufferSize((64 << 10) + 1, null));
+        assertEquals(IoBuffers.MAX_SIZE, IoBuffers.bufferSize(IoBuffers.MAX_SIZE - 1, null));
+        assertEquals(IoBuffers.MAX_SIZE, IoBuffers.bufferSize(10L << 30, null));
+        // Unknown sizes get the largest buffer.
+        assertEquals(IoBuffers.MAX_SIZE, IoBuffers.bufferSize(-1, null));
+    }
+
+    @Test
+    void roundsUpToFilesystemBlock(@TempDir File directory) throws IOException {
+        var blockSize = Files.getFileStore(directory.toPath()).getBlockSize();
+        var size = IoBuffers.bufferSize(1, directory);
+        assertEquals(1, Integer.bitCount(size));
+        assertTrue(size >= IoBuffers.MIN_SIZE && size >= Math.min(blockSize, IoBuffers.MAX_SIZE));
+        assertTrue(size <= IoBuffers.MAX_SIZE);
+    }
+
+    @Test
+    void poolsBuffersPerSize() {
+        // Larger than any buffer reads use, so the pool holds none of this size yet.
+        var size = IoBuffers.MAX_SIZE << 1;
+        var buffer = IoBuffers.acquire(size);
+        assertTrue(buffer.isDirect());
+        buffer.position(10);
+        IoBuffers.release(buffer);
+        var other = IoBuffers.acquire(size >> 1);
+        assertNotSame(buffer, other);
+
+        var pooled = IoBuffers.acquire(size);
+        assertSame(buffer, pooled);
+        assertEquals(0, pooled.position());
+        assertEquals(size, pooled.limit());
+        IoBuffers.release(pooled);
+        IoBuffers.release(other);
+    }
+
+    @Test
+    void readsFileSpanningSeveralBuffers(@TempDir File directory) throws IOException {
+        var content = new byte[3 * IoBuffers.MAX_SIZE + 5];
+        new Random(7).nextBytes(content);
+        var file = new File(directory, "file");
+        Files.write(file.toPath(), content);
+
+        var read = new ByteArrayOutputStream();
+        assertEquals(content.length, IoBuffers.read(file, new StageTimings(), StageTimings.Stage.HASH, chunk -> {
+            var bytes = new byte[chunk.remaining()];
+            chunk.get(bytes);
+            read.write(bytes);
+        }));
+        assertArrayEquals(content, read.toByteArray());
+    }
+
+    @Test
+    void readsMappedWindowsInOrder(@TempDir File directory) throws IOException {
+        // Sparse, with marks on either side of the first window boundary and at the end.
+        var file = new File(directory, "large");
+        var size = IoBuffers.MAP_WINDOW + (IoBuffers.MAP_THRESHOLD >> 1);
+        try (var out = new RandomAccessFile(file, "rw")) {
+            out.setLength(size);
+            out.seek(IoBuffers.MAP_WINDOW - 1);
+            out.write(new byte[]{1, 2});
+            out.seek(size - 1);
+            out.write(3);
+        }
+
+        var lengths = new ArrayList<Integer>();
+        var marks = new ArrayList<Byte>();
+        var position = new long[1];
+        assertEquals(size, IoBuffers.read(file, new StageTimings(), StageTimings.Stage.HASH, chunk -> {
+            for (var mark : new long[]{IoBuffers.MAP_WINDOW - 1, IoBuffers.MAP_WINDOW, size - 1}) {
+                if (mark >= position[0] && mark < position[0] + chunk.remaining()) {
+                    marks.add(chunk.get(chunk.position() + (int) (mark - position[0])));
+                }
+            }
+            lengths.add(chunk.remaining());
+            position[0] += chunk.remaining();
+        }));
+        assertEquals(List.of((int) IoBuffers.MAP_WINDOW, (int) (IoBuffers.MAP_THRESHOLD >> 1)), lengths);
+        assertEquals(List.of((byte) 1, (byte) 2, (byte) 3), marks);
+    }
+}
@@ -0,0 +1,89 @@
+package com.task;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class PipelineStageTest {
+
+    @Test
+    void handlesItemsInOrder() throws IOException {
+        var handled = new ArrayList<Integer>();
+        var stage = new PipelineStage<Integer>(StageTimings.Stage.WRITE, new StageTimings(), 2, handled::add);
+        for (var i = 0; i < 100; i++) {
+            stage.put(i);
+        }
+        stage.finish();
+        assertEquals(100, handled.size());
+        for (var i = 0; i < 100; i++) {
+            assertEquals(i, handled.get(i));
+        }
+    }
+
+    @Test
+    void rethrowsHandlerFailure() {
+        var stage = new PipelineStage<Integer>(StageTimings.Stage.WRITE, new StageTimings(), 2, item -> {
+            throw new IOException("Disk full");
+        });
+        var thrown = assertThrows(IOException.class, () -> {
+            for (var i = 0; i < 100; i++) {
+                stage.put(i);
+            }
+            stage.finish();
+        });
+        assertEquals("Disk full", thrown.getMessage());
+    }
+
+    @Test
+    void readsAheadInOrderThenFailure() throws IOException {
+        var next = new AtomicInteger();
+        try (var stage = new ReadAheadStage<Integer>(StageTimings.Stage.INFLATE, new StageTimings(), 2, () -> {
+            if (next.get() == 10) {
+                throw new IOException("Read failed");
+            }
+            return next.getAndIncrement();
+        })) {
+            var taken = new ArrayList<Integer>();
+            var thrown = assertThrows(IOException.class, () -> {
+                while (true) {
+                    taken.add(stage.take());
+                }
+            });
+            assertEquals("Read failed", thrown.getMessage());
+            assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), taken);
+            assertNull(stage.take());
+        }
+    }
+
+    @Test
+    void closeStopsEndlessProducer() {
+        var produced = new AtomicInteger();
+        var stage = new ReadAheadStage<Integer>(StageTimings.Stage.INFLATE, new StageTimings(), 2, produced::incrementAndGet);
+        assertTimeoutPreemptively(Duration.ofSeconds(5), stage::close);
+    }
+
+    @Test
+    void closeAbandonsBlockedProducer() {
+        var input = new CountDownLatch(1);
+        var stage = new ReadAheadStage<Integer>(StageTimings.Stage.INFLATE, new StageTimings(), 2, () -> {
+            try {
+                input.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }, false);
+        assertTimeoutPreemptively(Duration.ofSeconds(5), stage::close);
+        input.countDown();
+    }
+}
@@ -0,0 +1,33 @@
+package com.task;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.GeneralSecurityException;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ScryptTest {
+
+    // Test vectors from RFC 7914, section 12. The JDK's PBKDF2 does not take the empty salt of the first one.
+
+    @Test
+    void derivesPasswordVector() throws GeneralSecurityException {
+        var expected = HexFormat.of().parseHex("fdbabe1c9d3472007856e7190d01e9fe7c6ad7cbc8237830e77376634b373162"
+                + "2eaf30d92e22a3886ff109279d9830dac727afb94a83ee6d8360cbdfa2cc0640");
+        assertArrayEquals(expected, Scrypt.derive("password".toCharArray(), "NaCl".getBytes(), 1024, 8, 16, 64));
+    }
+
+    @Test
+    void derivesLargerCostVector() throws GeneralSecurityException {
+        var expected = HexFormat.of().parseHex("7023bdcb3afd7348461c06cd81fd38ebfda8fbba904f8e3ea9b543f6545da1f2"
+                + "d5432955613f0fcf62d49705242a9af9e61e85dc0d651e40dfcf017b45575887");
+        assertArrayEquals(expected, Scrypt.derive("pleaseletmein".toCharArray(), "SodiumChloride".getBytes(), 16384, 8, 1, 64));
+    }
+
+    @Test
+    void rejectsCostNotPowerOfTwo() {
+        assertThrows(GeneralSecurityException.class, () -> Scrypt.derive(new char[0], new byte[0], 1000, 8, 1, 32));
+    }
+}
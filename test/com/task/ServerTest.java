@@ -0,0 +1,152 @@
+package com.task;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+
+import static com.task.ArgumentParser.COST_FLAG;
+import static com.task.ArgumentParser.MODE_FLAG;
+import static com.task.ArgumentParser.MODE_VALUE_APPEND;
+import static com.task.ArgumentParser.MODE_VALUE_DECRYPT;
+import static com.task.ArgumentParser.NAME_FLAG;
+import static com.task.ArgumentParser.OUTPUT_DIRECTORY_FLAG;
+import static com.task.ArgumentParser.PASSWORD_FLAG;
+import static com.task.ArgumentParser.STREAM;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ServerTest {
+
+    private static final String PASSWORD = "hunter2";
+    private File tmpDir;
+    private Path socket;
+    private Server server;
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    @BeforeEach
+    void setUp(@TempDir Path path) throws IOException {
+        tmpDir = path.toAbsolutePath().toFile();
+        socket = path.resolve("socket");
+        server = new Server(socket);
+        var serving = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        serving.setDaemon(true);
+        serving.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    void runsJobsRelativeToClientWorkingDirectory() throws IOException {
+        var source = new File(tmpDir, "source.txt");
+        Files.writeString(source.toPath(), "secret");
+
+        assertEquals(0, run(COST_FLAG.get(0), "1000", NAME_FLAG.get(0), "first", PASSWORD_FLAG.get(0), PASSWORD, source.getName()));
+        assertTrue(out.toString(StandardCharsets.UTF_8).contains("kdf:"));
+        out.reset();
+        // Same password and settings: the key derived for the first archive is reused.
+        assertEquals(0, run(COST_FLAG.get(0), "1000", NAME_FLAG.get(0), "second", PASSWORD_FLAG.get(0), PASSWORD, source.getName()));
+        assertFalse(out.toString(StandardCharsets.UTF_8).contains("kdf:"));
+
+        assertEquals(0, run(MODE_FLAG.get(0), MODE_VALUE_DECRYPT.get(0), OUTPUT_DIRECTORY_FLAG.get(0), "out", PASSWORD_FLAG.get(0), PASSWORD, "first", "second"));
+        for (var name : new String[]{"first", "second"}) {
+            assertArrayEquals(Files.readAllBytes(source.toPath()), Files.readAllBytes(tmpDir.toPath().resolve("out").resolve(name).resolve(source.getName())));
+        }
+    }
+
+    @Test
+    void appendsToArchiveInClientWorkingDirectory() throws IOException {
+        var first = new File(tmpDir, "first.log");
+        var second = new File(tmpDir, "second.log");
+        Files.writeString(first.toPath(), "first");
+        Files.writeString(second.toPath(), "second");
+
+        assertEquals(0, run(COST_FLAG.get(0), "1000", NAME_FLAG.get(0), "logs", PASSWORD_FLAG.get(0), PASSWORD, first.getName()));
+        assertEquals(0, run(MODE_FLAG.get(0), MODE_VALUE_APPEND.get(0), NAME_FLAG.get(0), "logs", PASSWORD_FLAG.get(0), PASSWORD, second.getName()));
+        assertFalse(new File("logs").exists());
+        // A file the archive already holds is not added again, and named.
+        out.reset();
+        assertEquals(0, run(MODE_FLAG.get(0), MODE_VALUE_APPEND.get(0), NAME_FLAG.get(0), "logs", PASSWORD_FLAG.get(0), PASSWORD, first.getName()));
+        assertTrue(out.toString(StandardCharsets.UTF_8).contains("1 file(s) already in the archive were skipped:\n\t" + first.getName()));
+
+        assertEquals(0, run(MODE_FLAG.get(0), MODE_VALUE_DECRYPT.get(0), OUTPUT_DIRECTORY_FLAG.get(0), "out", PASSWORD_FLAG.get(0), PASSWORD, "logs"));
+        for (var source : new File[]{first, second}) {
+            assertArrayEquals(Files.readAllBytes(source.toPath()), Files.readAllBytes(tmpDir.toPath().resolve("out").resolve("logs").resolve(source.getName())));
+        }
+    }
+
+    @Test
+    void reportsFailuresAndInvalidArguments() {
+        assertEquals(1, run(MODE_FLAG.get(0), MODE_VALUE_DECRYPT.get(0), PASSWORD_FLAG.get(0), PASSWORD, "missing"));
+        assertTrue(out.toString(StandardCharsets.UTF_8).contains("missing"));
+        assertEquals(2, run(NAME_FLAG.get(0), "archive", "source.txt"));
+    }
+
+    @Test
+    void rejectsStandardStreams() {
+        assertEquals(2, run(NAME_FLAG.get(0), STREAM, PASSWORD_FLAG.get(0), PASSWORD, "source.txt"));
+        assertFalse(err.toString(StandardCharsets.UTF_8).isEmpty());
+    }
+
+    @Test
+    void rejectsInvalidArgumentCount() throws IOException {
+        for (var count : new int[]{-1, Integer.MAX_VALUE}) {
+            try (var channel = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+                new DataOutputStream(Channels.newOutputStream(channel)).writeInt(count);
+                var frames = new DataInputStream(Channels.newInputStream(channel));
+                byte kind;
+                while ((kind = frames.readByte()) != Server.EXIT) {
+                    frames.skipNBytes(frames.readInt());
+                    assertEquals(Server.ERR, kind);
+                }
+                assertEquals(2, frames.readInt());
+            }
+        }
+    }
+
+    @Test
+    void socketIsOwnersOnly() throws IOException {
+        assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(socket));
+        // The directory it was bound in is gone.
+        try (var siblings = Files.list(socket.getParent())) {
+            assertEquals(List.of(socket), siblings.toList());
+        }
+    }
+
+    @Test
+    void refusesSecondServerOnSameSocket() {
+        assertThrows(IOException.class, () -> new Server(socket));
+    }
+
+    private int run(String... args) {
+        return Client.run(socket, args, tmpDir, new PrintStream(out, true, StandardCharsets.UTF_8), new PrintStream(err, true, StandardCharsets.UTF_8));
+    }
+}
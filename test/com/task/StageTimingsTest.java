@@ -0,0 +1,53 @@
+package com.task;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StageTimingsTest {
+
+    @Test
+    void countsBytesPerStage() {
+        var timings = new StageTimings();
+        timings.busy(StageTimings.Stage.READ, System.nanoTime(), 100);
+        timings.busy(StageTimings.Stage.READ, System.nanoTime(), 50);
+        timings.busy(StageTimings.Stage.KDF, System.nanoTime());
+
+        assertEquals(150, timings.bytes(StageTimings.Stage.READ));
+        assertEquals(0, timings.bytes(StageTimings.Stage.KDF));
+        assertEquals(0, timings.bytes(StageTimings.Stage.WRITE));
+    }
+
+    @Test
+    void keepsOnlyLargestEntries() {
+        var timings = new StageTimings();
+        var count = StageTimings.LARGEST_ENTRIES + 10;
+        for (var i = 0; i < count; i++) {
+            timings.entry("entry" + i, i, i / 2, Codec.FULL);
+        }
+
+        assertEquals(count, timings.entries());
+        assertEquals((long) count * (count - 1) / 2, timings.entryBytes());
+        var largest = timings.largestEntries();
+        assertEquals(StageTimings.LARGEST_ENTRIES, largest.size());
+        assertEquals("entry" + (count - 1), largest.get(0).name());
+        assertEquals(10, largest.get(largest.size() - 1).size());
+    }
+
+    @Test
+    void summarizesAsJson() {
+        var timings = new StageTimings();
+        timings.busy(StageTimings.Stage.COMPRESS, System.nanoTime(), 1000);
+        timings.entry("dir/\"quoted\"\n", 1000, 250, Codec.STORED);
+
+        var json = timings.toJson(2_000_000, "failed \\ badly");
+        assertTrue(json.contains("\"elapsedMs\": 2"), json);
+        assertTrue(json.contains("\"error\": \"failed \\\\ badly\""), json);
+        assertTrue(json.contains("\"compress\": {\"busyMs\": "), json);
+        assertTrue(json.contains("\"bytes\": 1000"), json);
+        assertTrue(json.contains("\"name\": \"dir/\\\"quoted\\\"\\n\""), json);
+        assertTrue(json.contains("\"ratio\": 0.250"), json);
+        assertTrue(json.contains("\"method\": \"stored\""), json);
+    }
+}
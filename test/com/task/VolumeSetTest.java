@@ -0,0 +1,98 @@
+package com.task;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VolumeSetTest {
+
+    private static final String NAME = "archive";
+
+    @Test
+    void dealsStripesToTargetsInTurn(@TempDir File directory) throws IOException {
+        var targets = targets(directory, 3);
+        var volumes = VolumeSet.create(NAME, targets, 2500, 1000);
+
+        assertEquals(0, volumes.locate(0).volume());
+        assertEquals(1, volumes.locate(1000).volume());
+        assertEquals(2, volumes.locate(2999).volume());
+        // Volume size is rounded up to 3 stripes, the fourth stripe of a target starts its next volume.
+        assertEquals(2, volumes.locate(8999).volume());
+        assertEquals(3, volumes.locate(9000).volume());
+        assertEquals(500, volumes.locate(1500).room());
+
+        var length = 25_500L;
+        var total = 0L;
+        for (var number = 0; number < 10; number++) {
+            total += volumes.dataLength(number, length);
+        }
+        assertEquals(length, total);
+        assertEquals(3000, volumes.dataLength(0, length));
+        assertEquals(2500, volumes.dataLength(7, length));
+        assertEquals(2000, volumes.dataLength(8, length));
+        assertEquals(0, volumes.dataLength(9, length));
+    }
+
+    @Test
+    void readsBackWhatWasWritten(@TempDir File directory) throws IOException {
+        var targets = targets(directory, 3);
+        var data = new byte[25_500];
+        new Random(1).nextBytes(data);
+        try (var out = new VolumeOutputStream(VolumeSet.create(NAME, targets, 2500, 1000), 0, 2, new StageTimings())) {
+            for (var offset = 0; offset < data.length; offset += 777) {
+                out.write(data, offset, Math.min(777, data.length - offset));
+                if (offset % 7 == 0) {
+                    out.flush();
+                }
+            }
+            out.complete();
+        }
+        assertTrue(VolumeSet.volumeFile(targets.get(2), NAME, 8).isFile());
+        assertFalse(VolumeSet.volumeFile(targets.get(0), NAME, 9).exists());
+
+        try (var volumes = VolumeSet.open(VolumeSet.volumeFile(targets.get(2), NAME, 5))) {
+            assertEquals(data.length, volumes.length());
+            for (var position : new long[]{0, 999, 1000, 12_345, 25_499}) {
+                try (var in = volumes.readAhead(position, 2, new StageTimings())) {
+                    assertArrayEquals(Arrays.copyOfRange(data, (int) position, data.length), in.readAllBytes());
+                }
+            }
+            var buffer = ByteBuffer.allocate(5000);
+            volumes.read(buffer, 8000);
+            assertArrayEquals(Arrays.copyOfRange(data, 8000, 13_000), buffer.array());
+        }
+    }
+
+    @Test
+    void incompleteSetIsRejected(@TempDir File directory) throws IOException {
+        var targets = targets(directory, 2);
+        try (var out = new VolumeOutputStream(VolumeSet.create(NAME, targets, 0, 1000), 0, 2, new StageTimings())) {
+            out.write(new byte[5000]);
+        }
+        var exception = assertThrows(IOException.class, () -> VolumeSet.open(VolumeSet.volumeFile(targets.get(0), NAME, 0)));
+        assertTrue(exception.getMessage().contains("not completed"));
+    }
+
+    private static List<File> targets(File directory, int count) {
+        var targets = new ArrayList<File>();
+        for (var i = 0; i < count; i++) {
+            var target = new File(directory, "target" + i);
+            assertTrue(target.mkdir());
+            targets.add(target);
+        }
+        return targets;
+    }
+}
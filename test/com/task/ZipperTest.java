@@ -5,19 +5,30 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ZipperTest {
 
@@ -58,6 +69,184 @@ class ZipperTest {
         verifyUnchanged(files);
     }
 
+    @Test
+    void concurrentCompressionRoundTripUnchanged() throws IOException, CipherException {
+        var files = generateFiles(20, 60_000);
+
+        var zipper = new Zipper(PASSWORD);
+        zipper.setCompressionThreads(4);
+        zipper.setMemoryBudget(100_000);
+        zipper.zip(files, ZIP_FILE_NAME, tmpDir);
+        zipper.unzip(new File(tmpDir, "decrypted_zipped"), new File(tmpDir, ZIP_FILE_NAME));
+
+        verifyUnchanged(files);
+        assertEquals(files.size() + 2, tmpDir.list().length, "Spill files left behind");
+    }
+
+    @Test
+    void pipelinedRoundTripRecordsStageTimings() throws IOException, CipherException {
+        var files = generateFiles(2, 3_000_000);
+
+        var zipper = new Zipper(PASSWORD);
+        zipper.zip(files, ZIP_FILE_NAME, tmpDir);
+        zipper.unzip(new File(tmpDir, "decrypted_zipped"), new File(tmpDir, ZIP_FILE_NAME));
+
+        verifyUnchanged(files);
+        var timings = zipper.getTimings();
+        for (var stage : StageTimings.Stage.values()) {
+            if (stage != StageTimings.Stage.HASH) {
+                assertTrue(timings.busyNanos(stage) > 0, stage + " not timed");
+            }
+        }
+        var size = files.get(0).length() + files.get(1).length();
+        assertEquals(size, timings.bytes(StageTimings.Stage.COMPRESS));
+        assertEquals(size, timings.bytes(StageTimings.Stage.INFLATE));
+        assertEquals(2, timings.entries());
+        assertEquals(size, timings.entryBytes());
+        assertEquals(2, timings.largestEntries().size());
+    }
+
+    @Test
+    void writesValidZipInsideSegments() throws IOException, CipherException {
+        var files = generateFiles(5, 60_000);
+        var zipper = new Zipper(PASSWORD);
+        zipper.setMemoryBudget(100_000);
+        zipper.zip(files, ZIP_FILE_NAME, tmpDir);
+
+        try (var zipFile = new ZipFile(decryptToPlainZip())) {
+            assertEquals(files.size(), zipFile.size());
+            for (var file : files) {
+                assertEquals(file.length(), zipFile.getEntry(file.getName()).getSize());
+            }
+        }
+    }
+
+    @Test
+    void deflatesLargeFilesInBlocks() throws IOException, CipherException {
+        var files = generateFiles(3, 16);
+        var large = new File(tmpDir, "large");
+        var line = "block parallel deflate keeps every core busy on a single large file\n";
+        Files.writeString(large.toPath(), line.repeat(3_000_000 / line.length()));
+        files.add(large);
+        var zipper = new Zipper(PASSWORD);
+        zipper.setCompressionThreads(4);
+        zipper.setBlockParallelThreshold(1 << 20);
+        zipper.zip(files, ZIP_FILE_NAME, tmpDir);
+
+        // ZipFile checks every entry's CRC while it is read.
+        try (var zipFile = new ZipFile(decryptToPlainZip())) {
+            var entry = zipFile.getEntry(large.getName());
+            assertEquals(large.length(), entry.getSize());
+            assertTrue(entry.getCompressedSize() < large.length() / 10);
+            try (var entryIn = zipFile.getInputStream(entry)) {
+                assertArrayEquals(Files.readAllBytes(large.toPath()), entryIn.readAllBytes());
+            }
+        }
+        zipper.unzip(new File(tmpDir, "decrypted_zipped"), new File(tmpDir, ZIP_FILE_NAME));
+        verifyUnchanged(files);
+    }
+
+    @Test
+    void deflatesSmallFilesWithSharedDictionary() throws IOException, CipherException {
+        var files = generateConfigs(300);
+        var zipper = new Zipper(PASSWORD);
+        zipper.zip(files, "plain", tmpDir);
+        zipper.setDictionaryThreshold(4 << 10);
+        zipper.zip(files, ZIP_FILE_NAME, tmpDir);
+        var archive = new File(tmpDir, ZIP_FILE_NAME);
+
+        assertTrue(archive.length() < new File(tmpDir, "plain").length() * 3 / 4);
+        assertEquals(List.of(), zipper.verify(archive));
+        zipper.unzip(new File(tmpDir, "decrypted_zipped"), archive);
+        verifyUnchanged(files);
+        var contents = new ByteArrayOutputStream();
+        zipper.unzip(archive, contents);
+        assertEquals(files.stream().mapToLong(File::length).sum(), contents.size());
+
+        var exception = assertThrows(IOException.class,
+                () -> zipper.unzip(new FileInputStream(archive), OutputStream.nullOutputStream()));
+        assertTrue(exception.getMessage().contains("preset dictionary"));
+    }
+
+    @Test
+    void scryptRoundTripUnchanged() throws IOException, CipherException {
+        var files = generateFiles(3, 60_000);
+        var zipper = new Zipper(PASSWORD);
+        zipper.setKdf(Kdf.SCRYPT, 1024);
+        zipper.zip(files, ZIP_FILE_NAME, tmpDir);
+
+        try (var fileIn = new FileInputStream(new File(tmpDir, ZIP_FILE_NAME))) {
+            ArchiveHeader.hasMagic(fileIn);
+            var kdf = ArchiveHeader.read(fileIn).kdf();
+            assertEquals(Kdf.SCRYPT, kdf.kdf());
+            assertEquals(1024, kdf.cost());
+        }
+        new Zipper(PASSWORD).unzip(new File(tmpDir, "decrypted_zipped"), new File(tmpDir, ZIP_FILE_NAME));
+        verifyUnchanged(files);
+    }
+
+    @Test
+    void chaCha20RoundTripUnchanged() throws IOException, CipherException {
+        var files = generateFiles(3, 60_000);
+        var zipper = new Zipper(PASSWORD);
+        zipper.setCipherSuite(CipherSuite.CHACHA20_POLY1305);
+        zipper.zip(files, ZIP_FILE_NAME, tmpDir);
+
+        try (var fileIn = new FileInputStream(new File(tmpDir, ZIP_FILE_NAME))) {
+            ArchiveHeader.hasMagic(fileIn);
+            assertEquals(CipherSuite.CHACHA20_POLY1305, ArchiveHeader.read(fileIn).suite());
+        }
+        new Zipper(PASSWORD).unzip(new File(tmpDir, "decrypted_zipped"), new File(tmpDir, ZIP_FILE_NAME));
+        verifyUnchanged(files);
+    }
+
+    @Test
+    void readsVersion2Header() throws IOException {
+        var header = new ArchiveHeader(ArchiveHeader.VERSION_2, ArchiveHeader.DEFAULT_SEGMENT_SIZE, CipherSuite.AES_256_GCM,
+                KdfParameters.random(Kdf.PBKDF2_SHA256, 1000));
+        var headerOut = new ByteArrayOutputStream();
+        header.write(headerOut);
+        assertEquals(header.length(), headerOut.size());
+
+        var headerIn = new ByteArrayInputStream(headerOut.toByteArray());
+        assertTrue(ArchiveHeader.hasMagic(headerIn));
+        assertEquals(header, ArchiveHeader.read(headerIn));
+    }
+
+    @Test
+    void choosesMethodPerEntry() throws IOException, CipherException {
+        var random = generateFiles(1, 60_000).get(0);
+        var text = new File(tmpDir, "text");
+        Files.writeString(text.toPath(), "the quick brown fox jumps over the lazy dog\n".repeat(2000));
+        var zipper = new Zipper(PASSWORD);
+        zipper.zip(List.of(random, text), ZIP_FILE_NAME, tmpDir);
+
+        try (var zipFile = new ZipFile(decryptToPlainZip())) {
+            assertEquals(ZipEntry.STORED, zipFile.getEntry(random.getName()).getMethod());
+            assertEquals(ZipEntry.DEFLATED, zipFile.getEntry(text.getName()).getMethod());
+        }
+        zipper.unzip(new File(tmpDir, "decrypted_zipped"), new File(tmpDir, ZIP_FILE_NAME));
+        verifyUnchanged(List.of(random, text));
+    }
+
+    @Test
+    void forcedLevelAppliesToAllEntries() throws IOException, CipherException {
+        var files = generateFiles(2, 60_000);
+        var zipper = new Zipper(PASSWORD);
+        zipper.setCodec(Codec.forLevel(1));
+        zipper.setCompressionThreads(1);
+        zipper.setMemoryBudget(1);
+        zipper.zip(files, ZIP_FILE_NAME, tmpDir);
+
+        try (var zipFile = new ZipFile(decryptToPlainZip())) {
+            for (var file : files) {
+                assertEquals(ZipEntry.DEFLATED, zipFile.getEntry(file.getName()).getMethod());
+            }
+        }
+        zipper.unzip(new File(tmpDir, "decrypted_zipped"), new File(tmpDir, ZIP_FILE_NAME));
+        verifyUnchanged(files);
+    }
+
     @Test
     void failsToDecryptWithIncorrectPassword() throws IOException, CipherException {
         var files = generateFiles(1, 16);
@@ -69,6 +258,565 @@ class ZipperTest {
                 incorrectPasswordZipper.unzip(new File(tmpDir, "decrypted_zipped"), new File(tmpDir, ZIP_FILE_NAME)));
     }
 
+    @Test
+    void rekeyRewritesOnlyHeader() throws IOException, CipherException {
+        var files = generateFiles(3, 60_000);
+        var zipper = new Zipper(PASSWORD);
+        zipper.zip(files, ZIP_FILE_NAME, tmpDir);
+        var archive = new File(tmpDir, ZIP_FILE_NAME);
+        var before = Files.readAllBytes(archive.toPath());
+
+        zipper.setKdf(Kdf.PBKDF2_SHA256, 1000);
+        zipper.rekey(archive, "NewPassword", false);
+        var after = Files.readAllBytes(archive.toPath());
+        assertEquals(before.length, after.length);
+        ArchiveHeader header;
+        try (var fileIn = new FileInputStream(archive)) {
+            ArchiveHeader.hasMagic(fileIn);
+            header = ArchiveHeader.read(fileIn);
+        }
+        assertArrayEquals(Arrays.copyOfRange(before, header.length(), before.length),
+                Arrays.copyOfRange(after, header.length(), after.length));
+
+        assertThrows(IOException.class, () -> zipper.unzip(new File(tmpDir, "decrypted_zipped"), archive));
+        new Zipper("NewPassword").unzip(new File(tmpDir, "decrypted_zipped"), archive);
+        verifyUnchanged(files);
+    }
+
+    @Test
+    void addedKeyOpensArchiveAlongsideOldOne() throws IOException, CipherException {
+        var files = generateFiles(2, 16);
+        var zipper = new Zipper(PASSWORD);
+        zipper.zip(files, ZIP_FILE_NAME, tmpDir);
+        var archive = new File(tmpDir, ZIP_FILE_NAME);
+
+        zipper.setKdf(Kdf.PBKDF2_SHA256, 1000);
+        zipper.rekey(archive, "SecondPassword", true);
+        zipper.unzip(new File(tmpDir, "decrypted_zipped"), archive);
+        verifyUnchanged(files);
+        new Zipper("SecondPassword").unzip(new File(tmpDir, "decrypted_zipped"), archive);
+        verifyUnchanged(files);
+
+        for (var i = 2; i < ArchiveHeader.KEY_SLOTS; i++) {
+            zipper.rekey(archive, "Password" + i, true);
+        }
+        var exception = assertThrows(IOException.class, () -> zipper.rekey(archive, "OneTooMany", true));
+        assertEquals("All " + ArchiveHeader.KEY_SLOTS + " key slots are in use.", exception.getMessage());
+    }
+
+    @Test
+    void readsVersion4Header() throws IOException, CipherException {
+        var header = new CipherMaker(PASSWORD).newArchiveHeader();
+        assertTrue(header.wrapsKey());
+        var headerIn = new ByteArrayInputStream(header.toBytes());
+        assertEquals(header.length(), header.toBytes().length);
+        assertTrue(ArchiveHeader.hasMagic(headerIn));
+        var read = ArchiveHeader.read(headerIn);
+        assertEquals(header.kdf(), read.kdf());
+        assertArrayEquals(header.keySlots().get(0).wrappedKey(), read.keySlots().get(0).wrappedKey());
+        assertTrue(read.keySlots().get(1).free());
+    }
+
+    @Test
+    void listsEntriesFromIndex() throws IOException, CipherException {
+        var files = generateFiles(3, 16);
+        var zipper = new Zipper(PASSWORD);
+        zipper.zip(files, ZIP_FILE_NAME, tmpDir);
+
+        var entries = zipper.list(new File(tmpDir, ZIP_FILE_NAME));
+        assertEquals(List.of("fileNr0", "fileNr1", "fileNr2"), entries.stream().map(ArchiveIndex.Entry::name).toList());
+        for (var i = 0; i < files.size(); i++) {
+            assertEquals(files.get(i).length(), entries.get(i).size());
+        }
+    }
+
+    @Test
+    void extractsOnlyNamedEntries() throws IOException, CipherException {
+        var files = generateFiles(20, 60_000);
+        var zipper = new Zipper(PASSWORD);
+        zipper.zip(files, ZIP_FILE_NAME, tmpDir);
+
+        var extracted = List.of(files.get(1), files.get(19));
+        zipper.extract(new File(tmpDir, "decrypted_zipped"), new File(tmpDir, ZIP_FILE_NAME),
+                extracted.stream().map(File::getName).toList());
+
+        verifyUnchanged(extracted);
+        assertEquals(2, new File(tmpDir, "decrypted_zipped").list().length);
+    }
+
+    @Test
+    void verifiesArchiveWithoutWriting() throws IOException, CipherException {
+        var files = generateFiles(20, 60_000);
+        var zipper = new Zipper(PASSWORD);
+        zipper.setCompressionThreads(3);
+        zipper.zip(files, ZIP_FILE_NAME, tmpDir);
+
+        assertEquals(List.of(), zipper.verify(new File(tmpDir, ZIP_FILE_NAME)));
+        assertFalse(new File(tmpDir, "decrypted_zipped").exists());
+    }
+
+    @Test
+    void verifyNamesEntriesOfCorruptSegment() throws IOException, CipherException {
+        var files = generateFiles(20, 60_000);
+        var zipper = new Zipper(PASSWORD);
+        zipper.setCompressionThreads(3);
+        zipper.zip(files, ZIP_FILE_NAME, tmpDir);
+        var archive = new File(tmpDir, ZIP_FILE_NAME);
+        var entries = zipper.list(archive);
+
+        // Flips a byte of the second segment, which fails every entry with bytes in it and none of the others.
+        try (var file = new RandomAccessFile(archive, "rw")) {
+            var position = entries.get(entries.size() - 1).encryptedOffset() + SegmentedOutputStream.RECORD_PREFIX + 100;
+            file.seek(position);
+            var b = file.read();
+            file.seek(position);
+            file.write(b ^ 1);
+        }
+        var expected = entries.stream()
+                .filter(entry -> entry.offset() + entry.storedLength() > ArchiveHeader.DEFAULT_SEGMENT_SIZE)
+                .map(ArchiveIndex.Entry::name)
+                .toList();
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, zipper.verify(archive));
+    }
+
+    @Test
+    void verifyAuthenticatesCentralDirectory() throws IOException, CipherException {
+        // Enough tiny files for the central directory to fill a segment of its own.
+        var directory = new File(tmpDir, "many");
+        assertTrue(directory.mkdir());
+        for (var i = 0; i < 20_000; i++) {
+            Files.write(new File(directory, "f" + i).toPath(), new byte[]{(byte) i});
+        }
+        var zipper = new Zipper(PASSWORD);
+        zipper.setCompressionThreads(2);
+        zipper.zip(List.of(directory), ZIP_FILE_NAME, tmpDir);
+        var archive = new File(tmpDir, ZIP_FILE_NAME);
+        var entries = zipper.list(archive);
+        assertEquals(List.of(), zipper.verify(archive));
+
+        ArchiveHeader header;
+        long indexOffset;
+        try (var fileIn = new FileInputStream(archive); var volumes = VolumeSet.open(archive)) {
+            ArchiveHeader.hasMagic(fileIn);
+            header = ArchiveHeader.read(fileIn);
+            indexOffset = ArchiveIndex.offset(volumes);
+        }
+        // Flips a byte of the segment after the one the last entry ends in.
+        try (var file = new RandomAccessFile(archive, "rw")) {
+            var end = entries.stream().mapToLong(entry -> entry.offset() + entry.storedLength()).max().orElseThrow();
+            var position = header.segmentOffset(end / header.segmentSize() + 1) + SegmentedOutputStream.RECORD_PREFIX + 100;
+            assertTrue(position < indexOffset);
+            file.seek(position);
+            var b = file.read();
+            file.seek(position);
+            file.write(b ^ 1);
+        }
+        assertEquals(List.of(Zipper.CENTRAL_DIRECTORY), zipper.verify(archive));
+    }
+
+    @Test
+    void verifiesDeduplicatedArchive() throws IOException, CipherException {
+        var files = generateFiles(6, 200_000);
+        var zipper = new Zipper(PASSWORD);
+        zipper.setDeduplication(4 << 10);
+        zipper.setCompressionThreads(2);
+        zipper.zip(files, ZIP_FILE_NAME, tmpDir);
+        var archive = new File(tmpDir, ZIP_FILE_NAME);
+
+        assertEquals(List.of(), zipper.verify(archive));
+        try (var archiveIn = new FileInputStream(archive)) {
+            assertEquals(List.of(), zipper.verify(archiveIn));
+        }
+    }
+
+    @Test
+    void incrementalArchiveStoresOnlyChanges() throws IOException, CipherException {
+        var files = generateFiles(4, 10_000);
+        var zipper = new Zipper(PASSWORD);
+        var base = new File(tmpDir, "base");
+        zipper.zip(files, base.getName(), tmpDir);
+
+        writeFile(20_000, "fileNr1");
+        assertTrue(files.get(2).setLastModified(files.get(2).lastModified() - 10_000));
+        var delta = new File(tmpDir, "delta");
+        zipper.zipIncremental(List.of(files.get(0), files.get(1), files.get(2)), delta.getName(), tmpDir, base);
+
+        assertEquals(List.of("fileNr1"), zipper.list(delta).stream().map(ArchiveIndex.Entry::name).toList());
+    }
+
+    @Test
+    void zipsDirectoriesRecursively() throws IOException, CipherException {
+        var root = new File(tmpDir, "tree");
+        var names = List.of("top", "a/one", "a/b/two", "a/b/c/three", "skipped.tmp");
+        for (var name : names) {
+            var file = new File(root, name);
+            Files.createDirectories(file.getParentFile().toPath());
+            Files.write(file.toPath(), randomBytes(1000));
+        }
+        var zipper = new Zipper(PASSWORD);
+        zipper.setFilters(List.of(), List.of("*.tmp"));
+        zipper.zip(List.of(root), ZIP_FILE_NAME, tmpDir);
+
+        var listed = zipper.list(new File(tmpDir, ZIP_FILE_NAME)).stream().map(ArchiveIndex.Entry::name).sorted().toList();
+        assertEquals(List.of("tree/a/b/c/three", "tree/a/b/two", "tree/a/one", "tree/top"), listed);
+        var decrypted = new File(tmpDir, "decrypted_zipped");
+        zipper.unzip(decrypted, new File(tmpDir, ZIP_FILE_NAME));
+        for (var name : names.subList(0, 4)) {
+            assertArrayEquals(Files.readAllBytes(new File(root, name).toPath()), Files.readAllBytes(new File(decrypted, "tree/" + name).toPath()));
+        }
+    }
+
+    @Test
+    void streamRoundTripUnchanged() throws IOException, CipherException {
+        var content = new byte[3 * ArchiveHeader.DEFAULT_SEGMENT_SIZE + 17];
+        RANDOM.nextBytes(content);
+        var archive = new ByteArrayOutputStream();
+        var zipper = new Zipper(PASSWORD);
+        zipper.zip(new ByteArrayInputStream(content), "stream", archive);
+
+        var plain = new ByteArrayOutputStream();
+        zipper.unzip(new ByteArrayInputStream(archive.toByteArray()), plain);
+        assertArrayEquals(content, plain.toByteArray());
+
+        // The index of a streamed archive is readable once it is a file.
+        Files.write(new File(tmpDir, ZIP_FILE_NAME).toPath(), archive.toByteArray());
+        assertEquals(content.length, zipper.list(new File(tmpDir, ZIP_FILE_NAME)).get(0).size());
+    }
+
+    @Test
+    void streamDecryptionDetectsTruncation() throws IOException, CipherException {
+        var content = new byte[2 * ArchiveHeader.DEFAULT_SEGMENT_SIZE];
+        RANDOM.nextBytes(content);
+        var archive = new ByteArrayOutputStream();
+        var zipper = new Zipper(PASSWORD);
+        zipper.zip(new ByteArrayInputStream(content), "stream", archive);
+
+        var truncated = Arrays.copyOf(archive.toByteArray(), archive.size() / 2);
+        assertThrows(IOException.class, () -> zipper.unzip(new ByteArrayInputStream(truncated), OutputStream.nullOutputStream()));
+    }
+
+    @Test
+    void deduplicatesRepeatedContent() throws IOException, CipherException {
+        var files = generateFiles(1, 1_000_000);
+        for (var i = 1; i < 4; i++) {
+            var copy = new File(tmpDir, "copy" + i);
+            Files.copy(files.get(0).toPath(), copy.toPath());
+            files.add(copy);
+        }
+        var zipper = new Zipper(PASSWORD);
+        zipper.setDeduplication(16 << 10);
+        zipper.zip(files, ZIP_FILE_NAME, tmpDir);
+        var archive = new File(tmpDir, ZIP_FILE_NAME);
+        assertTrue(archive.length() < 2 * files.get(0).length());
+
+        zipper.unzip(new File(tmpDir, "decrypted_zipped"), archive);
+        verifyUnchanged(files);
+        assertEquals(files.size(), new File(tmpDir, "decrypted_zipped").list().length);
+    }
+
+    @Test
+    void extractsDeduplicatedEntries() throws IOException, CipherException {
+        var files = generateFiles(6, 200_000);
+        var zipper = new Zipper(PASSWORD);
+        zipper.setDeduplication(4 << 10);
+        zipper.zip(files, ZIP_FILE_NAME, tmpDir);
+        var archive = new File(tmpDir, ZIP_FILE_NAME);
+        assertEquals(files.stream().map(File::length).toList(), zipper.list(archive).stream().map(ArchiveIndex.Entry::size).toList());
+
+        var extracted = List.of(files.get(4), files.get(1));
+        zipper.extract(new File(tmpDir, "decrypted_zipped"), archive, extracted.stream().map(File::getName).toList());
+        verifyUnchanged(extracted);
+        assertEquals(2, new File(tmpDir, "decrypted_zipped").list().length);
+    }
+
+    @Test
+    void deduplicatedArchiveIsNotReadAsStream() throws IOException, CipherException {
+        var content = randomBytes(50_000);
+        var archive = new ByteArrayOutputStream();
+        var zipper = new Zipper(PASSWORD);
+        zipper.setDeduplication(4 << 10);
+        zipper.zip(new ByteArrayInputStream(content), "stream", archive);
+
+        var exception = assertThrows(IOException.class,
+                () -> zipper.unzip(new ByteArrayInputStream(archive.toByteArray()), OutputStream.nullOutputStream()));
+        assertTrue(exception.getMessage().startsWith("Deduplicated archive"));
+    }
+
+    @Test
+    void resumesDeduplicatedArchiveFromCheckpoint() throws IOException, CipherException {
+        var files = generateFiles(2, 500_000);
+        var late = new File(tmpDir, "late");
+        var archive = new File(tmpDir, ZIP_FILE_NAME);
+        // An entry is stored once chunks of the next are in flight, so only the first is checkpointed before the walk fails.
+        var zipper = new Zipper(PASSWORD);
+        zipper.setCompressionThreads(1);
+        zipper.setMemoryBudget(0);
+        zipper.setDeduplication(4 << 10);
+        zipper.setCheckpointInterval(1);
+        assertThrows(IOException.class, () -> zipper.zip(List.of(files.get(0), files.get(1), late), ZIP_FILE_NAME, tmpDir));
+        assertTrue(Journal.exists(archive));
+
+        // The chunks already stored are reused for the copy.
+        Files.copy(files.get(0).toPath(), late.toPath());
+        zipper.zip(List.of(files.get(0), files.get(1), late), ZIP_FILE_NAME, tmpDir);
+        assertFalse(Journal.exists(archive));
+        assertTrue(archive.length() < 5 * files.get(0).length() / 2);
+
+        zipper.unzip(new File(tmpDir, "decrypted_zipped"), archive);
+        verifyUnchanged(List.of(files.get(0), files.get(1), late));
+    }
+
+    @Test
+    void skipsFilesWithTakenEntryNames() throws IOException, CipherException {
+        var first = new File(tmpDir, "a");
+        var second = new File(tmpDir, "b");
+        assertTrue(first.mkdir() && second.mkdir());
+        var original = new File(first, "x");
+        Files.write(original.toPath(), randomBytes(1000));
+        Files.write(new File(second, "x").toPath(), randomBytes(1000));
+
+        for (var averageChunkSize : new int[]{0, 4 << 10}) {
+            var warnings = new ArrayList<String>();
+            var zipper = new Zipper(PASSWORD);
+            zipper.setDeduplication(averageChunkSize);
+            zipper.setWarnings(warnings::add);
+            zipper.zip(List.of(original, new File(second, "x")), ZIP_FILE_NAME, tmpDir);
+            var archive = new File(tmpDir, ZIP_FILE_NAME);
+
+            assertEquals(List.of("x"), zipper.list(archive).stream().map(ArchiveIndex.Entry::name).toList());
+            assertEquals(1, warnings.size());
+            assertTrue(warnings.get(0).contains(new File(second, "x").getPath()));
+            var decrypted = new File(tmpDir, "decrypted" + averageChunkSize);
+            zipper.unzip(decrypted, archive);
+            assertArrayEquals(Files.readAllBytes(original.toPath()), Files.readAllBytes(new File(decrypted, "x").toPath()));
+        }
+    }
+
+    @Test
+    void appendsWithoutRewritingEntries() throws IOException, CipherException {
+        var files = generateFiles(3, 1_000_000);
+        var zipper = new Zipper(PASSWORD);
+        zipper.zip(files, ZIP_FILE_NAME, tmpDir);
+        var archive = new File(tmpDir, ZIP_FILE_NAME);
+        var before = Files.readAllBytes(archive.toPath());
+
+        var added = List.of(writeNamed("added0", 500_000), writeNamed("added1", 16));
+        assertEquals(List.of(), zipper.append(added, ZIP_FILE_NAME, tmpDir));
+        var after = Files.readAllBytes(archive.toPath());
+        ArchiveHeader header;
+        try (var fileIn = new FileInputStream(archive)) {
+            ArchiveHeader.hasMagic(fileIn);
+            header = ArchiveHeader.read(fileIn);
+        }
+        // Only the segment the last entry ends in is sealed again.
+        var kept = (int) header.segmentOffset(2);
+        assertArrayEquals(Arrays.copyOf(before, kept), Arrays.copyOf(after, kept));
+        assertFalse(Journal.exists(archive));
+        assertEquals(5, zipper.list(archive).size());
+        assertEquals(List.of(), zipper.verify(archive));
+
+        // Entries it already has are skipped and named.
+        assertEquals(List.of("added0", "added1"), zipper.append(added, ZIP_FILE_NAME, tmpDir));
+        assertEquals(after.length, archive.length());
+
+        var all = new ArrayList<>(files);
+        all.addAll(added);
+        zipper.unzip(new File(tmpDir, "decrypted_zipped"), archive);
+        verifyUnchanged(all);
+    }
+
+    @Test
+    void appendsToDeduplicatedVolumes() throws IOException, CipherException {
+        var files = generateFiles(2, 1_500_000);
+        var zipper = new Zipper(PASSWORD);
+        zipper.setDeduplication(16 << 10);
+        zipper.setVolumes(1 << 20, List.of());
+        zipper.zip(files, ZIP_FILE_NAME, tmpDir);
+        var firstVolume = VolumeSet.volumeFile(tmpDir, ZIP_FILE_NAME, 0);
+        var stored = zipper.list(firstVolume).size();
+
+        // A copy stores no new chunks, so little more than its recipe is appended.
+        var copy = new File(tmpDir, "copy");
+        Files.copy(files.get(0).toPath(), copy.toPath());
+        var fresh = writeNamed("fresh", 1_500_000);
+        zipper.append(List.of(copy, fresh), ZIP_FILE_NAME, tmpDir);
+        assertEquals(stored + 2, zipper.list(firstVolume).size());
+        assertTrue(VolumeSet.volumeFile(tmpDir, ZIP_FILE_NAME, 4).isFile());
+        assertFalse(VolumeSet.volumeFile(tmpDir, ZIP_FILE_NAME, 6).isFile());
+
+        zipper.unzip(new File(tmpDir, "decrypted_zipped"), firstVolume);
+        verifyUnchanged(List.of(files.get(0), files.get(1), copy, fresh));
+    }
+
+    @Test
+    void stripesVolumesAcrossDirectories() throws IOException, CipherException {
+        var files = generateFiles(3, 2_000_000);
+        var other = new File(tmpDir, "other");
+        assertTrue(other.mkdir());
+        var zipper = new Zipper(PASSWORD);
+        zipper.setVolumes(1 << 20, List.of(other));
+        zipper.zip(files, ZIP_FILE_NAME, tmpDir);
+
+        assertFalse(new File(tmpDir, ZIP_FILE_NAME).exists());
+        assertTrue(VolumeSet.volumeFile(tmpDir, ZIP_FILE_NAME, 0).isFile());
+        assertTrue(VolumeSet.volumeFile(other, ZIP_FILE_NAME, 1).isFile());
+        assertTrue(VolumeSet.volumeFile(tmpDir, ZIP_FILE_NAME, 4).isFile());
+        var secondVolume = VolumeSet.volumeFile(other, ZIP_FILE_NAME, 1);
+        assertEquals(3, zipper.list(secondVolume).size());
+
+        zipper.unzip(new File(tmpDir, "decrypted_zipped"), secondVolume);
+        verifyUnchanged(files);
+    }
+
+    @Test
+    void missingVolumeIsReported() throws IOException, CipherException {
+        var files = generateFiles(2, 2_000_000);
+        var zipper = new Zipper(PASSWORD);
+        zipper.setVolumes(1 << 20, List.of());
+        zipper.zip(files, ZIP_FILE_NAME, tmpDir);
+        Files.delete(VolumeSet.volumeFile(tmpDir, ZIP_FILE_NAME, 2).toPath());
+
+        var exception = assertThrows(IOException.class,
+                () -> zipper.unzip(new File(tmpDir, "decrypted_zipped"), VolumeSet.volumeFile(tmpDir, ZIP_FILE_NAME, 0)));
+        assertTrue(exception.getMessage().contains(ZIP_FILE_NAME + ".003"));
+    }
+
+    @Test
+    void resumesVolumesFromCheckpoint() throws IOException, CipherException {
+        var first = generateFiles(1, 3_000_000).get(0);
+        var late = new File(tmpDir, "late");
+        var other = new File(tmpDir, "other");
+        assertTrue(other.mkdir());
+        var zipper = new Zipper(PASSWORD);
+        zipper.setCompressionThreads(1);
+        zipper.setMemoryBudget(0);
+        zipper.setCheckpointInterval(1);
+        zipper.setVolumes(1 << 20, List.of(other));
+        assertThrows(IOException.class, () -> zipper.zip(List.of(first, late), ZIP_FILE_NAME, tmpDir));
+        var firstVolume = VolumeSet.volumeFile(tmpDir, ZIP_FILE_NAME, 0);
+        assertTrue(Journal.exists(firstVolume));
+
+        Files.writeString(late.toPath(), "late");
+        zipper.zip(List.of(first, late), ZIP_FILE_NAME, tmpDir);
+        assertFalse(Journal.exists(firstVolume));
+
+        new Zipper(PASSWORD).unzip(new File(tmpDir, "decrypted_zipped"), firstVolume);
+        verifyUnchanged(List.of(first, late));
+    }
+
+    @Test
+    void resumesArchiveFromCheckpoint() throws IOException, CipherException {
+        var first = generateFiles(1, 4_000_000).get(0);
+        var late = new File(tmpDir, "late");
+        var archive = new File(tmpDir, ZIP_FILE_NAME);
+        // One entry at a time: the first file is written and checkpointed before the walk fails on the missing one.
+        var zipper = new Zipper(PASSWORD);
+        zipper.setCompressionThreads(1);
+        zipper.setMemoryBudget(0);
+        zipper.setCheckpointInterval(1);
+        assertThrows(IOException.class, () -> zipper.zip(List.of(first, late), ZIP_FILE_NAME, tmpDir));
+        assertTrue(Journal.exists(archive));
+
+        Files.writeString(late.toPath(), "late");
+        zipper.zip(List.of(first, late), ZIP_FILE_NAME, tmpDir);
+        assertFalse(Journal.exists(archive));
+        assertEquals(List.of(first.getName(), late.getName()), zipper.list(archive).stream().map(ArchiveIndex.Entry::name).toList());
+
+        new Zipper(PASSWORD).unzip(new File(tmpDir, "decrypted_zipped"), archive);
+        verifyUnchanged(List.of(first, late));
+    }
+
+    @Test
+    void resumesExtractionFromCheckpoint() throws IOException, CipherException {
+        var files = generateFiles(4, 10_000);
+        var zipper = new Zipper(PASSWORD);
+        zipper.zip(files, ZIP_FILE_NAME, tmpDir);
+        var archive = new File(tmpDir, ZIP_FILE_NAME);
+        var output = new File(tmpDir, "decrypted_zipped");
+        ArchiveHeader header;
+        try (var fileIn = new FileInputStream(archive)) {
+            ArchiveHeader.hasMagic(fileIn);
+            header = ArchiveHeader.read(fileIn);
+        }
+        new Journal(output, new CipherMaker(PASSWORD).segmentCipher(header)).writeExtraction(List.of(files.get(0).getName(), files.get(2).getName()));
+
+        zipper.setCheckpointInterval(1);
+        zipper.unzip(output, archive);
+        assertFalse(Journal.exists(output));
+        // Taken as extracted by the previous run.
+        assertFalse(new File(output, files.get(0).getName()).exists());
+        assertFalse(new File(output, files.get(2).getName()).exists());
+        verifyUnchanged(List.of(files.get(1), files.get(3)));
+    }
+
+    @Test
+    void restoresFromBaseAndDeltaChain() throws IOException, CipherException {
+        var files = generateFiles(4, 10_000);
+        var zipper = new Zipper(PASSWORD);
+        var base = new File(tmpDir, "base");
+        zipper.zip(files, base.getName(), tmpDir);
+
+        writeFile(20_000, "fileNr1");
+        var firstDelta = new File(tmpDir, "delta1");
+        zipper.zipIncremental(List.of(files.get(0), files.get(1), files.get(2)), firstDelta.getName(), tmpDir, base);
+        writeFile(30_000, "fileNr4");
+        var secondDelta = new File(tmpDir, "delta2");
+        var current = List.of(files.get(0), files.get(1), files.get(2), new File(tmpDir, "fileNr4"));
+        zipper.zipIncremental(current, secondDelta.getName(), tmpDir, firstDelta);
+
+        var restored = new File(tmpDir, "decrypted_zipped");
+        zipper.restore(restored, List.of(base));
+        assertTrue(new File(restored, "fileNr3").exists());
+        zipper.restore(restored, List.of(base, firstDelta, secondDelta));
+
+        verifyUnchanged(current);
+        assertEquals(4, restored.list().length);
+        assertThrows(IOException.class, () -> zipper.restore(restored, List.of(base, secondDelta)));
+    }
+
+    @Test
+    void decryptsLegacySingleStreamArchive() throws IOException, CipherException {
+        var files = generateFiles(3, 16);
+        var legacyArchive = new File(tmpDir, ZIP_FILE_NAME);
+        try (var fileOut = new FileOutputStream(legacyArchive);
+             var cipherOut = new CipherMaker(PASSWORD).outputStream(fileOut);
+             var zipOut = new ZipOutputStream(cipherOut)) {
+            for (var file : files) {
+                zipOut.putNextEntry(new ZipEntry(file.getName()));
+                zipOut.write(Files.readAllBytes(file.toPath()));
+            }
+        }
+
+        new Zipper(PASSWORD).unzip(new File(tmpDir, "decrypted_zipped"), legacyArchive);
+        verifyUnchanged(files);
+    }
+
+    @Test
+    void failsToDecryptTruncatedArchive() throws IOException, CipherException {
+        var files = generateFiles(20, 60_000);
+        var zipper = new Zipper(PASSWORD);
+        zipper.zip(files, ZIP_FILE_NAME, tmpDir);
+
+        var archive = new File(tmpDir, ZIP_FILE_NAME);
+        try (var file = new RandomAccessFile(archive, "rw")) {
+            file.setLength(file.length() / 2);
+        }
+        assertThrows(IOException.class, () -> zipper.unzip(new File(tmpDir, "decrypted_zipped"), archive));
+    }
+
+    private File decryptToPlainZip() throws IOException, CipherException {
+        var plainZip = new File(tmpDir, "plain.zip");
+        var cipher = new CipherMaker(PASSWORD);
+        try (var fileIn = new FileInputStream(new File(tmpDir, ZIP_FILE_NAME));
+             var fileOut = new FileOutputStream(plainZip)) {
+            ArchiveHeader.hasMagic(fileIn);
+            var header = ArchiveHeader.read(fileIn);
+            new SegmentedInputStream(fileIn, header, cipher.segmentCipher(header), Runnable::run, 1).transferTo(fileOut);
+        }
+        return plainZip;
+    }
+
     private void verifyUnchanged(List<File> files) throws IOException {
         for (var file : files) {
             try (var originalInputStream = new FileInputStream(file);
@@ -96,6 +844,28 @@ class ZipperTest {
         return files;
     }
 
+    /*
+    Small JSON files alike in all but their values.
+     */
+    private List<File> generateConfigs(int count) throws IOException {
+        var files = new ArrayList<File>();
+        for (var i = 0; i < count; i++) {
+            var file = new File(tmpDir, "service" + i + ".json");
+            Files.writeString(file.toPath(), ("{\"service\": \"api-%d\", \"replicas\": %d, \"image\": \"registry.example.com/platform/api:1.%d\",\n"
+                    + " \"env\": {\"LOG_LEVEL\": \"info\", \"TIMEOUT_MS\": %d, \"DATABASE_URL\": \"postgres://db-%d.internal:5432/app\"},\n"
+                    + " \"healthcheck\": {\"path\": \"/healthz\", \"interval\": \"10s\", \"retries\": %d}}\n")
+                    .formatted(i, RANDOM.nextInt(10), RANDOM.nextInt(100), RANDOM.nextInt(60_000), RANDOM.nextInt(20), RANDOM.nextInt(5)));
+            files.add(file);
+        }
+        return files;
+    }
+
+    private File writeNamed(String fileName, int fileSize) throws IOException {
+        var file = new File(tmpDir, fileName);
+        Files.write(file.toPath(), randomBytes(fileSize));
+        return file;
+    }
+
     private void writeFile(long fileSize, String fileName) throws IOException {
         var outputStream = new FileOutputStream(new File(tmpDir, fileName));
         long bytesWritten = 0;